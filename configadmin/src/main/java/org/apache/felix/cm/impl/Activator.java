@@ -18,6 +18,7 @@
  */
 package org.apache.felix.cm.impl;
 
+import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Dictionary;
@@ -25,6 +26,7 @@ import java.util.Hashtable;
 
 import org.apache.felix.cm.PersistenceManager;
 import org.apache.felix.cm.file.FilePersistenceManager;
+import org.apache.felix.cm.impl.persistence.JournalPersistenceManager;
 import org.apache.felix.cm.impl.persistence.MemoryPersistenceManager;
 import org.apache.felix.cm.impl.persistence.PersistenceManagerTracker;
 import org.osgi.framework.Bundle;
@@ -52,6 +54,12 @@ import org.osgi.service.log.LogService;
  * this property is not set the <code>config</code> directory in the current
  * working directory as specified in the <code>user.dir</code> system property
  * is used.
+ * <p>
+ * A {@link JournalPersistenceManager} is registered with the name
+ * <code>journal</code> and can be selected by setting the
+ * <code>felix.cm.pm</code> framework property to <code>journal</code>. Its
+ * journal is kept in the directory taken from the
+ * <code>felix.cm.journal.dir</code> framework property.
  */
 public class Activator implements BundleActivator
 {
@@ -75,6 +83,21 @@ public class Activator implements BundleActivator
      */
     private static final String CM_CONFIG_PM = "felix.cm.pm";
 
+    /**
+     * The name of the framework context property defining the directory of
+     * the journal of the journal persistence manager (value is
+     * "felix.cm.journal.dir").
+     */
+    private static final String CM_JOURNAL_DIR = "felix.cm.journal.dir";
+
+    /**
+     * The name of the framework context property defining whether the journal
+     * persistence manager forces each change to the storage device before
+     * returning (value is "felix.cm.journal.sync"). The default is
+     * <code>true</code>.
+     */
+    private static final String CM_JOURNAL_SYNC = "felix.cm.journal.sync";
+
     private volatile PersistenceManagerTracker tracker;
 
     // the service registration of the default file persistence manager
@@ -83,6 +106,12 @@ public class Activator implements BundleActivator
     // the service registration of the memory persistence manager
     private volatile ServiceRegistration<PersistenceManager> memorypmRegistration;
 
+    // the service registration of the journal persistence manager
+    private volatile ServiceRegistration<PersistenceManager> journalpmRegistration;
+
+    // the journal persistence manager, created on first use
+    private volatile JournalPersistenceManager journalpm;
+
     @Override
     public void start( final BundleContext bundleContext ) throws BundleException
     {
@@ -95,6 +124,9 @@ public class Activator implements BundleActivator
         // register memory persistence manager
         registerMemoryPersistenceManager(bundleContext);
 
+        // register journal persistence manager
+        registerJournalPersistenceManager(bundleContext);
+
         String configuredPM = bundleContext.getProperty(CM_CONFIG_PM);
         if (configuredPM != null && (configuredPM.isEmpty()
                 || FilePersistenceManager.DEFAULT_PERSISTENCE_MANAGER_NAME.equals(configuredPM)))
@@ -126,9 +158,10 @@ public class Activator implements BundleActivator
             this.tracker = null;
         }
 
-        // shutdown the file and memory persistence manager and unregister
+        // shutdown the file, memory and journal persistence manager and unregister
         this.unregisterFilePersistenceManager();
         this.unregisterMemoryPersistenceManager();
+        this.unregisterJournalPersistenceManager();
     }
 
     private ServiceFactory<PersistenceManager> registerFilePersistenceManager(final BundleContext bundleContext)
@@ -174,6 +207,44 @@ public class Activator implements BundleActivator
         memorypmRegistration = bundleContext.registerService(PersistenceManager.class, mpm, props);
     }
 
+    private void registerJournalPersistenceManager(final BundleContext bundleContext) {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put(Constants.SERVICE_DESCRIPTION, "Platform Journal Persistence Manager");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        props.put(PersistenceManager.PROPERTY_NAME, JournalPersistenceManager.PERSISTENCE_MANAGER_NAME);
+
+        final ServiceFactory<PersistenceManager> factory = new ServiceFactory<PersistenceManager>()
+        {
+
+            @Override
+            public PersistenceManager getService(Bundle bundle, ServiceRegistration<PersistenceManager> registration) {
+                synchronized (this) {
+                    if (journalpm == null) {
+                        final String sync = bundleContext.getProperty(CM_JOURNAL_SYNC);
+                        try {
+                            journalpm = new JournalPersistenceManager(bundleContext,
+                                    bundleContext.getProperty(CM_JOURNAL_DIR),
+                                    sync == null || Boolean.valueOf(sync));
+                        } catch (final IOException ioe) {
+                            Log.logger.log(LogService.LOG_ERROR, "Cannot open the configuration journal", ioe);
+                            return null;
+                        }
+                    }
+                }
+
+                return journalpm;
+            }
+
+            @Override
+            public void ungetService(Bundle bundle, ServiceRegistration<PersistenceManager> registration,
+                    PersistenceManager service) {
+                // nothing to do
+            }
+
+        };
+        journalpmRegistration = bundleContext.registerService(PersistenceManager.class, factory, props);
+    }
+
     private void unregisterFilePersistenceManager()
     {
         if ( this.filepmRegistration != null )
@@ -190,6 +261,17 @@ public class Activator implements BundleActivator
         }
     }
 
+    private void unregisterJournalPersistenceManager() {
+        if (this.journalpmRegistration != null) {
+            this.journalpmRegistration.unregister();
+            this.journalpmRegistration = null;
+        }
+        if (this.journalpm != null) {
+            this.journalpm.close();
+            this.journalpm = null;
+        }
+    }
+
     public static String getLocation(final Bundle bundle)
     {
         if (System.getSecurityManager() != null)
@@ -87,6 +87,15 @@ import org.osgi.util.tracker.ServiceTracker;
  */
 public class ConfigurationManager implements BundleListener
 {
+    /**
+     * The name of the framework context property defining the number of
+     * threads updating managed services and delivering configuration events
+     * (value is "felix.cm.update.threads"). Updates for the same PID and
+     * events for the same listener are always delivered in order. The
+     * default is a single thread.
+     */
+    public static final String CM_UPDATE_THREADS = "felix.cm.update.threads";
+
     // random number generator to create configuration PIDs for factory
     // configurations
     private static Random numberGenerator;
@@ -115,6 +124,9 @@ public class ConfigurationManager implements BundleListener
     // the thread used to schedule events to be dispatched asynchronously
     private UpdateThread eventThread;
 
+    // the service registration of the status printer of the update threads
+    private volatile ServiceRegistration<?> statusPrinterRegistration;
+
     /**
      * The persistence manager
      */
@@ -168,8 +180,9 @@ public class ConfigurationManager implements BundleListener
         // initialize the asynchonous updater thread
         ThreadGroup tg = new ThreadGroup( "Configuration Admin Service" );
         tg.setDaemon( true );
-        this.updateThread = new UpdateThread( tg, "CM Configuration Updater" );
-        this.eventThread = new UpdateThread( tg, "CM Event Dispatcher" );
+        final int threads = getUpdateThreadCount();
+        this.updateThread = new UpdateThread( tg, "CM Configuration Updater", threads );
+        this.eventThread = new UpdateThread( tg, "CM Event Dispatcher", threads );
 
         // register as bundle and service listener
         handleBundleEvents = true;
@@ -203,16 +216,52 @@ public class ConfigurationManager implements BundleListener
         this.updateThread.start();
         this.eventThread.start();
 
+        // print the update thread statistics to the configuration status
+        final Dictionary<String, Object> printerProps = new Hashtable<>();
+        printerProps.put( Constants.SERVICE_DESCRIPTION, UpdateStatusPrinter.TITLE );
+        printerProps.put( Constants.SERVICE_VENDOR, "The Apache Software Foundation" );
+        printerProps.put( "felix.webconsole.label", UpdateStatusPrinter.LABEL );
+        printerProps.put( "felix.webconsole.title", UpdateStatusPrinter.TITLE );
+        printerProps.put( "felix.webconsole.configprinter.modes", "always" );
+        statusPrinterRegistration = bundleContext.registerService( Object.class.getName(),
+            new UpdateStatusPrinter( this.updateThread, this.eventThread ), printerProps );
+
         return configurationAdminRegistration.getReference();
     }
 
 
+    private int getUpdateThreadCount()
+    {
+        final String threads = bundleContext.getProperty( CM_UPDATE_THREADS );
+        if ( threads != null )
+        {
+            try
+            {
+                return Math.max( 1, Integer.parseInt( threads.trim() ) );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                Log.logger.log( LogService.LOG_WARNING, "Ignoring invalid number of update threads {0}", new Object[]
+                        { threads } );
+            }
+        }
+        return 1;
+    }
+
+
     public void stop( )
     {
 
         // stop handling bundle events immediately
         handleBundleEvents = false;
 
+        final ServiceRegistration<?> printerReg = statusPrinterRegistration;
+        statusPrinterRegistration = null;
+        if ( printerReg != null )
+        {
+            printerReg.unregister();
+        }
+
         // stop handling ManagedService[Factory] services
         managedServiceFactoryTracker.close();
         managedServiceTracker.close();
@@ -647,12 +696,15 @@ public class ConfigurationManager implements BundleListener
                     { syncSender.getTypeName() } );
         }
 
-        // schedule asynchronous events
+        // schedule asynchronous events, one task per listener
         if ( asyncSender.hasConfigurationEventListeners() )
         {
-            if ( this.coordinator == null || !CoordinatorUtil.addToCoordination(this.coordinator, eventThread, asyncSender) )
+            for ( final Runnable listenerSender : asyncSender.getListenerTasks() )
             {
-                eventThread.schedule( asyncSender );
+                if ( this.coordinator == null || !CoordinatorUtil.addToCoordination(this.coordinator, eventThread, listenerSender) )
+                {
+                    eventThread.schedule( listenerSender );
+                }
             }
         }
         else
@@ -1041,7 +1093,7 @@ public class ConfigurationManager implements BundleListener
      * ManagedService is registered with multiple PIDs an instance of this
      * class is used for each registered PID.
      */
-    private class ManagedServiceUpdate implements Runnable
+    private class ManagedServiceUpdate implements UpdateThread.OrderedTask
     {
         private final String[] pids;
 
@@ -1058,6 +1110,13 @@ public class ConfigurationManager implements BundleListener
         }
 
 
+        @Override
+        public Object[] getKeys()
+        {
+            return this.pids;
+        }
+
+
         @Override
         public void run()
         {
@@ -1127,7 +1186,7 @@ public class ConfigurationManager implements BundleListener
      * multiple PIDs an instance of this class is used for each registered
      * PID.
      */
-    private class ManagedServiceFactoryUpdate implements Runnable
+    private class ManagedServiceFactoryUpdate implements UpdateThread.OrderedTask
     {
         private final String[] factoryPids;
 
@@ -1144,6 +1203,13 @@ public class ConfigurationManager implements BundleListener
         }
 
 
+        @Override
+        public Object[] getKeys()
+        {
+            return this.factoryPids;
+        }
+
+
         @Override
         public void run()
         {
@@ -1258,7 +1324,7 @@ public class ConfigurationManager implements BundleListener
         }
     }
 
-    private abstract class ConfigurationProvider<T> implements Runnable
+    private abstract class ConfigurationProvider<T> implements UpdateThread.OrderedTask
     {
 
         protected final ConfigurationImpl config;
@@ -1278,6 +1344,18 @@ public class ConfigurationManager implements BundleListener
         }
 
 
+        /**
+         * Orders the task by the PID of the services configured, which
+         * is the factory PID for factory configurations.
+         */
+        @Override
+        public Object[] getKeys()
+        {
+            return new Object[]
+                { getTargetedServicePid().getServicePid() };
+        }
+
+
         protected TargetedPID getTargetedServicePid()
         {
             final TargetedPID factoryPid = this.config.getFactoryPid();
@@ -1587,7 +1665,7 @@ public class ConfigurationManager implements BundleListener
 
         private final Bundle[] listenerProvider;
 
-        private ConfigurationEvent event;
+        private volatile ConfigurationEvent event;
 
         private FireConfigurationEvent( final ServiceTracker listenerTracker, final int type, final String pid, final String factoryPid)
         {
@@ -1622,6 +1700,45 @@ public class ConfigurationManager implements BundleListener
         }
 
 
+        /**
+         * Returns a task for sending the event to each listener, ordered by
+         * the listener such that each listener receives the events in the
+         * order they are fired.
+         */
+        List<Runnable> getListenerTasks()
+        {
+            final List<Runnable> tasks = new ArrayList<>( this.listeners.length );
+            for ( int i = 0; i < this.listeners.length; i++ )
+            {
+                final int serviceIndex = i;
+                tasks.add( new UpdateThread.OrderedTask()
+                {
+                    @Override
+                    public Object[] getKeys()
+                    {
+                        return new Object[]
+                            { listenerReferences[serviceIndex] };
+                    }
+
+
+                    @Override
+                    public void run()
+                    {
+                        sendEvent( serviceIndex );
+                    }
+
+
+                    @Override
+                    public String toString()
+                    {
+                        return FireConfigurationEvent.this.toString();
+                    }
+                } );
+            }
+            return tasks;
+        }
+
+
         String getTypeName()
         {
             switch ( type )
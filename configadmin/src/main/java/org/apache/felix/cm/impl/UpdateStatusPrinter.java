@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl;
+
+import java.io.PrintWriter;
+
+
+/**
+ * The <code>UpdateStatusPrinter</code> prints the state of the update and
+ * event threads to the Apache Felix Inventory, which the Web Console shows
+ * as part of the configuration status. It is registered with the Web
+ * Console printer service properties instead of implementing a printer
+ * interface, so Configuration Admin does not depend on either of them.
+ * The class and method are public as the method is called reflectively.
+ */
+public class UpdateStatusPrinter
+{
+
+    static final String TITLE = "Configuration Admin Updates";
+
+    static final String LABEL = "configadmin-updates";
+
+    private final UpdateThread[] threads;
+
+
+    UpdateStatusPrinter( final UpdateThread... threads )
+    {
+        this.threads = threads;
+    }
+
+
+    /**
+     * Prints the threads, the number of tasks queued, running and completed
+     * and the duration of the longest task of each update thread.
+     */
+    public void printConfiguration( final PrintWriter pw )
+    {
+        pw.println( TITLE );
+        pw.println();
+        for ( final UpdateThread thread : threads )
+        {
+            pw.println( thread.getName() );
+            pw.println( "  Threads         : " + thread.getThreadCount() );
+            pw.println( "  Queued tasks    : " + thread.getQueueDepth() );
+            pw.println( "  Running tasks   : " + thread.getRunningTaskCount() );
+            pw.println( "  Completed tasks : " + thread.getCompletedTaskCount() );
+            pw.println( "  Longest task    : " + thread.getMaxTaskTime() + "ms" );
+        }
+    }
+}
@@ -22,7 +22,12 @@ import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 import org.osgi.service.log.LogService;
 
@@ -30,32 +35,95 @@ import org.osgi.service.log.LogService;
 /**
  * The <code>UpdateThread</code> is the thread used to update managed services
  * and managed service factories as well as to send configuration events.
+ * <p>
+ * The tasks may be run by more than one worker thread. Tasks implementing
+ * {@link OrderedTask} are only run in the order they are scheduled with
+ * respect to other tasks sharing one of their keys, for example the
+ * updates of the same PID; tasks not sharing a key may run concurrently.
+ * Any other task is run after all tasks scheduled before it have
+ * completed and before any task scheduled after it is started. With a
+ * single worker thread all tasks are run in the order they are scheduled.
+ * <p>
+ * Each ordered task waits for the last task scheduled before it for each
+ * of its keys. Tasks which do not wait for any task are kept in a queue of
+ * ready tasks ordered by scheduling, from which the workers take them.
  */
 public class UpdateThread implements Runnable
 {
 
-    // the thread group into which the worker thread will be placed
+    /**
+     * A task which only has to be ordered with respect to tasks sharing
+     * one of its keys.
+     */
+    interface OrderedTask extends Runnable
+    {
+        /**
+         * Returns the keys of the task. Keys are compared with their
+         * <code>equals</code> method.
+         */
+        Object[] getKeys();
+    }
+
+    // the thread group into which the worker threads will be placed
     private final ThreadGroup workerThreadGroup;
 
-    // the thread's base name
+    // the threads' base name
     private final String workerBaseName;
 
-    // the queue of Runnable instances  to be run
-    private final LinkedList updateTasks;
+    // the number of worker threads
+    private final int workerCount;
+
+    // the tasks not yet admitted to the ready queue or to the lanes of
+    // their keys, because an unordered task is scheduled before them
+    private final LinkedList<Runnable> updateTasks;
+
+    // the admitted tasks which may be run now, ordered by scheduling
+    private final PriorityQueue<Entry> readyTasks = new PriorityQueue<>();
+
+    // the last admitted task of each key which has not completed yet
+    private final Map<Object, Entry> lastTasks = new HashMap<>();
+
+    // the number of tasks scheduled, used to order the ready tasks
+    private long scheduledTasks;
+
+    // the number of admitted tasks which have not completed yet
+    private int admittedTasks;
+
+    // the number of tasks currently running
+    private int runningTasks;
+
+    // whether an unordered task has been admitted and not completed yet
+    private boolean admittedUnordered;
 
-    // the actual thread
-    private Thread worker;
+    // whether the termination task has been taken from the queue
+    private boolean terminated;
+
+    // the number of tasks run and their accumulated and maximum duration (ms)
+    private long completedTasks;
+
+    private long totalTaskTime;
+
+    private long maxTaskTime;
+
+    // the actual threads
+    private Thread[] workers;
 
     // the access control context
     private final AccessControlContext acc;
 
     public UpdateThread( final ThreadGroup tg, final String name )
+    {
+        this( tg, name, 1 );
+    }
+
+    public UpdateThread( final ThreadGroup tg, final String name, final int threads )
     {
         this.workerThreadGroup = tg;
         this.workerBaseName = name;
+        this.workerCount = Math.max( 1, threads );
         this.acc = AccessController.getContext();
 
-        this.updateTasks = new LinkedList();
+        this.updateTasks = new LinkedList<>();
     }
 
 
@@ -67,13 +135,18 @@ public class UpdateThread implements Runnable
     @Override
     public void run()
     {
+        final String threadName = Thread.currentThread().getName();
         for ( ;; )
         {
-            Runnable task;
+            Entry entry;
             synchronized ( updateTasks )
             {
-                while ( updateTasks.isEmpty() )
+                while ( ( entry = this.takeTask() ) == null )
                 {
+                    if ( this.terminated )
+                    {
+                        return;
+                    }
                     try
                     {
                         updateTasks.wait();
@@ -83,21 +156,29 @@ public class UpdateThread implements Runnable
                         // don't care
                     }
                 }
-
-                task = ( Runnable ) updateTasks.removeFirst();
             }
 
             // return if the task is this thread itself
+            final Runnable task = entry.task;
             if ( task == this )
             {
+                synchronized ( updateTasks )
+                {
+                    this.terminated = true;
+                    this.admittedUnordered = false;
+                    this.admittedTasks--;
+                    this.runningTasks--;
+                    updateTasks.notifyAll();
+                }
                 return;
             }
 
             // otherwise execute the task, log any issues
+            final long start = System.currentTimeMillis();
             try
             {
                 // set the thread name indicating the current task
-                Thread.currentThread().setName( workerBaseName + " (" + task + ")" );
+                Thread.currentThread().setName( threadName + " (" + task + ")" );
 
                 Log.logger.log( LogService.LOG_DEBUG, "Running task {0}", new Object[]
                     { task } );
@@ -111,8 +192,123 @@ public class UpdateThread implements Runnable
             finally
             {
                 // reset the thread name to "idle"
-                Thread.currentThread().setName( workerBaseName );
+                Thread.currentThread().setName( threadName );
+
+                final long duration = System.currentTimeMillis() - start;
+                // the queue depth takes the queue lock, only get it when logged
+                if ( Log.logger.isLogEnabled( LogService.LOG_DEBUG ) )
+                {
+                    Log.logger.log( LogService.LOG_DEBUG, "Task {0} completed in {1}ms, {2} tasks queued", new Object[]
+                        { task, duration, this.getQueueDepth() } );
+                }
+                this.completeTask( entry, duration );
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the first ready task or returns <code>null</code>
+     * if no task may be run now. This method must be called while holding
+     * the lock on the queue.
+     */
+    private Entry takeTask()
+    {
+        if ( this.terminated )
+        {
+            return null;
+        }
+
+        final Entry entry = this.readyTasks.poll();
+        if ( entry != null )
+        {
+            this.runningTasks++;
+        }
+        return entry;
+    }
+
+    /**
+     * Admits the tasks from the head of the queue up to the next unordered
+     * task, which is only admitted once all tasks before it have completed.
+     * This method must be called while holding the lock on the queue.
+     */
+    private void admitTasks()
+    {
+        Runnable task;
+        while ( !this.admittedUnordered && ( task = updateTasks.peek() ) != null )
+        {
+            if ( !( task instanceof OrderedTask ) )
+            {
+                if ( this.admittedTasks > 0 )
+                {
+                    return;
+                }
+                updateTasks.remove();
+                this.admittedUnordered = true;
+                this.admittedTasks++;
+                this.readyTasks.add( new Entry( task, null, this.scheduledTasks++ ) );
+                return;
+            }
+
+            updateTasks.remove();
+            final Object[] keys = ( ( OrderedTask ) task ).getKeys();
+            final Entry entry = new Entry( task, keys, this.scheduledTasks++ );
+            for ( final Object key : keys )
+            {
+                final Entry last = this.lastTasks.put( key, entry );
+                if ( last != null && last != entry && last.addDependent( entry ) )
+                {
+                    entry.blockers++;
+                }
+            }
+            this.admittedTasks++;
+            if ( entry.blockers == 0 )
+            {
+                this.readyTasks.add( entry );
+            }
+        }
+    }
+
+    /**
+     * Releases the tasks waiting for the completed task, admits the tasks
+     * waiting for it and allows waiting workers to pick them up.
+     */
+    private void completeTask( final Entry entry, final long duration )
+    {
+        synchronized ( updateTasks )
+        {
+            if ( entry.keys != null )
+            {
+                for ( final Object key : entry.keys )
+                {
+                    if ( this.lastTasks.get( key ) == entry )
+                    {
+                        this.lastTasks.remove( key );
+                    }
+                }
+                if ( entry.dependents != null )
+                {
+                    for ( final Entry dependent : entry.dependents )
+                    {
+                        if ( --dependent.blockers == 0 )
+                        {
+                            this.readyTasks.add( dependent );
+                        }
+                    }
+                }
             }
+            else
+            {
+                this.admittedUnordered = false;
+            }
+            this.admittedTasks--;
+            this.runningTasks--;
+
+            this.completedTasks++;
+            this.totalTaskTime += duration;
+            this.maxTaskTime = Math.max( this.maxTaskTime, duration );
+
+            this.admitTasks();
+            updateTasks.notifyAll();
         }
     }
 
@@ -141,30 +337,41 @@ public class UpdateThread implements Runnable
 
     /**
      * Starts processing the queued tasks. This method does nothing if the
-     * worker has already been started.
+     * workers have already been started.
      */
     synchronized void start()
     {
-        if ( this.worker == null )
+        if ( this.workers == null )
         {
-            Thread workerThread = new Thread( workerThreadGroup, this, workerBaseName );
-            workerThread.setDaemon( true );
-            workerThread.start();
-            this.worker = workerThread;
+            synchronized ( updateTasks )
+            {
+                this.terminated = false;
+                this.admitTasks();
+            }
+
+            final Thread[] workerThreads = new Thread[this.workerCount];
+            for ( int i = 0; i < workerThreads.length; i++ )
+            {
+                final String name = ( workerThreads.length == 1 ) ? workerBaseName : workerBaseName + " #" + ( i + 1 );
+                workerThreads[i] = new Thread( workerThreadGroup, this, name );
+                workerThreads[i].setDaemon( true );
+                workerThreads[i].start();
+            }
+            this.workers = workerThreads;
         }
     }
 
 
     /**
-     * Terminates the worker thread and waits for the thread to have processed
+     * Terminates the worker threads and waits for the threads to have processed
      * all outstanding events up to and including the termination job. All
      * jobs {@link #schedule(Runnable) scheduled} after termination has been
      * initiated will not be processed any more. This method does nothing if
-     * the worker thread is not currently active.
+     * the worker threads are not currently active.
      * <p>
-     * If the worker thread does not terminate within 5 seconds it is killed
+     * If the worker threads do not terminate within 5 seconds they are killed
      * by calling the (deprecated) <code>Thread.stop()</code> method. It may
-     * be that the worker thread may be blocked by a deadlock (it should not,
+     * be that a worker thread may be blocked by a deadlock (it should not,
      * though). In this case hope is that <code>Thread.stop()</code> will be
      * able to released that deadlock at the expense of one or more tasks to
      * not be executed any longer.... In any case an ERROR message is logged
@@ -172,30 +379,36 @@ public class UpdateThread implements Runnable
      */
     synchronized void terminate()
     {
-        if ( this.worker != null )
+        if ( this.workers != null )
         {
-            Thread workerThread = this.worker;
-            this.worker = null;
+            final Thread[] workerThreads = this.workers;
+            this.workers = null;
 
             schedule( this );
 
-            // wait for all updates to terminate (<= 10 seconds !)
-            try
+            // wait for all updates to terminate (<= 5 seconds !)
+            final long deadline = System.currentTimeMillis() + 5000;
+            for ( final Thread workerThread : workerThreads )
             {
-                workerThread.join( 5000 );
-            }
-            catch ( InterruptedException ie )
-            {
-                // don't really care
-            }
+                try
+                {
+                    workerThread.join( Math.max( 1, deadline - System.currentTimeMillis() ) );
+                }
+                catch ( InterruptedException ie )
+                {
+                    // don't really care
+                }
 
-            if ( workerThread.isAlive() )
-            {
-                Log.logger.log( LogService.LOG_ERROR,
-                    "Worker thread {0} did not terminate within 5 seconds; trying to kill", new Object[]
-                        { workerBaseName } );
-                workerThread.stop();
+                if ( workerThread.isAlive() )
+                {
+                    Log.logger.log( LogService.LOG_ERROR,
+                        "Worker thread {0} did not terminate within 5 seconds; trying to kill", new Object[]
+                            { workerThread.getName() } );
+                    workerThread.stop();
+                }
             }
+
+            logStatistics();
         }
     }
 
@@ -208,11 +421,155 @@ public class UpdateThread implements Runnable
             Log.logger.log( LogService.LOG_DEBUG, "Scheduling task {0}", new Object[]
                 { update } );
 
-            // append to the task queue
+            // append to the task queue and admit it unless it has to wait
+            // for an unordered task
             updateTasks.add( update );
+            this.admitTasks();
 
-            // notify the waiting thread
+            // notify the waiting threads
             updateTasks.notifyAll();
         }
     }
+
+
+    // ---------- diagnostics
+
+    /**
+     * Returns the base name of the worker threads.
+     */
+    String getName()
+    {
+        return this.workerBaseName;
+    }
+
+
+    /**
+     * Returns the number of worker threads.
+     */
+    int getThreadCount()
+    {
+        return this.workerCount;
+    }
+
+
+    /**
+     * Returns the number of tasks waiting to be run.
+     */
+    int getQueueDepth()
+    {
+        synchronized ( updateTasks )
+        {
+            return this.getWaitingTasks();
+        }
+    }
+
+
+    /**
+     * Returns the number of tasks currently running.
+     */
+    int getRunningTaskCount()
+    {
+        synchronized ( updateTasks )
+        {
+            return this.runningTasks;
+        }
+    }
+
+
+    /**
+     * Returns the number of tasks run to completion.
+     */
+    long getCompletedTaskCount()
+    {
+        synchronized ( updateTasks )
+        {
+            return this.completedTasks;
+        }
+    }
+
+
+    /**
+     * Returns the duration of the longest task run in milliseconds.
+     */
+    long getMaxTaskTime()
+    {
+        synchronized ( updateTasks )
+        {
+            return this.maxTaskTime;
+        }
+    }
+
+
+    // the number of queued and admitted tasks not running yet
+    private int getWaitingTasks()
+    {
+        return updateTasks.size() + this.admittedTasks - this.runningTasks;
+    }
+
+
+    /**
+     * Logs the number of tasks run, their duration and the number of tasks
+     * left in the queue.
+     */
+    private void logStatistics()
+    {
+        synchronized ( updateTasks )
+        {
+            Log.logger.log( LogService.LOG_INFO,
+                "{0}: {1} tasks run on {2} threads in {3}ms, longest task {4}ms, {5} tasks not run", new Object[]
+                    { workerBaseName, this.completedTasks, this.workerCount, this.totalTaskTime, this.maxTaskTime,
+                        this.getWaitingTasks() } );
+        }
+    }
+
+
+    /**
+     * A task admitted to the lanes of its keys with the tasks waiting for
+     * it to complete.
+     */
+    private static final class Entry implements Comparable<Entry>
+    {
+        final Runnable task;
+
+        // the keys of an ordered task or null for an unordered task
+        final Object[] keys;
+
+        final long sequence;
+
+        // the number of tasks this task waits for
+        int blockers;
+
+        List<Entry> dependents;
+
+        Entry( final Runnable task, final Object[] keys, final long sequence )
+        {
+            this.task = task;
+            this.keys = keys;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Adds a task waiting for this task and returns <code>false</code>
+         * if it has already been added for another key.
+         */
+        boolean addDependent( final Entry dependent )
+        {
+            if ( this.dependents == null )
+            {
+                this.dependents = new ArrayList<>( 2 );
+            }
+            else if ( this.dependents.get( this.dependents.size() - 1 ) == dependent )
+            {
+                return false;
+            }
+            this.dependents.add( dependent );
+            return true;
+        }
+
+        @Override
+        public int compareTo( final Entry other )
+        {
+            return Long.compare( this.sequence, other.sequence );
+        }
+    }
 }
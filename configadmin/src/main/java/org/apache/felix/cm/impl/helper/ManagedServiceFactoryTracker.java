@@ -82,24 +82,28 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
 
         // Both the ManagedService to update and the Configuration-to-PID
         // are available, so the service can be updated with the
-        // configuration (which may be null)
-
-        if ( configs.shallTake( configPid, factoryPid, revision ) )
+        // configuration (which may be null). Updates for different factory
+        // PIDs may run concurrently, so the service is updated with one
+        // configuration at a time.
+        synchronized ( configs )
         {
-            try
-            {
-                Dictionary props = getProperties( properties, reference, configPid.toString(),
-                    factoryPid.toString() );
-                updated( reference, service, configPid.toString(), props );
-                configs.record( configPid, factoryPid, revision );
-            }
-            catch ( Throwable t )
+            if ( configs.shallTake( configPid, factoryPid, revision ) )
             {
-                this.handleCallBackError( t, reference, configPid );
-            }
-            finally
-            {
-                this.ungetRealService( reference );
+                try
+                {
+                    Dictionary props = getProperties( properties, reference, configPid.toString(),
+                        factoryPid.toString() );
+                    updated( reference, service, configPid.toString(), props );
+                    configs.record( configPid, factoryPid, revision );
+                }
+                catch ( Throwable t )
+                {
+                    this.handleCallBackError( t, reference, configPid );
+                }
+                finally
+                {
+                    this.ungetRealService( reference );
+                }
             }
         }
     }
@@ -113,20 +117,23 @@ public class ManagedServiceFactoryTracker extends BaseTracker<ManagedServiceFact
         final ConfigurationMap configs = this.getService( reference );
         if ( service != null && configs != null)
         {
-            if ( configs.removeConfiguration( configPid, factoryPid ) )
+            synchronized ( configs )
             {
-                try
-                {
-                    deleted( reference, service, configPid.toString() );
-                    configs.record( configPid, factoryPid, -1 );
-                }
-                catch ( Throwable t )
-                {
-                    this.handleCallBackError( t, reference, configPid );
-                }
-                finally
+                if ( configs.removeConfiguration( configPid, factoryPid ) )
                 {
-                    this.ungetRealService( reference );
+                    try
+                    {
+                        deleted( reference, service, configPid.toString() );
+                        configs.record( configPid, factoryPid, -1 );
+                    }
+                    catch ( Throwable t )
+                    {
+                        this.handleCallBackError( t, reference, configPid );
+                    }
+                    finally
+                    {
+                        this.ungetRealService( reference );
+                    }
                 }
             }
         }
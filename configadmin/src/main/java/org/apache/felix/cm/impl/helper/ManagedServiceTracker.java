@@ -118,8 +118,19 @@ public class ManagedServiceTracker extends BaseTracker<ManagedService>
 
         // Both the ManagedService to update and the Configuration-to-PID
         // are available, so the service can be updated with the
-        // configuration (which may be null)
+        // configuration (which may be null). Updates for different PIDs
+        // may run concurrently, so the service is updated with one
+        // configuration at a time.
+        synchronized ( configs )
+        {
+            updateService( service, srv, configPid, properties, revision, configs );
+        }
+    }
 
+
+    private void updateService( ServiceReference<ManagedService> service, final ManagedService srv,
+        final TargetedPID configPid, Dictionary<String, ?> properties, long revision, ConfigurationMap<?> configs )
+    {
         boolean doUpdate = false;
         if ( properties == null )
         {
@@ -20,6 +20,7 @@ package org.apache.felix.cm.impl.persistence;
 
 
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,6 +31,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -46,6 +48,13 @@ import org.osgi.service.cm.ConfigurationAdmin;
  * underlying actual {@link PersistenceManager} implementation. All API calls
  * are also (or primarily) routed through a local cache of dictionaries indexed
  * by the <code>service.pid</code>.
+ * <p>
+ * To answer filtered queries without matching the filter against every
+ * cached dictionary, the cache maintains indexes of the values of the
+ * <code>service.factoryPid</code> property and of any further properties
+ * given when creating the proxy. Equality and presence conditions on these
+ * properties and on the <code>service.pid</code> narrow down the
+ * dictionaries the filter is matched against.
  */
 public class CachingPersistenceManagerProxy implements ExtPersistenceManager
 {
@@ -66,16 +75,42 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
      */
     private volatile boolean fullyLoaded;
 
-    /** Factory configuration cache. */
-    private final Map<String, Set<String>> factoryConfigCache = new HashMap<>();
+    /** Factory configuration cache, the index of the factory PID. */
+    private final PropertyIndex factoryConfigCache = new PropertyIndex( ConfigurationAdmin.SERVICE_FACTORYPID );
+
+    /** The indexes by property name, including the factory PID index. */
+    private final Map<String, PropertyIndex> indexes = new TreeMap<>( CaseInsensitiveDictionary.CASE_INSENSITIVE_ORDER );
 
     /**
      * Creates a new caching layer for the given actual {@link PersistenceManager}.
      * @param pm The actual {@link PersistenceManager}
      */
     public CachingPersistenceManagerProxy( final PersistenceManager pm )
+    {
+        this( pm, null );
+    }
+
+    /**
+     * Creates a new caching layer for the given actual {@link PersistenceManager}
+     * indexing the given properties in addition to the factory PID.
+     * @param pm The actual {@link PersistenceManager}
+     * @param indexedProperties The names of the properties to index, may be
+     *      <code>null</code>
+     */
+    public CachingPersistenceManagerProxy( final PersistenceManager pm, final String[] indexedProperties )
     {
         this.pm = pm;
+        this.indexes.put( this.factoryConfigCache.getName(), this.factoryConfigCache );
+        if ( indexedProperties != null )
+        {
+            for ( final String name : indexedProperties )
+            {
+                if ( name != null && !name.isEmpty() && !this.indexes.containsKey( name ) )
+                {
+                    this.indexes.put( name, new PropertyIndex( name ) );
+                }
+            }
+        }
     }
 
     @Override
@@ -96,23 +131,7 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         try
         {
             lock.lock();
-            final Dictionary props = cache.remove( pid );
-            if ( props != null )
-            {
-                final String factoryPid = (String)props.get(ConfigurationAdmin.SERVICE_FACTORYPID);
-                if ( factoryPid != null )
-                {
-                    final Set<String> factoryPids = this.factoryConfigCache.get(factoryPid);
-                    if ( factoryPids != null )
-                    {
-                        factoryPids.remove(pid);
-                        if ( factoryPids.isEmpty() )
-                        {
-                            this.factoryConfigCache.remove(factoryPid);
-                        }
-                    }
-                }
-            }
+            this.uncache( pid );
             pm.delete(pid);
         }
         finally
@@ -170,20 +189,96 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
             {
                 dict = new CaseInsensitiveDictionary(props);
                 cache.put( pid, dict );
-                final String factoryPid = (String)props.get(ConfigurationAdmin.SERVICE_FACTORYPID);
-                if ( factoryPid != null )
+                for ( final PropertyIndex index : this.indexes.values() )
                 {
-                    Set<String> factoryPids = this.factoryConfigCache.get(factoryPid);
-                    if ( factoryPids == null )
+                    index.add( pid, dict );
+                }
+            }
+        }
+        return dict;
+    }
+
+    private void uncache( final String pid )
+    {
+        final Dictionary props = cache.remove( pid );
+        if ( props != null )
+        {
+            for ( final PropertyIndex index : this.indexes.values() )
+            {
+                index.remove( pid, props );
+            }
+        }
+    }
+
+    /**
+     * Returns the PIDs of the cached dictionaries which may match the filter
+     * according to the indexes or <code>null</code> if the indexes do not
+     * narrow down the dictionaries.
+     */
+    private Set<String> getCandidates( final SimpleFilter filter )
+    {
+        switch ( filter.getOperation() )
+        {
+            case SimpleFilter.AND:
+            {
+                Set<String> candidates = null;
+                for ( final SimpleFilter sub : ( List<SimpleFilter> ) filter.getValue() )
+                {
+                    final Set<String> subCandidates = this.getCandidates( sub );
+                    if ( subCandidates != null )
                     {
-                        factoryPids = new HashSet<>();
-                        this.factoryConfigCache.put(factoryPid, factoryPids);
+                        if ( candidates == null )
+                        {
+                            candidates = new HashSet<>( subCandidates );
+                        }
+                        else
+                        {
+                            candidates.retainAll( subCandidates );
+                        }
+                        if ( candidates.isEmpty() )
+                        {
+                            break;
+                        }
                     }
-                    factoryPids.add(pid);
                 }
+                return candidates;
             }
+
+            case SimpleFilter.OR:
+            {
+                final Set<String> candidates = new HashSet<>();
+                for ( final SimpleFilter sub : ( List<SimpleFilter> ) filter.getValue() )
+                {
+                    final Set<String> subCandidates = this.getCandidates( sub );
+                    if ( subCandidates == null )
+                    {
+                        return null;
+                    }
+                    candidates.addAll( subCandidates );
+                }
+                return candidates;
+            }
+
+            case SimpleFilter.EQ:
+            {
+                if ( Constants.SERVICE_PID.equalsIgnoreCase( filter.getName() ) )
+                {
+                    final String pid = ( String ) filter.getValue();
+                    return this.cache.containsKey( pid ) ? Collections.singleton( pid ) : Collections.<String>emptySet();
+                }
+                final PropertyIndex index = this.indexes.get( filter.getName() );
+                return ( index == null ) ? null : index.getCandidates( ( String ) filter.getValue() );
+            }
+
+            case SimpleFilter.PRESENT:
+            {
+                final PropertyIndex index = this.indexes.get( filter.getName() );
+                return ( index == null ) ? null : index.getPresent();
+            }
+
+            default:
+                return null;
         }
-        return dict;
     }
 
     @Override
@@ -212,9 +307,29 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
                 }
             }
 
+            // narrow down the dictionaries to match using the indexes
+            final Set<String> candidates = ( filter == null ) ? null : this.getCandidates( filter );
+            final Collection<CaseInsensitiveDictionary> dicts;
+            if ( candidates == null )
+            {
+                dicts = cache.values();
+            }
+            else
+            {
+                dicts = new ArrayList<>( candidates.size() );
+                for ( final String pid : candidates )
+                {
+                    final CaseInsensitiveDictionary d = cache.get( pid );
+                    if ( d != null )
+                    {
+                        dicts.add( d );
+                    }
+                }
+            }
+
             // Deep copy the configuration to avoid any threading issue
             final List<Dictionary> configs = new ArrayList<>();
-            for (final Dictionary d : cache.values())
+            for (final Dictionary d : dicts)
             {
                 if ( d.get( Constants.SERVICE_PID ) != null && ( filter == null || filter.matches( d ) ) )
                 {
@@ -289,7 +404,7 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         {
             lock.lock();
             pm.store( pid, properties );
-            this.cache.remove(pid);
+            this.uncache(pid);
             this.cache(properties);
         }
         finally
@@ -328,11 +443,7 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
             }
             for(final String targetFactoryPid : targetedFactoryPids)
             {
-                final Set<String> cachedPids = this.factoryConfigCache.get(targetFactoryPid);
-                if ( cachedPids != null )
-                {
-                    pids.addAll(cachedPids);
-                }
+                pids.addAll(this.factoryConfigCache.getPids(targetFactoryPid));
             }
         }
         finally
@@ -341,4 +452,130 @@ public class CachingPersistenceManagerProxy implements ExtPersistenceManager
         }
         return pids;
     }
+
+
+    /**
+     * The index of the values of a single property. String values, including
+     * the strings in arrays and collections, are indexed by their value. The
+     * filter matches other values after converting the filter value to their
+     * type, so dictionaries with such values remain candidates for any value.
+     */
+    private static final class PropertyIndex
+    {
+        private final String name;
+
+        /** PIDs by string value */
+        private final Map<String, Set<String>> values = new HashMap<>();
+
+        /** PIDs of the dictionaries having the property */
+        private final Set<String> present = new HashSet<>();
+
+        /** PIDs of the dictionaries having non-string values */
+        private final Set<String> unindexed = new HashSet<>();
+
+        PropertyIndex( final String name )
+        {
+            this.name = name;
+        }
+
+        String getName()
+        {
+            return this.name;
+        }
+
+        void add( final String pid, final Dictionary props )
+        {
+            final Object value = props.get( this.name );
+            if ( value != null )
+            {
+                this.present.add( pid );
+                for ( final Object element : elements( value ) )
+                {
+                    if ( element instanceof String )
+                    {
+                        Set<String> pids = this.values.get( element );
+                        if ( pids == null )
+                        {
+                            pids = new HashSet<>();
+                            this.values.put( ( String ) element, pids );
+                        }
+                        pids.add( pid );
+                    }
+                    else if ( element != null )
+                    {
+                        this.unindexed.add( pid );
+                    }
+                }
+            }
+        }
+
+        void remove( final String pid, final Dictionary props )
+        {
+            final Object value = props.get( this.name );
+            if ( value != null )
+            {
+                this.present.remove( pid );
+                this.unindexed.remove( pid );
+                for ( final Object element : elements( value ) )
+                {
+                    final Set<String> pids = this.values.get( element );
+                    if ( pids != null )
+                    {
+                        pids.remove( pid );
+                        if ( pids.isEmpty() )
+                        {
+                            this.values.remove( element );
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the PIDs of the dictionaries with the given string value.
+         */
+        Set<String> getPids( final String value )
+        {
+            final Set<String> pids = this.values.get( value );
+            return ( pids == null ) ? Collections.<String>emptySet() : pids;
+        }
+
+        /**
+         * Returns the PIDs of the dictionaries which may have a value equal
+         * to the given filter value.
+         */
+        Set<String> getCandidates( final String value )
+        {
+            if ( this.unindexed.isEmpty() )
+            {
+                return this.getPids( value );
+            }
+            final Set<String> candidates = new HashSet<>( this.unindexed );
+            candidates.addAll( this.getPids( value ) );
+            return candidates;
+        }
+
+        Set<String> getPresent()
+        {
+            return this.present;
+        }
+
+        private static Collection<?> elements( final Object value )
+        {
+            if ( value instanceof Collection )
+            {
+                return ( Collection<?> ) value;
+            }
+            if ( value.getClass().isArray() )
+            {
+                final List<Object> list = new ArrayList<>();
+                for ( int i = 0; i < Array.getLength( value ); i++ )
+                {
+                    list.add( Array.get( value, i ) );
+                }
+                return list;
+            }
+            return Collections.singleton( value );
+        }
+    }
 }
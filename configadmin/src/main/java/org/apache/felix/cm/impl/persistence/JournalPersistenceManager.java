@@ -0,0 +1,844 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.persistence;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.felix.cm.PersistenceManager;
+import org.apache.felix.cm.file.ConfigurationHandler;
+import org.apache.felix.cm.impl.Log;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.log.LogService;
+
+
+/**
+ * The <code>JournalPersistenceManager</code> stores all configurations in a
+ * single append-only journal file.
+ * <p>
+ * Storing or deleting a configuration appends a record to the journal. The
+ * journal is read sequentially once when the persistence manager is created;
+ * afterwards the configurations are kept in memory in the format of the
+ * {@link ConfigurationHandler}, so loading and listing configurations does
+ * not access the file system. A partially written record at the end of the
+ * journal, left by a crash, is discarded. As a checksum failure may also be
+ * caused by a damaged record followed by valid records, the discarded part
+ * of the journal is kept in a separate file for inspection.
+ * <p>
+ * Records superseded by later records are removed by compacting the journal:
+ * the current configurations are written to a new file which then replaces
+ * the journal. This happens once more than half of the journal consists of
+ * superseded records.
+ * <p>
+ * If synchronous writes are enabled, {@link #store(String, Dictionary)} and
+ * {@link #delete(String)} return once their record has been forced to the
+ * storage device. Records appended concurrently are forced together, so
+ * concurrent updates share a single sync of the journal.
+ */
+public class JournalPersistenceManager implements PersistenceManager
+{
+
+    /**
+     * The name of this persistence manager when registered in the service registry.
+     * (value is "journal").
+     */
+    public static final String PERSISTENCE_MANAGER_NAME = "journal";
+
+    /**
+     * The default journal directory if no location is configured
+     * (value is "journal").
+     */
+    public static final String DEFAULT_JOURNAL_DIR = "journal";
+
+    /** The name of the journal file. */
+    private static final String JOURNAL_FILE = "config.journal";
+
+    /** The name of the file written during compaction. */
+    private static final String COMPACT_FILE = "config.journal.tmp";
+
+    /** The prefix of the files keeping discarded parts of the journal. */
+    private static final String DISCARDED_FILE_PREFIX = "config.journal.discarded.";
+
+    /** The journal header: "FCMJ" and the format version. */
+    private static final int MAGIC = 0x46434D4A;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte RECORD_STORE = 1;
+
+    private static final byte RECORD_DELETE = 2;
+
+    /** type, pid length, data length and checksum of a record */
+    private static final int RECORD_OVERHEAD = 13;
+
+    /** Journals smaller than this are not compacted. */
+    private static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+    private static final String ENCODING = "UTF-8";
+
+    /** The directory of the journal. */
+    private final File location;
+
+    /** Whether appended records are forced to the storage device. */
+    private final boolean sync;
+
+    /** The encoded configurations by pid. */
+    private final Map<String, byte[]> configurations = new ConcurrentHashMap<>();
+
+    /** Serializes the sync of the journal. */
+    private final Object syncLock = new Object();
+
+    /** The number of appended records which have been synced. */
+    private final AtomicLong syncedRecords = new AtomicLong();
+
+    // the following fields are guarded by this
+
+    private FileChannel journal;
+
+    /** The size of the journal. */
+    private long journalSize;
+
+    /** The size of the records of the current configurations. */
+    private long liveSize;
+
+    /** The number of records appended since this instance has been created. */
+    private long appendedRecords;
+
+
+    /**
+     * Creates an instance of this persistence manager using the given location
+     * as the directory of the journal and reads the journal.
+     * <p>
+     * If <code>location</code> is <code>null</code>, the <code>journal</code>
+     * directory in the persistent storage area of the bundle identified by
+     * <code>bundleContext</code> is used, or the <code>journal</code> directory
+     * in the current working directory if there is no such storage area. A
+     * relative location is resolved against the persistent storage area or the
+     * current working directory.
+     *
+     * @param bundleContext The <code>BundleContext</code> to optionally get
+     *      the data location for the journal. This may be <code>null</code>.
+     * @param location The journal location. This may be <code>null</code>.
+     * @param sync Whether <code>store</code> and <code>delete</code> wait until
+     *      their record has been forced to the storage device.
+     *
+     * @throws IllegalArgumentException If the location exists but is not a
+     *      directory or does not exist and cannot be created.
+     * @throws IOException If the journal cannot be read.
+     */
+    public JournalPersistenceManager( final BundleContext bundleContext, final String location, final boolean sync )
+        throws IOException
+    {
+        File locationFile = null;
+        if ( location == null )
+        {
+            if ( bundleContext != null )
+            {
+                locationFile = bundleContext.getDataFile( DEFAULT_JOURNAL_DIR );
+            }
+            if ( locationFile == null )
+            {
+                locationFile = new File( System.getProperty( "user.dir" ), DEFAULT_JOURNAL_DIR );
+            }
+        }
+        else
+        {
+            locationFile = new File( location );
+            if ( !locationFile.isAbsolute() && bundleContext != null )
+            {
+                final File base = bundleContext.getDataFile( "" );
+                if ( base != null )
+                {
+                    locationFile = new File( base, location );
+                }
+            }
+        }
+        locationFile = locationFile.getAbsoluteFile();
+
+        if ( !locationFile.isDirectory() && !locationFile.mkdirs() && !locationFile.isDirectory() )
+        {
+            throw new IllegalArgumentException( "Cannot use " + locationFile + " as journal location" );
+        }
+        this.location = locationFile;
+        this.sync = sync;
+
+        this.open();
+    }
+
+
+    /**
+     * Returns the directory of the journal.
+     */
+    public File getLocation()
+    {
+        return this.location;
+    }
+
+
+    /**
+     * Closes the journal. Afterwards configurations can still be read but not
+     * changed anymore.
+     */
+    public void close()
+    {
+        synchronized ( this )
+        {
+            if ( this.journal != null )
+            {
+                try
+                {
+                    this.journal.close();
+                }
+                catch ( final IOException ioe )
+                {
+                    Log.logger.log( LogService.LOG_WARNING, "Error closing journal in " + this.location, ioe );
+                }
+                this.journal = null;
+            }
+        }
+    }
+
+
+    @Override
+    public boolean exists( final String pid )
+    {
+        return this.configurations.containsKey( pid );
+    }
+
+
+    @Override
+    public Dictionary load( final String pid ) throws IOException
+    {
+        final byte[] data = this.configurations.get( pid );
+        if ( data == null )
+        {
+            throw new IOException( "No configuration stored for " + pid );
+        }
+        return ConfigurationHandler.read( new ByteArrayInputStream( data ) );
+    }
+
+
+    @Override
+    public Enumeration getDictionaries()
+    {
+        return new DictionaryEnumeration( new ArrayList<>( this.configurations.values() ) );
+    }
+
+
+    @Override
+    public void store( final String pid, final Dictionary properties ) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigurationHandler.write( out, properties );
+        this.append( RECORD_STORE, pid, out.toByteArray() );
+    }
+
+
+    @Override
+    public void delete( final String pid ) throws IOException
+    {
+        if ( this.configurations.containsKey( pid ) )
+        {
+            this.append( RECORD_DELETE, pid, null );
+        }
+    }
+
+
+    private void append( final byte type, final String pid, final byte[] data ) throws IOException
+    {
+        final byte[] record = encodeRecord( type, pid, data );
+
+        final long recordNumber;
+        synchronized ( this )
+        {
+            if ( this.journal == null )
+            {
+                throw new IOException( "Journal " + this.location + " has been closed" );
+            }
+            this.privileged( new PrivilegedExceptionAction<Void>()
+            {
+                @Override
+                public Void run() throws IOException
+                {
+                    appendRecord( record );
+                    return null;
+                }
+            } );
+            this.journalSize += record.length;
+            recordNumber = ++this.appendedRecords;
+
+            final byte[] old = type == RECORD_STORE ? this.configurations.put( pid, data ) : this.configurations.remove( pid );
+            if ( old != null )
+            {
+                this.liveSize -= recordSize( pid, old );
+            }
+            if ( type == RECORD_STORE )
+            {
+                this.liveSize += record.length;
+            }
+
+            if ( this.journalSize > MIN_COMPACT_SIZE && this.journalSize - this.liveSize > this.liveSize )
+            {
+                try
+                {
+                    this.privileged( new PrivilegedExceptionAction<Void>()
+                    {
+                        @Override
+                        public Void run() throws IOException
+                        {
+                            compact();
+                            return null;
+                        }
+                    } );
+                }
+                catch ( final IOException ioe )
+                {
+                    // the record has been appended, compaction is retried with the next record
+                    Log.logger.log( LogService.LOG_WARNING, "Error compacting journal in " + this.location, ioe );
+                }
+            }
+        }
+
+        if ( this.sync )
+        {
+            this.sync( recordNumber );
+        }
+    }
+
+
+    /**
+     * Appends the record to the journal. If the record cannot be written
+     * completely, the journal is truncated to its previous size, so that
+     * later records are not appended after an incomplete record, which
+     * would be discarded together with them when the journal is read.
+     */
+    private void appendRecord( final byte[] record ) throws IOException
+    {
+        try
+        {
+            write( this.journal, record );
+        }
+        catch ( final IOException ioe )
+        {
+            try
+            {
+                this.journal.truncate( this.journalSize );
+                this.journal.position( this.journalSize );
+            }
+            catch ( final IOException tioe )
+            {
+                // do not append anything after the incomplete record
+                Log.logger.log( LogService.LOG_ERROR, "Cannot discard incomplete record in journal in "
+                    + this.location + "; closing the journal", tioe );
+                this.close();
+            }
+            throw ioe;
+        }
+    }
+
+
+    /**
+     * Writes the bytes to the channel.
+     */
+    void write( final FileChannel channel, final byte[] bytes ) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        while ( buffer.hasRemaining() )
+        {
+            channel.write( buffer );
+        }
+    }
+
+
+    /**
+     * Forces the journal up to the given record to the storage device. Threads
+     * calling this method while the journal is being forced wait for the sync
+     * in progress and then sync all records appended in the meantime at once.
+     */
+    private void sync( final long recordNumber ) throws IOException
+    {
+        synchronized ( this.syncLock )
+        {
+            if ( this.syncedRecords.get() >= recordNumber )
+            {
+                return;
+            }
+
+            final FileChannel channel;
+            final long appended;
+            synchronized ( this )
+            {
+                channel = this.journal;
+                appended = this.appendedRecords;
+            }
+            try
+            {
+                if ( channel == null )
+                {
+                    throw new ClosedChannelException();
+                }
+                this.privileged( new PrivilegedExceptionAction<Void>()
+                {
+                    @Override
+                    public Void run() throws IOException
+                    {
+                        channel.force( false );
+                        return null;
+                    }
+                } );
+            }
+            catch ( final ClosedChannelException cce )
+            {
+                // the journal has been replaced by compaction, which synced all records
+                if ( this.syncedRecords.get() >= recordNumber )
+                {
+                    return;
+                }
+                throw cce;
+            }
+            this.setSynced( appended );
+        }
+    }
+
+
+    private void setSynced( final long appended )
+    {
+        long synced = this.syncedRecords.get();
+        while ( synced < appended && !this.syncedRecords.compareAndSet( synced, appended ) )
+        {
+            synced = this.syncedRecords.get();
+        }
+    }
+
+
+    /**
+     * Replaces the journal by a journal containing only the records of the
+     * current configurations.
+     */
+    private void compact() throws IOException
+    {
+        final File compactFile = new File( this.location, COMPACT_FILE );
+        final File journalFile = new File( this.location, JOURNAL_FILE );
+
+        final long size;
+        try
+        {
+            size = writeCompacted( compactFile );
+        }
+        catch ( final IOException ioe )
+        {
+            compactFile.delete();
+            throw ioe;
+        }
+
+        this.journal.close();
+        this.journal = null;
+        try
+        {
+            try
+            {
+                Files.move( compactFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch ( final AtomicMoveNotSupportedException amnse )
+            {
+                Files.move( compactFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        catch ( final IOException ioe )
+        {
+            // continue with the journal not compacted
+            compactFile.delete();
+            this.journal = openForAppend( journalFile );
+            throw ioe;
+        }
+        this.journal = openForAppend( journalFile );
+        // the records are only synced once the rename is
+        forceDirectory( this.location );
+
+        Log.logger.log( LogService.LOG_DEBUG, "Compacted journal {0} from {1} to {2} bytes",
+            new Object[] { journalFile, this.journalSize, size } );
+        this.journalSize = size;
+        this.liveSize = size - HEADER_SIZE;
+        this.setSynced( this.appendedRecords );
+    }
+
+
+    /**
+     * Writes the records of the current configurations to the given file.
+     * @return The size of the file
+     */
+    private long writeCompacted( final File compactFile ) throws IOException
+    {
+        long size = HEADER_SIZE;
+        try ( final RandomAccessFile raf = new RandomAccessFile( compactFile, "rw" ) )
+        {
+            raf.setLength( 0 );
+            final FileChannel channel = raf.getChannel();
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream( 64 * 1024 );
+            writeHeader( buffer );
+            for ( final Map.Entry<String, byte[]> entry : this.configurations.entrySet() )
+            {
+                final byte[] record = encodeRecord( RECORD_STORE, entry.getKey(), entry.getValue() );
+                buffer.write( record );
+                size += record.length;
+                if ( buffer.size() >= 64 * 1024 )
+                {
+                    write( channel, buffer.toByteArray() );
+                    buffer.reset();
+                }
+            }
+            write( channel, buffer.toByteArray() );
+            channel.force( true );
+        }
+        return size;
+    }
+
+
+    /**
+     * Reads the journal and opens it for appending records.
+     */
+    private void open() throws IOException
+    {
+        final File journalFile = new File( this.location, JOURNAL_FILE );
+        final File compactFile = new File( this.location, COMPACT_FILE );
+
+        // a complete compacted journal is only renamed after the journal has been deleted
+        if ( !journalFile.exists() && compactFile.exists() )
+        {
+            if ( !compactFile.renameTo( journalFile ) )
+            {
+                throw new IOException( "Cannot rename " + compactFile + " to " + journalFile );
+            }
+            forceDirectory( this.location );
+        }
+        compactFile.delete();
+
+        long validSize = 0;
+        if ( journalFile.exists() )
+        {
+            validSize = this.read( journalFile );
+        }
+
+        this.journal = openForAppend( journalFile );
+        if ( validSize < HEADER_SIZE )
+        {
+            // new or unreadable journal
+            this.journal.truncate( 0 );
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            writeHeader( header );
+            write( this.journal, header.toByteArray() );
+            validSize = HEADER_SIZE;
+        }
+        else if ( validSize < this.journal.size() )
+        {
+            final File discardedFile = new File( this.location, DISCARDED_FILE_PREFIX + System.currentTimeMillis() );
+            copyTail( this.journal, validSize, discardedFile );
+            Log.logger.log( LogService.LOG_WARNING,
+                "Discarding {0} bytes of incomplete or damaged records at the end of journal {1}, kept in {2}",
+                new Object[] { this.journal.size() - validSize, journalFile, discardedFile } );
+            this.journal.truncate( validSize );
+        }
+        this.journal.position( validSize );
+        this.journal.force( true );
+        this.journalSize = validSize;
+
+        for ( final Map.Entry<String, byte[]> entry : this.configurations.entrySet() )
+        {
+            this.liveSize += recordSize( entry.getKey(), entry.getValue() );
+        }
+    }
+
+
+    /**
+     * Reads the records of the journal.
+     * @return The size of the valid part of the journal
+     */
+    private long read( final File journalFile ) throws IOException
+    {
+        final long length = journalFile.length();
+        try ( final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( journalFile ), 64 * 1024 ) ) )
+        {
+            if ( length < HEADER_SIZE || in.readInt() != MAGIC )
+            {
+                throw new IOException( "File " + journalFile + " is not a configuration journal" );
+            }
+            final int version = in.readInt();
+            if ( version != VERSION )
+            {
+                throw new IOException( "Unsupported version " + version + " of journal " + journalFile );
+            }
+
+            long position = HEADER_SIZE;
+            final CRC32 crc = new CRC32();
+            while ( true )
+            {
+                try
+                {
+                    final byte type = in.readByte();
+                    final int pidLength = in.readInt();
+                    if ( ( type != RECORD_STORE && type != RECORD_DELETE ) || pidLength < 0
+                        || pidLength > length - position )
+                    {
+                        return position;
+                    }
+                    final byte[] pidBytes = new byte[pidLength];
+                    in.readFully( pidBytes );
+                    final int dataLength = in.readInt();
+                    if ( dataLength < 0 || dataLength > length - position )
+                    {
+                        return position;
+                    }
+                    final byte[] data = new byte[dataLength];
+                    in.readFully( data );
+                    final int checksum = in.readInt();
+
+                    crc.reset();
+                    crc.update( type );
+                    crc.update( pidBytes );
+                    crc.update( data );
+                    if ( checksum != ( int ) crc.getValue() )
+                    {
+                        return position;
+                    }
+
+                    final String pid = new String( pidBytes, ENCODING );
+                    if ( type == RECORD_STORE )
+                    {
+                        this.configurations.put( pid, data );
+                    }
+                    else
+                    {
+                        this.configurations.remove( pid );
+                    }
+                    position += RECORD_OVERHEAD + pidLength + dataLength;
+                }
+                catch ( final EOFException eof )
+                {
+                    return position;
+                }
+            }
+        }
+    }
+
+
+    private static FileChannel openForAppend( final File journalFile ) throws IOException
+    {
+        final FileChannel channel = new RandomAccessFile( journalFile, "rw" ).getChannel();
+        channel.position( channel.size() );
+        return channel;
+    }
+
+
+    /**
+     * Copies the journal from the given position to the given file, which
+     * is forced to the storage device before the journal may be truncated.
+     */
+    private static void copyTail( final FileChannel journal, final long position, final File file ) throws IOException
+    {
+        try ( final FileChannel out = new RandomAccessFile( file, "rw" ).getChannel() )
+        {
+            final long size = journal.size();
+            long copied = position;
+            while ( copied < size )
+            {
+                copied += journal.transferTo( copied, size - copied, out );
+            }
+            out.force( true );
+        }
+        forceDirectory( file.getParentFile() );
+    }
+
+
+    /**
+     * Forces the entries of the directory, like a renamed journal, to the
+     * storage device. This is not supported on all platforms, for example
+     * a directory cannot be opened on Windows, in which case the rename is
+     * left to the file system.
+     */
+    private static void forceDirectory( final File directory )
+    {
+        try ( final FileChannel channel = FileChannel.open( directory.toPath(), StandardOpenOption.READ ) )
+        {
+            channel.force( true );
+        }
+        catch ( final IOException ioe )
+        {
+            Log.logger.log( LogService.LOG_DEBUG, "Cannot force directory {0}: {1}",
+                new Object[] { directory, ioe } );
+        }
+    }
+
+
+    private static void writeHeader( final ByteArrayOutputStream out ) throws IOException
+    {
+        final DataOutputStream dos = new DataOutputStream( out );
+        dos.writeInt( MAGIC );
+        dos.writeInt( VERSION );
+        dos.flush();
+    }
+
+
+    private static byte[] encodeRecord( final byte type, final String pid, final byte[] data ) throws IOException
+    {
+        final byte[] pidBytes = pid.getBytes( ENCODING );
+        final byte[] dataBytes = data == null ? new byte[0] : data;
+
+        final CRC32 crc = new CRC32();
+        crc.update( type );
+        crc.update( pidBytes );
+        crc.update( dataBytes );
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream( RECORD_OVERHEAD + pidBytes.length + dataBytes.length );
+        final DataOutputStream dos = new DataOutputStream( out );
+        dos.writeByte( type );
+        dos.writeInt( pidBytes.length );
+        dos.write( pidBytes );
+        dos.writeInt( dataBytes.length );
+        dos.write( dataBytes );
+        dos.writeInt( ( int ) crc.getValue() );
+        dos.flush();
+        return out.toByteArray();
+    }
+
+
+    private static long recordSize( final String pid, final byte[] data ) throws IOException
+    {
+        return RECORD_OVERHEAD + pid.getBytes( ENCODING ).length + data.length;
+    }
+
+
+    private <T> T privileged( final PrivilegedExceptionAction<T> action ) throws IOException
+    {
+        if ( System.getSecurityManager() == null )
+        {
+            try
+            {
+                return action.run();
+            }
+            catch ( final IOException ioe )
+            {
+                throw ioe;
+            }
+            catch ( final Exception e )
+            {
+                throw new IOException( e );
+            }
+        }
+        try
+        {
+            return AccessController.doPrivileged( action );
+        }
+        catch ( final PrivilegedActionException pae )
+        {
+            final Exception e = pae.getException();
+            if ( e instanceof IOException )
+            {
+                throw ( IOException ) e;
+            }
+            throw new IOException( e );
+        }
+    }
+
+
+    /**
+     * Enumeration of the configurations, decoding each configuration when it
+     * is requested. Configurations which cannot be decoded are skipped.
+     */
+    private static final class DictionaryEnumeration implements Enumeration
+    {
+        private final Iterator<byte[]> configurations;
+
+        private Dictionary next;
+
+        DictionaryEnumeration( final List<byte[]> configurations )
+        {
+            this.configurations = configurations.iterator();
+            this.next = this.seek();
+        }
+
+
+        @Override
+        public boolean hasMoreElements()
+        {
+            return this.next != null;
+        }
+
+
+        @Override
+        public Object nextElement()
+        {
+            if ( this.next == null )
+            {
+                throw new NoSuchElementException();
+            }
+            final Dictionary result = this.next;
+            this.next = this.seek();
+            return result;
+        }
+
+
+        private Dictionary seek()
+        {
+            while ( this.configurations.hasNext() )
+            {
+                try
+                {
+                    return ConfigurationHandler.read( new ByteArrayInputStream( this.configurations.next() ) );
+                }
+                catch ( final IOException ioe )
+                {
+                    Log.logger.log( LogService.LOG_ERROR, "Cannot decode configuration", ioe );
+                }
+            }
+            return null;
+        }
+    }
+}
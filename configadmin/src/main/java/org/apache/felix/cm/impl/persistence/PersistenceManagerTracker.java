@@ -51,6 +51,14 @@ import org.osgi.util.tracker.ServiceTrackerCustomizer;
 public class PersistenceManagerTracker
     implements ServiceTrackerCustomizer<PersistenceManager, PersistenceManagerTracker.Holder>
 {
+    /**
+     * The name of the framework context property listing the names of the
+     * configuration properties, separated by comma, to index in the cache
+     * of configurations for answering filtered configuration listings
+     * (value is "felix.cm.index"). The factory PID is always indexed.
+     */
+    public static final String CM_INDEX = "felix.cm.index";
+
     /** Tracker for the persistence manager. */
     private final ServiceTracker<PersistenceManager, Holder> persistenceManagerTracker;
 
@@ -155,7 +163,8 @@ public class PersistenceManagerTracker
         }
         else
         {
-            extPM = new CachingPersistenceManagerProxy( pm );
+            final String indexed = this.bundleContext.getProperty( CM_INDEX );
+            extPM = new CachingPersistenceManagerProxy( pm, indexed == null ? null : indexed.trim().split( "\\s*,\\s*" ) );
         }
         return extPM;
     }
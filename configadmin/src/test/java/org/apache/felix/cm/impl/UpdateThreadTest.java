@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class UpdateThreadTest
+{
+
+    private UpdateThread thread;
+
+
+    @After
+    public void tearDown()
+    {
+        if ( thread != null )
+        {
+            thread.terminate();
+        }
+    }
+
+
+    @Test
+    public void test_same_key_in_order() throws InterruptedException
+    {
+        thread = new UpdateThread( null, "test", 4 );
+        thread.start();
+
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch done = new CountDownLatch( 100 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            thread.schedule( new Task( "pid", order, i, done ) );
+        }
+
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( Integer.valueOf( i ), order.get( i ) );
+        }
+        // the latch is counted down before the task is counted as completed
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( thread.getCompletedTaskCount() < 100 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( 100, thread.getCompletedTaskCount() );
+    }
+
+
+    @Test
+    public void test_slow_task_does_not_block_other_keys() throws InterruptedException
+    {
+        thread = new UpdateThread( null, "test", 2 );
+        thread.start();
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch done = new CountDownLatch( 2 );
+
+        // blocks pid a until released
+        thread.schedule( new Task( "a", order, 0, done )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    release.await( 5, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException ie )
+                {
+                    // ignore
+                }
+                super.run();
+            }
+        } );
+        final CountDownLatch second = new CountDownLatch( 1 );
+        thread.schedule( new Task( "a", order, 1, second ) );
+        thread.schedule( new Task( "b", order, 2, done ) );
+
+        // pid b is delivered while pid a is still blocked
+        done.await( 1, TimeUnit.SECONDS );
+        assertEquals( Arrays.asList( 2 ), new ArrayList<>( order ) );
+        assertEquals( 1, thread.getQueueDepth() );
+
+        release.countDown();
+        assertTrue( second.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( 2, 0, 1 ), new ArrayList<>( order ) );
+    }
+
+
+    @Test
+    public void test_unordered_task_is_barrier() throws InterruptedException
+    {
+        thread = new UpdateThread( null, "test", 4 );
+        thread.start();
+
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch done = new CountDownLatch( 3 );
+        thread.schedule( new Task( "a", order, 0, done )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( 200 );
+                }
+                catch ( InterruptedException ie )
+                {
+                    // ignore
+                }
+                super.run();
+            }
+        } );
+        thread.schedule( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                order.add( 1 );
+                done.countDown();
+            }
+        } );
+        thread.schedule( new Task( "b", order, 2, done ) );
+
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( 0, 1, 2 ), new ArrayList<>( order ) );
+    }
+
+
+    @Test
+    public void test_single_thread_in_schedule_order() throws InterruptedException
+    {
+        thread = new UpdateThread( null, "test", 1 );
+
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch done = new CountDownLatch( 4 );
+        thread.schedule( new Task( "a", order, 0, done ) );
+        thread.schedule( new Task( "a", order, 1, done ) );
+        thread.schedule( new Task( "b", order, 2, done ) );
+        thread.schedule( new Task( "a", order, 3, done ) );
+        thread.start();
+
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( 0, 1, 2, 3 ), new ArrayList<>( order ) );
+    }
+
+
+    @Test
+    public void test_task_with_several_keys_waits_for_each() throws InterruptedException
+    {
+        thread = new UpdateThread( null, "test", 4 );
+        thread.start();
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch first = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 2 );
+
+        // blocks pid b until released
+        thread.schedule( new Task( "a", order, 0, first ) );
+        thread.schedule( new Task( "b", order, 1, done )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    release.await( 5, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException ie )
+                {
+                    // ignore
+                }
+                super.run();
+            }
+        } );
+        thread.schedule( new Task( new Object[]
+            { "a", "b" }, order, 2, done ) );
+
+        assertTrue( first.await( 5, TimeUnit.SECONDS ) );
+        Thread.sleep( 100 );
+        assertEquals( Arrays.asList( 0 ), new ArrayList<>( order ) );
+        assertEquals( 1, thread.getQueueDepth() );
+        assertEquals( 1, thread.getRunningTaskCount() );
+
+        release.countDown();
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( 0, 1, 2 ), new ArrayList<>( order ) );
+    }
+
+
+    @Test
+    public void test_status_printer() throws InterruptedException
+    {
+        thread = new UpdateThread( null, "test", 2 );
+        thread.start();
+
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch done = new CountDownLatch( 3 );
+        for ( int i = 0; i < 3; i++ )
+        {
+            thread.schedule( new Task( "pid", order, i, done ) );
+        }
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( thread.getCompletedTaskCount() < 3 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+
+        final StringWriter out = new StringWriter();
+        new UpdateStatusPrinter( thread ).printConfiguration( new PrintWriter( out ) );
+        final String status = out.toString();
+        assertTrue( status, status.contains( "Threads         : 2" ) );
+        assertTrue( status, status.contains( "Queued tasks    : 0" ) );
+        assertTrue( status, status.contains( "Completed tasks : 3" ) );
+    }
+
+
+    private static class Task implements UpdateThread.OrderedTask
+    {
+        private final Object[] keys;
+
+        private final List<Integer> order;
+
+        private final int id;
+
+        private final CountDownLatch done;
+
+
+        Task( final String key, final List<Integer> order, final int id, final CountDownLatch done )
+        {
+            this( new Object[]
+                { key }, order, id, done );
+        }
+
+
+        Task( final Object[] keys, final List<Integer> order, final int id, final CountDownLatch done )
+        {
+            this.keys = keys;
+            this.order = order;
+            this.id = id;
+            this.done = done;
+        }
+
+
+        @Override
+        public Object[] getKeys()
+        {
+            return keys;
+        }
+
+
+        @Override
+        public void run()
+        {
+            order.add( id );
+            done.countDown();
+        }
+    }
+}
@@ -178,4 +178,43 @@ public class CachingPersistenceManagerProxyTest
         assertTrue(pids.contains("new_pid_for_newf1"));
         assertTrue(pids.contains("new_pid_for_newf2"));
     }
-}
\ No newline at end of file
+
+    @Test public void testIndexedFilters() throws Exception
+    {
+        final CachingPersistenceManagerProxy cpm = new CachingPersistenceManagerProxy(this.createAndPopulatePersistenceManager(),
+                new String[] {"Value", "number"});
+
+        final Dictionary<String, Object> numbered = createConfiguration("numbered", null);
+        numbered.put("number", 5);
+        cpm.store("numbered", numbered);
+        final Dictionary<String, Object> multi = createConfiguration("multi", FACTORY_PID_B);
+        multi.put("number", new String[] {"5", "6"});
+        cpm.store("multi", multi);
+
+        assertEquals(3, cpm.getDictionaries(SimpleFilter.parse("(service.factoryPid=" + FACTORY_PID_A + ")")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(value=" + PREFIX + PID_B + ")")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(service.pid=" + PID_C + ")")).size());
+        assertEquals(0, cpm.getDictionaries(SimpleFilter.parse("(service.pid=missing)")).size());
+
+        // non-string values are converted by the filter
+        assertEquals(2, cpm.getDictionaries(SimpleFilter.parse("(number=5)")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(number= 5)")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(number=6)")).size());
+        assertEquals(2, cpm.getDictionaries(SimpleFilter.parse("(number=*)")).size());
+
+        // combinations with and without indexed properties
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(&(service.factoryPid=" + FACTORY_PID_B + ")(number=6))")).size());
+        assertEquals(4, cpm.getDictionaries(SimpleFilter.parse("(|(service.factoryPid=" + FACTORY_PID_B + ")(number=5))")).size());
+        assertEquals(2, cpm.getDictionaries(SimpleFilter.parse("(&(service.factoryPid=" + FACTORY_PID_A + ")(!(service.pid=" + FA_PID_A + ")))")).size());
+        assertEquals(0, cpm.getDictionaries(SimpleFilter.parse("(&(value=" + PREFIX + "multi)(other=*))")).size());
+
+        // the indexes follow updates and deletions
+        multi.put("number", "7");
+        cpm.store("multi", multi);
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(number=5)")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(number=7)")).size());
+        cpm.delete("numbered");
+        assertEquals(0, cpm.getDictionaries(SimpleFilter.parse("(number=5)")).size());
+        assertEquals(1, cpm.getDictionaries(SimpleFilter.parse("(number=*)")).size());
+    }
+}
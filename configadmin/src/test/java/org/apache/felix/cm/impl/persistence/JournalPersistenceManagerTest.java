@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.cm.impl.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+
+public class JournalPersistenceManagerTest
+{
+    private File location;
+
+    private JournalPersistenceManager pm;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        location = File.createTempFile("journal", "");
+        location.delete();
+        pm = new JournalPersistenceManager(null, location.getAbsolutePath(), true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        pm.close();
+        for (final File file : location.listFiles())
+        {
+            file.delete();
+        }
+        location.delete();
+    }
+
+    private Dictionary<String, Object> createConfiguration(final String pid, final Object value)
+    {
+        final Dictionary<String, Object> dict = new Hashtable<>();
+        dict.put(Constants.SERVICE_PID, pid);
+        dict.put("value", value);
+        return dict;
+    }
+
+    private JournalPersistenceManager reopen() throws IOException
+    {
+        pm.close();
+        pm = new JournalPersistenceManager(null, location.getAbsolutePath(), true);
+        return pm;
+    }
+
+    private int count(final Enumeration<?> e)
+    {
+        int count = 0;
+        while (e.hasMoreElements())
+        {
+            e.nextElement();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testStoreLoadDelete() throws IOException
+    {
+        pm.store("a", createConfiguration("a", "1"));
+        pm.store("b", createConfiguration("b", "2"));
+        pm.store("a", createConfiguration("a", "3"));
+
+        assertTrue(pm.exists("a"));
+        assertEquals("3", pm.load("a").get("value"));
+        assertEquals(2, count(pm.getDictionaries()));
+
+        pm.delete("b");
+        assertFalse(pm.exists("b"));
+        assertEquals(1, count(pm.getDictionaries()));
+
+        // deleting a missing configuration is no error
+        pm.delete("b");
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadMissing() throws IOException
+    {
+        pm.load("missing");
+    }
+
+    @Test
+    public void testReload() throws IOException
+    {
+        pm.store("a", createConfiguration("a", "1"));
+        pm.store("b", createConfiguration("b", "2"));
+        pm.store("a", createConfiguration("a", "3"));
+        pm.delete("b");
+
+        reopen();
+
+        assertEquals("3", pm.load("a").get("value"));
+        assertFalse(pm.exists("b"));
+        assertEquals(1, count(pm.getDictionaries()));
+    }
+
+    @Test
+    public void testCompaction() throws IOException
+    {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1024; i++)
+        {
+            value.append('x');
+        }
+        for (int i = 0; i < 2048; i++)
+        {
+            pm.store("pid" + (i % 10), createConfiguration("pid" + (i % 10), value.toString() + i));
+        }
+
+        final File journal = new File(location, "config.journal");
+        assertTrue(journal.length() < 1024 * 1024 + 64 * 1024);
+
+        reopen();
+
+        assertEquals(10, count(pm.getDictionaries()));
+        assertEquals(value.toString() + 2047, pm.load("pid7").get("value"));
+    }
+
+    @Test
+    public void testTornRecord() throws IOException
+    {
+        pm.store("a", createConfiguration("a", "1"));
+        pm.store("b", createConfiguration("b", "2"));
+        pm.close();
+
+        // cut off the end of the last record
+        final File journal = new File(location, "config.journal");
+        try (final RandomAccessFile raf = new RandomAccessFile(journal, "rw"))
+        {
+            raf.setLength(raf.length() - 3);
+        }
+
+        reopen();
+
+        assertTrue(pm.exists("a"));
+        assertFalse(pm.exists("b"));
+
+        // the journal can be appended to after discarding the record
+        pm.store("c", createConfiguration("c", "3"));
+        reopen();
+        assertTrue(pm.exists("a"));
+        assertEquals("3", pm.load("c").get("value"));
+    }
+
+    @Test
+    public void testDamagedRecordKept() throws IOException
+    {
+        final File journal = new File(location, "config.journal");
+        pm.store("a", createConfiguration("a", "1"));
+        final long valid = journal.length();
+        pm.store("b", createConfiguration("b", "2"));
+        pm.store("c", createConfiguration("c", "3"));
+        pm.close();
+        final long length = journal.length();
+
+        // damage the record of b, followed by the valid record of c
+        try (final RandomAccessFile raf = new RandomAccessFile(journal, "rw"))
+        {
+            raf.seek(valid + 20);
+            final int b = raf.read();
+            raf.seek(valid + 20);
+            raf.write(b ^ 0xff);
+        }
+
+        reopen();
+
+        assertTrue(pm.exists("a"));
+        assertFalse(pm.exists("b"));
+        assertFalse(pm.exists("c"));
+        assertEquals(valid, journal.length());
+
+        // the discarded records are kept for inspection
+        final File[] discarded = location.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(final File dir, final String name)
+            {
+                return name.startsWith("config.journal.discarded.");
+            }
+        });
+        assertEquals(1, discarded.length);
+        assertEquals(length - valid, discarded[0].length());
+    }
+
+    @Test
+    public void testFailedAppend() throws IOException
+    {
+        pm.close();
+        final boolean[] fail = new boolean[1];
+        pm = new JournalPersistenceManager(null, location.getAbsolutePath(), true)
+        {
+            @Override
+            void write(final FileChannel channel, final byte[] bytes) throws IOException
+            {
+                if (fail[0])
+                {
+                    // a short write, for example on a full disk
+                    fail[0] = false;
+                    super.write(channel, Arrays.copyOf(bytes, bytes.length / 2));
+                    throw new IOException("No space left on device");
+                }
+                super.write(channel, bytes);
+            }
+        };
+        pm.store("a", createConfiguration("a", "1"));
+
+        fail[0] = true;
+        try
+        {
+            pm.store("b", createConfiguration("b", "2"));
+            fail("Expected IOException");
+        }
+        catch (final IOException ioe)
+        {
+            // expected
+        }
+        assertFalse(pm.exists("b"));
+
+        // records appended after the failed record are not lost
+        pm.store("c", createConfiguration("c", "3"));
+        reopen();
+        assertEquals("1", pm.load("a").get("value"));
+        assertFalse(pm.exists("b"));
+        assertEquals("3", pm.load("c").get("value"));
+    }
+}
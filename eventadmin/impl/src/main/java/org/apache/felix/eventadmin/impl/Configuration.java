@@ -33,6 +33,7 @@ import org.apache.felix.eventadmin.impl.adapter.ServiceEventAdapter;
 import org.apache.felix.eventadmin.impl.handler.EventAdminImpl;
 import org.apache.felix.eventadmin.impl.security.SecureEventAdminFactory;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
+import org.apache.felix.eventadmin.impl.tasks.HandlerQueuesMXBean;
 import org.apache.felix.eventadmin.impl.util.LogWrapper;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -70,6 +71,32 @@ import org.osgi.service.metatype.MetaTypeProvider;
  * </p>
  * <p>
  * <p>
+ *      <tt>org.apache.felix.eventadmin.CallerThreadDelivery</tt> - Should
+ *          <tt>EventHandler</tt>s be called by the thread delivering the event?
+ * </p>
+ * The default is <tt>false</tt>, in which case each <tt>EventHandler</tt> subject to
+ * the timeout is called by a thread from the thread pool while the delivering thread
+ * waits. If set to <tt>true</tt>, all handlers are called by the delivering thread
+ * and a watchdog thread periodically checks whether a handler has exceeded the timeout.
+ * This avoids a thread hand-off per handler, but a handler exceeding the timeout
+ * delays the delivery to the remaining handlers until it returns.
+ * </p>
+ * <p>
+ * <p>
+ *      <tt>org.apache.felix.eventadmin.AsyncHandlerQueueSize</tt> - The size of the
+ *          queue of asynchronous events per <tt>EventHandler</tt>
+ * </p>
+ * The default is 0, in which case asynchronous events are queued per posting thread
+ * and delivered to one handler after the other. A positive value enables a queue of
+ * this size per <tt>EventHandler</tt>: each handler still receives the events in the
+ * order they were posted, but handlers receive them in parallel. A thread posting an
+ * event waits while the queue of a handler is full. The depth and lag of the queues
+ * are available through JMX as <tt>org.apache.felix.eventadmin:type=HandlerQueues</tt>
+ * with the keys <tt>framework</tt> (the framework UUID) and <tt>bundle</tt> (the
+ * bundle id of the event admin), so that several frameworks can share a VM.
+ * </p>
+ * <p>
+ * <p>
  *      <tt>org.apache.felix.eventadmin.RequireTopic</tt> - Are <tt>EventHandler</tt>
  *          required to be registered with a topic?
  * </p>
@@ -131,11 +158,16 @@ public class Configuration
     static final String PROP_THREAD_POOL_SIZE = "org.apache.felix.eventadmin.ThreadPoolSize";
     static final String PROP_ASYNC_TO_SYNC_THREAD_RATIO = "org.apache.felix.eventadmin.AsyncToSyncThreadRatio";
     static final String PROP_TIMEOUT = "org.apache.felix.eventadmin.Timeout";
+    static final String PROP_CALLER_THREAD_DELIVERY = "org.apache.felix.eventadmin.CallerThreadDelivery";
+    static final String PROP_ASYNC_HANDLER_QUEUE_SIZE = "org.apache.felix.eventadmin.AsyncHandlerQueueSize";
     static final String PROP_REQUIRE_TOPIC = "org.apache.felix.eventadmin.RequireTopic";
     static final String PROP_IGNORE_TIMEOUT = "org.apache.felix.eventadmin.IgnoreTimeout";
     static final String PROP_IGNORE_TOPIC = "org.apache.felix.eventadmin.IgnoreTopic";
     static final String PROP_LOG_LEVEL = "org.apache.felix.eventadmin.LogLevel";
 
+    /** The object name prefix of the MBean with the metrics of the per handler queues. */
+    static final String HANDLER_QUEUES_NAME = "org.apache.felix.eventadmin:type=HandlerQueues";
+
     /** The bundle context. */
     private final BundleContext m_bundleContext;
 
@@ -147,6 +179,10 @@ public class Configuration
 
     private int m_timeout;
 
+    private boolean m_callerThreadDelivery;
+
+    private int m_asyncHandlerQueueSize;
+
     private boolean m_requireTopic;
 
     private String[] m_ignoreTimeout;
@@ -169,6 +205,10 @@ public class Configuration
     // The registration of the security decorator factory (i.e., the service)
     private volatile ServiceRegistration m_registration;
 
+    // The name of the registered MBean with the metrics of the per handler
+    // queues; typed as Object so that this class does not require JMX
+    private Object m_handlerQueuesName;
+
     // all adapters
     private AbstractAdapter[] m_adapters;
 
@@ -289,6 +329,16 @@ public class Configuration
             m_timeout = getIntProperty(PROP_TIMEOUT,
                     m_bundleContext.getProperty(PROP_TIMEOUT), 5000, Integer.MIN_VALUE);
 
+            // Are EventHandler called by the delivering thread? - The default is false,
+            // i.e. handlers subject to the timeout are called by a pooled thread.
+            m_callerThreadDelivery = getBooleanProperty(
+                m_bundleContext.getProperty(PROP_CALLER_THREAD_DELIVERY), false);
+
+            // The size of the queue per EventHandler for asynchronous events - A value
+            // of 0 disables these queues, events are then queued per posting thread.
+            m_asyncHandlerQueueSize = getIntProperty(PROP_ASYNC_HANDLER_QUEUE_SIZE,
+                    m_bundleContext.getProperty(PROP_ASYNC_HANDLER_QUEUE_SIZE), 0, 0);
+
             // Are EventHandler required to be registered with a topic? - The default is
             // true. The specification says that EventHandler must register with a list
             // of topics they are interested in. Setting this value to false will enable
@@ -336,6 +386,9 @@ public class Configuration
             m_asyncToSyncThreadRatio = getDoubleProperty(
                 	PROP_ASYNC_TO_SYNC_THREAD_RATIO, config.get(PROP_ASYNC_TO_SYNC_THREAD_RATIO), 0.5, 0.0);
             m_timeout = getIntProperty(PROP_TIMEOUT, config.get(PROP_TIMEOUT), 5000, Integer.MIN_VALUE);
+            m_callerThreadDelivery = getBooleanProperty(config.get(PROP_CALLER_THREAD_DELIVERY), false);
+            m_asyncHandlerQueueSize = getIntProperty(PROP_ASYNC_HANDLER_QUEUE_SIZE,
+                    config.get(PROP_ASYNC_HANDLER_QUEUE_SIZE), 0, 0);
             m_requireTopic = getBooleanProperty(config.get(PROP_REQUIRE_TOPIC), true);
             m_ignoreTimeout = null;
             final Object value = config.get(PROP_IGNORE_TIMEOUT);
@@ -393,6 +446,10 @@ public class Configuration
                 "Async Pool Size=" + m_asyncThreadPoolSize);
         LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
             PROP_TIMEOUT + "=" + m_timeout);
+        LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+            PROP_CALLER_THREAD_DELIVERY + "=" + m_callerThreadDelivery);
+        LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+            PROP_ASYNC_HANDLER_QUEUE_SIZE + "=" + m_asyncHandlerQueueSize);
         LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
             PROP_REQUIRE_TOPIC + "=" + m_requireTopic);
 
@@ -424,6 +481,8 @@ public class Configuration
                     m_sync_pool,
                     m_async_pool,
                     m_timeout,
+                    m_callerThreadDelivery,
+                    m_asyncHandlerQueueSize,
                     m_ignoreTimeout,
                     m_requireTopic,
                     m_ignoreTopics);
@@ -439,9 +498,75 @@ public class Configuration
         }
         else
         {
-            m_admin.update(m_timeout, m_ignoreTimeout, m_requireTopic, m_ignoreTopics);
+            m_admin.update(m_timeout, m_callerThreadDelivery, m_asyncHandlerQueueSize,
+                    m_ignoreTimeout, m_requireTopic, m_ignoreTopics);
+        }
+
+        if ( m_asyncHandlerQueueSize > 0 )
+        {
+            registerHandlerQueues();
+        }
+        else
+        {
+            unregisterHandlerQueues();
+        }
+    }
+
+    /**
+     * Register the metrics of the per handler queues with the platform MBean
+     * server, if JMX is available.
+     */
+    private void registerHandlerQueues()
+    {
+        if ( m_handlerQueuesName == null )
+        {
+            try
+            {
+                final javax.management.ObjectName name = new javax.management.ObjectName(getHandlerQueuesName());
+                java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new javax.management.StandardMBean(m_admin.getHandlerQueues(), HandlerQueuesMXBean.class, true),
+                    name);
+                m_handlerQueuesName = name;
+            }
+            catch ( final Throwable t )
+            {
+                LogWrapper.getLogger().log(LogWrapper.LOG_DEBUG,
+                    "Unable to register " + HANDLER_QUEUES_NAME, t);
+            }
+        }
+    }
+
+    /**
+     * Get the object name of the handler queues MBean, which is unique per
+     * framework and event admin bundle.
+     */
+    String getHandlerQueuesName()
+    {
+        final StringBuilder sb = new StringBuilder(HANDLER_QUEUES_NAME);
+        final String uuid = m_bundleContext.getProperty(Constants.FRAMEWORK_UUID);
+        if ( uuid != null )
+        {
+            sb.append(",framework=").append(javax.management.ObjectName.quote(uuid));
         }
+        sb.append(",bundle=").append(m_bundleContext.getBundle().getBundleId());
+        return sb.toString();
+    }
 
+    private void unregisterHandlerQueues()
+    {
+        if ( m_handlerQueuesName != null )
+        {
+            try
+            {
+                java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    (javax.management.ObjectName) m_handlerQueuesName);
+            }
+            catch ( final Throwable t )
+            {
+                // don't care
+            }
+            m_handlerQueuesName = null;
+        }
     }
 
     /**
@@ -474,6 +599,7 @@ public class Configuration
                 m_registration.unregister();
                 m_registration = null;
             }
+            unregisterHandlerQueues();
             if ( m_admin != null )
             {
                 m_admin.stop();
@@ -509,7 +635,7 @@ public class Configuration
         try
         {
             return new MetaTypeProviderImpl((ManagedService)managedService,
-                    m_threadPoolSize, m_timeout, m_requireTopic,
+                    m_threadPoolSize, m_timeout, m_callerThreadDelivery, m_asyncHandlerQueueSize, m_requireTopic,
                     m_ignoreTimeout, m_ignoreTopics, m_asyncToSyncThreadRatio);
         }
         catch (final Throwable t)
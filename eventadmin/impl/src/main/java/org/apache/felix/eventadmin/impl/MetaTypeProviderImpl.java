@@ -38,6 +38,8 @@ public class MetaTypeProviderImpl
 {
     private final int m_threadPoolSize;
     private final int m_timeout;
+    private final boolean m_callerThreadDelivery;
+    private final int m_asyncHandlerQueueSize;
     private final boolean m_requireTopic;
     private final String[] m_ignoreTimeout;
     private final String[] m_ignoreTopic;
@@ -47,13 +49,17 @@ public class MetaTypeProviderImpl
 
     public MetaTypeProviderImpl(final ManagedService delegatee,
             final int threadPoolSize,
-            final int timeout, final boolean requireTopic,
+            final int timeout, final boolean callerThreadDelivery,
+            final int asyncHandlerQueueSize,
+            final boolean requireTopic,
             final String[] ignoreTimeout,
             final String[] ignoreTopic,
             final double asyncThreadPoolRatio)
     {
         m_threadPoolSize = threadPoolSize;
         m_timeout = timeout;
+        m_callerThreadDelivery = callerThreadDelivery;
+        m_asyncHandlerQueueSize = asyncHandlerQueueSize;
         m_requireTopic = requireTopic;
         m_delegatee = delegatee;
         m_ignoreTimeout = ignoreTimeout;
@@ -116,6 +122,23 @@ public class MetaTypeProviderImpl
                     "in milliseconds granted to each event handler before it gets blacklisted",
                     m_timeout ) );
 
+            adList.add( new AttributeDefinitionImpl( Configuration.PROP_CALLER_THREAD_DELIVERY, "Caller Thread Delivery",
+                    "Should event handlers be called by the thread delivering the event? This is disabled by " +
+                    "default, in which case each event handler subject to the timeout is called by a thread " +
+                    "from the thread pool. If enabled, all handlers are called by the delivering thread and " +
+                    "a watchdog thread detects handlers exceeding the timeout, which avoids a thread hand-off " +
+                    "per event handler.",
+                    m_callerThreadDelivery ) );
+
+            adList.add( new AttributeDefinitionImpl( Configuration.PROP_ASYNC_HANDLER_QUEUE_SIZE, "Async Handler Queue Size",
+                    "The size of the queue of asynchronous events per event handler. The default value is 0, " +
+                    "in which case asynchronous events are queued per posting thread and delivered to one " +
+                    "handler after the other. A positive value enables a queue per event handler, so that " +
+                    "handlers receive events in parallel while each handler still receives them in order. " +
+                    "A thread posting an event waits while the queue of a handler is full. The depth and lag " +
+                    "of the queues are available through JMX.",
+                    m_asyncHandlerQueueSize ) );
+
             adList.add( new AttributeDefinitionImpl( Configuration.PROP_REQUIRE_TOPIC, "Require Topic",
                     "Are event handlers required to be registered with a topic? " +
                     "This is enabled by default. The specification says that event handlers " +
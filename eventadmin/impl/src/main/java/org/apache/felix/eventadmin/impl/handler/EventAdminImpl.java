@@ -20,6 +20,8 @@ package org.apache.felix.eventadmin.impl.handler;
 
 import org.apache.felix.eventadmin.impl.tasks.AsyncDeliverTasks;
 import org.apache.felix.eventadmin.impl.tasks.DefaultThreadPool;
+import org.apache.felix.eventadmin.impl.tasks.HandlerQueuesMXBean;
+import org.apache.felix.eventadmin.impl.tasks.MailboxDeliverTasks;
 import org.apache.felix.eventadmin.impl.tasks.SyncDeliverTasks;
 import org.apache.felix.eventadmin.impl.util.Matchers;
 import org.osgi.framework.BundleContext;
@@ -47,6 +49,9 @@ public class EventAdminImpl implements EventAdmin
     // The asynchronous event dispatcher
     private final AsyncDeliverTasks m_postManager;
 
+    // The asynchronous event dispatcher using a queue per handler
+    private final MailboxDeliverTasks m_mailboxManager;
+
     // The synchronous event dispatcher
     private final SyncDeliverTasks m_sendManager;
 
@@ -64,6 +69,8 @@ public class EventAdminImpl implements EventAdmin
                     final DefaultThreadPool syncPool,
                     final DefaultThreadPool asyncPool,
                     final int timeout,
+                    final boolean callerThreadDelivery,
+                    final int handlerQueueSize,
                     final String[] ignoreTimeout,
                     final boolean requireTopic,
                     final String[] ignoreTopics)
@@ -74,8 +81,9 @@ public class EventAdminImpl implements EventAdmin
         this.tracker = new EventHandlerTracker(bundleContext);
         this.tracker.update(ignoreTimeout, requireTopic);
         this.tracker.open();
-        m_sendManager = new SyncDeliverTasks(syncPool, timeout);
+        m_sendManager = new SyncDeliverTasks(syncPool, timeout, callerThreadDelivery);
         m_postManager = new AsyncDeliverTasks(asyncPool, m_sendManager);
+        m_mailboxManager = new MailboxDeliverTasks(asyncPool, m_sendManager, handlerQueueSize);
         m_ignoreTopics = Matchers.createEventTopicMatchers(ignoreTopics);
     }
 
@@ -126,7 +134,14 @@ public class EventAdminImpl implements EventAdmin
     {
         if ( checkTopic(event) )
         {
-            m_postManager.execute(this.getTracker().getHandlers(event), event);
+            if ( m_mailboxManager.isEnabled() )
+            {
+                m_mailboxManager.execute(this.getTracker().getHandlers(event), event);
+            }
+            else
+            {
+                m_postManager.execute(this.getTracker().getHandlers(event), event);
+            }
         }
     }
 
@@ -155,23 +170,35 @@ public class EventAdminImpl implements EventAdmin
     {
         this.tracker.close();
         this.tracker = null;
+        this.m_sendManager.stop();
     }
 
     /**
      * Update the event admin with new configuration.
      */
     public void update(final int timeout,
+                    final boolean callerThreadDelivery,
+                    final int handlerQueueSize,
                     final String[] ignoreTimeout,
                     final boolean requireTopic,
                     final String[] ignoreTopics)
     {
         this.tracker.close();
         this.tracker.update(ignoreTimeout, requireTopic);
-        this.m_sendManager.update(timeout);
+        this.m_sendManager.update(timeout, callerThreadDelivery);
+        this.m_mailboxManager.update(handlerQueueSize);
         this.tracker.open();
         this.m_ignoreTopics = Matchers.createEventTopicMatchers(ignoreTopics);
     }
 
+    /**
+     * Get the metrics of the per handler queues.
+     */
+    public HandlerQueuesMXBean getHandlerQueues()
+    {
+        return this.m_mailboxManager;
+    }
+
     /**
      * This is a utility method that will throw a <tt>NullPointerException</tt>
      * in case that the given object is null. The message will be of the form
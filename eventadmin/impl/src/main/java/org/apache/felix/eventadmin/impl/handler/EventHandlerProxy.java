@@ -316,6 +316,14 @@ public class EventHandlerProxy {
         }
     }
 
+    /**
+     * Get the service reference of the event handler.
+     */
+    public ServiceReference<EventHandler> getReference()
+    {
+        return this.reference;
+    }
+
     /**
      * Get the topics of this handler.
      * If this handler matches all topics <code>null</code> is returned
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+
+/**
+ * The watchdog blacklists event handlers which take longer than the timeout
+ * while they are called directly by the thread sending an event. Instead of
+ * timing every handler call, delivering threads only announce which handler
+ * they are calling and the watchdog thread samples these announcements
+ * periodically: a handler that is seen to be called for the same delivery
+ * for longer than the timeout is blacklisted. Therefore a handler is
+ * blacklisted at most one sampling interval after its timeout expired.
+ * <p>
+ * If a handler sends an event itself, the call of this handler is
+ * suspended for the time of the nested delivery, like the timeout of the
+ * handler is stopped if handlers are called by threads from the pool.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public class DeliveryWatchdog implements Runnable
+{
+    /** The minimum time between two samples in milliseconds. */
+    private static final long MIN_INTERVAL = 10;
+
+    /** The deliveries which are currently in progress. */
+    private final Set<Delivery> m_deliveries =
+        Collections.newSetFromMap(new ConcurrentHashMap<Delivery, Boolean>());
+
+    /** The innermost delivery in progress per thread. */
+    private final ThreadLocal<Delivery> m_current = new ThreadLocal<Delivery>();
+
+    /** The timeout in milliseconds. */
+    private volatile long m_timeout;
+
+    /** The watchdog thread or <code>null</code> if not running. */
+    private Thread m_thread;
+
+    /**
+     * Create a new watchdog.
+     * @param timeout The timeout in milliseconds
+     */
+    public DeliveryWatchdog(final long timeout)
+    {
+        m_timeout = timeout;
+    }
+
+    /**
+     * Update the timeout.
+     * @param timeout The timeout in milliseconds
+     */
+    public synchronized void update(final long timeout)
+    {
+        m_timeout = timeout;
+        if ( m_thread != null )
+        {
+            // wake up in order to use the new sampling interval
+            m_thread.interrupt();
+        }
+    }
+
+    /**
+     * Start the watchdog thread unless it is already running.
+     */
+    public synchronized void start()
+    {
+        if ( m_thread == null )
+        {
+            m_thread = new Thread(this, "EventAdminWatchdog");
+            m_thread.setDaemon(true);
+            m_thread.start();
+        }
+    }
+
+    /**
+     * Stop the watchdog thread.
+     */
+    public synchronized void stop()
+    {
+        if ( m_thread != null )
+        {
+            final Thread thread = m_thread;
+            m_thread = null;
+            thread.interrupt();
+        }
+    }
+
+    private synchronized boolean isRunning(final Thread thread)
+    {
+        return m_thread == thread;
+    }
+
+    /**
+     * Start watching a delivery of an event by the current thread. If the
+     * current thread is calling a handler for another delivery, this call
+     * is suspended until the new delivery ends.
+     * @return The delivery on which handler calls are announced
+     */
+    public Delivery begin()
+    {
+        final Delivery outer = m_current.get();
+        if ( outer != null )
+        {
+            outer.suspend();
+        }
+        final Delivery delivery = new Delivery(outer);
+        m_current.set(delivery);
+        m_deliveries.add(delivery);
+        return delivery;
+    }
+
+    /**
+     * Stop watching a delivery and resume the call suspended by it.
+     * @param delivery The delivery returned by {@link #begin()}
+     */
+    public void end(final Delivery delivery)
+    {
+        m_deliveries.remove(delivery);
+        final Delivery outer = delivery.m_outer;
+        if ( outer != null )
+        {
+            m_current.set(outer);
+            outer.resume();
+        }
+        else
+        {
+            m_current.remove();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        final Thread current = Thread.currentThread();
+        while ( isRunning(current) )
+        {
+            final long timeout = m_timeout;
+            try
+            {
+                Thread.sleep(Math.max(MIN_INTERVAL, timeout / 4));
+            }
+            catch (final InterruptedException e)
+            {
+                // stopped or updated
+                continue;
+            }
+            if ( timeout > 0 )
+            {
+                sample(System.currentTimeMillis(), timeout);
+            }
+        }
+    }
+
+    /**
+     * Check all deliveries in progress and blacklist handlers that have been
+     * called for longer than the timeout.
+     */
+    void sample(final long now, final long timeout)
+    {
+        for(final Delivery delivery : m_deliveries)
+        {
+            // read the handler first: it is written after the call number,
+            // so the call number read afterwards belongs to this handler
+            final EventHandlerProxy handler = delivery.m_handler;
+            final long call = delivery.m_call;
+            if ( call != delivery.m_sampledCall )
+            {
+                delivery.m_sampledCall = call;
+                delivery.m_sampledTime = now;
+            }
+            else if ( handler != null && now - delivery.m_sampledTime >= timeout )
+            {
+                handler.blackListHandler();
+            }
+        }
+    }
+
+    /**
+     * The handler calls of a single delivery. Only the delivering thread
+     * announces calls, so a call costs two volatile writes.
+     */
+    public static final class Delivery
+    {
+        /** The delivery during which this one was started or <code>null</code>. */
+        final Delivery m_outer;
+
+        /** The handler currently called or <code>null</code>. */
+        volatile EventHandlerProxy m_handler;
+
+        /** The handler whose call is suspended, only used by the delivering thread. */
+        private EventHandlerProxy m_suspended;
+
+        /** The number of the current call. */
+        volatile long m_call;
+
+        /** The call number seen by the last sample, only used by the watchdog. */
+        long m_sampledCall = -1;
+
+        /** The time of the sample which first saw the call, only used by the watchdog. */
+        long m_sampledTime;
+
+        Delivery(final Delivery outer)
+        {
+            m_outer = outer;
+        }
+
+        /**
+         * Announce a call of a handler which is subject to the timeout.
+         * @param handler The handler or <code>null</code> if no timeout applies
+         */
+        public void calling(final EventHandlerProxy handler)
+        {
+            m_call++;
+            m_handler = handler;
+        }
+
+        /**
+         * Announce that the current call returned.
+         */
+        public void returned()
+        {
+            m_handler = null;
+        }
+
+        /**
+         * Suspend the current call while the handler delivers another event.
+         */
+        void suspend()
+        {
+            m_suspended = m_handler;
+            m_handler = null;
+        }
+
+        /**
+         * Resume the suspended call as a new call, so that the time of the
+         * nested delivery does not count.
+         */
+        void resume()
+        {
+            final EventHandlerProxy handler = m_suspended;
+            m_suspended = null;
+            if ( handler != null )
+            {
+                calling(handler);
+            }
+        }
+    }
+}
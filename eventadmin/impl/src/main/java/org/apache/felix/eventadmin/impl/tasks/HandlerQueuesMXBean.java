@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.Map;
+
+/**
+ * The metrics of the per handler queues used for asynchronous event delivery,
+ * which are registered with the platform MBean server while these queues
+ * are enabled. Handlers are identified by their service id and the
+ * symbolic name of the registering bundle; only handlers with pending
+ * events are listed.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public interface HandlerQueuesMXBean
+{
+    /**
+     * The number of events waiting to be delivered to each handler,
+     * including the event currently being delivered.
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * The time in milliseconds the oldest event waiting to be delivered to
+     * each handler has been queued.
+     */
+    Map<String, Long> getQueueLags();
+
+    /**
+     * The number of events delivered through the handler queues since
+     * they have been enabled.
+     */
+    long getDeliveredEvents();
+}
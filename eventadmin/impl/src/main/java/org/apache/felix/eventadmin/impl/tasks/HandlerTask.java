@@ -35,6 +35,9 @@ public class HandlerTask implements Runnable
 
 	private final BlacklistLatch handlerLatch;
 
+	/** Was the task created by a thread draining a mailbox? */
+	private final boolean draining;
+
 	private volatile long startTime;
 
 	private volatile long endTime;
@@ -53,6 +56,7 @@ public class HandlerTask implements Runnable
 		this.event = event;
 		this.timeout = timeout;
 		this.handlerLatch = handlerLatch;
+		this.draining = MailboxDeliverTasks.isDraining();
 		this.startTime = -1l;
 		this.endTime = -1l;
 	}
@@ -63,6 +67,9 @@ public class HandlerTask implements Runnable
     @Override
     public void run()
     {
+        // the handler must not wait for the mailbox drained by the thread
+        // waiting for this task, even if it is called by another thread
+        final Boolean previous = draining ? MailboxDeliverTasks.setDraining(Boolean.TRUE) : null;
         try
         {
             startTime = System.currentTimeMillis();
@@ -73,6 +80,10 @@ public class HandlerTask implements Runnable
         }
         finally
         {
+            if ( draining )
+            {
+                MailboxDeliverTasks.setDraining(previous);
+            }
         	handlerLatch.countDown();
         }
     }
@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.Event;
+
+/**
+ * This class does the asynchronous event dispatch using a queue (mailbox)
+ * per event handler instead of a queue per posting thread.
+ *
+ * Each mailbox is drained by at most one thread from the pool at a time,
+ * so every handler receives the events in the order they were posted while
+ * different handlers receive them in parallel and a slow handler only holds
+ * back its own events. Mailboxes are bounded: a thread posting an event to
+ * a full mailbox waits until the handler caught up. Threads draining a
+ * mailbox never wait, as a handler posting events could otherwise wait for
+ * itself. This includes the threads calling a handler on behalf of a
+ * draining thread if a timeout applies, see {@link HandlerTask}.
+ * Mailboxes are discarded as soon as they are empty.
+ *
+ * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
+ */
+public class MailboxDeliverTasks implements HandlerQueuesMXBean
+{
+    /** The maximum number of events delivered before a mailbox yields its thread. */
+    private static final int BATCH_SIZE = 64;
+
+    /** Marks the threads draining a mailbox. */
+    private static final ThreadLocal<Boolean> DRAINING = new ThreadLocal<Boolean>();
+
+    /** The thread pool to use to drain the mailboxes. */
+    private final DefaultThreadPool m_pool;
+
+    /** The deliver task for actually delivering the events. This
+     * is the sync deliver tasks as this has all the code for timeout
+     * handling etc.
+     */
+    private final SyncDeliverTasks m_deliver_task;
+
+    /** The mailboxes of the handlers with pending events. */
+    private final ConcurrentMap<EventHandlerProxy, Mailbox> m_mailboxes =
+        new ConcurrentHashMap<EventHandlerProxy, Mailbox>();
+
+    /** The number of delivered events. */
+    private final AtomicLong m_delivered = new AtomicLong();
+
+    /** The capacity of each mailbox or 0 if mailboxes are disabled. */
+    private volatile int m_queueSize;
+
+    /**
+     * Construct a new mailbox deliver tasks.
+     *
+     * @param pool The thread pool used to drain the mailboxes
+     * @param deliverTask The deliver tasks for dispatching the event.
+     * @param queueSize The capacity of each mailbox or 0 to disable mailboxes
+     */
+    public MailboxDeliverTasks(final DefaultThreadPool pool, final SyncDeliverTasks deliverTask, final int queueSize)
+    {
+        m_pool = pool;
+        m_deliver_task = deliverTask;
+        this.update(queueSize);
+    }
+
+    /**
+     * Update the capacity of the mailboxes.
+     */
+    public void update(final int queueSize)
+    {
+        m_queueSize = queueSize;
+    }
+
+    /**
+     * Are mailboxes used for asynchronous delivery?
+     */
+    public boolean isEnabled()
+    {
+        return m_queueSize > 0;
+    }
+
+    /**
+     * Queue the event in the mailbox of every handler. This blocks while the
+     * mailbox of a handler is full unless the current thread is draining a
+     * mailbox.
+     *
+     * @param tasks The event handler dispatch tasks to execute
+     */
+    public void execute(final Collection<EventHandlerProxy> tasks, final Event event)
+    {
+        for(final EventHandlerProxy task : tasks)
+        {
+            while ( true )
+            {
+                Mailbox mailbox = m_mailboxes.get(task);
+                if ( mailbox == null )
+                {
+                    final Mailbox newMailbox = new Mailbox(task);
+                    mailbox = m_mailboxes.putIfAbsent(task, newMailbox);
+                    if ( mailbox == null )
+                    {
+                        mailbox = newMailbox;
+                    }
+                }
+                if ( mailbox.add(event) )
+                {
+                    break;
+                }
+                // the mailbox has just been discarded, so use a new one
+            }
+        }
+    }
+
+    /**
+     * Is the current thread draining a mailbox?
+     */
+    static boolean isDraining()
+    {
+        return DRAINING.get() != null;
+    }
+
+    /**
+     * Mark or unmark the current thread as draining a mailbox.
+     *
+     * @param draining {@code Boolean.TRUE} or {@code null}
+     * @return The previous mark
+     */
+    static Boolean setDraining(final Boolean draining)
+    {
+        final Boolean previous = DRAINING.get();
+        DRAINING.set(draining);
+        return previous;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths()
+    {
+        final Map<String, Integer> result = new HashMap<String, Integer>();
+        for(final Mailbox mailbox : m_mailboxes.values())
+        {
+            final int depth = mailbox.getDepth();
+            if ( depth > 0 )
+            {
+                result.put(mailbox.getName(), depth);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getQueueLags()
+    {
+        final long now = System.nanoTime();
+        final Map<String, Long> result = new HashMap<String, Long>();
+        for(final Mailbox mailbox : m_mailboxes.values())
+        {
+            final long queued = mailbox.getOldestQueueTime();
+            if ( queued != -1 )
+            {
+                result.put(mailbox.getName(), TimeUnit.NANOSECONDS.toMillis(now - queued));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getDeliveredEvents()
+    {
+        return m_delivered.get();
+    }
+
+    private final static class QueuedEvent
+    {
+        public final Event event;
+
+        public final long queueTime;
+
+        public QueuedEvent(final Event event, final long queueTime)
+        {
+            this.event = event;
+            this.queueTime = queueTime;
+        }
+    }
+
+    private final class Mailbox implements Runnable
+    {
+        private final EventHandlerProxy m_handler;
+
+        private final Collection<EventHandlerProxy> m_target;
+
+        /** The pending events, the first one is being delivered. */
+        private final ArrayDeque<QueuedEvent> m_events = new ArrayDeque<QueuedEvent>();
+
+        /** Is the mailbox scheduled or being drained? */
+        private boolean m_scheduled;
+
+        /** Has the mailbox been discarded? */
+        private boolean m_discarded;
+
+        public Mailbox(final EventHandlerProxy handler)
+        {
+            m_handler = handler;
+            m_target = Collections.singletonList(handler);
+        }
+
+        /**
+         * Add an event, waiting while the mailbox is full.
+         * @return {@code false} if the mailbox has been discarded
+         */
+        public boolean add(final Event event)
+        {
+            final boolean schedule;
+            synchronized ( this )
+            {
+                while ( !m_discarded && m_queueSize > 0 && m_events.size() >= m_queueSize
+                        && DRAINING.get() == null )
+                {
+                    try
+                    {
+                        this.wait();
+                    }
+                    catch (final InterruptedException e)
+                    {
+                        // exceed the capacity rather than losing the event
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if ( m_discarded )
+                {
+                    return false;
+                }
+                m_events.add(new QueuedEvent(event, System.nanoTime()));
+                schedule = !m_scheduled;
+                m_scheduled = true;
+            }
+            if ( schedule && !m_pool.executeTask(this) )
+            {
+                // scheduling failed: last resort, call directly
+                this.run();
+            }
+            return true;
+        }
+
+        @Override
+        public void run()
+        {
+            final Boolean draining = setDraining(Boolean.TRUE);
+            try
+            {
+                do
+                {
+                    for(int i = 0; i < BATCH_SIZE; i++)
+                    {
+                        final QueuedEvent next;
+                        synchronized ( this )
+                        {
+                            next = m_events.peek();
+                            if ( next == null )
+                            {
+                                m_scheduled = false;
+                                m_discarded = true;
+                                m_mailboxes.remove(m_handler, this);
+                                return;
+                            }
+                        }
+                        m_deliver_task.execute(m_target, next.event, true);
+                        m_delivered.incrementAndGet();
+                        synchronized ( this )
+                        {
+                            m_events.poll();
+                            this.notifyAll();
+                        }
+                    }
+                    // give the other mailboxes a chance; if scheduling
+                    // fails, continue with this thread
+                }
+                while ( !m_pool.executeTask(this) );
+            }
+            finally
+            {
+                setDraining(draining);
+            }
+        }
+
+        public synchronized int getDepth()
+        {
+            return m_events.size();
+        }
+
+        public synchronized long getOldestQueueTime()
+        {
+            final QueuedEvent first = m_events.peek();
+            return first == null ? -1 : first.queueTime;
+        }
+
+        public String getName()
+        {
+            final ServiceReference<?> reference = m_handler.getReference();
+            final Bundle bundle = reference.getBundle();
+            return reference.getProperty(Constants.SERVICE_ID)
+                + (bundle == null ? "" : " (" + bundle.getSymbolicName() + ")");
+        }
+    }
+}
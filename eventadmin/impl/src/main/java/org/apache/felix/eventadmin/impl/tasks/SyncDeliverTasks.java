@@ -49,6 +49,10 @@ import org.osgi.service.event.Event;
  * If during an event delivery a new event should be delivered from
  * within the event handler, the timeout handler is stopped for the
  * delivery time of the inner event!
+ * <p>
+ * Alternatively, all handlers can be called by the sending thread. In this
+ * mode, no thread is taken from the pool and timeouts are detected by a
+ * {@link DeliveryWatchdog} which samples the deliveries in progress.
  *
  * @author <a href="mailto:dev@felix.apache.org">Felix Project Team</a>
  */
@@ -60,22 +64,46 @@ public class SyncDeliverTasks
 
     private long timeout;
 
+    /** Whether handlers are called by the sending thread. */
+    private volatile boolean callerThread;
+
+    /** The watchdog detecting timeouts if handlers are called by the sending thread. */
+    private final DeliveryWatchdog watchdog = new DeliveryWatchdog(0);
+
     /**
      * Construct a new sync deliver tasks.
      * @param pool The thread pool used to spin-off new threads.
      */
-    public SyncDeliverTasks(final DefaultThreadPool pool, final long timeout)
+    public SyncDeliverTasks(final DefaultThreadPool pool, final long timeout, final boolean callerThread)
     {
         this.pool = pool;
-        this.update(timeout);
+        this.update(timeout, callerThread);
     }
 
     /**
      * Update the timeout configuration
      */
-    public void update(final long timeout)
+    public void update(final long timeout, final boolean callerThread)
     {
         this.timeout = timeout;
+        this.callerThread = callerThread;
+        this.watchdog.update(timeout);
+        if ( callerThread && timeout > 0 )
+        {
+            this.watchdog.start();
+        }
+        else
+        {
+            this.watchdog.stop();
+        }
+    }
+
+    /**
+     * Stop the watchdog.
+     */
+    public void stop()
+    {
+        this.watchdog.stop();
     }
 
     /**
@@ -87,6 +115,12 @@ public class SyncDeliverTasks
      */
     public void execute(final Collection<EventHandlerProxy> tasks, final Event event, final boolean filterAsyncUnordered)
     {
+        if ( this.callerThread )
+        {
+            this.executeOnCallerThread(tasks, event);
+            return;
+        }
+
         final Thread sleepingThread = Thread.currentThread();
         final SyncThread syncThread = sleepingThread instanceof SyncThread ? (SyncThread)sleepingThread : null;
 
@@ -125,4 +159,41 @@ public class SyncDeliverTasks
         handlerLatch.awaitAndBlacklistCheck();
 
     }
+
+    /**
+     * Call all handlers with the current thread, announcing the calls
+     * which are subject to the timeout to the watchdog.
+     */
+    private void executeOnCallerThread(final Collection<EventHandlerProxy> tasks, final Event event)
+    {
+        if ( this.timeout <= 0 )
+        {
+            for(final EventHandlerProxy task : tasks)
+            {
+                task.sendEvent(event);
+            }
+            return;
+        }
+
+        final DeliveryWatchdog.Delivery delivery = this.watchdog.begin();
+        try
+        {
+            for(final EventHandlerProxy task : tasks)
+            {
+                delivery.calling(task.useTimeout() ? task : null);
+                try
+                {
+                    task.sendEvent(event);
+                }
+                finally
+                {
+                    delivery.returned();
+                }
+            }
+        }
+        finally
+        {
+            this.watchdog.end(delivery);
+        }
+    }
 }
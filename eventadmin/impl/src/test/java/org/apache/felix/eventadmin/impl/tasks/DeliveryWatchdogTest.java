@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+public class DeliveryWatchdogTest
+{
+    private DefaultThreadPool pool;
+
+    @Before public void setup()
+    {
+        this.pool = new DefaultThreadPool(2, true);
+    }
+
+    @After public void cleanup()
+    {
+        this.pool.close();
+    }
+
+    @Test public void testSampleBlacklistsAfterTimeout()
+    {
+        final DeliveryWatchdog watchdog = new DeliveryWatchdog(100);
+        final TestHandler handler = new TestHandler(true);
+
+        final DeliveryWatchdog.Delivery delivery = watchdog.begin();
+        delivery.calling(handler);
+        watchdog.sample(0, 100);
+        watchdog.sample(99, 100);
+        assertFalse(handler.isBlacklisted());
+        watchdog.sample(100, 100);
+        assertTrue(handler.isBlacklisted());
+        delivery.returned();
+        watchdog.end(delivery);
+    }
+
+    @Test public void testSampleRestartsForEachCall()
+    {
+        final DeliveryWatchdog watchdog = new DeliveryWatchdog(100);
+        final TestHandler first = new TestHandler(true);
+        final TestHandler second = new TestHandler(true);
+
+        final DeliveryWatchdog.Delivery delivery = watchdog.begin();
+        delivery.calling(first);
+        watchdog.sample(0, 100);
+        delivery.returned();
+        delivery.calling(second);
+        watchdog.sample(60, 100);
+        watchdog.sample(120, 100);
+        assertFalse(first.isBlacklisted());
+        assertFalse(second.isBlacklisted());
+        watchdog.sample(160, 100);
+        assertTrue(second.isBlacklisted());
+
+        // calls without a timeout are never blacklisted
+        delivery.returned();
+        delivery.calling(null);
+        watchdog.sample(200, 100);
+        watchdog.sample(400, 100);
+        watchdog.end(delivery);
+        assertFalse(first.isBlacklisted());
+    }
+
+    @Test public void testSampleSuspendsOuterCallDuringNestedDelivery()
+    {
+        final DeliveryWatchdog watchdog = new DeliveryWatchdog(100);
+        final TestHandler outer = new TestHandler(true);
+        final TestHandler inner = new TestHandler(true);
+
+        final DeliveryWatchdog.Delivery outerDelivery = watchdog.begin();
+        outerDelivery.calling(outer);
+        watchdog.sample(0, 100);
+
+        // the outer handler sends an event
+        final DeliveryWatchdog.Delivery innerDelivery = watchdog.begin();
+        innerDelivery.calling(inner);
+        watchdog.sample(50, 100);
+        watchdog.sample(200, 100);
+        assertTrue(inner.isBlacklisted());
+        assertFalse(outer.isBlacklisted());
+        innerDelivery.returned();
+        watchdog.end(innerDelivery);
+
+        // the outer call is timed again from the end of the nested delivery
+        watchdog.sample(210, 100);
+        watchdog.sample(300, 100);
+        assertFalse(outer.isBlacklisted());
+        watchdog.sample(310, 100);
+        assertTrue(outer.isBlacklisted());
+        outerDelivery.returned();
+        watchdog.end(outerDelivery);
+    }
+
+    @Test public void testCallerThreadDelivery()
+    {
+        final SyncDeliverTasks tasks = new SyncDeliverTasks(this.pool, 100, true);
+        try
+        {
+            final Thread current = Thread.currentThread();
+            final AtomicInteger calls = new AtomicInteger();
+            final TestHandler fast = new TestHandler(true)
+            {
+                @Override
+                public void sendEvent(final Event event)
+                {
+                    assertTrue(Thread.currentThread() == current);
+                    calls.incrementAndGet();
+                }
+            };
+            final TestHandler slow = new TestHandler(true)
+            {
+                @Override
+                public void sendEvent(final Event event)
+                {
+                    calls.incrementAndGet();
+                    sleep(400);
+                }
+            };
+            final TestHandler slowWithoutTimeout = new TestHandler(false)
+            {
+                @Override
+                public void sendEvent(final Event event)
+                {
+                    calls.incrementAndGet();
+                    sleep(400);
+                }
+            };
+
+            tasks.execute(Arrays.<EventHandlerProxy>asList(fast, slow, slowWithoutTimeout), createEvent(), false);
+
+            assertEquals(3, calls.get());
+            assertFalse(fast.isBlacklisted());
+            assertTrue(slow.isBlacklisted());
+            assertFalse(slowWithoutTimeout.isBlacklisted());
+        }
+        finally
+        {
+            tasks.stop();
+        }
+    }
+
+    @Test public void testCallerThreadNestedDelivery()
+    {
+        final SyncDeliverTasks tasks = new SyncDeliverTasks(this.pool, 100, true);
+        try
+        {
+            final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+            final TestHandler inner = new TestHandler(true)
+            {
+                @Override
+                public void sendEvent(final Event event)
+                {
+                    calls.add("inner");
+                    sleep(400);
+                }
+            };
+            final TestHandler outer = new TestHandler(true)
+            {
+                @Override
+                public void sendEvent(final Event event)
+                {
+                    calls.add("outer");
+                    // sends an event itself, which takes longer than the timeout
+                    tasks.execute(Collections.<EventHandlerProxy>singletonList(inner), createEvent(), false);
+                    calls.add("outer returns");
+                }
+            };
+
+            tasks.execute(Collections.<EventHandlerProxy>singletonList(outer), createEvent(), false);
+
+            assertEquals(Arrays.asList("outer", "inner", "outer returns"), calls);
+            assertTrue(inner.isBlacklisted());
+            assertFalse(outer.isBlacklisted());
+        }
+        finally
+        {
+            tasks.stop();
+        }
+    }
+
+    private static Event createEvent()
+    {
+        return new Event("org/apache/felix/test", Collections.<String, Object>emptyMap());
+    }
+
+    private static void sleep(final long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class TestHandler extends EventHandlerProxy
+    {
+        private final boolean useTimeout;
+
+        private volatile boolean blacklisted;
+
+        TestHandler(final boolean useTimeout)
+        {
+            super(null, null);
+            this.useTimeout = useTimeout;
+        }
+
+        @Override
+        public boolean useTimeout()
+        {
+            return this.useTimeout;
+        }
+
+        @Override
+        public void sendEvent(final Event event)
+        {
+            // nothing to do
+        }
+
+        @Override
+        public void blackListHandler()
+        {
+            this.blacklisted = true;
+        }
+
+        boolean isBlacklisted()
+        {
+            return this.blacklisted;
+        }
+    }
+}
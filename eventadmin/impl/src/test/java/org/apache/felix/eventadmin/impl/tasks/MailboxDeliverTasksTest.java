@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.eventadmin.impl.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.eventadmin.impl.handler.EventHandlerProxy;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+public class MailboxDeliverTasksTest
+{
+    private final Mockery context = new Mockery();
+
+    private DefaultThreadPool pool;
+
+    /** The events delivered per handler, in the order of delivery. */
+    private final Map<EventHandlerProxy, List<Event>> delivered = new HashMap<EventHandlerProxy, List<Event>>();
+
+    /** Delivery waits for this latch. */
+    private volatile CountDownLatch blocker = new CountDownLatch(0);
+
+    private SyncDeliverTasks deliverTasks;
+
+    @Before public void setup()
+    {
+        this.pool = new DefaultThreadPool(4, false);
+        this.deliverTasks = new SyncDeliverTasks(this.pool, 0, true)
+        {
+            @Override
+            public void execute(final Collection<EventHandlerProxy> tasks, final Event event, final boolean filterAsyncUnordered)
+            {
+                try
+                {
+                    blocker.await();
+                }
+                catch (final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized ( delivered )
+                {
+                    for(final EventHandlerProxy task : tasks)
+                    {
+                        delivered.get(task).add(event);
+                    }
+                    delivered.notifyAll();
+                }
+            }
+        };
+    }
+
+    @After public void cleanup()
+    {
+        this.blocker.countDown();
+        this.deliverTasks.stop();
+        this.pool.close();
+    }
+
+    @Test public void testOrderPerHandler() throws Exception
+    {
+        final MailboxDeliverTasks tasks = new MailboxDeliverTasks(this.pool, this.deliverTasks, 8);
+        assertTrue(tasks.isEnabled());
+        final EventHandlerProxy h1 = createHandler(1);
+        final EventHandlerProxy h2 = createHandler(2);
+
+        final List<Event> events = new ArrayList<Event>();
+        for(int i = 0; i < 500; i++)
+        {
+            final Event event = createEvent(i);
+            events.add(event);
+            tasks.execute(i % 2 == 0 ? Collections.singletonList(h1) : Arrays.asList(h1, h2), event);
+        }
+        awaitDelivered(h1, 500);
+        awaitDelivered(h2, 250);
+
+        assertEquals(events, getDelivered(h1));
+        final List<Event> odd = new ArrayList<Event>();
+        for(int i = 1; i < events.size(); i += 2)
+        {
+            odd.add(events.get(i));
+        }
+        assertEquals(odd, getDelivered(h2));
+        assertEquals(750, tasks.getDeliveredEvents());
+    }
+
+    @Test public void testBackpressure() throws Exception
+    {
+        final MailboxDeliverTasks tasks = new MailboxDeliverTasks(this.pool, this.deliverTasks, 2);
+        final EventHandlerProxy handler = createHandler(1);
+        this.blocker = new CountDownLatch(1);
+
+        // the event being delivered still occupies the mailbox, so the third one waits
+        final CountDownLatch posted = new CountDownLatch(4);
+        final Thread poster = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                for(int i = 0; i < 4; i++)
+                {
+                    tasks.execute(Collections.singletonList(handler), createEvent(i));
+                    posted.countDown();
+                }
+            }
+        };
+        poster.start();
+
+        assertFalse(posted.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, posted.getCount());
+        assertTrue(poster.isAlive());
+
+        this.blocker.countDown();
+        assertTrue(posted.await(5, TimeUnit.SECONDS));
+        poster.join(5000);
+        awaitDelivered(handler, 4);
+        for(int i = 0; i < 4; i++)
+        {
+            assertEquals(i, getDelivered(handler).get(i).getProperty("index"));
+        }
+    }
+
+    @Test public void testQueueStatistics() throws Exception
+    {
+        final MailboxDeliverTasks tasks = new MailboxDeliverTasks(this.pool, this.deliverTasks, 10);
+        final EventHandlerProxy handler = createHandler(7);
+        this.blocker = new CountDownLatch(1);
+
+        for(int i = 0; i < 3; i++)
+        {
+            tasks.execute(Collections.singletonList(handler), createEvent(i));
+        }
+        Thread.sleep(20);
+
+        final Map<String, Integer> depths = tasks.getQueueDepths();
+        assertEquals(Collections.singletonMap("7 (handler.bundle)", 3), depths);
+        final Long lag = tasks.getQueueLags().get("7 (handler.bundle)");
+        assertNotNull(lag);
+        assertTrue(lag >= 10);
+        assertEquals(0, tasks.getDeliveredEvents());
+
+        this.blocker.countDown();
+        awaitDelivered(handler, 3);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( tasks.getDeliveredEvents() < 3 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(3, tasks.getDeliveredEvents());
+        while ( !tasks.getQueueDepths().isEmpty() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(tasks.getQueueDepths().isEmpty());
+        assertTrue(tasks.getQueueLags().isEmpty());
+    }
+
+    @Test public void testHandlerPostingToOwnMailboxWithTimeout() throws Exception
+    {
+        // the handler is called by a thread of the pool on behalf of the
+        // thread draining its mailbox, as a timeout applies
+        final SyncDeliverTasks timeoutTasks = new SyncDeliverTasks(this.pool, 10000, false);
+        final MailboxDeliverTasks tasks = new MailboxDeliverTasks(this.pool, timeoutTasks, 2);
+        final List<Event> received = Collections.synchronizedList(new ArrayList<Event>());
+        final CountDownLatch done = new CountDownLatch(6);
+        final CountDownLatch blacklisted = new CountDownLatch(1);
+        final EventHandlerProxy handler = new EventHandlerProxy(null, createReference(3))
+        {
+            @Override
+            public boolean useTimeout()
+            {
+                return true;
+            }
+
+            @Override
+            public void sendEvent(final Event event)
+            {
+                received.add(event);
+                if ( (Integer)event.getProperty("index") == 0 )
+                {
+                    // post more events than the mailbox can hold
+                    for(int i = 1; i < 6; i++)
+                    {
+                        tasks.execute(Collections.<EventHandlerProxy>singletonList(this), createEvent(i));
+                    }
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void blackListHandler()
+            {
+                blacklisted.countDown();
+            }
+        };
+
+        tasks.execute(Collections.singletonList(handler), createEvent(0));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, blacklisted.getCount());
+        for(int i = 0; i < 6; i++)
+        {
+            assertEquals(i, received.get(i).getProperty("index"));
+        }
+        timeoutTasks.stop();
+    }
+
+    private EventHandlerProxy createHandler(final long serviceId)
+    {
+        final EventHandlerProxy handler = new EventHandlerProxy(null, createReference(serviceId));
+        synchronized ( this.delivered )
+        {
+            this.delivered.put(handler, new ArrayList<Event>());
+        }
+        return handler;
+    }
+
+    private ServiceReference<EventHandler> createReference(final long serviceId)
+    {
+        @SuppressWarnings("unchecked")
+        final ServiceReference<EventHandler> reference = this.context.mock(ServiceReference.class, "reference" + serviceId);
+        final Bundle bundle = this.context.mock(Bundle.class, "bundle" + serviceId);
+        this.context.checking(new Expectations()
+        {
+            {
+                allowing(reference).getProperty(Constants.SERVICE_ID);
+                will(returnValue(serviceId));
+                allowing(reference).getBundle();
+                will(returnValue(bundle));
+                allowing(bundle).getSymbolicName();
+                will(returnValue("handler.bundle"));
+            }
+        });
+        return reference;
+    }
+
+    private static Event createEvent(final int index)
+    {
+        return new Event("org/apache/felix/test", Collections.singletonMap("index", index));
+    }
+
+    private List<Event> getDelivered(final EventHandlerProxy handler)
+    {
+        synchronized ( this.delivered )
+        {
+            return new ArrayList<Event>(this.delivered.get(handler));
+        }
+    }
+
+    private void awaitDelivered(final EventHandlerProxy handler, final int count) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + 5000;
+        synchronized ( this.delivered )
+        {
+            while ( this.delivered.get(handler).size() < count && System.currentTimeMillis() < deadline )
+            {
+                this.delivered.wait(100);
+            }
+            assertEquals(count, this.delivered.get(handler).size());
+        }
+    }
+}
@@ -48,6 +48,7 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
 import org.apache.felix.framework.cache.Content;
+import org.apache.felix.framework.cache.IndexedContent;
 import org.apache.felix.framework.cache.JarContent;
 import org.apache.felix.framework.util.FelixConstants;
 import org.osgi.framework.Bundle;
@@ -256,6 +257,10 @@ public class BundleProtectionDomain extends ProtectionDomain
             {
                 File target;
                 Content content = revision.getContent();
+                if (content instanceof IndexedContent)
+                {
+                    content = ((IndexedContent) content).getContent();
+                }
                 if (content instanceof JarContent)
                 {
                     target = ((JarContent) content).getFile();
@@ -28,6 +28,7 @@ import java.util.EventListener;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -64,6 +65,8 @@ public class EventDispatcher
         m_syncBndlListeners = Collections.EMPTY_MAP;
     private Map<BundleContext, List<ListenerInfo>>
         m_svcListeners = Collections.EMPTY_MAP;
+    // Index over the service listener filters, guarded by this dispatcher.
+    private final ServiceListenerIndex m_svcListenerIndex = new ServiceListenerIndex();
 
     // A single thread is used to deliver events for all dispatchers.
     private static Thread m_thread = null;
@@ -260,6 +263,7 @@ public class EventDispatcher
             else if (clazz == ServiceListener.class)
             {
                 m_svcListeners = listeners;
+                m_svcListenerIndex.addListener(info);
             }
         }
         return null;
@@ -312,6 +316,7 @@ public class EventDispatcher
 
             // Try to find the instance in our list.
             int idx = -1;
+            ListenerInfo removed = null;
             for (Entry<BundleContext, List<ListenerInfo>> entry : listeners.entrySet())
             {
                 List<ListenerInfo> infos = entry.getValue();
@@ -328,6 +333,7 @@ public class EventDispatcher
                         {
                             returnInfo = new ListenerInfo(infos.get(i), true);
                         }
+                        removed = info;
                         idx = i;
                         break;
                     }
@@ -358,6 +364,10 @@ public class EventDispatcher
             else if (clazz == ServiceListener.class)
             {
                 m_svcListeners = listeners;
+                if (removed != null)
+                {
+                    m_svcListenerIndex.removeListener(removed);
+                }
             }
         }
 
@@ -386,6 +396,7 @@ public class EventDispatcher
             m_syncBndlListeners = removeListenerInfos(m_syncBndlListeners, bc);
 
             // Remove all service listeners associated with the specified bundle.
+            m_svcListenerIndex.removeListeners(m_svcListeners.get(bc));
             m_svcListeners = removeListenerInfos(m_svcListeners, bc);
         }
     }
@@ -427,6 +438,7 @@ public class EventDispatcher
                             info.getSecurityContext(),
                             info.isRemoved());
                         m_svcListeners = updateListenerInfo(m_svcListeners, i, newInfo);
+                        m_svcListenerIndex.replaceListener(info, newInfo);
                         return oldFilter;
                     }
                 }
@@ -531,19 +543,51 @@ public class EventDispatcher
     public void fireServiceEvent(
         final ServiceEvent event, final Dictionary oldProps, final Felix felix)
     {
-        // Take a snapshot of the listener array.
+        // Take a snapshot of the listener array and use the filter index
+        // to determine the listeners which may be interested in the event.
         Map<BundleContext, List<ListenerInfo>> listeners = null;
+        List<ListenerInfo> candidates = null;
         synchronized (this)
         {
             listeners = m_svcListeners;
+            candidates = m_svcListenerIndex.getCandidates(
+                event.getServiceReference(),
+                (event.getType() == ServiceEvent.MODIFIED) ? oldProps : null);
         }
 
         // Use service registry hooks to filter target listeners.
-        listeners = filterListenersUsingHooks(event, felix, listeners);
+        Map<BundleContext, List<ListenerInfo>> filtered =
+            filterListenersUsingHooks(event, felix, listeners);
 
         // Fire all service events immediately on the calling thread.
-        fireEventImmediately(
-            this, Request.SERVICE_EVENT, listeners, event, oldProps);
+        // If there are no hooks, the candidates are exactly the snapshot
+        // listeners that may match, otherwise only deliver to candidates
+        // that were left by the hooks.
+        if (filtered == listeners)
+        {
+            for (ListenerInfo info : candidates)
+            {
+                fireEventImmediately(
+                    this, Request.SERVICE_EVENT, info, event, oldProps);
+            }
+        }
+        else
+        {
+            Set<ListenerInfo> candidateSet =
+                Collections.newSetFromMap(new IdentityHashMap<ListenerInfo, Boolean>());
+            candidateSet.addAll(candidates);
+            for (Entry<BundleContext, List<ListenerInfo>> entry : filtered.entrySet())
+            {
+                for (ListenerInfo info : entry.getValue())
+                {
+                    if (candidateSet.contains(info))
+                    {
+                        fireEventImmediately(
+                            this, Request.SERVICE_EVENT, info, event, oldProps);
+                    }
+                }
+            }
+        }
     }
 
 // TODO: OSGi R4.3 - This is ugly and inefficient.
@@ -818,44 +862,51 @@ public class EventDispatcher
             {
                 for (ListenerInfo info : entry.getValue())
                 {
-                    Bundle bundle = info.getBundle();
-                    EventListener l = info.getListener();
-                    Filter filter = info.getParsedFilter();
-                    Object acc = info.getSecurityContext();
-
-                    try
-                    {
-                        if (type == Request.FRAMEWORK_EVENT)
-                        {
-                            invokeFrameworkListenerCallback(bundle, l, event);
-                        }
-                        else if (type == Request.BUNDLE_EVENT)
-                        {
-                            invokeBundleListenerCallback(bundle, l, event);
-                        }
-                        else if (type == Request.SERVICE_EVENT)
-                        {
-                            invokeServiceListenerCallback(
-                                bundle, l, filter, acc, event, oldProps);
-                        }
-                    }
-                    catch (Throwable th)
-                    {
-                        if ((type != Request.FRAMEWORK_EVENT)
-                            || (((FrameworkEvent) event).getType() != FrameworkEvent.ERROR))
-                        {
-                            dispatcher.m_logger.log(bundle,
-                                Logger.LOG_ERROR,
-                                "EventDispatcher: Error during dispatch.", th);
-                            dispatcher.fireFrameworkEvent(
-                                new FrameworkEvent(FrameworkEvent.ERROR, bundle, th));
-                        }
-                    }
+                    fireEventImmediately(dispatcher, type, info, event, oldProps);
                 }
             }
         }
     }
 
+    private static void fireEventImmediately(
+        EventDispatcher dispatcher, int type, ListenerInfo info,
+        EventObject event, Dictionary oldProps)
+    {
+        Bundle bundle = info.getBundle();
+        EventListener l = info.getListener();
+        Filter filter = info.getParsedFilter();
+        Object acc = info.getSecurityContext();
+
+        try
+        {
+            if (type == Request.FRAMEWORK_EVENT)
+            {
+                invokeFrameworkListenerCallback(bundle, l, event);
+            }
+            else if (type == Request.BUNDLE_EVENT)
+            {
+                invokeBundleListenerCallback(bundle, l, event);
+            }
+            else if (type == Request.SERVICE_EVENT)
+            {
+                invokeServiceListenerCallback(
+                    bundle, l, filter, acc, event, oldProps);
+            }
+        }
+        catch (Throwable th)
+        {
+            if ((type != Request.FRAMEWORK_EVENT)
+                || (((FrameworkEvent) event).getType() != FrameworkEvent.ERROR))
+            {
+                dispatcher.m_logger.log(bundle,
+                    Logger.LOG_ERROR,
+                    "EventDispatcher: Error during dispatch.", th);
+                dispatcher.fireFrameworkEvent(
+                    new FrameworkEvent(FrameworkEvent.ERROR, bundle, th));
+            }
+        }
+    }
+
     private static void invokeFrameworkListenerCallback(
         Bundle bundle, final EventListener l, final EventObject event)
     {
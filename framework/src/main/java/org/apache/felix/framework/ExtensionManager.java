@@ -20,6 +20,7 @@ package org.apache.felix.framework;
 
 import org.apache.felix.framework.cache.Content;
 import org.apache.felix.framework.cache.DirectoryContent;
+import org.apache.felix.framework.cache.IndexedContent;
 import org.apache.felix.framework.cache.JarContent;
 import org.apache.felix.framework.ext.ClassPathExtenderFactory;
 import org.apache.felix.framework.util.ClassParser;
@@ -432,6 +433,10 @@ class ExtensionManager implements Content
         }
 
         Content content = bundle.adapt(BundleRevisionImpl.class).getContent();
+        if (content instanceof IndexedContent)
+        {
+            content = ((IndexedContent) content).getContent();
+        }
         final File file;
         if (content instanceof JarContent)
         {
@@ -555,6 +560,10 @@ class ExtensionManager implements Content
 
             final File f;
             Content revisionContent = revision.getContent();
+            if (revisionContent instanceof IndexedContent)
+            {
+                revisionContent = ((IndexedContent) revisionContent).getContent();
+            }
             if (revisionContent instanceof JarContent)
             {
                 f = ((JarContent) revisionContent).getFile();
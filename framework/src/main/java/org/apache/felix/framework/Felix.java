@@ -33,6 +33,7 @@ import org.apache.felix.framework.util.ShrinkableCollection;
 import org.apache.felix.framework.util.StringMap;
 import org.apache.felix.framework.util.ThreadGate;
 import org.apache.felix.framework.util.Util;
+import org.apache.felix.framework.util.manifestparser.ManifestParser;
 import org.apache.felix.framework.util.manifestparser.NativeLibraryClause;
 import org.apache.felix.framework.wiring.BundleRequirementImpl;
 import org.osgi.framework.AdminPermission;
@@ -71,6 +72,8 @@ import org.osgi.resource.Requirement;
 import org.osgi.service.packageadmin.ExportedPackage;
 import org.osgi.service.resolver.ResolutionException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -87,6 +90,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLStreamHandler;
 import java.security.AccessControlException;
+import java.security.MessageDigest;
 import java.security.Permission;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -106,6 +110,12 @@ import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -114,6 +124,10 @@ public class Felix extends BundleImpl implements Framework
     // The secure action used to do privileged calls
     static final SecureAction m_secureAction = new SecureAction();
 
+    // Name of the system bundle data file holding the wiring of the
+    // previous framework session.
+    private static final String WIRING_SNAPSHOT_FILE = "wiring.snapshot";
+
     // The extension manager to handle extension bundles
     private final ExtensionManager m_extensionManager;
 
@@ -274,6 +288,20 @@ public class Felix extends BundleImpl implements Framework
      *       string provides control over the size of the internal buffer of the
      *       disk cache for performance reasons.
      *   </li>
+     *   <li><tt>felix.cache.index</tt> - Enables or disables the persisted
+     *       index of the entries of bundle JAR files, which avoids accessing
+     *       the JAR files when looking up absent classes and resources; the
+     *       default value is "<tt>true</tt>".
+     *   </li>
+     *   <li><tt>felix.cache.index.directories</tt> - Enables the entry index
+     *       for bundles installed from a directory, in which case entries
+     *       added to the directory are only found after updating the bundle;
+     *       the default value is "<tt>false</tt>".
+     *   </li>
+     *   <li><tt>felix.cache.mmap</tt> - Enables reading the entries of
+     *       bundle JAR files from a memory mapping of the file instead of
+     *       through the ZIP file; the default value is "<tt>false</tt>".
+     *   </li>
      *   <li><tt>org.osgi.framework.system.packages</tt> - Specifies a
      *       comma-delimited list of packages that should be exported via the
      *       System Bundle from the parent class loader. The framework will set
@@ -316,6 +344,18 @@ public class Felix extends BundleImpl implements Framework
      *   <li><tt>felix.startlevel.bundle</tt> - The default start level for
      *       newly installed bundles; the default value is 1.
      *   </li>
+     *   <li><tt>felix.startlevel.parallelism</tt> - The maximum number of
+     *       bundles of the same start level which are started concurrently
+     *       when the active start level is raised; bundles of different start
+     *       levels are still started one start level after another. The
+     *       default value is 1, which starts all bundles sequentially.
+     *   </li>
+     *   <li><tt>felix.resolver.snapshot</tt> - Flag to indicate whether
+     *       the wiring of the bundles is saved when the framework is stopped
+     *       and reused on the next start, as long as neither the cached bundles
+     *       nor the framework configuration have changed; the default value
+     *       is "<tt>true</tt>".
+     *   </li>
      *   <li><tt>felix.service.urlhandlers</tt> - Flag to indicate whether
      *       to activate the URL Handlers service for the framework instance;
      *       the default value is "<tt>true</tt>". Activating the URL Handlers
@@ -426,6 +466,14 @@ public class Felix extends BundleImpl implements Framework
         // Create default bundle stream handler.
         m_bundleStreamHandler = new URLHandlersBundleStreamHandler(this, m_secureAction);
 
+        // Read the additional service properties to index.
+        s = (m_configMap == null)
+            ? null
+            : (String) m_configMap.get(FelixConstants.SERVICE_INDEX_PROP);
+        List<String> serviceIndexProps = (s == null)
+            ? null
+            : ManifestParser.parseDelimitedString(s, ",");
+
         // Create service registry.
         m_registry = new ServiceRegistry(m_logger, new ServiceRegistryCallbacks() {
             @Override
@@ -433,7 +481,7 @@ public class Felix extends BundleImpl implements Framework
             {
                 fireServiceEvent(event, oldProps);
             }
-        });
+        }, serviceIndexProps);
 
         // Create a resolver and its state.
         m_resolver = new StatefulResolver(this, m_registry);
@@ -850,6 +898,10 @@ public class Felix extends BundleImpl implements Framework
                     m_extensionManager.startExtensionBundle(this, (BundleImpl) extension);
                 }
 
+                // Reuse the wiring of the previous session for the cached
+                // bundles, if none of them has changed since.
+                loadWiringSnapshot();
+
                 // Now that we have loaded all cached bundles and have determined the
                 // max bundle ID of cached bundles, we need to try to load the next
                 // bundle ID from persistent storage. In case of failure, we should
@@ -1456,129 +1508,104 @@ public class Felix extends BundleImpl implements Framework
             int high = (isLowering) ? m_activeStartLevel : m_targetStartLevel;
             m_activeStartLevel = (isLowering) ? high : low;
 
-            // Process bundles and stop or start them accordingly.
-            while (bundlesRemaining)
-            {
-                StartLevelTuple tuple;
+            // Only starting bundles is parallelized, since bundles are
+            // expected to be stopped in reverse order.
+            ThreadPoolExecutor executor = isLowering ? null : createStartLevelExecutor();
+            StartLevelReport report = null;
 
-                // Remove our tuple to be processed while holding the queue lock
-                // and update the active start level accordingly, which allows
-                // us to determine in startBundle() if concurrent requests to
-                // start a bundle should be handled synchronously or just added
-                // to the queue and handled asynchronously.
-                synchronized (m_startLevelBundles)
+            try
+            {
+                // Process bundles and stop or start them accordingly.
+                while (bundlesRemaining)
                 {
-                    if (isLowering)
-                    {
-                        tuple = m_startLevelBundles.last();
-                    }
-                    else
-                    {
-                        tuple = m_startLevelBundles.first();
-                    }
+                    StartLevelTuple tuple;
+                    List<StartLevelTuple> batch = null;
 
-                    if ((tuple.m_level >= low) && (tuple.m_level <= high))
+                    // Remove our tuple to be processed while holding the queue lock
+                    // and update the active start level accordingly, which allows
+                    // us to determine in startBundle() if concurrent requests to
+                    // start a bundle should be handled synchronously or just added
+                    // to the queue and handled asynchronously.
+                    synchronized (m_startLevelBundles)
                     {
-                        m_activeStartLevel = tuple.m_level;
-                    }
-                }
-
-                // Ignore the system bundle, since its start() and
-                // stop() methods get called explicitly in Felix.start()
-                // and Felix.stop(), respectively.
-                if (tuple.m_bundle.getBundleId() != 0)
-                {
-                    // Lock the current bundle.
-                    try
-                    {
-                        acquireBundleLock(tuple.m_bundle,
-                            Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
-                            | Bundle.STARTING | Bundle.STOPPING);
-                    }
-                    catch (IllegalStateException ex)
-                    {
-                        // Ignore if the bundle has been uninstalled.
-                        if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
+                        if (isLowering)
                         {
-                            fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
-                            m_logger.log(tuple.m_bundle,
-                                Logger.LOG_ERROR,
-                                "Error locking " + tuple.m_bundle._getLocation(), ex);
+                            tuple = m_startLevelBundles.last();
                         }
                         else
                         {
-                            synchronized (m_startLevelBundles)
+                            tuple = m_startLevelBundles.first();
+                        }
+
+                        if ((tuple.m_level >= low) && (tuple.m_level <= high))
+                        {
+                            m_activeStartLevel = tuple.m_level;
+                        }
+
+                        // When starting bundles in parallel, take all bundles of
+                        // the active start level at once.
+                        if ((executor != null) && (tuple.m_level == m_activeStartLevel))
+                        {
+                            batch = new ArrayList<StartLevelTuple>();
+                            for (StartLevelTuple t : m_startLevelBundles)
                             {
-                                m_startLevelBundles.remove(tuple);
-                                bundlesRemaining = !m_startLevelBundles.isEmpty();
+                                if (t.m_level != tuple.m_level)
+                                {
+                                    break;
+                                }
+                                batch.add(t);
                             }
                         }
-                        continue;
                     }
 
-                    try
+                    if ((report == null) || (report.m_level != tuple.m_level))
                     {
-                        // Start the bundle if necessary.
-                        // Note that we only attempt to start the bundle if
-                        // its start level is equal to the active start level,
-                        // which means we assume lower bundles are in the state
-                        // they should be in (i.e., we won't attempt to restart
-                        // them if they previously failed to start).
-                        if (!isLowering
-                            && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
+                        if (report != null)
                         {
-                            try
-                            {
-// TODO: LAZY - Not sure if this is the best way...
-                                int options = Bundle.START_TRANSIENT;
-                                options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
-                                    ? options | Bundle.START_ACTIVATION_POLICY
-                                    : options;
-                                startBundle(tuple.m_bundle, options);
-                            }
-                            catch (Throwable th)
-                            {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error starting " + tuple.m_bundle._getLocation(), th);
-                            }
+                            report.log(m_logger, isLowering);
                         }
-                        // Stop the bundle if necessary.
-                        else if (isLowering
-                            && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
-                                || (tuple.m_bundle.getState() == Bundle.STARTING))
-                                && (tuple.m_level == m_activeStartLevel)))
+                        report = new StartLevelReport(tuple.m_level);
+                    }
+
+                    if ((batch != null) && (batch.size() > 1))
+                    {
+                        List<StartLevelTuple> processed =
+                            processStartLevelTuples(executor, batch, report);
+                        synchronized (m_startLevelBundles)
                         {
-                            try
-                            {
-                                stopBundle(tuple.m_bundle, false);
-                            }
-                            catch (Throwable th)
-                            {
-                                fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
-                                m_logger.log(tuple.m_bundle,
-                                    Logger.LOG_ERROR,
-                                    "Error stopping " + tuple.m_bundle._getLocation(), th);
-                            }
+                            m_startLevelBundles.removeAll(processed);
+                            bundlesRemaining = !m_startLevelBundles.isEmpty();
                         }
+                        continue;
                     }
-                    finally
+
+                    long start = System.currentTimeMillis();
+                    if (!processStartLevelTuple(tuple, isLowering))
                     {
-                        // Always release bundle lock.
-                        releaseBundleLock(tuple.m_bundle);
+                        continue;
                     }
-                }
+                    report.processed(tuple, System.currentTimeMillis() - start);
 
-                synchronized (m_startLevelBundles)
+                    synchronized (m_startLevelBundles)
+                    {
+                        m_startLevelBundles.remove(tuple);
+                        bundlesRemaining = !m_startLevelBundles.isEmpty();
+                    }
+                }
+            }
+            finally
+            {
+                if (executor != null)
                 {
-                    m_startLevelBundles.remove(tuple);
-                    bundlesRemaining = !m_startLevelBundles.isEmpty();
+                    executor.shutdown();
                 }
             }
 
+            if (report != null)
+            {
+                report.log(m_logger, isLowering);
+            }
+
             m_activeStartLevel = m_targetStartLevel;
         }
 
@@ -1606,6 +1633,208 @@ public class Felix extends BundleImpl implements Framework
         }
     }
 
+    /**
+     * Starts or stops the bundle of the specified start level tuple if its
+     * start level is the active start level. This method should only be
+     * called by the start level thread or one of its worker threads.
+     * @param tuple the start level tuple to process.
+     * @param isLowering whether the active start level is being lowered.
+     * @return <tt>true</tt> if the tuple is processed, <tt>false</tt> if
+     *         the bundle could not be locked and needs to be processed again.
+    **/
+    private boolean processStartLevelTuple(StartLevelTuple tuple, boolean isLowering)
+    {
+        // Ignore the system bundle, since its start() and
+        // stop() methods get called explicitly in Felix.start()
+        // and Felix.stop(), respectively.
+        if (tuple.m_bundle.getBundleId() != 0)
+        {
+            // Lock the current bundle.
+            try
+            {
+                acquireBundleLock(tuple.m_bundle,
+                    Bundle.INSTALLED | Bundle.RESOLVED | Bundle.ACTIVE
+                    | Bundle.STARTING | Bundle.STOPPING);
+            }
+            catch (IllegalStateException ex)
+            {
+                // Ignore if the bundle has been uninstalled.
+                if (tuple.m_bundle.getState() != Bundle.UNINSTALLED)
+                {
+                    fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, ex);
+                    m_logger.log(tuple.m_bundle,
+                        Logger.LOG_ERROR,
+                        "Error locking " + tuple.m_bundle._getLocation(), ex);
+                }
+                else
+                {
+                    return true;
+                }
+                return false;
+            }
+
+            try
+            {
+                // Start the bundle if necessary.
+                // Note that we only attempt to start the bundle if
+                // its start level is equal to the active start level,
+                // which means we assume lower bundles are in the state
+                // they should be in (i.e., we won't attempt to restart
+                // them if they previously failed to start).
+                if (!isLowering
+                    && (((tuple.m_bundle.getPersistentState() == Bundle.ACTIVE)
+                        || (tuple.m_bundle.getPersistentState() == Bundle.STARTING))
+                        && (tuple.m_level == m_activeStartLevel)))
+                {
+                    try
+                    {
+// TODO: LAZY - Not sure if this is the best way...
+                        int options = Bundle.START_TRANSIENT;
+                        options = (tuple.m_bundle.getPersistentState() == Bundle.STARTING)
+                            ? options | Bundle.START_ACTIVATION_POLICY
+                            : options;
+                        startBundle(tuple.m_bundle, options);
+                    }
+                    catch (Throwable th)
+                    {
+                        fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                        m_logger.log(tuple.m_bundle,
+                            Logger.LOG_ERROR,
+                            "Error starting " + tuple.m_bundle._getLocation(), th);
+                    }
+                }
+                // Stop the bundle if necessary.
+                else if (isLowering
+                    && (((tuple.m_bundle.getState() == Bundle.ACTIVE)
+                        || (tuple.m_bundle.getState() == Bundle.STARTING))
+                        && (tuple.m_level == m_activeStartLevel)))
+                {
+                    try
+                    {
+                        stopBundle(tuple.m_bundle, false);
+                    }
+                    catch (Throwable th)
+                    {
+                        fireFrameworkEvent(FrameworkEvent.ERROR, tuple.m_bundle, th);
+                        m_logger.log(tuple.m_bundle,
+                            Logger.LOG_ERROR,
+                            "Error stopping " + tuple.m_bundle._getLocation(), th);
+                    }
+                }
+            }
+            finally
+            {
+                // Always release bundle lock.
+                releaseBundleLock(tuple.m_bundle);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Starts the bundles of the specified start level tuples concurrently
+     * and waits until all of them are processed.
+     * @param executor the executor used to start the bundles.
+     * @param batch the start level tuples, all of the active start level.
+     * @param report the report of the active start level.
+     * @return the processed tuples.
+    **/
+    private List<StartLevelTuple> processStartLevelTuples(
+        ThreadPoolExecutor executor, List<StartLevelTuple> batch,
+        final StartLevelReport report)
+    {
+        final List<StartLevelTuple> processed =
+            Collections.synchronizedList(new ArrayList<StartLevelTuple>());
+        final CountDownLatch latch = new CountDownLatch(batch.size());
+        for (final StartLevelTuple tuple : batch)
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        long start = System.currentTimeMillis();
+                        if (processStartLevelTuple(tuple, false))
+                        {
+                            report.processed(tuple, System.currentTimeMillis() - start);
+                            processed.add(tuple);
+                        }
+                    }
+                    finally
+                    {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        boolean interrupted = false;
+        while (latch.getCount() > 0)
+        {
+            try
+            {
+                latch.await();
+            }
+            catch (InterruptedException ex)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return processed;
+    }
+
+    /**
+     * Creates the executor used to start the bundles of a start level
+     * concurrently, or returns <tt>null</tt> if bundles are to be started
+     * sequentially.
+    **/
+    private ThreadPoolExecutor createStartLevelExecutor()
+    {
+        String str = (String) m_configMap.get(FelixConstants.STARTLEVEL_PARALLELISM_PROP);
+        int parallelism = 1;
+        if (str != null)
+        {
+            try
+            {
+                parallelism = Integer.parseInt(str.trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                m_logger.log(Logger.LOG_WARNING,
+                    "Invalid start level parallelism: " + str);
+            }
+        }
+        if (parallelism <= 1)
+        {
+            return null;
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            parallelism, parallelism,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                final AtomicInteger counter = new AtomicInteger();
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(
+                        r, FrameworkStartLevelImpl.THREAD_NAME + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Returns the start level into which newly installed bundles will
      * be placed by default; this method implements functionality for
@@ -2190,7 +2419,7 @@ public class Felix extends BundleImpl implements Framework
             // queued but processed synchronously.
             // Note: Don't queue starts from the start level thread, otherwise
             // we'd never get anything started.
-            if (!Thread.currentThread().getName().equals(FrameworkStartLevelImpl.THREAD_NAME))
+            if (!FrameworkStartLevelImpl.isStartLevelThread(Thread.currentThread()))
             {
                 synchronized (m_startLevelBundles)
                 {
@@ -5062,6 +5291,177 @@ public class Felix extends BundleImpl implements Framework
         return -1;
     }
 
+    private boolean isWiringSnapshotEnabled()
+    {
+        String enabled = _getProperty(FelixConstants.RESOLVER_SNAPSHOT_PROP);
+        return (enabled == null) || !enabled.equalsIgnoreCase("false");
+    }
+
+    private void loadWiringSnapshot()
+    {
+        if (!isWiringSnapshotEnabled())
+        {
+            return;
+        }
+
+        InputStream is = null;
+        try
+        {
+            File file = m_cache.getSystemBundleDataFile(WIRING_SNAPSHOT_FILE);
+            if (!m_secureAction.fileExists(file))
+            {
+                return;
+            }
+            is = new BufferedInputStream(m_secureAction.getFileInputStream(file));
+            WiringSnapshot snapshot = WiringSnapshot.read(is);
+            if (snapshot.getFingerprint().equals(getWiringFingerprint()))
+            {
+                m_resolver.setWiringSnapshot(snapshot);
+                m_logger.log(
+                    Logger.LOG_DEBUG,
+                    "Loaded wiring snapshot of " + snapshot.size() + " revision(s).");
+            }
+            else
+            {
+                m_logger.log(
+                    Logger.LOG_DEBUG,
+                    "Ignoring wiring snapshot since the bundle cache has changed.");
+            }
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(
+                Logger.LOG_WARNING,
+                "Unable to load wiring snapshot from persistent storage.",
+                ex);
+        }
+        finally
+        {
+            try
+            {
+                if (is != null) is.close();
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(
+                    Logger.LOG_WARNING,
+                    "Unable to close wiring snapshot file.",
+                    ex);
+            }
+        }
+    }
+
+    private void saveWiringSnapshot()
+    {
+        if (!isWiringSnapshotEnabled())
+        {
+            return;
+        }
+
+        OutputStream os = null;
+        try
+        {
+            File file = m_cache.getSystemBundleDataFile(WIRING_SNAPSHOT_FILE);
+            String fingerprint = getWiringFingerprint();
+            if (fingerprint == null)
+            {
+                m_secureAction.deleteFile(file);
+                return;
+            }
+
+            List<BundleRevision> revisions = new ArrayList<BundleRevision>();
+            for (Bundle bundle : getBundles())
+            {
+                BundleRevision revision = bundle.adapt(BundleRevision.class);
+                if (revision != null)
+                {
+                    revisions.add(revision);
+                }
+            }
+            os = new BufferedOutputStream(m_secureAction.getFileOutputStream(file));
+            WiringSnapshot.create(fingerprint, revisions).write(os);
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(
+                Logger.LOG_WARNING,
+                "Unable to save wiring snapshot to persistent storage.",
+                ex);
+        }
+        finally
+        {
+            try
+            {
+                if (os != null) os.close();
+            }
+            catch (Exception ex)
+            {
+                m_logger.log(
+                    Logger.LOG_WARNING,
+                    "Unable to close wiring snapshot file.",
+                    ex);
+            }
+        }
+    }
+
+    /**
+     * Computes a digest of everything the wiring of the installed bundles
+     * depends on, i.e., the state of their archives and the framework
+     * configuration, except for the framework UUID which changes on
+     * every start.
+     * @return the digest or <tt>null</tt> if it cannot be computed.
+    **/
+    private String getWiringFingerprint()
+    {
+        try
+        {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, Object> entry
+                : new TreeMap<String, Object>(m_configMap).entrySet())
+            {
+                if ((entry.getValue() instanceof String)
+                    && !FelixConstants.FRAMEWORK_UUID.equals(entry.getKey()))
+                {
+                    sb.append(entry.getKey()).append('=')
+                        .append(entry.getValue()).append('\n');
+                }
+            }
+            sb.append("java.specification.version=")
+                .append(_getProperty("java.specification.version")).append('\n');
+
+            for (Bundle bundle : getBundles())
+            {
+                if (bundle == this)
+                {
+                    continue;
+                }
+                BundleArchive archive = ((BundleImpl) bundle).getArchive();
+                sb.append(archive.getId()).append(':')
+                    .append(archive.getLastModified()).append(':')
+                    .append(archive.getRefreshCount()).append(':')
+                    .append(archive.getCurrentRevisionNumber()).append('\n');
+            }
+
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                .digest(sb.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(
+                Logger.LOG_WARNING,
+                "Unable to compute bundle cache fingerprint.",
+                ex);
+            return null;
+        }
+    }
+
     private long getNextId()
     {
         synchronized (m_nextIdLock)
@@ -5208,6 +5608,10 @@ public class Felix extends BundleImpl implements Framework
                 }
             }
 
+            // Save the wiring of the remaining bundles, so that it can
+            // be reused instead of resolving them again on the next start.
+            saveWiringSnapshot();
+
             // Dispose of the bundles to close their associated contents.
             bundles = getBundles();
             for (int i = 0; i < bundles.length; i++)
@@ -5395,6 +5799,44 @@ public class Felix extends BundleImpl implements Framework
         }
     }
 
+    // Collects the time spent starting or stopping the bundles of a
+    // start level, which is logged once the start level is processed.
+    private static class StartLevelReport
+    {
+        private final int m_level;
+        private final long m_start = System.currentTimeMillis();
+        private int m_count;
+        private long m_slowestTime = -1;
+        private BundleImpl m_slowest;
+
+        StartLevelReport(int level)
+        {
+            m_level = level;
+        }
+
+        synchronized void processed(StartLevelTuple tuple, long time)
+        {
+            m_count++;
+            if (time > m_slowestTime)
+            {
+                m_slowestTime = time;
+                m_slowest = tuple.m_bundle;
+            }
+        }
+
+        synchronized void log(Logger logger, boolean isLowering)
+        {
+            if (m_count > 0)
+            {
+                logger.log(Logger.LOG_DEBUG,
+                    (isLowering ? "Lowering" : "Raising") + " start level "
+                    + m_level + " processed " + m_count + " bundle(s) in "
+                    + (System.currentTimeMillis() - m_start) + " ms; slowest was "
+                    + m_slowest._getLocation() + " with " + m_slowestTime + " ms.");
+            }
+        }
+    }
+
     //
     // Locking related methods.
     //
@@ -51,6 +51,18 @@ class FrameworkStartLevelImpl implements FrameworkStartLevel, Runnable
         m_registry = registry;
     }
 
+    /**
+     * Returns whether the specified thread is the start level thread or one
+     * of the threads starting the bundles of a start level in parallel.
+     * @param thread the thread to check.
+     * @return <tt>true</tt> if the thread processes start level changes.
+     */
+    static boolean isStartLevelThread(Thread thread)
+    {
+        String name = thread.getName();
+        return name.equals(THREAD_NAME) || name.startsWith(THREAD_NAME + "-");
+    }
+
     @SuppressWarnings("unchecked")
     void start()
     {
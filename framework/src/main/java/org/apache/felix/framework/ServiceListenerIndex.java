@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.util.ListenerInfo;
+import org.apache.felix.framework.util.StringComparator;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.UnfilteredServiceListener;
+
+/**
+ * Index over the filters of service listeners. Listeners whose filter
+ * requires a property to be equal to a given string value (e.g.,
+ * <tt>(objectClass=foo)</tt> or <tt>(&amp;(objectClass=foo)(bar=*))</tt>) are
+ * stored in per-attribute value buckets, so for a given service only the
+ * listeners of the buckets matching its property values have to be evaluated.
+ * Listeners without a filter, with a filter that cannot be reduced to equality
+ * terms, or that are <tt>UnfilteredServiceListener</tt>s are always returned
+ * as candidates. The index only narrows the set of listeners; the listener
+ * filters still have to be matched by the caller. The candidates are returned
+ * in the order in which the listeners were added.
+ * <p>
+ * This class is not thread safe; the event dispatcher guards it with its
+ * own lock.
+**/
+class ServiceListenerIndex
+{
+    private final Set<ListenerInfo> m_unindexed =
+        Collections.newSetFromMap(new IdentityHashMap<ListenerInfo, Boolean>());
+    private final Map<String, Map<String, Set<ListenerInfo>>> m_indices =
+        new TreeMap<String, Map<String, Set<ListenerInfo>>>(StringComparator.COMPARATOR);
+    private final Map<ListenerInfo, List<SimpleFilter>> m_keys =
+        new IdentityHashMap<ListenerInfo, List<SimpleFilter>>();
+    // The order in which the listeners were added.
+    private final Map<ListenerInfo, Long> m_order =
+        new IdentityHashMap<ListenerInfo, Long>();
+    private long m_nextOrder = 0;
+
+    private final Comparator<ListenerInfo> m_comparator = new Comparator<ListenerInfo>()
+    {
+        public int compare(ListenerInfo info1, ListenerInfo info2)
+        {
+            return m_order.get(info1).compareTo(m_order.get(info2));
+        }
+    };
+
+    public void addListener(ListenerInfo info)
+    {
+        addListener(info, m_nextOrder++);
+    }
+
+    /**
+     * Replaces the specified listener, keeping its position in the
+     * order of the listeners.
+     * @param oldInfo the listener to replace.
+     * @param newInfo the replacing listener.
+    **/
+    public void replaceListener(ListenerInfo oldInfo, ListenerInfo newInfo)
+    {
+        Long order = m_order.get(oldInfo);
+        removeListener(oldInfo);
+        addListener(newInfo, (order != null) ? order.longValue() : m_nextOrder++);
+    }
+
+    private void addListener(ListenerInfo info, long order)
+    {
+        m_order.put(info, order);
+        List<SimpleFilter> keys = getKeys(info);
+        if (keys == null)
+        {
+            m_unindexed.add(info);
+            return;
+        }
+
+        m_keys.put(info, keys);
+        for (SimpleFilter key : keys)
+        {
+            Map<String, Set<ListenerInfo>> index = m_indices.get(key.getName());
+            if (index == null)
+            {
+                index = new HashMap<String, Set<ListenerInfo>>();
+                m_indices.put(key.getName(), index);
+            }
+            Set<ListenerInfo> infos = index.get((String) key.getValue());
+            if (infos == null)
+            {
+                infos = Collections.newSetFromMap(
+                    new IdentityHashMap<ListenerInfo, Boolean>());
+                index.put((String) key.getValue(), infos);
+            }
+            infos.add(info);
+        }
+    }
+
+    public void removeListener(ListenerInfo info)
+    {
+        m_order.remove(info);
+        if (m_unindexed.remove(info))
+        {
+            return;
+        }
+
+        List<SimpleFilter> keys = m_keys.remove(info);
+        for (int i = 0; (keys != null) && (i < keys.size()); i++)
+        {
+            SimpleFilter key = keys.get(i);
+            Map<String, Set<ListenerInfo>> index = m_indices.get(key.getName());
+            if (index != null)
+            {
+                Set<ListenerInfo> infos = index.get((String) key.getValue());
+                if (infos != null)
+                {
+                    infos.remove(info);
+                    if (infos.isEmpty())
+                    {
+                        index.remove((String) key.getValue());
+                        if (index.isEmpty())
+                        {
+                            m_indices.remove(key.getName());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void removeListeners(Collection<ListenerInfo> infos)
+    {
+        if (infos != null)
+        {
+            for (ListenerInfo info : infos)
+            {
+                removeListener(info);
+            }
+        }
+    }
+
+    /**
+     * Returns the listeners which may be interested in an event for the
+     * specified service reference. If old properties are specified, then
+     * the listeners which may have matched the old properties are also
+     * returned, so that they can receive a <tt>MODIFIED_ENDMATCH</tt> event.
+     * @param ref the service reference of the event.
+     * @param oldProps the previous service properties or <tt>null</tt>.
+     * @return the candidate listeners in the order they were added.
+    **/
+    public List<ListenerInfo> getCandidates(ServiceReference ref, Dictionary oldProps)
+    {
+        Set<ListenerInfo> candidates =
+            Collections.newSetFromMap(new IdentityHashMap<ListenerInfo, Boolean>());
+        candidates.addAll(m_unindexed);
+
+        Map oldMap = null;
+        if (oldProps != null)
+        {
+            try
+            {
+                oldMap = new FilterImpl.WrapperCapability(oldProps, false).getAttributes();
+            }
+            catch (Exception ex)
+            {
+                // The old properties cannot be looked up case insensitively,
+                // so treat them as if they could match every indexed listener.
+                oldMap = null;
+                addAll(candidates);
+            }
+        }
+
+        for (Entry<String, Map<String, Set<ListenerInfo>>> entry : m_indices.entrySet())
+        {
+            addCandidates(candidates, entry.getValue(), ref.getProperty(entry.getKey()));
+            if (oldMap != null)
+            {
+                addCandidates(candidates, entry.getValue(), oldMap.get(entry.getKey()));
+            }
+        }
+
+        List<ListenerInfo> sorted = new ArrayList<ListenerInfo>(candidates);
+        Collections.sort(sorted, m_comparator);
+        return sorted;
+    }
+
+    private void addAll(Set<ListenerInfo> candidates)
+    {
+        for (Map<String, Set<ListenerInfo>> index : m_indices.values())
+        {
+            for (Set<ListenerInfo> infos : index.values())
+            {
+                candidates.addAll(infos);
+            }
+        }
+    }
+
+    private static void addCandidates(
+        Set<ListenerInfo> candidates, Map<String, Set<ListenerInfo>> index, Object value)
+    {
+        // If the property is missing, then no equality term can match it.
+        if (value == null)
+        {
+            return;
+        }
+        else if (value instanceof String)
+        {
+            Set<ListenerInfo> infos = index.get(value);
+            if (infos != null)
+            {
+                candidates.addAll(infos);
+            }
+        }
+        else if (value instanceof Object[])
+        {
+            for (Object o : (Object[]) value)
+            {
+                addCandidates(candidates, index, o);
+            }
+        }
+        else if (value instanceof Collection)
+        {
+            for (Object o : (Collection) value)
+            {
+                addCandidates(candidates, index, o);
+            }
+        }
+        else
+        {
+            // Values of other types are compared after coercing the filter
+            // value, so any listener indexed on this attribute may match.
+            for (Set<ListenerInfo> infos : index.values())
+            {
+                candidates.addAll(infos);
+            }
+        }
+    }
+
+    /**
+     * Returns the equality terms of which at least one must hold for the
+     * listener's filter to match, or <tt>null</tt> if the listener cannot
+     * be indexed.
+    **/
+    private static List<SimpleFilter> getKeys(ListenerInfo info)
+    {
+        Filter filter = info.getParsedFilter();
+        if ((filter == null) || (info.getListener() instanceof UnfilteredServiceListener))
+        {
+            return null;
+        }
+
+        try
+        {
+            return getKeys(SimpleFilter.parse(filter.toString()));
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    private static List<SimpleFilter> getKeys(SimpleFilter sf)
+    {
+        switch (sf.getOperation())
+        {
+            case SimpleFilter.EQ:
+                return (sf.getValue() instanceof String)
+                    ? Collections.singletonList(sf)
+                    : null;
+            case SimpleFilter.AND:
+                // Any term of a conjunction is required, so use a single one,
+                // preferring the object class over the most specific term.
+                List<SimpleFilter> best = null;
+                for (SimpleFilter child : (List<SimpleFilter>) sf.getValue())
+                {
+                    List<SimpleFilter> keys = getKeys(child);
+                    if ((keys != null) && (keys.size() == 1)
+                        && Constants.OBJECTCLASS.equalsIgnoreCase(keys.get(0).getName()))
+                    {
+                        return keys;
+                    }
+                    else if ((keys != null) && ((best == null) || (keys.size() < best.size())))
+                    {
+                        best = keys;
+                    }
+                }
+                return best;
+            case SimpleFilter.OR:
+                // A disjunction can only be indexed if every term can be.
+                List<SimpleFilter> all = new ArrayList<SimpleFilter>();
+                for (SimpleFilter child : (List<SimpleFilter>) sf.getValue())
+                {
+                    List<SimpleFilter> keys = getKeys(child);
+                    if (keys == null)
+                    {
+                        return null;
+                    }
+                    all.addAll(keys);
+                }
+                return all.isEmpty() ? null : all;
+            default:
+                return null;
+        }
+    }
+}
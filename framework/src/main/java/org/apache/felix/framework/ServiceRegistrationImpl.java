@@ -30,7 +30,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.felix.framework.util.MapToDictionary;
 import org.apache.felix.framework.util.StringMap;
 import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.wiring.BundleCapabilityImpl;
@@ -114,7 +113,7 @@ class ServiceRegistrationImpl implements ServiceRegistration
 
     public void setProperties(Dictionary dict)
     {
-        Map oldProps;
+        Map<String, Object> oldProps;
         synchronized (this)
         {
             // Make sure registration is valid.
@@ -129,7 +128,7 @@ class ServiceRegistrationImpl implements ServiceRegistration
             initializeProperties(dict);
         }
         // Tell registry about it.
-        m_registry.servicePropertiesModified(this, new MapToDictionary(oldProps));
+        m_registry.servicePropertiesModified(this, oldProps);
     }
 
     public void unregister()
@@ -19,8 +19,8 @@
 package org.apache.felix.framework;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Iterator;
 import java.util.List;
@@ -33,6 +33,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.felix.framework.capabilityset.CapabilitySet;
 import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.apache.felix.framework.util.MapToDictionary;
 import org.apache.felix.framework.wiring.BundleCapabilityImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
@@ -52,8 +53,13 @@ public class ServiceRegistry
     // Maps bundle to an array of service registrations.
     private final ConcurrentMap<Bundle, List<ServiceRegistration<?>>> m_regsMap = new ConcurrentHashMap<Bundle, List<ServiceRegistration<?>>>();
 
+    // Service properties that are always indexed in the capability set,
+    // the last one is the component name of declarative services.
+    private static final List<String> DEFAULT_INDEX_PROPS = Arrays.asList(
+        Constants.OBJECTCLASS, Constants.SERVICE_PID, "component.name");
+
     // Capability set for all service registrations.
-    private final CapabilitySet m_regCapSet = new CapabilitySet(Collections.singletonList(Constants.OBJECTCLASS), false);
+    private final CapabilitySet m_regCapSet;
 
     // Maps bundle to an array of usage counts.
     private final ConcurrentMap<Bundle, UsageCount[]> m_inUseMap = new ConcurrentHashMap<Bundle, UsageCount[]>();
@@ -63,9 +69,35 @@ public class ServiceRegistry
     private final HookRegistry hookRegistry = new HookRegistry();
 
     public ServiceRegistry(final Logger logger, final ServiceRegistryCallbacks callbacks)
+    {
+        this(logger, callbacks, null);
+    }
+
+    /**
+     * Creates a service registry.
+     * @param logger The logger
+     * @param callbacks The callbacks for service events, may be {@code null}
+     * @param indexProps Additional service properties to index for equality
+     *        filters, may be {@code null}
+     */
+    public ServiceRegistry(
+        final Logger logger, final ServiceRegistryCallbacks callbacks, final List<String> indexProps)
     {
         m_logger = logger;
         m_callbacks = callbacks;
+
+        final List<String> props = new ArrayList<String>(DEFAULT_INDEX_PROPS);
+        if (indexProps != null)
+        {
+            for (final String prop : indexProps)
+            {
+                if (!props.contains(prop))
+                {
+                    props.add(prop);
+                }
+            }
+        }
+        m_regCapSet = new CapabilitySet(props, false);
     }
 
     /**
@@ -604,13 +636,20 @@ public class ServiceRegistry
         return bundles;
     }
 
-    void servicePropertiesModified(ServiceRegistration<?> reg, Dictionary<?,?> oldProps)
+    void servicePropertiesModified(ServiceRegistration<?> reg, Map<String, Object> oldProps)
     {
+        // The index entries are based on the property values, so they have
+        // to be replaced. Properties must not change while doing so.
+        synchronized (reg)
+        {
+            m_regCapSet.updateCapability((BundleCapabilityImpl) reg.getReference(), oldProps);
+        }
         this.hookRegistry.updateHooks(reg.getReference());
         if (m_callbacks != null)
         {
             m_callbacks.serviceChanged(
-                new ServiceEvent(ServiceEvent.MODIFIED, reg.getReference()), oldProps);
+                new ServiceEvent(ServiceEvent.MODIFIED, reg.getReference()),
+                new MapToDictionary(oldProps));
         }
     }
 
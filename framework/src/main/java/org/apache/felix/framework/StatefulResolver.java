@@ -48,6 +48,7 @@ import org.apache.felix.framework.util.Util;
 import org.apache.felix.framework.util.manifestparser.NativeLibrary;
 import org.apache.felix.framework.wiring.BundleRequirementImpl;
 import org.apache.felix.framework.wiring.BundleWireImpl;
+import org.apache.felix.resolver.PermutationOptions;
 import org.apache.felix.resolver.ResolverImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
@@ -91,14 +92,27 @@ class StatefulResolver
     private final Map<String, List<BundleRevision>> m_singletons;
     // Selected singleton bundle revisions.
     private final Set<BundleRevision> m_selectedSingletons;
+    // Wiring of the previous framework session, if still applicable.
+    private WiringSnapshot m_snapshot;
 
     StatefulResolver(Felix felix, ServiceRegistry registry)
     {
         m_felix = felix;
         m_registry = registry;
         m_logger = m_felix.getLogger();
-        m_executor = getExecutor();
-        m_resolver = new ResolverImpl(m_logger, m_executor);
+        int parallelism = (int) getLongProperty(
+            FelixConstants.RESOLVER_PARALLELISM, Runtime.getRuntime().availableProcessors());
+        m_executor = getExecutor(parallelism);
+        // Speculative permutation checks need resolver threads.
+        int speculation = (parallelism > 1)
+            ? (int) getLongProperty(FelixConstants.RESOLVER_PERMUTATION_SPECULATION_PROP, 1)
+            : 1;
+        m_resolver = new ResolverImpl(m_logger, m_executor, new PermutationOptions()
+            .setBestFirst("true".equalsIgnoreCase(
+                m_felix.getProperty(FelixConstants.RESOLVER_PERMUTATION_BEST_FIRST_PROP)))
+            .setPermutationLimit(getLongProperty(FelixConstants.RESOLVER_PERMUTATION_LIMIT_PROP, -1))
+            .setTimeLimit(getLongProperty(FelixConstants.RESOLVER_PERMUTATION_TIMEOUT_PROP, -1))
+            .setSpeculation(speculation));
 
         m_revisions = new HashSet<BundleRevision>();
         m_fragments = new HashSet<BundleRevision>();
@@ -108,32 +122,39 @@ class StatefulResolver
 
         List<String> indices = new ArrayList<String>();
         indices.add(BundleRevision.BUNDLE_NAMESPACE);
-        m_capSets.put(BundleRevision.BUNDLE_NAMESPACE, new CapabilitySet(indices, true));
+        m_capSets.put(BundleRevision.BUNDLE_NAMESPACE, new CapabilitySet(indices,
+            Collections.singletonList(Constants.BUNDLE_VERSION_ATTRIBUTE), true));
 
         indices = new ArrayList<String>();
         indices.add(BundleRevision.PACKAGE_NAMESPACE);
-        m_capSets.put(BundleRevision.PACKAGE_NAMESPACE, new CapabilitySet(indices, true));
+        m_capSets.put(BundleRevision.PACKAGE_NAMESPACE, new CapabilitySet(indices,
+            Collections.singletonList(Constants.VERSION_ATTRIBUTE), true));
 
         indices = new ArrayList<String>();
         indices.add(BundleRevision.HOST_NAMESPACE);
-        m_capSets.put(BundleRevision.HOST_NAMESPACE,  new CapabilitySet(indices, true));
+        m_capSets.put(BundleRevision.HOST_NAMESPACE,  new CapabilitySet(indices,
+            Collections.singletonList(Constants.BUNDLE_VERSION_ATTRIBUTE), true));
     }
 
-    private Executor getExecutor()
+    private long getLongProperty(String name, long defaultValue)
     {
-        String str = m_felix.getProperty(FelixConstants.RESOLVER_PARALLELISM);
-        int parallelism = Runtime.getRuntime().availableProcessors();
+        String str = m_felix.getProperty(name);
         if (str != null)
         {
             try
             {
-                parallelism = Integer.parseInt(str);
+                return Long.parseLong(str);
             }
             catch (NumberFormatException e)
             {
                 // Ignore
             }
         }
+        return defaultValue;
+    }
+
+    private Executor getExecutor(int parallelism)
+    {
         if (parallelism <= 1)
         {
             return new Executor()
@@ -179,7 +200,12 @@ class StatefulResolver
         // Always attempt to remove the revision, since
         // this method can be used for re-indexing a revision
         // after it has been resolved.
-        removeRevision(br);
+        if (!deindexRevision(br))
+        {
+            // A new revision changes the resolver state, so the
+            // wiring of the previous session no longer applies.
+            m_snapshot = null;
+        }
 
         m_revisions.add(br);
 
@@ -206,6 +232,14 @@ class StatefulResolver
     }
 
     synchronized void removeRevision(BundleRevision br)
+    {
+        if (deindexRevision(br))
+        {
+            m_snapshot = null;
+        }
+    }
+
+    private boolean deindexRevision(BundleRevision br)
     {
         if (m_revisions.remove(br))
         {
@@ -223,7 +257,24 @@ class StatefulResolver
                     m_singletons.remove(br.getSymbolicName());
                 }
             }
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Sets the wiring of the previous framework session, which is used
+     * instead of the resolver as long as no revision is added or removed.
+     * @param snapshot the wiring snapshot or <tt>null</tt>.
+    **/
+    synchronized void setWiringSnapshot(WiringSnapshot snapshot)
+    {
+        m_snapshot = snapshot;
+    }
+
+    synchronized WiringSnapshot getWiringSnapshot()
+    {
+        return m_snapshot;
     }
 
     boolean isEffective(Requirement req)
@@ -472,21 +523,32 @@ class StatefulResolver
             // Catch any resolve exception to rethrow later because
             // we may need to call end() on resolver hooks.
             ResolutionException rethrow = null;
-            try
-            {
-                // Resolve the revision.
-                wireMap = m_resolver.resolve(
-                    new ResolveContextImpl(
-                        this,
-                        getWirings(),
-                        record,
-                        mandatory,
-                        optional,
-                        getFragments()));
-            }
-            catch (ResolutionException ex)
+
+            // Reuse the wiring of the previous session if it covers all
+            // revisions to resolve, otherwise invoke the resolver.
+            wireMap = getSnapshotWires(record, mandatory, optional);
+            if (wireMap == null)
             {
-                rethrow = ex;
+                try
+                {
+                    // Resolve the revision.
+                    wireMap = m_resolver.resolve(
+                        new ResolveContextImpl(
+                            this,
+                            getWirings(),
+                            record,
+                            mandatory,
+                            optional,
+                            getFragments()));
+                }
+                catch (ResolutionException ex)
+                {
+                    rethrow = ex;
+                }
+
+                // Once the resolver has wired revisions of the snapshot,
+                // they may no longer be consistent with the snapshot.
+                invalidateSnapshot(wireMap);
             }
 
             // Release resolver hooks, if any.
@@ -1006,6 +1068,68 @@ class StatefulResolver
         return !candidates.isEmpty();
     }
 
+    private synchronized Map<Resource, List<Wire>> getSnapshotWires(
+        ResolverHookRecord record,
+        Set<BundleRevision> mandatory,
+        Set<BundleRevision> optional)
+    {
+        // Resolver hooks and permissions may filter candidates differently
+        // than in the previous session, so always resolve in that case.
+        if ((m_snapshot == null)
+            || !record.getResolverHookRefs().isEmpty()
+            || (System.getSecurityManager() != null)
+            || (mandatory.isEmpty() && optional.isEmpty()))
+        {
+            return null;
+        }
+
+        Map<String, BundleRevision> revisionsById =
+            new HashMap<String, BundleRevision>(m_revisions.size());
+        for (BundleRevision br : m_revisions)
+        {
+            if (br instanceof BundleRevisionImpl)
+            {
+                revisionsById.put(((BundleRevisionImpl) br).getId(), br);
+            }
+        }
+
+        List<BundleRevision> revisions =
+            new ArrayList<BundleRevision>(mandatory.size() + optional.size());
+        revisions.addAll(mandatory);
+        revisions.addAll(optional);
+        Map<Resource, List<Wire>> wireMap = m_snapshot.getWires(revisions, revisionsById);
+        if (wireMap != null)
+        {
+            for (Resource resource : wireMap.keySet())
+            {
+                BundleRevision br = (BundleRevision) resource;
+                if (Util.isSingleton(br) && !isSelectedSingleton(br))
+                {
+                    return null;
+                }
+            }
+            m_logger.log(Logger.LOG_DEBUG,
+                "Reusing previous wiring for " + wireMap.size() + " revision(s).");
+        }
+        return wireMap;
+    }
+
+    private synchronized void invalidateSnapshot(Map<Resource, List<Wire>> wireMap)
+    {
+        if ((m_snapshot != null) && (wireMap != null))
+        {
+            for (Resource resource : wireMap.keySet())
+            {
+                if ((resource instanceof BundleRevision)
+                    && m_snapshot.contains((BundleRevision) resource))
+                {
+                    m_snapshot = null;
+                    return;
+                }
+            }
+        }
+    }
+
     private void markResolvedRevisions(Map<Resource, List<Wire>> wireMap)
         throws ResolveException
     {
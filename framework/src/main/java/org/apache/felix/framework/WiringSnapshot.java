@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.felix.framework.capabilityset.CapabilitySet;
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.Util;
+import org.apache.felix.framework.wiring.BundleRequirementImpl;
+import org.apache.felix.framework.wiring.BundleWireImpl;
+import org.osgi.framework.Constants;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.framework.wiring.BundleRequirement;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+
+/**
+ * The wiring of all resolved bundle revisions, as it was when the framework
+ * was last stopped. Revisions are identified by their revision identifier
+ * (i.e., <tt>&lt;bundle id&gt;.&lt;revision number&gt;</tt>), which does not
+ * change across framework restarts, and requirements and capabilities by
+ * their position in the declaring revision's list of declared requirements
+ * or capabilities. Since positions are only meaningful for the exact same
+ * bundle archives and framework configuration, a snapshot carries a
+ * fingerprint of both, which must be compared by the caller before using it.
+ * <p>
+ * The snapshot does not replace the resolver; it only reproduces a previous
+ * resolution of the same revisions. Every reproduced wire is checked to
+ * still be satisfied by its capability and whenever a revision or one of
+ * its providers is not covered, no wires are returned at all so that the
+ * caller falls back to the resolver.
+**/
+class WiringSnapshot
+{
+    private static final int VERSION = 1;
+
+    private final String m_fingerprint;
+    // Maps revision identifiers to the required wires of the revision.
+    private final Map<String, List<WireEntry>> m_wires;
+    // Maps host revision identifiers to the identifiers of attached fragments.
+    private final Map<String, List<String>> m_fragments;
+
+    private WiringSnapshot(String fingerprint, Map<String, List<WireEntry>> wires)
+    {
+        m_fingerprint = fingerprint;
+        m_wires = wires;
+        m_fragments = new HashMap<String, List<String>>();
+        for (Entry<String, List<WireEntry>> entry : m_wires.entrySet())
+        {
+            for (WireEntry wire : entry.getValue())
+            {
+                if (BundleRevision.HOST_NAMESPACE.equals(wire.m_namespace)
+                    && entry.getKey().equals(wire.m_requirer))
+                {
+                    List<String> fragments = m_fragments.get(wire.m_provider);
+                    if (fragments == null)
+                    {
+                        fragments = new ArrayList<String>();
+                        m_fragments.put(wire.m_provider, fragments);
+                    }
+                    fragments.add(wire.m_requirer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a snapshot of the wiring of the specified revisions. Revisions
+     * that are not resolved are ignored, as are dynamically created wires.
+     * @param fingerprint the fingerprint of the bundle cache and configuration.
+     * @param revisions the revisions whose wiring is recorded.
+     * @return the snapshot.
+    **/
+    static WiringSnapshot create(String fingerprint, Collection<BundleRevision> revisions)
+    {
+        Map<String, List<WireEntry>> wires = new HashMap<String, List<WireEntry>>();
+        for (BundleRevision revision : revisions)
+        {
+            BundleWiring wiring = revision.getWiring();
+            if ((wiring == null) || !(revision instanceof BundleRevisionImpl))
+            {
+                continue;
+            }
+
+            List<WireEntry> entries = new ArrayList<WireEntry>();
+            for (BundleWire wire : wiring.getRequiredWires(null))
+            {
+                BundleRequirement req = wire.getRequirement();
+                if (FelixConstants.RESOLUTION_DYNAMIC.equals(
+                    req.getDirectives().get(Constants.RESOLUTION_DIRECTIVE)))
+                {
+                    continue;
+                }
+
+                int reqIdx = req.getRevision().getDeclaredRequirements(null).indexOf(req);
+                int capIdx = wire.getCapability().getRevision()
+                    .getDeclaredCapabilities(null).indexOf(wire.getCapability());
+                if ((reqIdx < 0) || (capIdx < 0))
+                {
+                    // The wire cannot be identified, so do not record
+                    // the revision at all in order to force a resolve.
+                    entries = null;
+                    break;
+                }
+                entries.add(new WireEntry(
+                    req.getNamespace(),
+                    getId(wire.getRequirer()),
+                    getId(req.getRevision()), reqIdx,
+                    getId(wire.getProvider()),
+                    getId(wire.getCapability().getRevision()), capIdx));
+            }
+            if (entries != null)
+            {
+                wires.put(getId(revision), entries);
+            }
+        }
+        return new WiringSnapshot(fingerprint, wires);
+    }
+
+    static WiringSnapshot read(InputStream is) throws IOException
+    {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != VERSION)
+        {
+            throw new IOException("Unsupported wiring snapshot version.");
+        }
+        String fingerprint = in.readUTF();
+        int revisionCount = in.readInt();
+        Map<String, List<WireEntry>> wires = new HashMap<String, List<WireEntry>>(revisionCount);
+        for (int i = 0; i < revisionCount; i++)
+        {
+            String id = in.readUTF();
+            int wireCount = in.readInt();
+            List<WireEntry> entries = new ArrayList<WireEntry>(wireCount);
+            for (int j = 0; j < wireCount; j++)
+            {
+                entries.add(new WireEntry(
+                    in.readUTF(),
+                    in.readUTF(),
+                    in.readUTF(), in.readInt(),
+                    in.readUTF(),
+                    in.readUTF(), in.readInt()));
+            }
+            wires.put(id, entries);
+        }
+        return new WiringSnapshot(fingerprint, wires);
+    }
+
+    void write(OutputStream os) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(VERSION);
+        out.writeUTF(m_fingerprint);
+        out.writeInt(m_wires.size());
+        for (Entry<String, List<WireEntry>> entry : m_wires.entrySet())
+        {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (WireEntry wire : entry.getValue())
+            {
+                out.writeUTF(wire.m_namespace);
+                out.writeUTF(wire.m_requirer);
+                out.writeUTF(wire.m_reqRevision);
+                out.writeInt(wire.m_reqIndex);
+                out.writeUTF(wire.m_provider);
+                out.writeUTF(wire.m_capRevision);
+                out.writeInt(wire.m_capIndex);
+            }
+        }
+        out.flush();
+    }
+
+    String getFingerprint()
+    {
+        return m_fingerprint;
+    }
+
+    int size()
+    {
+        return m_wires.size();
+    }
+
+    boolean contains(BundleRevision revision)
+    {
+        return (revision instanceof BundleRevisionImpl) && m_wires.containsKey(getId(revision));
+    }
+
+    /**
+     * Reproduces the wire map the resolver would return for resolving the
+     * specified revisions, including any unresolved providers and fragments
+     * they were wired to when the snapshot was taken.
+     * @param revisions the revisions to resolve.
+     * @param revisionsById all known revisions by revision identifier.
+     * @return the wire map or <tt>null</tt> if the snapshot does not cover
+     *         all revisions or one of the recorded wires is no longer valid.
+    **/
+    Map<Resource, List<Wire>> getWires(
+        Collection<BundleRevision> revisions, Map<String, BundleRevision> revisionsById)
+    {
+        Map<Resource, List<Wire>> wireMap = new HashMap<Resource, List<Wire>>();
+        Map<BundleRevision, List<BundleCapability>> capsCache =
+            new HashMap<BundleRevision, List<BundleCapability>>();
+        List<BundleRevision> queue = new ArrayList<BundleRevision>(revisions);
+        while (!queue.isEmpty())
+        {
+            BundleRevision revision = queue.remove(queue.size() - 1);
+            if (wireMap.containsKey(revision))
+            {
+                continue;
+            }
+            else if (revision.getWiring() != null)
+            {
+                // Resolved hosts need not be resolved again, but fragments
+                // cannot be attached to additional hosts from the snapshot.
+                if (Util.isFragment(revision))
+                {
+                    return null;
+                }
+                continue;
+            }
+
+            List<WireEntry> entries = m_wires.get(getId(revision));
+            if (entries == null)
+            {
+                return null;
+            }
+
+            List<Wire> wires = new ArrayList<Wire>(entries.size());
+            for (WireEntry entry : entries)
+            {
+                BundleWire wire = entry.toWire(revisionsById, capsCache);
+                if (wire == null)
+                {
+                    return null;
+                }
+                BundleWiring providerWiring = wire.getProvider().getWiring();
+                if (providerWiring == null)
+                {
+                    queue.add(wire.getProvider());
+                }
+                else if (BundleRevision.HOST_NAMESPACE.equals(entry.m_namespace)
+                    || !providerWiring.getCapabilities(entry.m_namespace)
+                        .contains(wire.getCapability()))
+                {
+                    return null;
+                }
+                wires.add(wire);
+            }
+            wireMap.put(revision, wires);
+
+            List<String> fragments = m_fragments.get(getId(revision));
+            for (int i = 0; (fragments != null) && (i < fragments.size()); i++)
+            {
+                BundleRevision fragment = revisionsById.get(fragments.get(i));
+                if (fragment == null)
+                {
+                    return null;
+                }
+                queue.add(fragment);
+            }
+        }
+        return wireMap;
+    }
+
+    private static String getId(BundleRevision revision)
+    {
+        return ((BundleRevisionImpl) revision).getId();
+    }
+
+    private static class WireEntry
+    {
+        final String m_namespace;
+        final String m_requirer;
+        final String m_reqRevision;
+        final int m_reqIndex;
+        final String m_provider;
+        final String m_capRevision;
+        final int m_capIndex;
+
+        WireEntry(String namespace, String requirer, String reqRevision, int reqIndex,
+            String provider, String capRevision, int capIndex)
+        {
+            m_namespace = namespace;
+            m_requirer = requirer;
+            m_reqRevision = reqRevision;
+            m_reqIndex = reqIndex;
+            m_provider = provider;
+            m_capRevision = capRevision;
+            m_capIndex = capIndex;
+        }
+
+        BundleWire toWire(Map<String, BundleRevision> revisionsById,
+            Map<BundleRevision, List<BundleCapability>> capsCache)
+        {
+            BundleRevision requirer = revisionsById.get(m_requirer);
+            BundleRevision reqRevision = revisionsById.get(m_reqRevision);
+            BundleRevision provider = revisionsById.get(m_provider);
+            BundleRevision capRevision = revisionsById.get(m_capRevision);
+            if ((requirer == null) || (reqRevision == null)
+                || (provider == null) || (capRevision == null))
+            {
+                return null;
+            }
+
+            List<BundleRequirement> reqs = reqRevision.getDeclaredRequirements(null);
+            // Some revisions, like the system bundle, copy their declared
+            // capabilities on every call, so only get them once.
+            List<BundleCapability> caps = capsCache.get(capRevision);
+            if (caps == null)
+            {
+                caps = capRevision.getDeclaredCapabilities(null);
+                capsCache.put(capRevision, caps);
+            }
+            if ((m_reqIndex >= reqs.size()) || (m_capIndex >= caps.size()))
+            {
+                return null;
+            }
+
+            BundleRequirement req = reqs.get(m_reqIndex);
+            BundleCapability cap = caps.get(m_capIndex);
+            if (!m_namespace.equals(req.getNamespace())
+                || !m_namespace.equals(cap.getNamespace())
+                || !(req instanceof BundleRequirementImpl)
+                || !CapabilitySet.matches(cap, ((BundleRequirementImpl) req).getFilter()))
+            {
+                return null;
+            }
+
+            return new BundleWireImpl(requirer, req, provider, cap);
+        }
+    }
+}
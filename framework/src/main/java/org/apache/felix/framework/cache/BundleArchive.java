@@ -343,8 +343,10 @@ public class BundleArchive
      * bundle is refresh, the native library will have a unique name.
      * As a result of the unique name, the JVM will then reload the
      * native library without a problem.
+     * @return the refresh counter value of the bundle.
+     * @throws Exception if any error occurs.
     **/
-    private long getRefreshCount() throws Exception
+    public synchronized long getRefreshCount() throws Exception
     {
         return m_refreshCount;
     }
@@ -75,6 +75,23 @@ import java.util.Map;
  *       string provides control over the size of the internal buffer of the
  *       disk cache for performance reasons.
  *   </li>
+ *   <li><tt>felix.cache.index</tt> - Enables or disables the index of the
+ *       entries of bundle JAR files, which is persisted in the revision
+ *       directory and used to look up absent classes and resources without
+ *       accessing the JAR file. This is enabled by default; set this property
+ *       to <tt>false</tt> to disable it.
+ *   </li>
+ *   <li><tt>felix.cache.index.directories</tt> - Enables the entry index
+ *       for bundles installed from a directory. Since such directories may
+ *       be changed in place, this is disabled by default; entries added to
+ *       an indexed directory are only found after the bundle is updated.
+ *   </li>
+ *   <li><tt>felix.cache.mmap</tt> - Enables reading the entries of bundle
+ *       JAR files from a memory mapping of the file, which avoids copying
+ *       stored entries. Since mapped files cannot be deleted on some
+ *       platforms until the mapping is garbage collected, this is disabled
+ *       by default.
+ *   </li>
  * <p>
  * For specific information on how to configure the Felix framework, refer
  * to the Felix framework usage documentation.
@@ -87,6 +104,9 @@ public class BundleCache
     public static final String CACHE_ROOTDIR_PROP = "felix.cache.rootdir";
     public static final String CACHE_LOCKING_PROP = "felix.cache.locking";
     public static final String CACHE_FILELIMIT_PROP = "felix.cache.filelimit";
+    public static final String CACHE_INDEX_PROP = "felix.cache.index";
+    public static final String CACHE_INDEX_DIRECTORIES_PROP = "felix.cache.index.directories";
+    public static final String CACHE_MMAP_PROP = "felix.cache.mmap";
     private static final ThreadLocal m_defaultBuffer = new ThreadLocal();
     private static volatile int DEFAULT_BUFFER = 1024 * 64;
 
@@ -369,6 +389,12 @@ public class BundleCache
 
     public synchronized void release()
     {
+        m_logger.log(
+            Logger.LOG_DEBUG,
+            "Zip files opened: " + m_zipFactory.getOpenedCount()
+            + ", reopened: " + m_zipFactory.getReopenedCount()
+            + ", weakly closed due to file limit: " + m_zipFactory.getEvictedCount());
+
         if (m_lock != null)
         {
             try
@@ -386,6 +412,22 @@ public class BundleCache
         }
     }
 
+    /* package */ static boolean isIndexEnabled(Map configMap, boolean directory)
+    {
+        Object enabled = configMap.get(
+            directory ? CACHE_INDEX_DIRECTORIES_PROP : CACHE_INDEX_PROP);
+        return (enabled == null)
+            ? !directory
+            : Boolean.TRUE.toString().equalsIgnoreCase(enabled.toString());
+    }
+
+    /* package */ static boolean isMmapEnabled(Map configMap)
+    {
+        Object enabled = configMap.get(CACHE_MMAP_PROP);
+        return (enabled != null)
+            && Boolean.TRUE.toString().equalsIgnoreCase(enabled.toString());
+    }
+
     /* package */ static SecureAction getSecureAction()
     {
         return m_secureAction;
@@ -76,8 +76,12 @@ class DirectoryRevision extends BundleArchiveRevision
 
     public Content getContent() throws Exception
     {
-        return new DirectoryContent(getLogger(), getConfig(), m_zipFactory,
+        Content content = new DirectoryContent(getLogger(), getConfig(), m_zipFactory,
             this, getRevisionRootDir(), m_refDir);
+        // The referenced directory may be changed in place at any time, so
+        // its index is neither persisted nor used unless explicitly enabled.
+        return BundleCache.isIndexEnabled(getConfig(), true)
+            ? IndexedContent.index(content) : content;
     }
 
     protected void close() throws Exception
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.felix.framework.util.FelixConstants;
+
+/**
+ * <p>
+ * This class wraps a content with an index of its entry names, which is
+ * used to answer requests for absent entries in memory instead of
+ * looking them up in the JAR file or the file system. Requests for
+ * entries that may exist are always passed to the wrapped content, so
+ * the index must contain all entries of the wrapped content and is only
+ * valid as long as the content does not change. Embedded contents are
+ * indexed as well when they are retrieved.
+ * </p>
+**/
+public class IndexedContent implements Content
+{
+    private static final int INDEX_VERSION = 1;
+
+    private final Content m_content;
+    private final Index m_index;
+
+    public IndexedContent(Content content, String[] entries)
+    {
+        this(content, new Index(entries));
+    }
+
+    IndexedContent(Content content, Index index)
+    {
+        m_content = content;
+        m_index = index;
+    }
+
+    /**
+     * <p>
+     * Returns the wrapped content.
+     * </p>
+     * @return the wrapped content.
+    **/
+    public Content getContent()
+    {
+        return m_content;
+    }
+
+    public void close()
+    {
+        m_content.close();
+    }
+
+    public boolean hasEntry(String name) throws IllegalStateException
+    {
+        return mayContain(name) && m_content.hasEntry(name);
+    }
+
+    public Enumeration<String> getEntries()
+    {
+        // Spec says to return null if there are no entries.
+        return (m_index.m_order.length > 0) ? new EntriesEnumeration(m_index) : null;
+    }
+
+    public byte[] getEntryAsBytes(String name) throws IllegalStateException
+    {
+        return mayContain(name) ? m_content.getEntryAsBytes(name) : null;
+    }
+
+    public InputStream getEntryAsStream(String name)
+        throws IllegalStateException, IOException
+    {
+        return mayContain(name) ? m_content.getEntryAsStream(name) : null;
+    }
+
+    public URL getEntryAsURL(String name)
+    {
+        return mayContain(name) ? m_content.getEntryAsURL(name) : null;
+    }
+
+    public Content getEntryAsContent(String name)
+    {
+        if (name.equals(FelixConstants.CLASS_PATH_DOT))
+        {
+            Content content = m_content.getEntryAsContent(name);
+            return (content == null)
+                ? null : new IndexedContent(content, m_index);
+        }
+        return mayContain(name) ? index(m_content.getEntryAsContent(name)) : null;
+    }
+
+    public String getEntryAsNativeLibrary(String name)
+    {
+        return mayContain(name) ? m_content.getEntryAsNativeLibrary(name) : null;
+    }
+
+    public String toString()
+    {
+        return "INDEXED " + m_content;
+    }
+
+    /**
+     * Determines whether the wrapped content may contain the named entry,
+     * which is the case if the index contains the entry as a file or as a
+     * directory. Names which the wrapped content may normalize (e.g., with
+     * leading slashes or relative path segments) are not checked.
+    **/
+    private boolean mayContain(String name)
+    {
+        if ((name.length() == 0) || (name.charAt(0) == '/')
+            || (name.indexOf('\\') >= 0) || name.contains("//")
+            || name.contains("./"))
+        {
+            return true;
+        }
+        String[] sorted = m_index.m_sorted;
+        if (Arrays.binarySearch(sorted, name) >= 0)
+        {
+            return true;
+        }
+        return name.endsWith("/")
+            ? Arrays.binarySearch(sorted, name.substring(0, name.length() - 1)) >= 0
+            : Arrays.binarySearch(sorted, name + "/") >= 0;
+    }
+
+    /**
+     * <p>
+     * Wraps the specified content with an index of its current entries.
+     * </p>
+     * @param content the content to index or <tt>null</tt>.
+     * @return the indexed content or <tt>null</tt> if the content is
+     *         <tt>null</tt>.
+    **/
+    public static Content index(Content content)
+    {
+        return (content == null) ? null : new IndexedContent(content, listEntries(content));
+    }
+
+    static String[] listEntries(Content content)
+    {
+        List<String> entries = new ArrayList<String>();
+        Enumeration<String> e = content.getEntries();
+        while ((e != null) && e.hasMoreElements())
+        {
+            entries.add(e.nextElement());
+        }
+        return entries.toArray(new String[entries.size()]);
+    }
+
+    /**
+     * The entry names of a content, sorted for lookups, and the order of the
+     * entries in the content, so that only one array of names is kept.
+    **/
+    static final class Index
+    {
+        // The entry names in natural order.
+        final String[] m_sorted;
+        // The positions in the sorted names in the order of the content.
+        final int[] m_order;
+
+        Index(String[] entries)
+        {
+            m_sorted = entries.clone();
+            Arrays.sort(m_sorted);
+            m_order = new int[entries.length];
+            for (int i = 0; i < entries.length; i++)
+            {
+                m_order[i] = Arrays.binarySearch(m_sorted, entries[i]);
+            }
+        }
+    }
+
+    private static class EntriesEnumeration implements Enumeration<String>
+    {
+        private final Index m_index;
+        private int m_next = 0;
+
+        EntriesEnumeration(Index index)
+        {
+            m_index = index;
+        }
+
+        public boolean hasMoreElements()
+        {
+            return m_next < m_index.m_order.length;
+        }
+
+        public String nextElement()
+        {
+            if (!hasMoreElements())
+            {
+                throw new NoSuchElementException();
+            }
+            return m_index.m_sorted[m_index.m_order[m_next++]];
+        }
+    }
+
+    /**
+     * <p>
+     * Reads a persisted index, if it was written for a file with the
+     * specified length and last modification time.
+     * </p>
+     * @param indexFile the file containing the index.
+     * @param length the expected length of the indexed file.
+     * @param lastModified the expected modification time of the indexed file.
+     * @return the entry names or <tt>null</tt> if the index does not exist
+     *         or is out of date.
+     * @throws Exception if any error occurs.
+    **/
+    static String[] readIndex(File indexFile, long length, long lastModified)
+        throws Exception
+    {
+        if (!BundleCache.getSecureAction().fileExists(indexFile))
+        {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            BundleCache.getSecureAction().getFileInputStream(indexFile)));
+        try
+        {
+            if ((in.readInt() != INDEX_VERSION)
+                || (in.readLong() != length) || (in.readLong() != lastModified))
+            {
+                return null;
+            }
+            String[] entries = new String[in.readInt()];
+            for (int i = 0; i < entries.length; i++)
+            {
+                entries[i] = in.readUTF();
+            }
+            return entries;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * <p>
+     * Persists an index for a file with the specified length and last
+     * modification time.
+     * </p>
+     * @param indexFile the file to write the index to.
+     * @param length the length of the indexed file.
+     * @param lastModified the modification time of the indexed file.
+     * @param entries the entry names.
+     * @throws Exception if any error occurs.
+    **/
+    static void writeIndex(File indexFile, long length, long lastModified, String[] entries)
+        throws Exception
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            BundleCache.getSecureAction().getFileOutputStream(indexFile)));
+        try
+        {
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(entries.length);
+            for (String entry : entries)
+            {
+                out.writeUTF(entry);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
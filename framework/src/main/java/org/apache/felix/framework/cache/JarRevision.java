@@ -47,10 +47,15 @@ import java.util.zip.ZipEntry;
 class JarRevision extends BundleArchiveRevision
 {
     private static final transient String BUNDLE_JAR_FILE = "bundle.jar";
+    private static final transient String BUNDLE_INDEX_FILE = "bundle.index";
 
     private final WeakZipFileFactory m_zipFactory;
     private final File m_bundleFile;
     private final WeakZipFile m_zipFile;
+    private IndexedContent.Index m_index;
+    private MappedJarFile m_mappedFile;
+    private boolean m_mappingFailed;
+    private boolean m_closed;
 
     public JarRevision(
         Logger logger, Map configMap, WeakZipFileFactory zipFactory,
@@ -107,12 +112,24 @@ class JarRevision extends BundleArchiveRevision
 
     public Content getContent() throws Exception
     {
-        return new JarContent(getLogger(), getConfig(), m_zipFactory,
-            this, getRevisionRootDir(), m_bundleFile, m_zipFile);
+        MappedJarFile mappedFile = getMappedFile();
+        Content content = (mappedFile != null)
+            ? new MappedJarContent(getLogger(), getConfig(), m_zipFactory,
+                this, getRevisionRootDir(), m_zipFile, mappedFile)
+            : new JarContent(getLogger(), getConfig(), m_zipFactory,
+                this, getRevisionRootDir(), m_bundleFile, m_zipFile);
+        return BundleCache.isIndexEnabled(getConfig(), false)
+            ? new IndexedContent(content, getIndex(content)) : content;
     }
 
     protected void close() throws Exception
     {
+        synchronized (this)
+        {
+            // Do not map the JAR file again once the revision is closed.
+            m_mappedFile = null;
+            m_closed = true;
+        }
         m_zipFile.close();
     }
 
@@ -120,6 +137,69 @@ class JarRevision extends BundleArchiveRevision
     // Private methods.
     //
 
+    private synchronized MappedJarFile getMappedFile()
+    {
+        if ((m_mappedFile == null) && !m_mappingFailed && !m_closed
+            && BundleCache.isMmapEnabled(getConfig()))
+        {
+            try
+            {
+                m_mappedFile = MappedJarFile.open(m_bundleFile);
+            }
+            catch (Exception ex)
+            {
+                getLogger().log(
+                    Logger.LOG_WARNING,
+                    "Unable to map bundle JAR file: " + m_bundleFile, ex);
+            }
+            // Use the ZIP file if the JAR file cannot be mapped.
+            m_mappingFailed = (m_mappedFile == null);
+        }
+        return m_mappedFile;
+    }
+
+    private synchronized IndexedContent.Index getIndex(Content content)
+    {
+        if (m_index != null)
+        {
+            return m_index;
+        }
+
+        // Try to use the index persisted in the revision directory, which
+        // is only valid for the same bundle JAR file.
+        File indexFile = new File(getRevisionRootDir(), BUNDLE_INDEX_FILE);
+        long length = m_bundleFile.length();
+        long lastModified = m_bundleFile.lastModified();
+        String[] entries = null;
+        try
+        {
+            entries = IndexedContent.readIndex(indexFile, length, lastModified);
+        }
+        catch (Exception ex)
+        {
+            getLogger().log(
+                Logger.LOG_WARNING,
+                getClass().getName() + ": Unable to read bundle entry index.", ex);
+        }
+
+        if (entries == null)
+        {
+            entries = IndexedContent.listEntries(content);
+            try
+            {
+                IndexedContent.writeIndex(indexFile, length, lastModified, entries);
+            }
+            catch (Exception ex)
+            {
+                getLogger().log(
+                    Logger.LOG_WARNING,
+                    getClass().getName() + ": Unable to write bundle entry index.", ex);
+            }
+        }
+        m_index = new IndexedContent.Index(entries);
+        return m_index;
+    }
+
     private void initialize(boolean byReference, InputStream is)
         throws Exception
     {
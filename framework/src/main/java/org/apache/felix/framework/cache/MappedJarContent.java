@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Enumeration;
+import java.util.Map;
+
+import org.apache.felix.framework.Logger;
+import org.apache.felix.framework.util.FelixConstants;
+import org.apache.felix.framework.util.WeakZipFileFactory;
+import org.apache.felix.framework.util.WeakZipFileFactory.WeakZipFile;
+
+/**
+ * <p>
+ * This class implements a JAR content which reads entries from a memory
+ * mapping of the JAR file instead of through <tt>java.util.zip</tt>, which
+ * avoids copying stored entries and reopening closed ZIP files. Embedded
+ * JAR files and native libraries are still extracted using the ZIP file.
+ * Local URLs of entries keep the <tt>jar:</tt> form, but are opened from the
+ * mapping as well.
+ * </p>
+**/
+class MappedJarContent extends JarContent
+{
+    private final Logger m_logger;
+    private final Map m_configMap;
+    private final WeakZipFileFactory m_zipFactory;
+    private final Object m_revisionLock;
+    private final File m_rootDir;
+    private final WeakZipFile m_zipFile;
+    private final MappedJarFile m_mappedFile;
+    private final URLStreamHandler m_handler = new MappedJarURLHandler();
+
+    public MappedJarContent(Logger logger, Map configMap, WeakZipFileFactory zipFactory,
+        Object revisionLock, File rootDir, WeakZipFile zipFile, MappedJarFile mappedFile)
+    {
+        super(logger, configMap, zipFactory, revisionLock,
+            rootDir, mappedFile.getFile(), zipFile);
+        m_logger = logger;
+        m_configMap = configMap;
+        m_zipFactory = zipFactory;
+        m_revisionLock = revisionLock;
+        m_rootDir = rootDir;
+        m_zipFile = zipFile;
+        m_mappedFile = mappedFile;
+    }
+
+    public boolean hasEntry(String name) throws IllegalStateException
+    {
+        return m_mappedFile.getEntry(name) != null;
+    }
+
+    public Enumeration<String> getEntries()
+    {
+        Enumeration<String> e = m_mappedFile.names();
+
+        // Spec says to return null if there are no entries.
+        return (e.hasMoreElements()) ? e : null;
+    }
+
+    public byte[] getEntryAsBytes(String name) throws IllegalStateException
+    {
+        MappedJarFile.Entry entry = m_mappedFile.getEntry(name);
+        if (entry == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return m_mappedFile.getBytes(entry);
+        }
+        catch (Exception ex)
+        {
+            m_logger.log(
+                Logger.LOG_ERROR,
+                "MappedJarContent: Unable to read bytes for file " + name
+                + " in ZIP file " + getFile().getAbsolutePath(), ex);
+            return null;
+        }
+    }
+
+    public InputStream getEntryAsStream(String name)
+        throws IllegalStateException, IOException
+    {
+        MappedJarFile.Entry entry = m_mappedFile.getEntry(name);
+        if (entry == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return m_mappedFile.getInputStream(entry);
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
+    public URL getEntryAsURL(String name)
+    {
+        if (hasEntry(name))
+        {
+            try
+            {
+                return BundleCache.getSecureAction().createURL(null,
+                    "jar:" + getFile().toURI().toURL().toExternalForm() + "!/" + name,
+                    m_handler);
+            }
+            catch (Exception ex)
+            {
+                // Creating a URL with a custom handler may not be permitted,
+                // so fall back to an ordinary JAR URL.
+                return super.getEntryAsURL(name);
+            }
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    public Content getEntryAsContent(String entryName)
+    {
+        // If the entry name refers to the content itself, then
+        // just return it immediately.
+        if (entryName.equals(FelixConstants.CLASS_PATH_DOT))
+        {
+            return new MappedJarContent(m_logger, m_configMap, m_zipFactory,
+                m_revisionLock, m_rootDir, m_zipFile, m_mappedFile);
+        }
+        return super.getEntryAsContent(entryName);
+    }
+
+    public String toString()
+    {
+        return "MAPPED JAR " + getFile().getPath();
+    }
+
+    private class MappedJarURLHandler extends URLStreamHandler
+    {
+        protected URLConnection openConnection(URL u) throws IOException
+        {
+            String spec = u.getFile();
+            int idx = spec.indexOf("!/");
+            final MappedJarFile.Entry entry = (idx < 0)
+                ? null : m_mappedFile.getEntry(spec.substring(idx + 2));
+            if (entry == null)
+            {
+                throw new IOException("Resource does not exist: " + u);
+            }
+
+            return new URLConnection(u)
+            {
+                public void connect()
+                {
+                    connected = true;
+                }
+
+                public InputStream getInputStream() throws IOException
+                {
+                    connect();
+                    return m_mappedFile.getInputStream(entry);
+                }
+
+                public int getContentLength()
+                {
+                    return entry.getSize();
+                }
+
+                public long getLastModified()
+                {
+                    return getFile().lastModified();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.cache;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * <p>
+ * This class provides read access to a JAR file which is mapped into
+ * memory. The central directory is parsed once when the file is opened.
+ * Entries which are stored without compression are returned as slices of
+ * the mapping, while compressed entries are inflated directly from it.
+ * Only the common subset of the ZIP format is supported, i.e., no ZIP64
+ * archives, no encryption, and only the stored and deflated methods;
+ * callers must fall back to <tt>java.util.zip</tt> for anything else.
+ * </p>
+ * <p>
+ * The mapping is never modified after the file is opened, so instances of
+ * this class are safe to use from multiple threads. A mapping is released
+ * by the garbage collector once it is no longer referenced; until then,
+ * some platforms do not allow the file to be deleted.
+ * </p>
+**/
+class MappedJarFile
+{
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_HEADER_SIG = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    static final int STORED = 0;
+    static final int DEFLATED = 8;
+
+    private final File m_file;
+    private final ByteBuffer m_buffer;
+    // Entries in the order of the central directory.
+    private final List<Entry> m_entries;
+    private final Map<String, Entry> m_entryMap;
+
+    private MappedJarFile(File file, ByteBuffer buffer, List<Entry> entries)
+    {
+        m_file = file;
+        m_buffer = buffer;
+        m_entries = entries;
+        m_entryMap = new HashMap<String, Entry>(entries.size() * 4 / 3 + 1);
+        for (Entry entry : entries)
+        {
+            if (!m_entryMap.containsKey(entry.m_name))
+            {
+                m_entryMap.put(entry.m_name, entry);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Maps the specified JAR file into memory.
+     * </p>
+     * @param file the JAR file to map.
+     * @return the mapped file or <tt>null</tt> if the file is too large or
+     *         uses a format which is not supported.
+     * @throws IOException if the file cannot be read or is not a ZIP file.
+    **/
+    static MappedJarFile open(File file) throws IOException
+    {
+        FileInputStream fis = BundleCache.getSecureAction().getFileInputStream(file);
+        try
+        {
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            List<Entry> entries = readCentralDirectory(buffer);
+            return (entries == null) ? null : new MappedJarFile(file, buffer, entries);
+        }
+        finally
+        {
+            // The mapping remains valid after closing the channel.
+            fis.close();
+        }
+    }
+
+    private static List<Entry> readCentralDirectory(ByteBuffer buffer) throws IOException
+    {
+        // Search backwards for the end of central directory record, which
+        // may be followed by a comment.
+        int end = -1;
+        int min = Math.max(0, buffer.limit() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+        for (int i = buffer.limit() - END_HEADER_SIZE; i >= min; i--)
+        {
+            if (buffer.getInt(i) == END_HEADER_SIG)
+            {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0)
+        {
+            throw new ZipException("End of central directory not found.");
+        }
+
+        int count = buffer.getShort(end + 10) & 0xffff;
+        long cdSize = buffer.getInt(end + 12) & 0xffffffffL;
+        long cdOffset = buffer.getInt(end + 16) & 0xffffffffL;
+        if ((count == 0xffff) || (cdSize == 0xffffffffL) || (cdOffset == 0xffffffffL))
+        {
+            // ZIP64 archives are not supported.
+            return null;
+        }
+        if (cdOffset + cdSize > end)
+        {
+            throw new ZipException("Invalid central directory.");
+        }
+
+        List<Entry> entries = new ArrayList<Entry>(count);
+        int pos = (int) cdOffset;
+        for (int i = 0; i < count; i++)
+        {
+            if ((pos + CENTRAL_HEADER_SIZE > end) || (buffer.getInt(pos) != CENTRAL_HEADER_SIG))
+            {
+                throw new ZipException("Invalid central directory entry.");
+            }
+            int flags = buffer.getShort(pos + 8) & 0xffff;
+            int method = buffer.getShort(pos + 10) & 0xffff;
+            long csize = buffer.getInt(pos + 20) & 0xffffffffL;
+            long size = buffer.getInt(pos + 24) & 0xffffffffL;
+            int nameLen = buffer.getShort(pos + 28) & 0xffff;
+            int extraLen = buffer.getShort(pos + 30) & 0xffff;
+            int commentLen = buffer.getShort(pos + 32) & 0xffff;
+            long offset = buffer.getInt(pos + 42) & 0xffffffffL;
+
+            byte[] name = new byte[nameLen];
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(pos + CENTRAL_HEADER_SIZE);
+            dup.get(name);
+
+            if (((flags & 1) != 0) || ((method != STORED) && (method != DEFLATED))
+                || (csize > Integer.MAX_VALUE) || (size > Integer.MAX_VALUE)
+                || (offset + csize > end))
+            {
+                // Encrypted entries and unknown compression methods are not
+                // supported; neither are entries which cannot be sliced.
+                return null;
+            }
+
+            entries.add(new Entry(new String(name, "UTF-8"),
+                method, (int) csize, (int) size, (int) offset));
+            pos += CENTRAL_HEADER_SIZE + nameLen + extraLen + commentLen;
+        }
+        return entries;
+    }
+
+    File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * <p>
+     * Returns the entry with the specified name or, like
+     * <tt>java.util.zip.ZipFile</tt>, the directory entry with that name.
+     * </p>
+     * @param name the entry name.
+     * @return the entry or <tt>null</tt>.
+    **/
+    Entry getEntry(String name)
+    {
+        Entry entry = m_entryMap.get(name);
+        if ((entry == null) && !name.endsWith("/"))
+        {
+            entry = m_entryMap.get(name + "/");
+        }
+        return entry;
+    }
+
+    Enumeration<String> names()
+    {
+        List<String> names = new ArrayList<String>(m_entries.size());
+        for (Entry entry : m_entries)
+        {
+            names.add(entry.m_name);
+        }
+        return Collections.enumeration(names);
+    }
+
+    /**
+     * <p>
+     * Returns the raw data of the entry as a read-only slice of the
+     * mapping; the data is compressed unless the entry is stored.
+     * </p>
+     * @param entry the entry.
+     * @return the entry data.
+     * @throws ZipException if the local header of the entry is invalid.
+    **/
+    ByteBuffer getData(Entry entry) throws ZipException
+    {
+        int start = entry.m_dataOffset;
+        if (start < 0)
+        {
+            int pos = entry.m_offset;
+            if ((pos + LOCAL_HEADER_SIZE > m_buffer.limit())
+                || (m_buffer.getInt(pos) != LOCAL_HEADER_SIG))
+            {
+                throw new ZipException("Invalid local header for " + entry.m_name);
+            }
+            start = pos + LOCAL_HEADER_SIZE
+                + (m_buffer.getShort(pos + 26) & 0xffff)
+                + (m_buffer.getShort(pos + 28) & 0xffff);
+            if (start + entry.m_csize > m_buffer.limit())
+            {
+                throw new ZipException("Invalid entry data for " + entry.m_name);
+            }
+            entry.m_dataOffset = start;
+        }
+        ByteBuffer data = m_buffer.duplicate();
+        data.limit(start + entry.m_csize);
+        data.position(start);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    byte[] getBytes(Entry entry) throws IOException
+    {
+        ByteBuffer data = getData(entry);
+        if (entry.m_method == STORED)
+        {
+            byte[] bytes = new byte[entry.m_size];
+            data.get(bytes);
+            return bytes;
+        }
+
+        // Raw deflate data may need a trailing dummy byte, so add it
+        // to the input as java.util.zip.ZipFile does.
+        byte[] input = new byte[entry.m_csize + 1];
+        data.get(input, 0, entry.m_csize);
+        Inflater inflater = new Inflater(true);
+        try
+        {
+            inflater.setInput(input);
+            byte[] bytes = new byte[entry.m_size];
+            int len = 0;
+            while (len < bytes.length)
+            {
+                int n = inflater.inflate(bytes, len, bytes.length - len);
+                if ((n == 0) && (inflater.finished()
+                    || inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    throw new EOFException("Unexpected end of " + entry.m_name);
+                }
+                len += n;
+            }
+            return bytes;
+        }
+        catch (DataFormatException ex)
+        {
+            throw new ZipException("Invalid compressed data for " + entry.m_name
+                + ": " + ex.getMessage());
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    InputStream getInputStream(Entry entry) throws IOException
+    {
+        InputStream is = new ByteBufferInputStream(getData(entry));
+        return (entry.m_method == STORED)
+            ? is : new MappedInflaterInputStream(is, entry.m_size);
+    }
+
+    static class Entry
+    {
+        final String m_name;
+        final int m_method;
+        final int m_csize;
+        final int m_size;
+        final int m_offset;
+        // Offset of the entry data, determined from the local header.
+        volatile int m_dataOffset = -1;
+
+        Entry(String name, int method, int csize, int size, int offset)
+        {
+            m_name = name;
+            m_method = method;
+            m_csize = csize;
+            m_size = size;
+            m_offset = offset;
+        }
+
+        String getName()
+        {
+            return m_name;
+        }
+
+        int getSize()
+        {
+            return m_size;
+        }
+
+        boolean isDirectory()
+        {
+            return m_name.endsWith("/");
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer m_data;
+
+        ByteBufferInputStream(ByteBuffer data)
+        {
+            m_data = data;
+        }
+
+        public int read()
+        {
+            return m_data.hasRemaining() ? (m_data.get() & 0xff) : -1;
+        }
+
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!m_data.hasRemaining())
+            {
+                return -1;
+            }
+            len = Math.min(len, m_data.remaining());
+            m_data.get(b, off, len);
+            return len;
+        }
+
+        public long skip(long n)
+        {
+            int skipped = (int) Math.max(0, Math.min(n, m_data.remaining()));
+            m_data.position(m_data.position() + skipped);
+            return skipped;
+        }
+
+        public int available()
+        {
+            return m_data.remaining();
+        }
+    }
+
+    private static class MappedInflaterInputStream extends InflaterInputStream
+    {
+        private final int m_size;
+        private boolean m_eof = false;
+        private boolean m_closed = false;
+
+        MappedInflaterInputStream(InputStream is, int size)
+        {
+            super(is, new Inflater(true), Math.max(64, Math.min(size, 8192)));
+            m_size = size;
+        }
+
+        protected void fill() throws IOException
+        {
+            if (m_eof)
+            {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1)
+            {
+                // Raw deflate data may need a trailing dummy byte.
+                buf[0] = 0;
+                len = 1;
+                m_eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        public int available() throws IOException
+        {
+            if (m_closed)
+            {
+                return 0;
+            }
+            long avail = m_size - inf.getBytesWritten();
+            return (avail > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) Math.max(0, avail);
+        }
+
+        public void close() throws IOException
+        {
+            if (!m_closed)
+            {
+                m_closed = true;
+                super.close();
+                inf.end();
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +35,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.felix.framework.util.SecureAction;
@@ -46,7 +49,12 @@ import org.osgi.resource.Capability;
 public class CapabilitySet
 {
     private final SortedMap<String, Map<Object, Set<BundleCapability>>> m_indices; // Should also be concurrent!
+    private final SortedMap<String, RangeIndex> m_rangeIndices;
     private final Set<Capability> m_capSet = Collections.newSetFromMap(new ConcurrentHashMap<Capability, Boolean>());
+    // Key of the capabilities with attribute values that are not strings.
+    // Filter values are strings, so these are compared to the filter value
+    // instead of being looked up by it.
+    private static final Object UNINDEXED = new Object();
     private final static SecureAction m_secureAction = new SecureAction();
 
     public void dump()
@@ -79,6 +87,20 @@ public class CapabilitySet
     }
 
     public CapabilitySet(final List<String> indexProps, final boolean caseSensitive)
+    {
+        this(indexProps, null, caseSensitive);
+    }
+
+    /**
+     * Creates a capability set.
+     * @param indexProps The attributes to index by value, used for equality
+     *        filters.
+     * @param rangeIndexProps The attributes to index in sorted order, used for
+     *        equality and range filters on version and numeric values.
+     * @param caseSensitive Whether attribute names are case sensitive.
+     */
+    public CapabilitySet(
+        final List<String> indexProps, final List<String> rangeIndexProps, final boolean caseSensitive)
     {
         m_indices = (caseSensitive)
             ? new ConcurrentSkipListMap<String, Map<Object, Set<BundleCapability>>>()
@@ -89,6 +111,13 @@ public class CapabilitySet
             m_indices.put(
                 indexProps.get(i), new ConcurrentHashMap<Object, Set<BundleCapability>>());
         }
+        m_rangeIndices = (caseSensitive)
+            ? new ConcurrentSkipListMap<String, RangeIndex>()
+            : new ConcurrentSkipListMap<String, RangeIndex>(StringComparator.COMPARATOR);
+        for (int i = 0; (rangeIndexProps != null) && (i < rangeIndexProps.size()); i++)
+        {
+            m_rangeIndices.put(rangeIndexProps.get(i), new RangeIndex());
+        }
     }
 
     public void addCapability(final BundleCapability cap)
@@ -96,9 +125,14 @@ public class CapabilitySet
         m_capSet.add(cap);
 
         // Index capability.
+        indexCapability(cap, cap.getAttributes());
+    }
+
+    private void indexCapability(final BundleCapability cap, final Map<String, Object> attrs)
+    {
         for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
         {
-            Object value = cap.getAttributes().get(entry.getKey());
+            Object value = attrs.get(entry.getKey());
             if (value != null)
             {
                 if (value.getClass().isArray())
@@ -123,13 +157,37 @@ public class CapabilitySet
                 }
             }
         }
+
+        for (Entry<String, RangeIndex> entry : m_rangeIndices.entrySet())
+        {
+            Object value = attrs.get(entry.getKey());
+            if (value != null)
+            {
+                if (value.getClass().isArray())
+                {
+                    value = convertArrayToList(value);
+                }
+
+                if (value instanceof Collection)
+                {
+                    for (Object o : (Collection) value)
+                    {
+                        entry.getValue().add(cap, o);
+                    }
+                }
+                else
+                {
+                    entry.getValue().add(cap, value);
+                }
+            }
+        }
     }
 
     private void indexCapability(
         ConcurrentMap<Object, Set<BundleCapability>> index, BundleCapability cap, Object capValue)
     {
         Set<BundleCapability> caps = Collections.newSetFromMap(new ConcurrentHashMap<BundleCapability, Boolean>());
-        Set<BundleCapability> prevval = index.putIfAbsent(capValue, caps);
+        Set<BundleCapability> prevval = index.putIfAbsent(getIndexKey(capValue), caps);
         if (prevval != null)
             caps = prevval;
         caps.add(cap);
@@ -139,31 +197,165 @@ public class CapabilitySet
     {
         if (m_capSet.remove(cap))
         {
-            for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+            deindexCapability(cap, cap.getAttributes());
+        }
+    }
+
+    /**
+     * Updates the indices after the attributes of a capability in this set
+     * have changed. Callers must not change the attributes concurrently.
+     * Only the entries of changed values are updated, and the entries of
+     * new values are added before the stale ones are removed, so that a
+     * concurrent lookup by an unchanged value always finds the capability.
+     * @param cap The capability with the new attributes.
+     * @param oldAttrs The attributes the capability was indexed with.
+     */
+    public void updateCapability(final BundleCapability cap, final Map<String, Object> oldAttrs)
+    {
+        if ((m_indices.isEmpty() && m_rangeIndices.isEmpty()) || !m_capSet.contains(cap))
+        {
+            return;
+        }
+        final Map<String, Object> newAttrs = cap.getAttributes();
+
+        for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+        {
+            final Set<Object> oldKeys = new HashSet<Object>();
+            for (Object o : getValues(oldAttrs.get(entry.getKey())))
+            {
+                oldKeys.add(getIndexKey(o));
+            }
+            final Set<Object> newKeys = new HashSet<Object>();
+            for (Object o : getValues(newAttrs.get(entry.getKey())))
             {
-                Object value = cap.getAttributes().get(entry.getKey());
-                if (value != null)
+                newKeys.add(getIndexKey(o));
+            }
+            if (!oldKeys.equals(newKeys))
+            {
+                ConcurrentMap<Object, Set<BundleCapability>> index =
+                    (ConcurrentMap<Object, Set<BundleCapability>>) entry.getValue();
+                for (Object key : newKeys)
                 {
-                    if (value.getClass().isArray())
+                    if (!oldKeys.contains(key))
                     {
-                        value = convertArrayToList(value);
+                        indexCapability(index, cap, key);
                     }
+                }
+                for (Object key : oldKeys)
+                {
+                    if (!newKeys.contains(key))
+                    {
+                        deindexCapability(index, cap, key);
+                    }
+                }
+            }
+        }
 
-                    Map<Object, Set<BundleCapability>> index = entry.getValue();
+        for (Entry<String, RangeIndex> entry : m_rangeIndices.entrySet())
+        {
+            final Map<Object, Object> oldValues = new HashMap<Object, Object>();
+            for (Object o : getValues(oldAttrs.get(entry.getKey())))
+            {
+                oldValues.put(RangeIndex.getKey(o), o);
+            }
+            final Map<Object, Object> newValues = new HashMap<Object, Object>();
+            for (Object o : getValues(newAttrs.get(entry.getKey())))
+            {
+                newValues.put(RangeIndex.getKey(o), o);
+            }
+            for (Entry<Object, Object> value : newValues.entrySet())
+            {
+                if (!oldValues.containsKey(value.getKey()))
+                {
+                    entry.getValue().add(cap, value.getValue());
+                }
+            }
+            for (Entry<Object, Object> value : oldValues.entrySet())
+            {
+                if (!newValues.containsKey(value.getKey()))
+                {
+                    entry.getValue().remove(cap, value.getValue());
+                }
+            }
+        }
+
+        // The capability may have been removed concurrently, in which case
+        // the entries just added would never be removed.
+        if (!m_capSet.contains(cap))
+        {
+            deindexCapability(cap, newAttrs);
+        }
+    }
+
+    /**
+     * Returns the values of an attribute, which may be a single value, an
+     * array or a collection.
+     */
+    private static Collection<Object> getValues(Object value)
+    {
+        if (value == null)
+        {
+            return Collections.emptyList();
+        }
+        if (value.getClass().isArray())
+        {
+            value = convertArrayToList(value);
+        }
+        return (value instanceof Collection)
+            ? (Collection<Object>) value
+            : Collections.singletonList(value);
+    }
+
+    private void deindexCapability(final BundleCapability cap, final Map<String, Object> attrs)
+    {
+        for (Entry<String, Map<Object, Set<BundleCapability>>> entry : m_indices.entrySet())
+        {
+            Object value = attrs.get(entry.getKey());
+            if (value != null)
+            {
+                if (value.getClass().isArray())
+                {
+                    value = convertArrayToList(value);
+                }
+
+                Map<Object, Set<BundleCapability>> index = entry.getValue();
 
-                    if (value instanceof Collection)
+                if (value instanceof Collection)
+                {
+                    Collection c = (Collection) value;
+                    for (Object o : c)
                     {
-                        Collection c = (Collection) value;
-                        for (Object o : c)
-                        {
-                            deindexCapability(index, cap, o);
-                        }
+                        deindexCapability(index, cap, o);
                     }
-                    else
+                }
+                else
+                {
+                    deindexCapability(index, cap, value);
+                }
+            }
+        }
+
+        for (Entry<String, RangeIndex> entry : m_rangeIndices.entrySet())
+        {
+            Object value = attrs.get(entry.getKey());
+            if (value != null)
+            {
+                if (value.getClass().isArray())
+                {
+                    value = convertArrayToList(value);
+                }
+
+                if (value instanceof Collection)
+                {
+                    for (Object o : (Collection) value)
                     {
-                        deindexCapability(index, cap, value);
+                        entry.getValue().remove(cap, o);
                     }
                 }
+                else
+                {
+                    entry.getValue().remove(cap, value);
+                }
             }
         }
     }
@@ -171,17 +363,23 @@ public class CapabilitySet
     private void deindexCapability(
         Map<Object, Set<BundleCapability>> index, BundleCapability cap, Object value)
     {
-        Set<BundleCapability> caps = index.get(value);
+        Object key = getIndexKey(value);
+        Set<BundleCapability> caps = index.get(key);
         if (caps != null)
         {
             caps.remove(cap);
             if (caps.isEmpty())
             {
-                index.remove(value);
+                index.remove(key);
             }
         }
     }
 
+    private static Object getIndexKey(Object value)
+    {
+        return (value instanceof String) ? value : UNINDEXED;
+    }
+
     public Set<Capability> match(final SimpleFilter sf, final boolean obeyMandatory)
     {
         final Set<Capability> matches = match(m_capSet, sf);
@@ -192,29 +390,52 @@ public class CapabilitySet
 
     private Set<Capability> match(Set<Capability> caps, final SimpleFilter sf)
     {
-        Set<Capability> matches = Collections.newSetFromMap(new ConcurrentHashMap<Capability, Boolean>());
+        Set<Capability> matches;
 
         if (sf.getOperation() == SimpleFilter.MATCH_ALL)
         {
-            matches.addAll(caps);
+            matches = new HashSet<Capability>(caps);
         }
         else if (sf.getOperation() == SimpleFilter.AND)
         {
-            // Evaluate each subfilter against the remaining capabilities.
             // For AND we calculate the intersection of each subfilter.
-            // We can short-circuit the AND operation if there are no
-            // remaining capabilities.
+            // Only the most selective subfilter is evaluated against the
+            // capabilities, the remaining capabilities are then checked
+            // against the other subfilters one by one. We can short-circuit
+            // the AND operation if there are no remaining capabilities.
             final List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
-            for (int i = 0; (caps.size() > 0) && (i < sfs.size()); i++)
+            int first = 0;
+            int firstEstimate = Integer.MAX_VALUE;
+            for (int i = 0; i < sfs.size(); i++)
             {
-                matches = match(caps, sfs.get(i));
-                caps = matches;
+                int estimate = estimate(sfs.get(i));
+                if (estimate < firstEstimate)
+                {
+                    first = i;
+                    firstEstimate = estimate;
+                }
+            }
+            matches = (sfs.isEmpty()) ? new HashSet<Capability>() : match(caps, sfs.get(first));
+            for (int i = 0; !matches.isEmpty() && (i < sfs.size()); i++)
+            {
+                if (i != first)
+                {
+                    SimpleFilter sub = sfs.get(i);
+                    for (Iterator<Capability> it = matches.iterator(); it.hasNext(); )
+                    {
+                        if (!matchesInternal(it.next(), sub))
+                        {
+                            it.remove();
+                        }
+                    }
+                }
             }
         }
         else if (sf.getOperation() == SimpleFilter.OR)
         {
             // Evaluate each subfilter against the remaining capabilities.
             // For OR we calculate the union of each subfilter.
+            matches = new HashSet<Capability>();
             List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
             for (int i = 0; i < sfs.size(); i++)
             {
@@ -225,7 +446,7 @@ public class CapabilitySet
         {
             // Evaluate each subfilter against the remaining capabilities.
             // For OR we calculate the union of each subfilter.
-            matches.addAll(caps);
+            matches = new HashSet<Capability>(caps);
             List<SimpleFilter> sfs = (List<SimpleFilter>) sf.getValue();
             for (int i = 0; i < sfs.size(); i++)
             {
@@ -234,18 +455,40 @@ public class CapabilitySet
         }
         else
         {
+            matches = new HashSet<Capability>();
             Map<Object, Set<BundleCapability>> index = m_indices.get(sf.getName());
+            RangeIndex rangeIndex;
             if ((sf.getOperation() == SimpleFilter.EQ) && (index != null))
             {
                 Set<BundleCapability> existingCaps = index.get(sf.getValue());
                 if (existingCaps != null)
                 {
                     matches.addAll(existingCaps);
-                    if (caps != m_capSet)
+                }
+                Set<BundleCapability> unindexedCaps = index.get(UNINDEXED);
+                if (unindexedCaps != null)
+                {
+                    for (BundleCapability cap : unindexedCaps)
                     {
-                        matches.retainAll(caps);
+                        Object lhs = cap.getAttributes().get(sf.getName());
+                        if ((lhs != null) && compare(lhs, sf.getValue(), sf.getOperation()))
+                        {
+                            matches.add(cap);
+                        }
                     }
                 }
+                if (caps != m_capSet)
+                {
+                    matches.retainAll(caps);
+                }
+            }
+            else if (((rangeIndex = m_rangeIndices.get(sf.getName())) != null)
+                && rangeIndex.match(sf, matches))
+            {
+                if (caps != m_capSet)
+                {
+                    matches.retainAll(caps);
+                }
             }
             else
             {
@@ -267,6 +510,54 @@ public class CapabilitySet
         return matches;
     }
 
+    /**
+     * Estimates the number of capabilities matching the given filter, to
+     * decide which subfilter of an AND operation to evaluate first.
+     */
+    private int estimate(final SimpleFilter sf)
+    {
+        switch (sf.getOperation())
+        {
+            case SimpleFilter.EQ:
+                Map<Object, Set<BundleCapability>> index = m_indices.get(sf.getName());
+                if (index != null)
+                {
+                    Set<BundleCapability> existingCaps = index.get(sf.getValue());
+                    Set<BundleCapability> unindexedCaps = index.get(UNINDEXED);
+                    return ((existingCaps == null) ? 0 : existingCaps.size())
+                        + ((unindexedCaps == null) ? 0 : unindexedCaps.size());
+                }
+                return estimateRange(sf);
+            case SimpleFilter.GTE:
+            case SimpleFilter.LTE:
+                return estimateRange(sf);
+            case SimpleFilter.AND:
+                int estimate = m_capSet.size();
+                for (SimpleFilter sub : (List<SimpleFilter>) sf.getValue())
+                {
+                    estimate = Math.min(estimate, estimate(sub));
+                }
+                return estimate;
+            default:
+                return m_capSet.size();
+        }
+    }
+
+    /**
+     * Estimates the number of capabilities matching the given filter if it
+     * is evaluated with the range index of its attribute, if there is one.
+     */
+    private int estimateRange(final SimpleFilter sf)
+    {
+        if (m_rangeIndices.containsKey(sf.getName()))
+        {
+            // Range scans are assumed to select about half of the
+            // capabilities, as they typically bound one side only.
+            return m_capSet.size() / 2;
+        }
+        return m_capSet.size();
+    }
+
     public static boolean matches(Capability cap, SimpleFilter sf)
     {
         return matchesInternal(cap, sf) && matchMandatory(cap, sf);
@@ -642,6 +933,173 @@ public class CapabilitySet
         return rhs;
     }
 
+    /**
+     * An index of attribute values in sorted order. Version and numeric
+     * values are kept in one sorted map per value type, such that range
+     * filters can be answered by range scans. Capabilities with values of
+     * other types are kept aside and compared one by one.
+     */
+    private static final class RangeIndex
+    {
+        private final ConcurrentMap<Class<?>, ConcurrentNavigableMap<Object, Set<BundleCapability>>> m_sorted =
+            new ConcurrentHashMap<Class<?>, ConcurrentNavigableMap<Object, Set<BundleCapability>>>();
+        private final Set<BundleCapability> m_unsorted =
+            Collections.newSetFromMap(new ConcurrentHashMap<BundleCapability, Boolean>());
+        // Key of the values that are not sorted, see getKey.
+        private static final Object UNSORTED = new Object();
+
+        private static boolean isSortable(Object value)
+        {
+            Class<?> clazz = value.getClass();
+            return (clazz == Version.class)
+                || (clazz == Long.class) || (clazz == Integer.class)
+                || (clazz == Short.class) || (clazz == Byte.class)
+                || (clazz == Double.class) || (clazz == Float.class);
+        }
+
+        /**
+         * Returns the value identifying the entry of the given value, all
+         * values that cannot be sorted share one entry.
+         */
+        static Object getKey(Object value)
+        {
+            return isSortable(value) ? value : UNSORTED;
+        }
+
+        void add(BundleCapability cap, Object value)
+        {
+            if (!isSortable(value))
+            {
+                m_unsorted.add(cap);
+                return;
+            }
+            ConcurrentNavigableMap<Object, Set<BundleCapability>> sorted = m_sorted.get(value.getClass());
+            if (sorted == null)
+            {
+                sorted = new ConcurrentSkipListMap<Object, Set<BundleCapability>>();
+                ConcurrentNavigableMap<Object, Set<BundleCapability>> prev =
+                    m_sorted.putIfAbsent(value.getClass(), sorted);
+                if (prev != null)
+                {
+                    sorted = prev;
+                }
+            }
+            Set<BundleCapability> caps =
+                Collections.newSetFromMap(new ConcurrentHashMap<BundleCapability, Boolean>());
+            Set<BundleCapability> prevval = sorted.putIfAbsent(value, caps);
+            if (prevval != null)
+            {
+                caps = prevval;
+            }
+            caps.add(cap);
+        }
+
+        void remove(BundleCapability cap, Object value)
+        {
+            if (!isSortable(value))
+            {
+                m_unsorted.remove(cap);
+                return;
+            }
+            ConcurrentNavigableMap<Object, Set<BundleCapability>> sorted = m_sorted.get(value.getClass());
+            if (sorted != null)
+            {
+                Set<BundleCapability> caps = sorted.get(value);
+                if (caps != null)
+                {
+                    caps.remove(cap);
+                    if (caps.isEmpty())
+                    {
+                        sorted.remove(value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the capabilities matching the given filter to the result.
+         * @return <tt>false</tt> if the filter cannot be answered by the index.
+         */
+        boolean match(SimpleFilter sf, Set<Capability> result)
+        {
+            int op = sf.getOperation();
+            if (((op != SimpleFilter.EQ) && (op != SimpleFilter.GTE) && (op != SimpleFilter.LTE))
+                || !(sf.getValue() instanceof String))
+            {
+                return false;
+            }
+            String rhsString = (String) sf.getValue();
+
+            for (ConcurrentNavigableMap<Object, Set<BundleCapability>> sorted : m_sorted.values())
+            {
+                Object rhs;
+                try
+                {
+                    // Convert the filter value to the type of the sorted
+                    // values like compare() does for each value.
+                    rhs = coerceType(sorted.firstKey(), rhsString);
+                }
+                catch (Exception ex)
+                {
+                    // No values or no conversion, so no matches.
+                    continue;
+                }
+
+                if (rhs instanceof VersionRange)
+                {
+                    // Only equality matches version ranges, other operations
+                    // cannot compare a version to a range.
+                    if (op != SimpleFilter.EQ)
+                    {
+                        continue;
+                    }
+                    VersionRange range = (VersionRange) rhs;
+                    for (Entry<Object, Set<BundleCapability>> entry
+                        : sorted.tailMap(range.getLeft(), true).entrySet())
+                    {
+                        Version version = (Version) entry.getKey();
+                        if ((range.getRight() != null) && (version.compareTo(range.getRight()) > 0))
+                        {
+                            break;
+                        }
+                        if (range.includes(version))
+                        {
+                            result.addAll(entry.getValue());
+                        }
+                    }
+                }
+                else if (op == SimpleFilter.EQ)
+                {
+                    Set<BundleCapability> caps = sorted.get(rhs);
+                    if (caps != null)
+                    {
+                        result.addAll(caps);
+                    }
+                }
+                else
+                {
+                    Map<Object, Set<BundleCapability>> range = (op == SimpleFilter.GTE)
+                        ? sorted.tailMap(rhs, true)
+                        : sorted.headMap(rhs, true);
+                    for (Set<BundleCapability> caps : range.values())
+                    {
+                        result.addAll(caps);
+                    }
+                }
+            }
+
+            for (BundleCapability cap : m_unsorted)
+            {
+                Object lhs = cap.getAttributes().get(sf.getName());
+                if ((lhs != null) && compare(lhs, rhsString, op))
+                {
+                    result.add(cap);
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * This is an ugly utility method to convert an array of primitives
      * to an array of primitive wrapper objects. This method simplifies
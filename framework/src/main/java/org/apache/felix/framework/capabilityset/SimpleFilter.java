@@ -18,6 +18,8 @@
  */
 package org.apache.felix.framework.capabilityset;
 
+import org.apache.felix.framework.util.Interner;
+import org.apache.felix.framework.util.Util;
 import org.osgi.framework.Version;
 import org.osgi.framework.VersionRange;
 
@@ -104,6 +106,75 @@ public class SimpleFilter
         return s;
     }
 
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+        if (!(obj instanceof SimpleFilter))
+        {
+            return false;
+        }
+        SimpleFilter other = (SimpleFilter) obj;
+        return (m_op == other.m_op)
+            && ((m_name == null) ? (other.m_name == null) : m_name.equals(other.m_name))
+            && ((m_value == null) ? (other.m_value == null) : m_value.equals(other.m_value));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = m_op;
+        hash = 31 * hash + ((m_name == null) ? 0 : m_name.hashCode());
+        hash = 31 * hash + ((m_value == null) ? 0 : m_value.hashCode());
+        return hash;
+    }
+
+    private static final Interner<SimpleFilter> s_interner = new Interner<SimpleFilter>();
+
+    /**
+     * Returns the canonical instance of the given filter, such that equal
+     * filters of the requirements of different bundle revisions share their
+     * nodes, names and values. The filter must not be modified afterwards.
+     */
+    public static SimpleFilter intern(SimpleFilter filter)
+    {
+        if (filter == null)
+        {
+            return null;
+        }
+        Object value = filter.m_value;
+        switch (filter.m_op)
+        {
+            case AND:
+            case OR:
+            case NOT:
+                List<SimpleFilter> filters = (List<SimpleFilter>) value;
+                List<SimpleFilter> interned = new ArrayList<SimpleFilter>(filters.size());
+                for (SimpleFilter sf : filters)
+                {
+                    interned.add(intern(sf));
+                }
+                value = interned;
+                break;
+            case SUBSTRING:
+                List<String> pieces = (List<String>) value;
+                List<String> internedPieces = new ArrayList<String>(pieces.size());
+                for (String piece : pieces)
+                {
+                    internedPieces.add(Util.intern(piece));
+                }
+                value = internedPieces;
+                break;
+            default:
+                value = Util.intern(value);
+        }
+        return s_interner.intern(
+            new SimpleFilter(Util.intern(filter.m_name), value, filter.m_op));
+    }
+
     private static String toString(List list)
     {
         StringBuilder sb = new StringBuilder();
@@ -47,7 +47,9 @@ public interface FelixConstants extends org.osgi.framework.Constants
     String LOG_LOGGER_PROP = "felix.log.logger";
     String SYSTEMBUNDLE_ACTIVATORS_PROP = "felix.systembundle.activators";
     String BUNDLE_STARTLEVEL_PROP = "felix.startlevel.bundle";
+    String STARTLEVEL_PARALLELISM_PROP = "felix.startlevel.parallelism";
     String SERVICE_URLHANDLERS_PROP = "felix.service.urlhandlers";
+    String SERVICE_INDEX_PROP = "felix.service.index";
     String IMPLICIT_BOOT_DELEGATION_PROP = "felix.bootdelegation.implicit";
     String BOOT_CLASSLOADERS_PROP = "felix.bootdelegation.classloaders";
     String USE_LOCALURLS_PROP = "felix.jarurls";
@@ -55,6 +57,11 @@ public interface FelixConstants extends org.osgi.framework.Constants
     String NATIVE_PROC_NAME_ALIAS_PREFIX = "felix.native.processor.alias";
     String USE_CACHEDURLS_PROPS = "felix.bundlecodesource.usecachedurls";
     String RESOLVER_PARALLELISM = "felix.resolver.parallelism";
+    String RESOLVER_PERMUTATION_BEST_FIRST_PROP = "felix.resolver.permutation.bestfirst";
+    String RESOLVER_PERMUTATION_LIMIT_PROP = "felix.resolver.permutation.limit";
+    String RESOLVER_PERMUTATION_TIMEOUT_PROP = "felix.resolver.permutation.timeout";
+    String RESOLVER_PERMUTATION_SPECULATION_PROP = "felix.resolver.permutation.speculation";
+    String RESOLVER_SNAPSHOT_PROP = "felix.resolver.snapshot";
     String USE_PROPERTY_SUBSTITUTION_IN_SYSTEMPACKAGES = "felix.systempackages.substitution";
 
     // Missing OSGi constant for resolution directive.
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map backed by arrays of keys and values, which needs much
+ * less memory than a hash map for the few attributes and directives of a
+ * capability or requirement. Lookups compare the keys in order, so it is
+ * only used for small maps. The iteration order is the order of the keys.
+ */
+public class ImmutableArrayMap<K, V> extends AbstractMap<K, V>
+{
+    public static final int MAX_SIZE = 8;
+
+    private final Object[] m_keys;
+    private final Object[] m_values;
+
+    public ImmutableArrayMap(Object[] keys, Object[] values)
+    {
+        m_keys = keys;
+        m_values = values;
+    }
+
+    @Override
+    public int size()
+    {
+        return m_keys.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public V get(Object key)
+    {
+        int idx = indexOf(key);
+        return (idx >= 0) ? (V) m_values[idx] : null;
+    }
+
+    private int indexOf(Object key)
+    {
+        for (int i = 0; i < m_keys.length; i++)
+        {
+            if (m_keys[i] == key)
+            {
+                return i;
+            }
+        }
+        if (key != null)
+        {
+            for (int i = 0; i < m_keys.length; i++)
+            {
+                if (key.equals(m_keys[i]))
+                {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public int size()
+            {
+                return m_keys.length;
+            }
+
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return new Iterator<Entry<K, V>>()
+                {
+                    private int m_idx = 0;
+
+                    public boolean hasNext()
+                    {
+                        return m_idx < m_keys.length;
+                    }
+
+                    public Entry<K, V> next()
+                    {
+                        if (m_idx >= m_keys.length)
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<K, V> entry = new SimpleImmutableEntry<K, V>(
+                            (K) m_keys[m_idx], (V) m_values[m_idx]);
+                        m_idx++;
+                        return entry;
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
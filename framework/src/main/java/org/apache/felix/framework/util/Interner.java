@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps a canonical instance of equal immutable objects, so that equal
+ * objects created for different bundle revisions share a single instance.
+ * The instances are only weakly referenced and are discarded once they
+ * are not used anymore.
+ */
+public class Interner<T>
+{
+    private final Map<T, WeakReference<T>> m_instances = new WeakHashMap<T, WeakReference<T>>();
+
+    /**
+     * Returns the canonical instance equal to the given object, which is
+     * the object itself if there is no equal instance yet.
+     */
+    public synchronized T intern(T obj)
+    {
+        if (obj == null)
+        {
+            return null;
+        }
+        WeakReference<T> ref = m_instances.get(obj);
+        T instance = (ref != null) ? ref.get() : null;
+        if (instance == null)
+        {
+            m_instances.put(obj, new WeakReference<T>(obj));
+            instance = obj;
+        }
+        return instance;
+    }
+}
@@ -26,6 +26,7 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
 import org.osgi.framework.wiring.BundleCapability;
 import org.osgi.framework.wiring.BundleRequirement;
 import org.osgi.framework.wiring.BundleRevision;
@@ -47,6 +48,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -1034,4 +1036,63 @@ public class Util
     {
         return map == null || map.isEmpty() ? EMPTY_MAP : Collections.unmodifiableMap(map);
     }
+
+    private static final Interner<Object> s_interner = new Interner<Object>();
+
+    /**
+     * Returns the canonical instance of the given value if it is a string,
+     * a version or a version range, otherwise the value itself. These are
+     * the values shared by the capabilities and requirements of many
+     * bundle revisions, like package names and versions.
+     */
+    public static Object intern(Object value)
+    {
+        if ((value instanceof String) || (value instanceof Version)
+            || (value instanceof VersionRange))
+        {
+            return s_interner.intern(value);
+        }
+        return value;
+    }
+
+    public static String intern(String value)
+    {
+        return (String) s_interner.intern(value);
+    }
+
+    /**
+     * Returns an immutable copy of the given attribute or directive map with
+     * interned keys and values. Small maps are copied into an array map.
+     */
+    public static <V> Map<String, V> newInternedMap(Map<String, V> map)
+    {
+        if (map == null || map.isEmpty())
+        {
+            return EMPTY_MAP;
+        }
+        else if (map instanceof ImmutableArrayMap)
+        {
+            // Already interned.
+            return map;
+        }
+        else if (map.size() > ImmutableArrayMap.MAX_SIZE)
+        {
+            Map<String, V> copy = new LinkedHashMap<String, V>(map.size());
+            for (Entry<String, V> entry : map.entrySet())
+            {
+                copy.put(intern(entry.getKey()), (V) intern(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(copy);
+        }
+        Object[] keys = new Object[map.size()];
+        Object[] values = new Object[map.size()];
+        int idx = 0;
+        for (Entry<String, V> entry : map.entrySet())
+        {
+            keys[idx] = intern(entry.getKey());
+            values[idx] = intern(entry.getValue());
+            idx++;
+        }
+        return new ImmutableArrayMap<String, V>(keys, values);
+    }
 }
\ No newline at end of file
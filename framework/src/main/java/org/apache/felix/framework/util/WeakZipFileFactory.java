@@ -23,13 +23,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Semaphore;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.ZipEntry;
@@ -39,6 +43,13 @@ import java.util.zip.ZipFile;
  * This class implements a factory for creating weak zip files, which behave
  * mostly like a ZipFile, but can be weakly closed to limit the number of
  * open files.
+ * <p>
+ * Open zip files are tracked with a clock (second chance) algorithm, which
+ * approximates least recently used eviction in constant time without a global
+ * lock. Each weak zip file is only guarded by its own mutex. Since an open
+ * zip file which is currently being used by another thread is never waited
+ * for during eviction, the limit may be briefly exceeded if all open zip
+ * files are in use at the same time.
  */
 public class WeakZipFileFactory
 {
@@ -48,9 +59,13 @@ public class WeakZipFileFactory
 
     private static final SecureAction m_secureAction = new SecureAction();
 
-    private final List<WeakZipFile> m_zipFiles = new ArrayList<WeakZipFile>();
-    private final List<WeakZipFile> m_openFiles = new ArrayList<WeakZipFile>();
-    private final Lock m_globalMutex = new ReentrantLock();
+    private final Set<WeakZipFile> m_zipFiles =
+        Collections.newSetFromMap(new ConcurrentHashMap<WeakZipFile, Boolean>());
+    private final Queue<WeakZipFile> m_clock = new ConcurrentLinkedQueue<WeakZipFile>();
+    private final AtomicInteger m_openCount = new AtomicInteger();
+    private final AtomicLong m_opened = new AtomicLong();
+    private final AtomicLong m_reopened = new AtomicLong();
+    private final AtomicLong m_evicted = new AtomicLong();
     private final int m_limit;
 
     /**
@@ -76,70 +91,139 @@ public class WeakZipFileFactory
     public WeakZipFile create(File file) throws IOException
     {
         WeakZipFile wzf = new WeakZipFile(file);
+        m_opened.incrementAndGet();
 
         if (m_limit > 0)
         {
-            m_globalMutex.lock();
-
-            try
-            {
-                m_zipFiles.add(wzf);
-                m_openFiles.add(wzf);
-                if (m_openFiles.size() > m_limit)
-                {
-                    WeakZipFile candidate = m_openFiles.get(0);
-                    for (WeakZipFile tmp : m_openFiles)
-                    {
-                        if (candidate.m_timestamp > tmp.m_timestamp)
-                        {
-                            candidate = tmp;
-                        }
-                    }
-                    candidate._closeWeakly();
-                }
-            }
-            finally
-            {
-                m_globalMutex.unlock();
-            }
+            m_zipFiles.add(wzf);
+            opened(wzf);
         }
 
         return wzf;
     }
 
+    /**
+     * Returns the number of zip files opened by this factory, not counting
+     * reopened weakly closed zip files.
+     * @return the number of opened zip files.
+     */
+    public long getOpenedCount()
+    {
+        return m_opened.get();
+    }
+
+    /**
+     * Returns the number of times a weakly closed zip file had to be reopened.
+     * @return the number of reopened zip files.
+     */
+    public long getReopenedCount()
+    {
+        return m_reopened.get();
+    }
+
+    /**
+     * Returns the number of times a zip file was weakly closed to stay
+     * within the open file limit.
+     * @return the number of evicted zip files.
+     */
+    public long getEvictedCount()
+    {
+        return m_evicted.get();
+    }
+
+    /**
+     * Returns the number of zip files which are currently open; this is
+     * only tracked if there is a limit.
+     * @return the number of currently open zip files.
+     */
+    public int getOpenFileCount()
+    {
+        return m_openCount.get();
+    }
+
     /**
      * Only used for testing.
      * @return unclosed weak zip files.
      **/
-    List<WeakZipFile> getZipZiles()
+    Collection<WeakZipFile> getZipZiles()
     {
-        m_globalMutex.lock();
+        return m_zipFiles;
+    }
 
-        try
-        {
-            return m_zipFiles;
-        }
-        finally
-        {
-            m_globalMutex.unlock();
-        }
+    /**
+     * Only used for testing.
+     * @return weak zip files in the eviction clock.
+     **/
+    Collection<WeakZipFile> getClock()
+    {
+        return m_clock;
     }
 
     /**
      * Only used for testing.
      * @return open weak zip files.
      **/
-    List<WeakZipFile> getOpenZipZiles()
+    Collection<WeakZipFile> getOpenZipZiles()
     {
-        m_globalMutex.lock();
+        Collection<WeakZipFile> open = new ArrayList<WeakZipFile>();
+        for (WeakZipFile wzf : m_zipFiles)
+        {
+            if (wzf.m_status == OPEN)
+            {
+                open.add(wzf);
+            }
+        }
+        return open;
+    }
 
-        try
+    /**
+     * Records a zip file which has just been opened and weakly closes other
+     * zip files if the limit is exceeded. The caller must hold the local mutex
+     * of the specified zip file or be its only user.
+     */
+    private void opened(WeakZipFile wzf)
+    {
+        m_openCount.incrementAndGet();
+        if (wzf.m_inClock.compareAndSet(false, true))
         {
-            return m_openFiles;
+            m_clock.offer(wzf);
         }
-        finally
+
+        // Advance the clock hand until we are back within the limit. Recently
+        // used zip files get a second chance and zip files which are in use by
+        // another thread are skipped. We give up after about two full turns,
+        // which only happens if every open zip file is currently in use.
+        int attempts = 2 * m_openCount.get() + 1;
+        while ((m_openCount.get() > m_limit) && (attempts-- > 0))
         {
-            m_globalMutex.unlock();
+            WeakZipFile candidate = m_clock.poll();
+            if (candidate == null)
+            {
+                break;
+            }
+            else if (candidate.m_status != OPEN)
+            {
+                candidate.m_inClock.set(false);
+                // Somebody may have reopened it in the meantime.
+                if ((candidate.m_status == OPEN)
+                    && candidate.m_inClock.compareAndSet(false, true))
+                {
+                    m_clock.offer(candidate);
+                }
+            }
+            else if ((candidate == wzf) || candidate.m_referenced)
+            {
+                candidate.m_referenced = false;
+                m_clock.offer(candidate);
+            }
+            else if (candidate.tryCloseWeakly())
+            {
+                m_evicted.incrementAndGet();
+            }
+            else
+            {
+                m_clock.offer(candidate);
+            }
         }
     }
 
@@ -152,9 +236,10 @@ public class WeakZipFileFactory
     {
         private final File m_file;
         private final Lock m_localMutex = new ReentrantLock(false);
+        private final AtomicBoolean m_inClock = new AtomicBoolean(false);
         private volatile ZipFile m_zipFile;
         private volatile int m_status = OPEN;
-        private volatile long m_timestamp;
+        private volatile boolean m_referenced;
         private volatile SoftReference<LinkedHashMap<String, ZipEntry>> m_entries;
 
         /**
@@ -167,7 +252,6 @@ public class WeakZipFileFactory
         {
             m_file = file;
             m_zipFile = m_secureAction.openZipFile(m_file);
-            m_timestamp = System.currentTimeMillis();
         }
 
         /**
@@ -326,7 +410,7 @@ public class WeakZipFileFactory
          */
         void closeWeakly()
         {
-            m_globalMutex.lock();
+            m_localMutex.lock();
 
             try
             {
@@ -334,38 +418,33 @@ public class WeakZipFileFactory
             }
             finally
             {
-                m_globalMutex.unlock();
+                m_localMutex.unlock();
             }
         }
 
         /**
-         * This method is used internally to weakly close a zip file. It should
-         * only be called when already holding the global lock, otherwise use
-         * closeWeakly().
+         * Weakly closes the zip file if it is not currently in use by
+         * another thread.
+         * @return <tt>true</tt> if the zip file was weakly closed.
          */
-        private void _closeWeakly()
+        private boolean tryCloseWeakly()
         {
-            m_localMutex.lock();
+            if (!m_localMutex.tryLock())
+            {
+                return false;
+            }
 
             try
             {
                 if (m_status == OPEN)
                 {
-                    try
-                    {
-                        m_status = WEAKLY_CLOSED;
-                        if (m_zipFile != null)
-                        {
-                            m_zipFile.close();
-                            m_zipFile = null;
-                        }
-                        m_openFiles.remove(this);
-                    }
-                    catch (IOException ex)
-                    {
-                        __close();
-                    }
+                    // The clock hand removed us from the clock, so we have
+                    // to be added again once we get reopened.
+                    m_inClock.set(false);
+                    _closeWeakly();
+                    return true;
                 }
+                return false;
             }
             finally
             {
@@ -373,6 +452,31 @@ public class WeakZipFileFactory
             }
         }
 
+        /**
+         * This method is used internally to weakly close a zip file. It should
+         * only be called when holding the local mutex.
+         */
+        private void _closeWeakly()
+        {
+            if (m_status == OPEN)
+            {
+                try
+                {
+                    m_status = WEAKLY_CLOSED;
+                    m_openCount.decrementAndGet();
+                    if (m_zipFile != null)
+                    {
+                        m_zipFile.close();
+                        m_zipFile = null;
+                    }
+                }
+                catch (IOException ex)
+                {
+                    __close();
+                }
+            }
+        }
+
         /**
          * This method permanently closes the zip file.
          * @throws IOException if any error occurs while trying to close the
@@ -382,7 +486,6 @@ public class WeakZipFileFactory
         {
             if (m_limit > 0)
             {
-                m_globalMutex.lock();
                 m_localMutex.lock();
             }
 
@@ -400,7 +503,6 @@ public class WeakZipFileFactory
                 if (m_limit > 0)
                 {
                     m_localMutex.unlock();
-                    m_globalMutex.unlock();
                 }
             }
         }
@@ -408,14 +510,25 @@ public class WeakZipFileFactory
         /**
          * This internal method is used to clear the zip file from the data
          * structures and reset its state. It should only be called when
-         * holding the global and local mutexes.
+         * holding the local mutex.
          */
         private void __close()
         {
+            // Open zip files are only counted if there is a limit.
+            if ((m_status == OPEN) && (m_limit > 0))
+            {
+                m_openCount.decrementAndGet();
+            }
             m_status = CLOSED;
             m_zipFile = null;
             m_zipFiles.remove(this);
-            m_openFiles.remove(this);
+            // The clock hand only drops closed zip files while the limit is
+            // exceeded, so remove it here; if the hand holds it right now, it
+            // is not offered again since it is no longer open.
+            if (m_inClock.compareAndSet(true, false))
+            {
+                m_clock.remove(this);
+            }
         }
 
         /**
@@ -446,41 +559,23 @@ public class WeakZipFileFactory
                 throw new IllegalStateException("Zip file is closed: " + m_file);
             }
 
-            // If zip file is weakly closed, we need to reopen it,
-            // but we have to release the zip mutex to acquire the
-            // global mutex, then reacquire the zip mutex. This
-            // ensures that the global mutex is always acquired
-            // before any local mutex to avoid deadlocks.
+            // Mark the zip file as recently used for the eviction clock.
+            m_referenced = true;
+
+            // If zip file is weakly closed, we need to reopen it. This
+            // only requires the local mutex, since eviction never waits
+            // for the mutex of another zip file.
             IOException cause = null;
             if (m_status == WEAKLY_CLOSED)
             {
-                m_localMutex.unlock();
-
-                m_globalMutex.lock();
-
-                m_localMutex.lock();
-
-                // Double check status since it may have changed.
-                if (m_status == CLOSED)
+                try
                 {
-                    m_localMutex.unlock();
-                    m_globalMutex.unlock();
-                    throw new IllegalStateException("Zip file is closed: " + m_file);
+                    __reopenZipFile();
                 }
-                else if (m_status == WEAKLY_CLOSED)
+                catch (IOException ex)
                 {
-                    try
-                    {
-                        __reopenZipFile();
-                    }
-                    catch (IOException ex)
-                    {
-                        cause = ex;
-                    }
+                    cause = ex;
                 }
-
-                // Release the global mutex, since it should no longer be necessary.
-                m_globalMutex.unlock();
             }
 
             // It is possible that reopening the zip file failed, so we check
@@ -503,7 +598,7 @@ public class WeakZipFileFactory
          * It makes a best effort, but may fail and leave the zip file member
          * field null. Any failure reopening a zip file results in it being
          * permanently closed. This method should only be invoked when holding
-         * the global and local mutexes.
+         * the local mutex.
          */
         private void __reopenZipFile() throws IOException
         {
@@ -513,7 +608,6 @@ public class WeakZipFileFactory
                 {
                     m_zipFile = m_secureAction.openZipFile(m_file);
                     m_status = OPEN;
-                    m_timestamp = System.currentTimeMillis();
                 }
                 catch (IOException ex)
                 {
@@ -523,19 +617,8 @@ public class WeakZipFileFactory
 
                 if (m_zipFile != null)
                 {
-                    m_openFiles.add(this);
-                    if (m_openFiles.size() > m_limit)
-                    {
-                        WeakZipFile candidate = m_openFiles.get(0);
-                        for (WeakZipFile tmp : m_openFiles)
-                        {
-                            if (candidate.m_timestamp > tmp.m_timestamp)
-                            {
-                                candidate = tmp;
-                            }
-                        }
-                        candidate._closeWeakly();
-                    }
+                    m_reopened.incrementAndGet();
+                    opened(this);
                 }
             }
         }
@@ -50,8 +50,8 @@ public class BundleCapabilityImpl implements BundleCapability
     {
         m_namespace = namespace;
         m_revision = revision;
-        m_dirs = Util.newImmutableMap(dirs);
-        m_attrs = Util.newImmutableMap(attrs);
+        m_dirs = Util.newInternedMap(dirs);
+        m_attrs = Util.newInternedMap(attrs);
 
         // Find all export directives: uses, mandatory, include, and exclude.
 
@@ -64,7 +64,7 @@ public class BundleCapabilityImpl implements BundleCapability
             uses = new ArrayList(tok.countTokens());
             while (tok.hasMoreTokens())
             {
-                uses.add(tok.nextToken().trim());
+                uses.add(Util.intern(tok.nextToken().trim()));
             }
         }
         m_uses = uses;
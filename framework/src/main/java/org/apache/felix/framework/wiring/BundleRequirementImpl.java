@@ -43,9 +43,9 @@ public class BundleRequirementImpl implements BundleRequirement
     {
         m_revision = revision;
         m_namespace = namespace;
-        m_dirs =  Util.newImmutableMap(dirs);
-        m_attrs =  Util.newImmutableMap(attrs);
-        m_filter = filter;
+        m_dirs =  Util.newInternedMap(dirs);
+        m_attrs =  Util.newInternedMap(attrs);
+        m_filter = SimpleFilter.intern(filter);
 
         // Find resolution import directives.
         boolean optional = false;
@@ -106,6 +106,7 @@ public class ConcurrencyTest extends TestCase
         finally
         {
             f.stop();
+            f.waitForStop(10000);
             Thread.sleep(DELAY);
             deleteDir(cacheDir);
         }
@@ -23,12 +23,15 @@ import java.util.*;
 import junit.framework.TestCase;
 
 import org.easymock.EasyMock;
+import org.osgi.framework.AllServiceListener;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.UnfilteredServiceListener;
 import org.osgi.framework.hooks.service.EventHook;
 
 public class EventDispatcherTest extends TestCase
@@ -137,6 +140,106 @@ public class EventDispatcherTest extends TestCase
         assertTrue(calledHooks.contains(eh2));
     }
 
+    public void testFireServiceEventIndexedFilters() throws Exception
+    {
+        final Bundle b1 = getMockBundle();
+        final Bundle b2 = getMockBundle();
+
+        Logger logger = new Logger();
+        ServiceRegistry registry = new ServiceRegistry(logger, null);
+        EventDispatcher ed = new EventDispatcher(logger, registry);
+
+        final List<String> fired = Collections.synchronizedList(new ArrayList<String>());
+        ed.addListener(b1.getBundleContext(), ServiceListener.class,
+            new RecordingListener("foo", fired), new FilterImpl("(objectClass=foo)"));
+        ed.addListener(b1.getBundleContext(), ServiceListener.class,
+            new RecordingListener("bar", fired), new FilterImpl("(objectclass=bar)"));
+        ed.addListener(b2.getBundleContext(), ServiceListener.class,
+            new RecordingListener("foo-x1", fired),
+            new FilterImpl("(&(objectClass=foo)(x=1))"));
+        ed.addListener(b2.getBundleContext(), ServiceListener.class,
+            new RecordingListener("foo-or-bar", fired),
+            new FilterImpl("(|(objectClass=foo)(objectClass=bar))"));
+        ed.addListener(b2.getBundleContext(), ServiceListener.class,
+            new RecordingListener("all", fired), null);
+        ed.addListener(b2.getBundleContext(), ServiceListener.class,
+            new UnfilteredRecordingListener("unfiltered", fired),
+            new FilterImpl("(objectClass=baz)"));
+
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("x", "1");
+        ServiceRegistration reg = registry.registerService(
+            getMockBundle(), new String[] { "foo" }, new Object(), props);
+
+        Felix framework = new Felix(new HashMap());
+
+        // Listeners are notified in the order they were added.
+        ed.fireServiceEvent(
+            new ServiceEvent(ServiceEvent.REGISTERED, reg.getReference()), null, framework);
+        assertEquals(Arrays.asList(
+            "foo:" + ServiceEvent.REGISTERED,
+            "foo-x1:" + ServiceEvent.REGISTERED,
+            "foo-or-bar:" + ServiceEvent.REGISTERED,
+            "all:" + ServiceEvent.REGISTERED,
+            "unfiltered:" + ServiceEvent.REGISTERED),
+            fired);
+
+        // Modifying x must end the match of the listener filtering on it.
+        fired.clear();
+        Dictionary<String, Object> oldProps = new Hashtable<String, Object>(props);
+        oldProps.put("objectClass", new String[] { "foo" });
+        ed.fireServiceEvent(
+            new ServiceEvent(ServiceEvent.MODIFIED, reg.getReference()),
+            oldProps, framework);
+        assertEquals(5, fired.size());
+        props.put("x", "2");
+        reg.setProperties(props);
+        fired.clear();
+        ed.fireServiceEvent(
+            new ServiceEvent(ServiceEvent.MODIFIED, reg.getReference()),
+            oldProps, framework);
+        assertEquals(Arrays.asList(
+            "foo:" + ServiceEvent.MODIFIED,
+            "foo-x1:" + ServiceEvent.MODIFIED_ENDMATCH,
+            "foo-or-bar:" + ServiceEvent.MODIFIED,
+            "all:" + ServiceEvent.MODIFIED,
+            "unfiltered:" + ServiceEvent.MODIFIED),
+            fired);
+
+        // Removed listeners must no longer be notified.
+        fired.clear();
+        ed.removeListeners(b2.getBundleContext());
+        ed.fireServiceEvent(
+            new ServiceEvent(ServiceEvent.UNREGISTERING, reg.getReference()), null, framework);
+        assertEquals(Arrays.asList("foo:" + ServiceEvent.UNREGISTERING), fired);
+    }
+
+    private static class RecordingListener implements AllServiceListener
+    {
+        private final String m_name;
+        private final List<String> m_fired;
+
+        RecordingListener(String name, List<String> fired)
+        {
+            m_name = name;
+            m_fired = fired;
+        }
+
+        public void serviceChanged(ServiceEvent event)
+        {
+            m_fired.add(m_name + ":" + event.getType());
+        }
+    }
+
+    private static class UnfilteredRecordingListener extends RecordingListener
+        implements UnfilteredServiceListener
+    {
+        UnfilteredRecordingListener(String name, List<String> fired)
+        {
+            super(name, fired);
+        }
+    }
+
     private Bundle getMockBundle()
     {
         BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.launch.Framework;
+import org.osgi.framework.wiring.BundleRevisions;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+/**
+ * Local benchmark reporting the heap retained by the revisions of a large
+ * installation. It is not run as part of the build; run it from the test
+ * classpath:
+ *
+ * <pre>
+ * java org.apache.felix.framework.FootprintHarness [bundles] [revisions]
+ * </pre>
+ *
+ * Installs <tt>bundles</tt> synthetic bundles, each exporting and importing
+ * versioned packages with uses constraints, and updates them without a
+ * refresh until each bundle has <tt>revisions</tt> revisions. The heap in
+ * use after a full garbage collection is compared to the heap in use by
+ * the started framework.
+ */
+public class FootprintHarness
+{
+    private static final int EXPORTS = 10;
+
+    private static final int IMPORTS = 15;
+
+    public static void main(String[] args) throws Exception
+    {
+        int bundles = args.length > 0 ? Integer.parseInt(args[0]) : 1500;
+        int revisions = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+        File cacheDir = File.createTempFile("felix-cache", ".dir");
+        cacheDir.delete();
+        cacheDir.mkdirs();
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_STORAGE, cacheDir.getPath());
+        params.put(Constants.FRAMEWORK_STORAGE_CLEAN, Constants.FRAMEWORK_STORAGE_CLEAN_ONFIRSTINIT);
+
+        Framework f = new Felix(params);
+        f.init();
+        f.start();
+        try
+        {
+            long before = usedMemory();
+            long t0 = System.currentTimeMillis();
+
+            Bundle[] installed = new Bundle[bundles];
+            for (int i = 0; i < bundles; i++)
+            {
+                installed[i] = f.getBundleContext().installBundle(
+                    "footprint" + i, createBundle(i, 0));
+            }
+            FrameworkWiring wiring = f.adapt(FrameworkWiring.class);
+            wiring.resolveBundles(null);
+            for (int r = 1; r < revisions; r++)
+            {
+                for (int i = 0; i < bundles; i++)
+                {
+                    installed[i].update(createBundle(i, r));
+                }
+                wiring.resolveBundles(null);
+            }
+
+            long t1 = System.currentTimeMillis();
+            long after = usedMemory();
+
+            int revisionCount = 0;
+            int resolved = 0;
+            for (Bundle bundle : installed)
+            {
+                revisionCount += bundle.adapt(BundleRevisions.class).getRevisions().size();
+                if (bundle.getState() == Bundle.RESOLVED)
+                {
+                    resolved++;
+                }
+            }
+            long retained = after - before;
+            System.out.println(bundles + " bundles (" + resolved + " resolved), "
+                + revisionCount + " revisions in " + (t1 - t0) + " ms: "
+                + (retained / (1024 * 1024)) + " MB retained, "
+                + (retained / Math.max(1, revisionCount) / 1024) + " KB per revision");
+        }
+        finally
+        {
+            f.stop();
+            f.waitForStop(10000);
+            deleteDir(cacheDir);
+        }
+    }
+
+    /**
+     * Creates bundle <tt>idx</tt>, which imports the packages of the bundles
+     * installed before it. The packages of all revisions are the same, only
+     * the bundle version differs.
+     */
+    private static InputStream createBundle(int idx, int revision) throws IOException
+    {
+        StringBuilder exports = new StringBuilder();
+        StringBuilder uses = new StringBuilder();
+        for (int i = 0; i < EXPORTS; i++)
+        {
+            uses.append((i > 0) ? "," : "").append("org.example.bundle").append(idx).append(".pkg").append(i);
+        }
+        for (int i = 0; i < EXPORTS; i++)
+        {
+            exports.append((i > 0) ? "," : "")
+                .append("org.example.bundle").append(idx).append(".pkg").append(i)
+                .append(";version=\"1.").append(i).append(".0\";uses:=\"").append(uses).append('"');
+        }
+        StringBuilder imports = new StringBuilder("org.osgi.framework;version=\"[1.5,2)\"");
+        for (int i = 0; (i < IMPORTS) && (i < idx); i++)
+        {
+            int exporter = idx - 1 - i;
+            int pkg = i % EXPORTS;
+            imports.append(",org.example.bundle").append(exporter).append(".pkg").append(pkg)
+                .append(";version=\"[1.").append(pkg).append(",2)\"");
+        }
+
+        Manifest mf = new Manifest();
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        mf.getMainAttributes().putValue(Constants.BUNDLE_MANIFESTVERSION, "2");
+        mf.getMainAttributes().putValue(Constants.BUNDLE_SYMBOLICNAME, "org.example.bundle" + idx);
+        mf.getMainAttributes().putValue(Constants.BUNDLE_VERSION, "1.0." + revision);
+        mf.getMainAttributes().putValue(Constants.EXPORT_PACKAGE, exports.toString());
+        mf.getMainAttributes().putValue(Constants.IMPORT_PACKAGE, imports.toString());
+        mf.getMainAttributes().putValue(Constants.REQUIRE_CAPABILITY,
+            "osgi.ee;filter:=\"(&(osgi.ee=JavaSE)(version=1.6))\"");
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JarOutputStream os = new JarOutputStream(baos, mf);
+        os.close();
+        return new ByteArrayInputStream(baos.toByteArray());
+    }
+
+    private static long usedMemory() throws InterruptedException
+    {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++)
+        {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        root.delete();
+    }
+}
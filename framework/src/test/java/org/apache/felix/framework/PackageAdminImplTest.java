@@ -72,6 +72,7 @@ public class PackageAdminImplTest extends TestCase
         super.tearDown();
 
         felix.stop(); // Note that this method is async
+        felix.waitForStop(10000);
         felix = null;
 
         deleteDir(tempDir);
@@ -76,6 +76,7 @@ public class RequirementsCapabilitiesTest extends TestCase
         super.tearDown();
 
         felix.stop(); // Note that this method is async
+        felix.waitForStop(10000);
         felix = null;
 
         deleteDir(tempDir);
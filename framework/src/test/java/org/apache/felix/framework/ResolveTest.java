@@ -19,6 +19,7 @@
 package org.apache.felix.framework;
 
 import junit.framework.TestCase;
+import org.apache.felix.framework.util.FelixConstants;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Constants;
 import org.osgi.framework.launch.Framework;
@@ -73,6 +74,7 @@ public class ResolveTest extends TestCase
         super.tearDown();
 
         felix.stop(); // Note that this method is async
+        felix.waitForStop(10000);
         felix = null;
 
         deleteDir(tempDir);
@@ -275,6 +277,62 @@ public class ResolveTest extends TestCase
         assertEquals(requiredWires.get(1).getProvider().getBundle(), ho);
     }
 
+    public void testResolveUsesConflictWithSpeculation() throws Exception
+    {
+        File speculationCache = new File(tempDir, "speculation-cache");
+        Map<String,String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_STORAGE, speculationCache.getPath());
+        params.put(FelixConstants.RESOLVER_PARALLELISM, "4");
+        params.put(FelixConstants.RESOLVER_PERMUTATION_SPECULATION_PROP, "4");
+        Framework framework = new Felix(params);
+        framework.init();
+        framework.start();
+        try
+        {
+            Bundle api1 = framework.getBundleContext().installBundle(createBundle(
+                "Bundle-SymbolicName: test.api1\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Export-Package: test.api;version=1.0.0\n").toURI().toASCIIString());
+            Bundle api2 = framework.getBundleContext().installBundle(createBundle(
+                "Bundle-SymbolicName: test.api2\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Export-Package: test.api;version=2.0.0\n").toURI().toASCIIString());
+
+            // each library prefers the newer api, which conflicts with the consumer
+            Bundle[] libs = new Bundle[4];
+            StringBuilder imports = new StringBuilder("test.api;version=\"[1,2)\"");
+            for (int i = 0; i < libs.length; i++)
+            {
+                libs[i] = framework.getBundleContext().installBundle(createBundle(
+                    "Bundle-SymbolicName: test.lib" + i + "\n"
+                    + "Bundle-ManifestVersion: 2\n"
+                    + "Export-Package: test.lib" + i + ";uses:=test.api\n"
+                    + "Import-Package: test.api;version=\"[1,3)\"\n").toURI().toASCIIString());
+                imports.append(",test.lib").append(i);
+            }
+            Bundle consumer = framework.getBundleContext().installBundle(createBundle(
+                "Bundle-SymbolicName: test.consumer\n"
+                + "Bundle-ManifestVersion: 2\n"
+                + "Import-Package: " + imports + "\n").toURI().toASCIIString());
+
+            assertTrue(framework.adapt(FrameworkWiring.class).resolveBundles(Collections.singletonList(consumer)));
+
+            assertEquals(Bundle.RESOLVED, consumer.getState());
+            assertEquals(Bundle.INSTALLED, api2.getState());
+            for (Bundle lib : libs)
+            {
+                List<BundleWire> wires = lib.adapt(BundleWiring.class).getRequiredWires(BundleRevision.PACKAGE_NAMESPACE);
+                assertEquals(1, wires.size());
+                assertEquals(api1, wires.get(0).getProvider().getBundle());
+            }
+        }
+        finally
+        {
+            framework.stop();
+            framework.waitForStop(10000);
+        }
+    }
+
     private File createBundle(String manifest) throws IOException
     {
         File f = File.createTempFile("felix-bundle", ".jar", tempDir);
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Hashtable;
+
+import org.apache.felix.framework.capabilityset.SimpleFilter;
+import org.osgi.framework.Bundle;
+
+/**
+ * Local benchmark of service lookups in a large service registry. It is not
+ * run as part of the build; run it from the test classpath:
+ *
+ * <pre>
+ * java org.apache.felix.framework.ServiceRegistryHarness [services] [classes]
+ * </pre>
+ *
+ * Registers <tt>services</tt> services, spread over <tt>classes</tt> service
+ * interfaces, each with its own <tt>service.pid</tt> and
+ * <tt>component.name</tt>. Then looks up single services by interface and
+ * <tt>service.pid</tt>, and by <tt>component.name</tt> alone. Each round
+ * looks up services for a fixed time. Reports the best time per lookup
+ * over several rounds after a warm up. The harness only uses the registry
+ * methods of the release before the property indexes, so it can be run
+ * against that release for comparison.
+ */
+public class ServiceRegistryHarness
+{
+    private static final int ROUNDS = 12;
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static final long ROUND_NANOS = 200L * 1000 * 1000;
+
+    public static void main(String[] args) throws Exception
+    {
+        int services = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int classes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        ServiceRegistry registry = new ServiceRegistry(null, null);
+        Bundle bundle = (Bundle) Proxy.newProxyInstance(ServiceRegistryHarness.class.getClassLoader(),
+            new Class[] { Bundle.class }, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().equals("equals"))
+                    {
+                        return proxy == args[0];
+                    }
+                    if (method.getReturnType() == long.class)
+                    {
+                        return 1L;
+                    }
+                    if (method.getReturnType() == int.class)
+                    {
+                        return 0;
+                    }
+                    return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                }
+            });
+
+        long t0 = System.currentTimeMillis();
+        for (int i = 0; i < services; i++)
+        {
+            Hashtable<String, Object> props = new Hashtable<String, Object>();
+            props.put("service.pid", "org.example.pid" + i);
+            props.put("component.name", "org.example.component" + i);
+            registry.registerService(bundle, new String[] { "org.example.Service" + (i % classes) },
+                new Object(), props);
+        }
+        System.out.println(services + " services registered in "
+            + (System.currentTimeMillis() - t0) + " ms");
+
+        String[] classNames = new String[services];
+        SimpleFilter[] pidFilters = new SimpleFilter[services];
+        SimpleFilter[] nameFilters = new SimpleFilter[services];
+        for (int i = 0; i < services; i++)
+        {
+            classNames[i] = "org.example.Service" + (i % classes);
+            pidFilters[i] = SimpleFilter.parse("(service.pid=org.example.pid" + i + ")");
+            nameFilters[i] = SimpleFilter.parse("(component.name=org.example.component" + i + ")");
+        }
+
+        run("objectClass and service.pid", registry, classNames, pidFilters);
+        run("component.name", registry, null, nameFilters);
+    }
+
+    private static void run(String label, ServiceRegistry registry, String[] classNames,
+        SimpleFilter[] filters)
+    {
+        double best = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++)
+        {
+            int lookups = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do
+            {
+                // a prime stride visits the services in a scattered order
+                int i = (int) ((lookups * 7919L) % filters.length);
+                int found = registry.getServiceReferences(
+                    (classNames != null) ? classNames[i] : null, filters[i]).size();
+                if (found != 1)
+                {
+                    throw new IllegalStateException(found + " services found for " + filters[i]);
+                }
+                lookups++;
+                elapsed = System.nanoTime() - start;
+            }
+            while (elapsed < ROUND_NANOS);
+            if (r >= WARMUP_ROUNDS)
+            {
+                best = Math.min(best, elapsed / (double) lookups);
+            }
+        }
+        System.out.println(String.format("%s: %.1f us per lookup", label, best / 1000));
+    }
+}
@@ -37,6 +37,7 @@ import junit.framework.TestCase;
 import org.apache.felix.framework.ServiceRegistrationImpl.ServiceReferenceImpl;
 import org.apache.felix.framework.ServiceRegistry.ServiceHolder;
 import org.apache.felix.framework.ServiceRegistry.UsageCount;
+import org.apache.felix.framework.capabilityset.SimpleFilter;
 import org.easymock.MockControl;
 import org.mockito.AdditionalAnswers;
 import org.mockito.InOrder;
@@ -1255,6 +1256,123 @@ public class ServiceRegistryTest extends TestCase
         assertThat(sr.getUsingBundles(reg.getReference()), is(new Bundle[]{clientBundle2}));
     }
 
+    public void testIndexedServicePropertiesModified()
+    {
+        Bundle b = Mockito.mock(Bundle.class);
+        ServiceRegistry sr = new ServiceRegistry(null, null, Collections.singletonList("custom"));
+
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("service.pid", "pid1");
+        props.put("custom", new String[] {"a", "b"});
+        ServiceRegistration reg = sr.registerService(b, new String[] {"foo"}, "svc", props);
+
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=pid1)")).size());
+        assertEquals(1, sr.getServiceReferences("foo", SimpleFilter.parse("(CUSTOM=b)")).size());
+
+        props.put("service.pid", "pid2");
+        props.put("custom", "c");
+        reg.setProperties(props);
+
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=pid1)")).size());
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(custom=b)")).size());
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=pid2)")).size());
+        assertEquals(1, sr.getServiceReferences(null,
+            SimpleFilter.parse("(&(custom=c)(service.pid=pid2))")).size());
+
+        sr.unregisterService(b, reg);
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=pid2)")).size());
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(custom=c)")).size());
+    }
+
+    public void testIndexedNonStringServiceProperties()
+    {
+        Bundle b = Mockito.mock(Bundle.class);
+        ServiceRegistry sr = new ServiceRegistry(null, null, Arrays.asList("service.pid", "rank", "custom"));
+
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("service.pid", Long.valueOf(5));
+        props.put("rank", Integer.valueOf(10));
+        props.put("custom", Arrays.asList("a", Integer.valueOf(7)));
+        ServiceRegistration reg = sr.registerService(b, new String[] {"foo"}, "svc", props);
+
+        Hashtable<String, Object> props2 = new Hashtable<String, Object>();
+        props2.put("service.pid", "5");
+        props2.put("rank", Integer.valueOf(20));
+        ServiceRegistration reg2 = sr.registerService(b, new String[] {"foo"}, "svc2", props2);
+
+        assertEquals(2, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=5)")).size());
+        assertEquals(1, sr.getServiceReferences("foo", SimpleFilter.parse("(rank=10)")).size());
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(rank= 20)")).size());
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(custom=a)")).size());
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(&(custom=7)(rank=10))")).size());
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(rank=30)")).size());
+
+        props.put("rank", Integer.valueOf(30));
+        reg.setProperties(props);
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(rank=10)")).size());
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(rank=30)")).size());
+
+        sr.unregisterService(b, reg);
+        sr.unregisterService(b, reg2);
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=5)")).size());
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(rank=30)")).size());
+    }
+
+    public void testIndexedServicePropertiesModifiedConcurrently() throws Exception
+    {
+        Bundle b = Mockito.mock(Bundle.class);
+        final ServiceRegistry sr = new ServiceRegistry(null, null, Collections.singletonList("custom"));
+
+        final Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put("service.pid", "pid");
+        props.put("component.name", "comp");
+        props.put("custom", new String[] {"a", "b"});
+        final ServiceRegistration reg = sr.registerService(b, new String[] {"foo"}, "svc", props);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger misses = new AtomicInteger();
+        Thread lookup = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                SimpleFilter byName = SimpleFilter.parse("(component.name=comp)");
+                SimpleFilter byCustom = SimpleFilter.parse("(custom=a)");
+                while (!done.get())
+                {
+                    if (sr.getServiceReferences("foo", null).size() != 1
+                        || sr.getServiceReferences(null, byName).size() != 1
+                        || sr.getServiceReferences(null, byCustom).size() != 1)
+                    {
+                        misses.incrementAndGet();
+                    }
+                }
+            }
+        };
+        lookup.start();
+        try
+        {
+            // only service.pid and one of the custom values change
+            for (int i = 0; i < 20000; i++)
+            {
+                props.put("service.pid", "pid" + (i % 2));
+                props.put("custom", (i % 2 == 0) ? new String[] {"a", "c"} : new String[] {"b", "a"});
+                reg.setProperties(props);
+            }
+        }
+        finally
+        {
+            done.set(true);
+            lookup.join();
+        }
+
+        assertEquals(0, misses.get());
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=pid1)")).size());
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(service.pid=pid0)")).size());
+        assertEquals(1, sr.getServiceReferences(null, SimpleFilter.parse("(custom=b)")).size());
+        assertEquals(0, sr.getServiceReferences(null, SimpleFilter.parse("(custom=c)")).size());
+    }
+
     private Object getPrivateField(Object obj, String fieldName) throws NoSuchFieldException,
             IllegalAccessException
     {
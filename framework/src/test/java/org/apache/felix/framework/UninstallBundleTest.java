@@ -134,6 +134,7 @@ public class UninstallBundleTest extends TestCase
         finally
         {
             felix.stop();
+            felix.waitForStop(10000);
             Thread.sleep(DELAY);
             deleteDir(cacheDir);
         }
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+import org.osgi.framework.wiring.FrameworkWiring;
+
+public class WiringSnapshotTest extends TestCase
+{
+    private File m_cacheDir;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        m_cacheDir = File.createTempFile("felix-cache", ".dir");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        deleteDir(m_cacheDir);
+        super.tearDown();
+    }
+
+    public void testWiringReusedOnRestart() throws Exception
+    {
+        Felix felix = createFramework(null);
+        felix.start();
+        installBundles(felix);
+        assertTrue(felix.adapt(FrameworkWiring.class).resolveBundles(null));
+        felix.stop();
+        felix.waitForStop(10000);
+
+        felix = createFramework(null);
+        felix.init();
+        try
+        {
+            assertNotNull(felix.getResolver().getWiringSnapshot());
+            Bundle importer = felix.getBundle(2);
+            assertTrue(felix.adapt(FrameworkWiring.class).resolveBundles(null));
+            assertNotNull(felix.getResolver().getWiringSnapshot());
+
+            List<BundleWire> wires = importer.adapt(BundleWiring.class)
+                .getRequiredWires(BundleRevision.PACKAGE_NAMESPACE);
+            assertEquals(2, wires.size());
+            for (BundleWire wire : wires)
+            {
+                Object pkg = wire.getCapability().getAttributes()
+                    .get(BundleRevision.PACKAGE_NAMESPACE);
+                assertEquals("org.foo.bar".equals(pkg) ? felix.getBundle(1) : felix,
+                    wire.getProviderWiring().getBundle());
+            }
+            assertEquals(Bundle.RESOLVED, felix.getBundle(1).getState());
+
+            // Installing a bundle invalidates the snapshot.
+            felix.getBundleContext().installBundle(createBundle(
+                "Bundle-SymbolicName: other\n"
+                + "Bundle-ManifestVersion: 2\n").toURI().toString());
+            assertNull(felix.getResolver().getWiringSnapshot());
+        }
+        finally
+        {
+            felix.stop();
+            felix.waitForStop(10000);
+        }
+    }
+
+    public void testWiringIgnoredOnConfigChange() throws Exception
+    {
+        Felix felix = createFramework(null);
+        felix.start();
+        installBundles(felix);
+        assertTrue(felix.adapt(FrameworkWiring.class).resolveBundles(null));
+        felix.stop();
+        felix.waitForStop(10000);
+
+        felix = createFramework("felix.test.changed");
+        felix.init();
+        try
+        {
+            assertNull(felix.getResolver().getWiringSnapshot());
+            assertTrue(felix.adapt(FrameworkWiring.class).resolveBundles(null));
+        }
+        finally
+        {
+            felix.stop();
+            felix.waitForStop(10000);
+        }
+    }
+
+    private Felix createFramework(String extraProp)
+    {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(Constants.FRAMEWORK_SYSTEMPACKAGES,
+            "org.osgi.framework; version=1.4.0,"
+            + "org.osgi.service.packageadmin; version=1.2.0,"
+            + "org.osgi.service.startlevel; version=1.1.0,"
+            + "org.osgi.util.tracker; version=1.3.3,"
+            + "org.osgi.service.url; version=1.0.0");
+        params.put(Constants.FRAMEWORK_STORAGE, m_cacheDir.getPath());
+        if (extraProp != null)
+        {
+            params.put(extraProp, "true");
+        }
+        return new Felix(params);
+    }
+
+    private void installBundles(Felix felix) throws Exception
+    {
+        felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: exporter\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Export-Package: org.foo.bar; version=1.0.0\n").toURI().toString());
+        felix.getBundleContext().installBundle(createBundle(
+            "Bundle-SymbolicName: importer\n"
+            + "Bundle-ManifestVersion: 2\n"
+            + "Import-Package: org.foo.bar, org.osgi.framework\n").toURI().toString());
+    }
+
+    private File createBundle(String manifest) throws IOException
+    {
+        File f = File.createTempFile("felix-bundle", ".jar", m_cacheDir);
+
+        Manifest mf = new Manifest(new ByteArrayInputStream(manifest.getBytes("utf-8")));
+        mf.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream os = new JarOutputStream(new FileOutputStream(f), mf);
+        os.close();
+        return f;
+    }
+
+    private static void deleteDir(File root) throws IOException
+    {
+        if (root.isDirectory())
+        {
+            for (File file : root.listFiles())
+            {
+                deleteDir(file);
+            }
+        }
+        assertTrue(root.delete());
+    }
+}
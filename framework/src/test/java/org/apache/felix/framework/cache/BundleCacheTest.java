@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -36,6 +37,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 public class BundleCacheTest extends TestCase
@@ -170,6 +172,111 @@ public class BundleCacheTest extends TestCase
         testBundle("bla", jarFile);
     }
 
+    public void testJarIndex() throws Exception
+    {
+        BundleArchive archive = cache.create(1, 1, jarFile.toURI().toURL().toString(), null);
+        Content content = archive.getCurrentRevision().getContent();
+        assertTrue(content instanceof IndexedContent);
+        assertTrue(new File(archive.getCurrentRevision().getRevisionRootDir(), "bundle.index").isFile());
+
+        // The entries are listed in the order of the wrapped content.
+        assertEquals(
+            Arrays.asList(IndexedContent.listEntries(((IndexedContent) content).getContent())),
+            Collections.list(content.getEntries()));
+
+        CountingContent counting = new CountingContent(((IndexedContent) content).getContent());
+        content = new IndexedContent(counting, IndexedContent.listEntries(counting));
+        assertNull(content.getEntryAsBytes("foo/Bar.class"));
+        assertNull(content.getEntryAsURL("foo"));
+        assertFalse(content.hasEntry("inner/foo"));
+        assertEquals(0, counting.m_lookups);
+        assertTrue(content.hasEntry("inner"));
+        assertNotNull(content.getEntryAsBytes("inner/file1"));
+        assertEquals(2, counting.m_lookups);
+    }
+
+    public void testDirectoryIndex() throws Exception
+    {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_STORAGE, new File(tempDir, "indexed-cache").getPath());
+        params.put(BundleCache.CACHE_INDEX_DIRECTORIES_PROP, "true");
+        BundleCache indexedCache = new BundleCache(new Logger(), params);
+        try
+        {
+            BundleArchive archive = indexedCache.create(
+                1, 1, "reference:" + archiveFile.toURI().toURL(), null);
+            assertTrue(archive.getCurrentRevision().getContent() instanceof IndexedContent);
+            testRevision(archive);
+        }
+        finally
+        {
+            indexedCache.delete();
+        }
+    }
+
+    public void testMappedJar() throws Exception
+    {
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) (i % 31);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        File mappedJar = new File(filesDir, "mapped.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "v1");
+        manifest.getMainAttributes().putValue("foo", "bar");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(mappedJar), manifest);
+        ZipEntry stored = new ZipEntry("stored");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(data.length);
+        stored.setCrc(crc.getValue());
+        output.putNextEntry(stored);
+        output.write(data);
+        output.closeEntry();
+        output.putNextEntry(new ZipEntry("deflated"));
+        output.write(data);
+        output.closeEntry();
+        output.close();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put(Constants.FRAMEWORK_STORAGE, new File(tempDir, "mapped-cache").getPath());
+        params.put(BundleCache.CACHE_MMAP_PROP, "true");
+        params.put(BundleCache.CACHE_INDEX_PROP, "false");
+        BundleCache mappedCache = new BundleCache(new Logger(), params);
+        try
+        {
+            BundleArchive archive = mappedCache.create(1, 1, jarFile.toURI().toURL().toString(), null);
+            assertTrue(archive.getCurrentRevision().getContent() instanceof MappedJarContent);
+            testRevision(archive);
+
+            archive = mappedCache.create(2, 1, "reference:" + mappedJar.toURI().toURL(), null);
+            Content content = archive.getCurrentRevision().getContent();
+            assertTrue(content instanceof MappedJarContent);
+            for (String name : new String[] { "stored", "deflated" })
+            {
+                assertTrue(Arrays.equals(data, content.getEntryAsBytes(name)));
+                assertTrue(Arrays.equals(data, BundleCache.read(
+                    content.getEntryAsStream(name), data.length)));
+                URL url = content.getEntryAsURL(name);
+                assertEquals(data.length, url.openConnection().getContentLength());
+                assertTrue(Arrays.equals(data, BundleCache.read(
+                    url.openStream(), data.length)));
+            }
+            content.close();
+
+            // a closed revision does not map the JAR file again
+            archive.close();
+            assertFalse(archive.getCurrentRevision().getContent() instanceof MappedJarContent);
+        }
+        finally
+        {
+            mappedCache.delete();
+        }
+    }
+
     private void testBundle(String location, File file) throws Exception
     {
         BundleArchive archive = cache.create(1, 1, location, file != null ? new FileInputStream(file) : null);
@@ -290,6 +397,63 @@ public class BundleCacheTest extends TestCase
         assertTrue(BundleCache.deleteDirectoryTree(tempDir));
     }
 
+    private static class CountingContent implements Content
+    {
+        private final Content m_content;
+        private int m_lookups;
+
+        CountingContent(Content content)
+        {
+            m_content = content;
+        }
+
+        public void close()
+        {
+            m_content.close();
+        }
+
+        public boolean hasEntry(String name)
+        {
+            m_lookups++;
+            return m_content.hasEntry(name);
+        }
+
+        public Enumeration<String> getEntries()
+        {
+            return m_content.getEntries();
+        }
+
+        public byte[] getEntryAsBytes(String name)
+        {
+            m_lookups++;
+            return m_content.getEntryAsBytes(name);
+        }
+
+        public InputStream getEntryAsStream(String name) throws IOException
+        {
+            m_lookups++;
+            return m_content.getEntryAsStream(name);
+        }
+
+        public Content getEntryAsContent(String name)
+        {
+            m_lookups++;
+            return m_content.getEntryAsContent(name);
+        }
+
+        public String getEntryAsNativeLibrary(String name)
+        {
+            m_lookups++;
+            return m_content.getEntryAsNativeLibrary(name);
+        }
+
+        public URL getEntryAsURL(String name)
+        {
+            m_lookups++;
+            return m_content.getEntryAsURL(name);
+        }
+    }
+
     private void createTestArchive(File archiveFile) throws Exception
     {
         createFile(archiveFile, "file1", "file1".getBytes("UTF-8"));
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.framework.capabilityset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.felix.framework.wiring.BundleCapabilityImpl;
+import org.osgi.framework.Version;
+import org.osgi.framework.wiring.BundleCapability;
+import org.osgi.resource.Capability;
+
+public class CapabilitySetTest extends TestCase
+{
+    private static final String NAMESPACE = "test";
+
+    private static final String[] FILTERS = new String[] {
+        "(version>=1.5)",
+        "(version<=1.5)",
+        "(version=2.0.0)",
+        "(version=[1.0,2.0\\))",
+        "(version=\\(1.0,2.0])",
+        "(version>=[1.0,2.0\\))",
+        "(version>=abc)",
+        "(version=*)",
+        "(version~=1.0)",
+        "(!(version>=2.0))",
+        "(&(test=p1)(version>=1.0)(!(version>=2.0)))",
+        "(&(version>=1.0)(test=p2))",
+        "(|(version<=0.5)(version>=3.0))",
+        "(&(test=p3)(number>=10))",
+        "(number>=10)",
+        "(number<= 20 )",
+        "(number=15)",
+        "(number>=1.5)",
+        "(test=p1)",
+    };
+
+    public void testRangeIndexMatchesScan() throws Exception
+    {
+        CapabilitySet scanned = new CapabilitySet(
+            Collections.singletonList(NAMESPACE), true);
+        CapabilitySet indexed = new CapabilitySet(
+            Collections.singletonList(NAMESPACE), Arrays.asList("version", "number"), true);
+
+        List<BundleCapability> caps = new ArrayList<BundleCapability>();
+        for (int i = 0; i < 40; i++)
+        {
+            Map<String, Object> attrs = new HashMap<String, Object>();
+            attrs.put(NAMESPACE, "p" + (i % 4));
+            attrs.put("version", new Version(i / 10, i % 10, 0));
+            switch (i % 5)
+            {
+                case 0:
+                    attrs.put("number", Long.valueOf(i));
+                    break;
+                case 1:
+                    attrs.put("number", Double.valueOf(i / 2.0));
+                    break;
+                case 2:
+                    attrs.put("number", new long[] { i, i + 100 });
+                    break;
+                case 3:
+                    attrs.put("number", String.valueOf(i));
+                    break;
+                default:
+                    // no number
+            }
+            if (i == 7)
+            {
+                // a version that is not a version object
+                attrs.put("version", "1.5.0");
+            }
+            caps.add(new BundleCapabilityImpl(null, NAMESPACE, null, attrs));
+        }
+        for (BundleCapability cap : caps)
+        {
+            scanned.addCapability(cap);
+            indexed.addCapability(cap);
+        }
+
+        assertSameMatches(scanned, indexed, caps);
+        assertEquals(10, indexed.match(SimpleFilter.parse("(version=[1.0,2.0\\))"), false).size());
+        // including the version string 1.5.0
+        assertEquals(26, indexed.match(SimpleFilter.parse("(version>=1.5)"), false).size());
+
+        // removed capabilities must not be found anymore
+        List<BundleCapability> remaining = new ArrayList<BundleCapability>();
+        for (int i = 0; i < caps.size(); i++)
+        {
+            if (i % 3 == 0)
+            {
+                scanned.removeCapability(caps.get(i));
+                indexed.removeCapability(caps.get(i));
+            }
+            else
+            {
+                remaining.add(caps.get(i));
+            }
+        }
+        assertSameMatches(scanned, indexed, remaining);
+    }
+
+    private void assertSameMatches(CapabilitySet scanned, CapabilitySet indexed, List<BundleCapability> caps)
+    {
+        for (String filter : FILTERS)
+        {
+            SimpleFilter sf = SimpleFilter.parse(filter);
+            Set<Capability> expected = scanned.match(sf, false);
+            Set<Capability> actual = indexed.match(sf, false);
+            assertEquals(filter, expected, actual);
+
+            // the result must be the same as matching each capability
+            Set<Capability> each = new HashSet<Capability>();
+            for (Capability cap : caps)
+            {
+                if (CapabilitySet.matches(cap, sf))
+                {
+                    each.add(cap);
+                }
+            }
+            assertEquals(filter, each, actual);
+        }
+    }
+}
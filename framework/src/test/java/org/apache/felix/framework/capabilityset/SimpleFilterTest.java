@@ -83,4 +83,22 @@ public class SimpleFilterTest extends TestCase
         pieces = SimpleFilter.parseSubstring("aaa**aaa");
         assertTrue("Should match!", SimpleFilter.compareSubstring(pieces, "aaaaaa"));
     }
+
+    public void testIntern()
+    {
+        String filter = "(&(osgi.wiring.package=org.foo)(version>=1.0.0)(!(version>=2.0.0)))";
+        SimpleFilter sf1 = SimpleFilter.intern(SimpleFilter.parse(filter));
+        SimpleFilter sf2 = SimpleFilter.intern(SimpleFilter.parse(filter));
+        assertEquals(SimpleFilter.parse(filter), sf1);
+        assertEquals(filter, sf1.toString());
+        assertSame(sf1, sf2);
+
+        // equal sub filters of different filters are shared
+        SimpleFilter sf3 = SimpleFilter.intern(SimpleFilter.parse("(&(osgi.wiring.package=org.bar)(version>=1.0.0))"));
+        assertNotSame(sf1, sf3);
+        assertSame(((List) sf1.getValue()).get(1), ((List) sf3.getValue()).get(1));
+
+        assertFalse(sf1.equals(SimpleFilter.parse("(|(osgi.wiring.package=org.foo)(version>=1.0.0)(!(version>=2.0.0)))")));
+        assertFalse(SimpleFilter.parse("(a=*)").equals(SimpleFilter.parse("(a=\\*)")));
+    }
 }
@@ -18,9 +18,14 @@
  */
 package org.apache.felix.framework.util;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import junit.framework.TestCase;
 
+import org.osgi.framework.Version;
+
 public class UtilTest extends TestCase
 {
     public void testVariableSubstitution()
@@ -109,4 +114,45 @@ public class UtilTest extends TestCase
         v = Util.substVars(props.getProperty("one"), "one", null, props);
         assertEquals("2 middle text 3", v);
     }
-}
\ No newline at end of file
+
+    public void testInternedMap()
+    {
+        Map<String, Object> attrs = new LinkedHashMap<String, Object>();
+        attrs.put("osgi.wiring.package", new String("org.foo"));
+        attrs.put("version", new Version(1, 2, 3));
+        attrs.put("number", Long.valueOf(5));
+
+        Map<String, Object> interned1 = Util.newInternedMap(attrs);
+        Map<String, Object> interned2 = Util.newInternedMap(new HashMap<String, Object>(attrs));
+        assertEquals(attrs, interned1);
+        assertEquals(attrs.hashCode(), interned1.hashCode());
+        assertEquals(attrs.toString(), interned1.toString());
+        assertEquals(interned1, interned2);
+        assertSame(interned1.get("osgi.wiring.package"), interned2.get("osgi.wiring.package"));
+        assertSame(interned1.get("version"), interned2.get("version"));
+        assertTrue(interned1.containsKey(new String("number")));
+        assertFalse(interned1.containsKey("other"));
+        assertNull(interned1.get("other"));
+        assertSame(interned1, Util.newInternedMap(interned1));
+
+        try
+        {
+            interned1.put("other", "value");
+            fail("Interned maps must be immutable");
+        }
+        catch (UnsupportedOperationException ex)
+        {
+            // expected
+        }
+
+        // large maps are interned too
+        for (int i = 0; i < 10; i++)
+        {
+            attrs.put("attr" + i, new String("value"));
+        }
+        Map<String, Object> large = Util.newInternedMap(attrs);
+        assertEquals(attrs, large);
+        assertSame(large.get("attr0"), large.get("attr9"));
+        assertTrue(Util.newInternedMap(new HashMap<String, Object>()).isEmpty());
+    }
+}
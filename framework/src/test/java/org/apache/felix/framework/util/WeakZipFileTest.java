@@ -94,4 +94,72 @@ public class WeakZipFileTest extends TestCase
             fail("Unable to read zip file entry: " + ex);
         }
     }
+
+    public void testLimit() throws IOException
+    {
+        WeakZipFileFactory factory = new WeakZipFileFactory(2);
+        WeakZipFile[] zipFiles = new WeakZipFile[4];
+        for (int i = 0; i < zipFiles.length; i++)
+        {
+            zipFiles[i] = factory.create(createZip("content" + i));
+        }
+        assertEquals(4, factory.getOpenedCount());
+        assertEquals(2, factory.getOpenFileCount());
+        assertEquals(2, factory.getOpenZipZiles().size());
+        assertEquals(2, factory.getEvictedCount());
+        assertEquals(4, factory.getZipZiles().size());
+
+        // Every zip file must still be usable and get transparently reopened.
+        for (int i = 0; i < zipFiles.length; i++)
+        {
+            InputStream is = zipFiles[i].getInputStream(zipFiles[i].getEntry(ENTRY_NAME));
+            byte[] bytes = new byte[("content" + i).length()];
+            assertEquals(bytes.length, is.read(bytes));
+            is.close();
+            assertEquals("content" + i, new String(bytes));
+            assertTrue(factory.getOpenFileCount() <= 2);
+        }
+        assertTrue(factory.getReopenedCount() >= 2);
+
+        for (WeakZipFile zipFile : zipFiles)
+        {
+            zipFile.close();
+        }
+        assertEquals(0, factory.getOpenFileCount());
+        assertTrue(factory.getZipZiles().isEmpty());
+        assertTrue(factory.getClock().isEmpty());
+    }
+
+    public void testCloseBelowLimit() throws IOException
+    {
+        WeakZipFileFactory factory = new WeakZipFileFactory(2);
+        for (int i = 0; i < 100; i++)
+        {
+            factory.create(createZip("content" + i)).close();
+        }
+        assertEquals(0, factory.getOpenFileCount());
+        assertEquals(0, factory.getEvictedCount());
+        assertTrue(factory.getClock().isEmpty());
+    }
+
+    public void testNoLimit() throws IOException
+    {
+        WeakZipFileFactory factory = new WeakZipFileFactory(0);
+        WeakZipFile zipFile = factory.create(createZip("content"));
+        assertEquals(1, factory.getOpenedCount());
+        assertEquals(0, factory.getOpenFileCount());
+        zipFile.close();
+        assertEquals(0, factory.getOpenFileCount());
+    }
+
+    private static File createZip(String content) throws IOException
+    {
+        File tmpZip = File.createTempFile("felix.test", ".zip");
+        tmpZip.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(tmpZip));
+        zos.putNextEntry(new ZipEntry(ENTRY_NAME));
+        zos.write(content.getBytes());
+        zos.close();
+        return tmpZip;
+    }
 }
\ No newline at end of file
@@ -17,10 +17,13 @@
 package org.apache.felix.http.base.internal.registry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.NotNull;
@@ -40,9 +43,17 @@ import org.osgi.service.http.runtime.dto.ServletContextDTO;
  */
 public final class FilterRegistry
 {
+    /** The maximum number of servlet names for which filter chains are cached. */
+    private static final int MAX_CACHED_SERVLET_NAMES = 4096;
+
+    private static final FilterHandler[] EMPTY_FILTER_HANDLER = new FilterHandler[0];
+
     /** List of all filter registrations. These are sorted by the status objects. */
     private volatile List<FilterRegistrationStatus> filters = Collections.emptyList();
 
+    /** The filter chains for the current filter registrations. */
+    private volatile FilterChains chains = new FilterChains(this.filters);
+
     /**
      * The status object keeps track of the registration status of a filter and holds
      * the resolvers to match against a uri.
@@ -90,6 +101,158 @@ public final class FilterRegistry
         }
     }
 
+    /**
+     * The filters which might apply to a servlet for a dispatcher type, in
+     * the order of the filter registrations. Filters matching the servlet
+     * by name or by a pattern matching every uri always apply, only the
+     * resolvers of the remaining filters need to be evaluated per request.
+     */
+    private static final class FilterChain
+    {
+        private final FilterHandler[] handlers;
+
+        /** The resolvers per filter or {@code null} if the filter always applies. */
+        private final PathResolver[][] resolvers;
+
+        /** The handlers if all of them always apply, {@code null} otherwise. */
+        private final FilterHandler[] constantHandlers;
+
+        public FilterChain(final List<FilterRegistrationStatus> filters,
+                final String servletName,
+                final DispatcherType dispatcherType)
+        {
+            final List<FilterHandler> handlerList = new ArrayList<FilterHandler>();
+            final List<PathResolver[]> resolverList = new ArrayList<PathResolver[]>();
+            boolean constant = true;
+            for(final FilterRegistrationStatus status : filters)
+            {
+                // as soon as we encounter a failing filter, we can stop
+                if ( status.getResult() != -1 )
+                {
+                    break;
+                }
+                if ( referencesDispatcherType(status.getHandler(), dispatcherType) )
+                {
+                    if ( referencesServletName(status.getHandler(), servletName) || matchesAll(status.getResolvers()) )
+                    {
+                        handlerList.add(status.getHandler());
+                        resolverList.add(null);
+                    }
+                    else if ( status.getResolvers().length > 0 )
+                    {
+                        handlerList.add(status.getHandler());
+                        resolverList.add(status.getResolvers());
+                        constant = false;
+                    }
+                }
+            }
+            this.handlers = handlerList.toArray(new FilterHandler[handlerList.size()]);
+            this.resolvers = resolverList.toArray(new PathResolver[resolverList.size()][]);
+            this.constantHandlers = constant ? this.handlers : null;
+        }
+
+        public FilterHandler[] getFilterHandlers(final String requestURI)
+        {
+            if ( this.constantHandlers != null )
+            {
+                return this.constantHandlers;
+            }
+            final FilterHandler[] result = new FilterHandler[this.handlers.length];
+            int count = 0;
+            for(int i = 0; i < this.handlers.length; i++)
+            {
+                if ( this.resolvers[i] == null || matches(this.resolvers[i], requestURI) )
+                {
+                    result[count++] = this.handlers[i];
+                }
+            }
+            if ( count == 0 )
+            {
+                return EMPTY_FILTER_HANDLER;
+            }
+            return count == result.length ? result : Arrays.copyOf(result, count);
+        }
+
+        private static boolean matches(final PathResolver[] resolvers, final String requestURI)
+        {
+            for(final PathResolver resolver : resolvers)
+            {
+                if ( resolver.resolve(requestURI) != null )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean matchesAll(final PathResolver[] resolvers)
+        {
+            for(final PathResolver resolver : resolvers)
+            {
+                if ( resolver instanceof PathResolverFactory.DefaultMatcher )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The filter chains for a list of filter registrations, created lazily per
+     * servlet name and dispatcher type. A new instance is created whenever the
+     * filter registrations change.
+     */
+    private static final class FilterChains
+    {
+        private final List<FilterRegistrationStatus> filters;
+
+        /** The chains for servlets with a name, indexed by dispatcher type. */
+        private final ConcurrentMap<String, FilterChain[]> namedChains = new ConcurrentHashMap<String, FilterChain[]>();
+
+        /** The chains if there is no servlet or the servlet has no name, indexed by dispatcher type. */
+        private final FilterChain[] unnamedChains = new FilterChain[DispatcherType.values().length];
+
+        public FilterChains(final List<FilterRegistrationStatus> filters)
+        {
+            this.filters = filters;
+        }
+
+        public FilterChain get(final String servletName, final DispatcherType dispatcherType)
+        {
+            FilterChain[] chains;
+            if ( servletName == null )
+            {
+                chains = this.unnamedChains;
+            }
+            else
+            {
+                chains = this.namedChains.get(servletName);
+                if ( chains == null )
+                {
+                    if ( this.namedChains.size() >= MAX_CACHED_SERVLET_NAMES )
+                    {
+                        return new FilterChain(this.filters, servletName, dispatcherType);
+                    }
+                    chains = new FilterChain[DispatcherType.values().length];
+                    final FilterChain[] existing = this.namedChains.putIfAbsent(servletName, chains);
+                    if ( existing != null )
+                    {
+                        chains = existing;
+                    }
+                }
+            }
+            // the chains are immutable, so a race only leads to creating a chain twice
+            FilterChain chain = chains[dispatcherType.ordinal()];
+            if ( chain == null )
+            {
+                chain = new FilterChain(this.filters, servletName, dispatcherType);
+                chains[dispatcherType.ordinal()] = chain;
+            }
+            return chain;
+        }
+    }
+
     /**
      * Add a filter.
      * @param handler The handler for the filter
@@ -125,7 +288,7 @@ public final class FilterRegistry
         newList.add(status);
         Collections.sort(newList);
 
-        this.filters = newList;
+        this.setFilters(newList);
     }
 
     /**
@@ -150,7 +313,7 @@ public final class FilterRegistry
         }
         if ( found != null )
         {
-            this.filters = newList;
+            this.setFilters(newList);
 
             if ( found.getResult() == -1 && destroy )
             {
@@ -161,7 +324,13 @@ public final class FilterRegistry
 
     public synchronized void cleanup()
     {
-        this.filters = Collections.emptyList();
+        this.setFilters(Collections.<FilterRegistrationStatus>emptyList());
+    }
+
+    private void setFilters(final List<FilterRegistrationStatus> list)
+    {
+        this.chains = new FilterChains(list);
+        this.filters = list;
     }
 
     /**
@@ -170,53 +339,16 @@ public final class FilterRegistry
      * @param handler Optional servlet handler
      * @param dispatcherType The dispatcher type
      * @param requestURI The request uri
-     * @return The array of filter handlers, might be empty.
+     * @return The array of filter handlers, might be empty. The array might be shared and must not be modified.
      */
     public @NotNull FilterHandler[] getFilterHandlers(@Nullable final ServletHandler handler,
             @NotNull final DispatcherType dispatcherType,
             @NotNull final String requestURI)
     {
-        final List<FilterHandler> result = new ArrayList<FilterHandler>();
-        final List<FilterRegistrationStatus> allFilters = this.filters;
+        // check for servlet name if it's not a resource
+        final String servletName = (handler != null && !handler.getServletInfo().isResource()) ? handler.getName() : null;
 
-        for(final FilterRegistrationStatus status : allFilters)
-        {
-            // as soon as we encounter a failing filter, we can stop
-            if ( status.getResult() != -1 )
-            {
-                break;
-            }
-            if (referencesDispatcherType(status.getHandler(), dispatcherType) )
-            {
-                boolean added = false;
-                for(final PathResolver resolver : status.getResolvers())
-                {
-                    if ( resolver.resolve(requestURI) != null )
-                    {
-                        result.add(status.getHandler());
-                        added = true;
-                        break;
-                    }
-                }
-                // check for servlet name if it's not a resource
-                final String servletName = (handler != null && !handler.getServletInfo().isResource()) ? handler.getName() : null;
-                if ( !added && servletName != null && status.getHandler().getFilterInfo().getServletNames() != null )
-                {
-                    for(final String name : status.getHandler().getFilterInfo().getServletNames())
-                    {
-                        if ( servletName.equals(name) )
-                        {
-                            result.add(status.getHandler());
-                            added = true;
-                            break;
-                        }
-                    }
-                }
-
-            }
-        }
-
-        return result.toArray(new FilterHandler[result.size()]);
+        return this.chains.get(servletName, dispatcherType).getFilterHandlers(requestURI);
     }
 
     /**
@@ -225,7 +357,7 @@ public final class FilterRegistry
      * @param dispatcherType The requested dispatcher type
      * @return {@code true} if the filter can be applied.
      */
-    private boolean referencesDispatcherType(final FilterHandler handler, final DispatcherType dispatcherType)
+    private static boolean referencesDispatcherType(final FilterHandler handler, final DispatcherType dispatcherType)
     {
         for(final DispatcherType dt : handler.getFilterInfo().getDispatcher())
         {
@@ -237,6 +369,27 @@ public final class FilterRegistry
         return false;
     }
 
+    /**
+     * Check if the filter is registered for a servlet name
+     * @param handler The filter handler
+     * @param servletName The servlet name or {@code null}
+     * @return {@code true} if the filter is registered for the servlet name.
+     */
+    private static boolean referencesServletName(final FilterHandler handler, final String servletName)
+    {
+        if ( servletName != null && handler.getFilterInfo().getServletNames() != null )
+        {
+            for(final String name : handler.getFilterInfo().getServletNames())
+            {
+                if ( servletName.equals(name) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Get the runtime information about filters
      * @param servletContextDTO The servlet context DTO
@@ -45,6 +45,12 @@ public final class HandlerRegistry
     /** Current list of context registrations. */
     private volatile List<PerContextHandlerRegistry> registrations = Collections.emptyList();
 
+    /**
+     * Trie of the context paths of the current registrations or {@code null}
+     * if the registrations have to be tried one by one.
+     */
+    private volatile SegmentTrie<List<PerContextHandlerRegistry>> registrationIndex = createIndex(this.registrations);
+
     private final HttpConfig config;
 
     public HandlerRegistry(final HttpConfig config)
@@ -84,7 +90,7 @@ public final class HandlerRegistry
         synchronized ( this )
         {
             list = new ArrayList<>(this.registrations);
-            this.registrations = Collections.emptyList();
+            this.setRegistrations(Collections.<PerContextHandlerRegistry>emptyList());
 
         }
 
@@ -110,7 +116,7 @@ public final class HandlerRegistry
                 if ( reg.getContextServiceId() == info.getServiceId() )
                 {
                     i.remove();
-                    this.registrations = updatedList;
+                    this.setRegistrations(updatedList);
                     break;
                 }
             }
@@ -129,10 +135,44 @@ public final class HandlerRegistry
             updatedList.add(registry);
             Collections.sort(updatedList);
 
-            this.registrations = updatedList;
+            this.setRegistrations(updatedList);
         }
     }
 
+    private void setRegistrations(final List<PerContextHandlerRegistry> list)
+    {
+        this.registrationIndex = createIndex(list);
+        this.registrations = list;
+    }
+
+    /**
+     * Create the trie for the context paths of the registrations. Every node
+     * holds the registrations for its path in their sorted order.
+     * @param list The sorted registrations
+     * @return The trie or {@code null} if a path can't be indexed
+     */
+    private static SegmentTrie<List<PerContextHandlerRegistry>> createIndex(final List<PerContextHandlerRegistry> list)
+    {
+        final SegmentTrie<List<PerContextHandlerRegistry>> trie = new SegmentTrie<>();
+        for(final PerContextHandlerRegistry r : list)
+        {
+            final String path = r.getPath();
+            if ( !path.startsWith("/") )
+            {
+                return null;
+            }
+            // the root path matches every request uri like the empty path
+            final SegmentTrie.Node<List<PerContextHandlerRegistry>> node = trie.getOrCreate(path.equals("/") ? "" : path);
+            if ( node.getValue() == null )
+            {
+                node.setValue(new ArrayList<PerContextHandlerRegistry>());
+            }
+            node.getValue().add(r);
+        }
+        trie.compile();
+        return trie;
+    }
+
     public PerContextHandlerRegistry getRegistry(final long key)
     {
         final List<PerContextHandlerRegistry> list = this.registrations;
@@ -155,18 +195,7 @@ public final class HandlerRegistry
         if ( serviceId == null )
         {
             // if the context is unknown, we use the first matching one!
-            PerContextHandlerRegistry found = null;
-            final List<PerContextHandlerRegistry> regs = this.registrations;
-            for(final PerContextHandlerRegistry r : regs)
-            {
-                final String path = r.isMatching(requestURI);
-                if ( path != null )
-                {
-                    found = r;
-                    break;
-                }
-            }
-            reg = found;
+            reg = this.getBestMatchingRegistry(requestURI);
         }
         else
         {
@@ -200,26 +229,58 @@ public final class HandlerRegistry
 
     public PathResolution resolveServlet(@NotNull final String requestURI)
     {
-        final List<PerContextHandlerRegistry> regs = this.registrations;
-        for(final PerContextHandlerRegistry r : regs)
+        final SegmentTrie<List<PerContextHandlerRegistry>> index = this.registrationIndex;
+        if ( index != null )
         {
-            final String path = r.isMatching(requestURI);
-            if ( path != null )
+            // the registrations of longer context paths come first
+            for(SegmentTrie.Node<List<PerContextHandlerRegistry>> node = index.match(requestURI); node != null; node = node.getParent())
             {
-                final PathResolution ps = r.resolve(path);
-                if ( ps != null )
+                final List<PerContextHandlerRegistry> regs = node.getValue();
+                if ( regs != null )
                 {
-                    // remove context path from request URI and add registry object
-                    ps.requestURI = path;
-                    ps.handlerRegistry = r;
-                    return ps;
+                    for(final PerContextHandlerRegistry r : regs)
+                    {
+                        final PathResolution ps = resolveServlet(r, requestURI);
+                        if ( ps != null )
+                        {
+                            return ps;
+                        }
+                    }
                 }
             }
+            return null;
+        }
+
+        final List<PerContextHandlerRegistry> regs = this.registrations;
+        for(final PerContextHandlerRegistry r : regs)
+        {
+            final PathResolution ps = resolveServlet(r, requestURI);
+            if ( ps != null )
+            {
+                return ps;
+            }
         }
 
         return null;
     }
 
+    private static PathResolution resolveServlet(final PerContextHandlerRegistry r, final String requestURI)
+    {
+        final String path = r.isMatching(requestURI);
+        if ( path != null )
+        {
+            final PathResolution ps = r.resolve(path);
+            if ( ps != null )
+            {
+                // remove context path from request URI and add registry object
+                ps.requestURI = path;
+                ps.handlerRegistry = r;
+                return ps;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get the servlet handler for a servlet by name
      * @param contextId The context id
@@ -258,6 +319,20 @@ public final class HandlerRegistry
 
     public PerContextHandlerRegistry getBestMatchingRegistry(String requestURI)
     {
+        final SegmentTrie<List<PerContextHandlerRegistry>> index = this.registrationIndex;
+        if ( index != null )
+        {
+            for(SegmentTrie.Node<List<PerContextHandlerRegistry>> node = index.match(requestURI); node != null; node = node.getParent())
+            {
+                final List<PerContextHandlerRegistry> regs = node.getValue();
+                if ( regs != null )
+                {
+                    return regs.get(0);
+                }
+            }
+            return null;
+        }
+
         // if the context is unknown, we use the first matching one!
         PerContextHandlerRegistry found = null;
         final List<PerContextHandlerRegistry> regs = this.registrations;
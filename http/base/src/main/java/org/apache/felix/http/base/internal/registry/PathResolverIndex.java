@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.DefaultMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.ExactAndPathMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.ExactMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.ExtensionMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.PathMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.RegexMatcher;
+import org.apache.felix.http.base.internal.registry.PathResolverFactory.RootMatcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The path resolver index finds the matching path resolver for a request
+ * uri without trying every resolver. It is compiled from the sorted list
+ * of active resolvers and yields the same result as trying them in order:
+ * - exact matches are looked up in a hash
+ * - path prefixes are looked up in a segment trie
+ * - extensions are looked up in a hash, longest extension first
+ * - regex matchers are tried in order as a fallback
+ *
+ * Finding the resolver costs roughly the number of segments of the uri
+ * and does not create any objects.
+ */
+final class PathResolverIndex
+{
+    /** The path based resolvers registered for the path of a trie node. */
+    private static final class PathResolvers
+    {
+        /** The exact and path matcher for the path. */
+        public PathResolver prefix;
+
+        /** The path matcher for the path. */
+        public PathResolver path;
+    }
+
+    private final SegmentMap<PathResolver> exactResolvers;
+
+    private final SegmentTrie<PathResolvers> pathResolvers;
+
+    private final SegmentMap<PathResolver> extensionResolvers;
+
+    private final PathResolver rootResolver;
+
+    private final PathResolver defaultResolver;
+
+    private final PathResolver[] fallbackResolvers;
+
+    private PathResolverIndex(final SegmentMap<PathResolver> exactResolvers,
+            final SegmentTrie<PathResolvers> pathResolvers,
+            final SegmentMap<PathResolver> extensionResolvers,
+            final PathResolver rootResolver,
+            final PathResolver defaultResolver,
+            final PathResolver[] fallbackResolvers)
+    {
+        this.exactResolvers = exactResolvers;
+        this.pathResolvers = pathResolvers;
+        this.extensionResolvers = extensionResolvers;
+        this.rootResolver = rootResolver;
+        this.defaultResolver = defaultResolver;
+        this.fallbackResolvers = fallbackResolvers;
+    }
+
+    /**
+     * Compile the index for a list of resolvers.
+     *
+     * @param resolvers The resolvers, sorted
+     * @return The index or {@code null} if the resolvers can't be indexed and
+     *         need to be tried one by one
+     */
+    public static @Nullable PathResolverIndex create(@NotNull final List<PathResolver> resolvers)
+    {
+        final Map<String, PathResolver> exact = new HashMap<String, PathResolver>();
+        final SegmentTrie<PathResolvers> trie = new SegmentTrie<PathResolvers>();
+        final Map<String, PathResolver> extensions = new HashMap<String, PathResolver>();
+        PathResolver root = null;
+        PathResolver dflt = null;
+        final List<PathResolver> fallback = new ArrayList<PathResolver>();
+
+        // the resolvers are sorted, so the first resolver for a key wins
+        for(final PathResolver resolver : resolvers)
+        {
+            final String pattern = resolver.getPattern();
+            if ( resolver instanceof ExactMatcher )
+            {
+                putIfAbsent(exact, pattern, resolver);
+            }
+            else if ( resolver instanceof ExactAndPathMatcher )
+            {
+                if ( !pattern.startsWith("/") )
+                {
+                    return null;
+                }
+                putIfAbsent(exact, pattern, resolver);
+                final PathResolvers node = getNode(trie, pattern);
+                if ( node.prefix == null )
+                {
+                    node.prefix = resolver;
+                }
+            }
+            else if ( resolver instanceof PathMatcher )
+            {
+                final String path = pattern.substring(0, pattern.length() - 2);
+                if ( path.length() > 0 && !path.startsWith("/") )
+                {
+                    return null;
+                }
+                final PathResolvers node = getNode(trie, path);
+                if ( node.path == null )
+                {
+                    node.path = resolver;
+                }
+            }
+            else if ( resolver instanceof ExtensionMatcher )
+            {
+                putIfAbsent(extensions, pattern.substring(1), resolver);
+            }
+            else if ( resolver instanceof RootMatcher )
+            {
+                if ( root == null )
+                {
+                    root = resolver;
+                }
+            }
+            else if ( resolver instanceof DefaultMatcher )
+            {
+                if ( dflt == null )
+                {
+                    dflt = resolver;
+                }
+            }
+            else if ( resolver instanceof RegexMatcher )
+            {
+                fallback.add(resolver);
+            }
+            else
+            {
+                // unknown resolver
+                return null;
+            }
+        }
+        trie.compile();
+
+        return new PathResolverIndex(new SegmentMap<PathResolver>(exact),
+                trie,
+                new SegmentMap<PathResolver>(extensions),
+                root,
+                dflt,
+                fallback.toArray(new PathResolver[fallback.size()]));
+    }
+
+    private static void putIfAbsent(final Map<String, PathResolver> map, final String key, final PathResolver resolver)
+    {
+        if ( !map.containsKey(key) )
+        {
+            map.put(key, resolver);
+        }
+    }
+
+    private static PathResolvers getNode(final SegmentTrie<PathResolvers> trie, final String path)
+    {
+        final SegmentTrie.Node<PathResolvers> node = trie.getOrCreate(path);
+        if ( node.getValue() == null )
+        {
+            node.setValue(new PathResolvers());
+        }
+        return node.getValue();
+    }
+
+    /**
+     * Find the resolver for a request uri
+     *
+     * @param uri The request uri
+     * @return The resolver or {@code null} if no resolver matches
+     */
+    public @Nullable PathResolver find(@NotNull final String uri)
+    {
+        // exact matches (and exact and path matches)
+        final PathResolver exact = this.exactResolvers.get(uri);
+        if ( exact != null )
+        {
+            return exact;
+        }
+
+        // longest exact and path match, then longest path match
+        // all paths in the trie are empty or start with a slash
+        final int length = uri.length();
+        if ( length == 0 || uri.charAt(0) == '/' )
+        {
+            final SegmentTrie.Node<PathResolvers> deepest = this.pathResolvers.match(uri);
+            // the deepest node might be equal to the uri, which for an exact
+            // and path matcher would have been an exact match above
+            for(SegmentTrie.Node<PathResolvers> node = deepest; node != null; node = node.getParent())
+            {
+                final PathResolvers resolvers = node.getValue();
+                if ( resolvers != null && resolvers.prefix != null )
+                {
+                    return resolvers.prefix;
+                }
+            }
+            for(SegmentTrie.Node<PathResolvers> node = deepest; node != null; node = node.getParent())
+            {
+                final PathResolvers resolvers = node.getValue();
+                if ( resolvers != null && resolvers.path != null )
+                {
+                    return resolvers.path;
+                }
+            }
+        }
+
+        // longest extension match, extensions start with a dot
+        for(int pos = uri.indexOf('.'); pos != -1; pos = uri.indexOf('.', pos + 1))
+        {
+            final PathResolver extension = this.extensionResolvers.get(uri, pos, length);
+            if ( extension != null )
+            {
+                return extension;
+            }
+        }
+
+        if ( this.rootResolver != null && (length == 0 || (length == 1 && uri.charAt(0) == '/')) )
+        {
+            return this.rootResolver;
+        }
+        if ( this.defaultResolver != null )
+        {
+            return this.defaultResolver;
+        }
+
+        for(final PathResolver resolver : this.fallbackResolvers)
+        {
+            if ( resolver.resolve(uri) != null )
+            {
+                return resolver;
+            }
+        }
+        return null;
+    }
+}
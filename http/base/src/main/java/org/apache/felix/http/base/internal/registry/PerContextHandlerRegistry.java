@@ -105,6 +105,11 @@ public final class PerContextHandlerRegistry implements Comparable<PerContextHan
         return this.config;
     }
 
+    public @NotNull String getPath()
+    {
+        return this.path;
+    }
+
     public void removeAll()
     {
         this.errorPageRegistry.cleanup();
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable map with string keys which can be queried with a region
+ * of a string, so looking up a segment of a request uri does not require
+ * to create a substring.
+ */
+final class SegmentMap<V>
+{
+    private final String[] keys;
+
+    private final Object[] values;
+
+    private final int mask;
+
+    public SegmentMap(@NotNull final Map<String, V> entries)
+    {
+        int size = 2;
+        while ( size < entries.size() * 2 )
+        {
+            size <<= 1;
+        }
+        this.keys = new String[size];
+        this.values = new Object[size];
+        this.mask = size - 1;
+        for(final Map.Entry<String, V> entry : entries.entrySet())
+        {
+            int index = spread(entry.getKey().hashCode()) & this.mask;
+            while ( this.keys[index] != null )
+            {
+                index = (index + 1) & this.mask;
+            }
+            this.keys[index] = entry.getKey();
+            this.values[index] = entry.getValue();
+        }
+    }
+
+    /**
+     * Get the value for a key
+     * @param key The key
+     * @return The value or {@code null}
+     */
+    public @Nullable V get(@NotNull final String key)
+    {
+        return this.get(key, key.hashCode(), 0, key.length());
+    }
+
+    /**
+     * Get the value for the key given by a region of a string
+     * @param s The string
+     * @param start The start of the key (inclusive)
+     * @param end The end of the key (exclusive)
+     * @return The value or {@code null}
+     */
+    public @Nullable V get(@NotNull final String s, final int start, final int end)
+    {
+        // same as String.hashCode() of the region
+        int hash = 0;
+        for(int i = start; i < end; i++)
+        {
+            hash = 31 * hash + s.charAt(i);
+        }
+        return this.get(s, hash, start, end);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V get(final String s, final int hash, final int start, final int end)
+    {
+        final int length = end - start;
+        int index = spread(hash) & this.mask;
+        String key;
+        while ( (key = this.keys[index]) != null )
+        {
+            if ( key.length() == length && s.regionMatches(start, key, 0, length) )
+            {
+                return (V) this.values[index];
+            }
+            index = (index + 1) & this.mask;
+        }
+        return null;
+    }
+
+    private static int spread(final int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A trie of paths split at slashes. The root node represents the empty path,
+ * every other node a path starting with a slash, e.g. {@code /foo/bar} is
+ * the child {@code bar} of the child {@code foo} of the root node.
+ *
+ * The trie is built once and then compiled; after compilation it is
+ * immutable and can be used concurrently.
+ */
+final class SegmentTrie<V>
+{
+    public static final class Node<V>
+    {
+        private final Node<V> parent;
+
+        private Map<String, Node<V>> pendingChildren = new HashMap<String, Node<V>>();
+
+        private SegmentMap<Node<V>> children;
+
+        private V value;
+
+        private Node(final Node<V> parent)
+        {
+            this.parent = parent;
+        }
+
+        public @Nullable Node<V> getParent()
+        {
+            return this.parent;
+        }
+
+        public @Nullable V getValue()
+        {
+            return this.value;
+        }
+
+        public void setValue(final V value)
+        {
+            this.value = value;
+        }
+
+        private void compile()
+        {
+            for(final Node<V> child : this.pendingChildren.values())
+            {
+                child.compile();
+            }
+            this.children = new SegmentMap<Node<V>>(this.pendingChildren);
+            this.pendingChildren = Collections.emptyMap();
+        }
+    }
+
+    private final Node<V> root = new Node<V>(null);
+
+    /**
+     * Get the node for a path, creating it if necessary. Must only be called
+     * before the trie is compiled.
+     * @param path The empty path or a path starting with a slash
+     * @return The node
+     * @throws IllegalArgumentException If the path is neither empty nor starts with a slash
+     */
+    public @NotNull Node<V> getOrCreate(@NotNull final String path)
+    {
+        if ( path.length() > 0 && path.charAt(0) != '/' )
+        {
+            throw new IllegalArgumentException("Path must start with a slash: " + path);
+        }
+        Node<V> node = this.root;
+        int pos = 0;
+        while ( pos < path.length() )
+        {
+            int end = path.indexOf('/', pos + 1);
+            if ( end == -1 )
+            {
+                end = path.length();
+            }
+            final String segment = path.substring(pos + 1, end);
+            Node<V> child = node.pendingChildren.get(segment);
+            if ( child == null )
+            {
+                child = new Node<V>(node);
+                node.pendingChildren.put(segment, child);
+            }
+            node = child;
+            pos = end;
+        }
+        return node;
+    }
+
+    /**
+     * Compile the trie. Afterwards it must not be changed anymore.
+     */
+    public void compile()
+    {
+        this.root.compile();
+    }
+
+    /**
+     * Find the node with the longest path which is either equal to the uri
+     * or a prefix of the uri followed by a slash. The root node is returned
+     * if no other node matches. All ancestors of the returned node match as
+     * well, and only the returned node might be equal to the uri.
+     *
+     * @param uri The uri
+     * @return The node, never {@code null}
+     */
+    public @NotNull Node<V> match(@NotNull final String uri)
+    {
+        final int length = uri.length();
+        Node<V> node = this.root;
+        int pos = 0;
+        while ( pos < length && uri.charAt(pos) == '/' )
+        {
+            int end = uri.indexOf('/', pos + 1);
+            if ( end == -1 )
+            {
+                end = length;
+            }
+            final Node<V> child = node.children.get(uri, pos + 1, end);
+            if ( child == null )
+            {
+                break;
+            }
+            node = child;
+            pos = end;
+        }
+        return node;
+    }
+}
@@ -53,6 +53,9 @@ public final class ServletRegistry
 
     private volatile List<PathResolver> activeResolvers = Collections.emptyList();
 
+    /** The index of the active resolvers or {@code null} if they have to be tried one by one. */
+    private volatile PathResolverIndex resolverIndex = PathResolverIndex.create(this.activeResolvers);
+
     private final Map<String, List<ServletHandler>> inactiveServletMappings = new HashMap<String, List<ServletHandler>>();
 
     private final Map<String, List<ServletHandler>> servletsByName = new ConcurrentHashMap<String, List<ServletHandler>>();
@@ -73,6 +76,21 @@ public final class ServletRegistry
      */
     public PathResolution resolve(@NotNull final String relativeRequestURI)
     {
+        final PathResolverIndex index = this.resolverIndex;
+        if ( index != null )
+        {
+            final PathResolver entry = index.find(relativeRequestURI);
+            if ( entry != null )
+            {
+                final PathResolution pr = entry.resolve(relativeRequestURI);
+                if ( pr != null )
+                {
+                    pr.patterns = new String[] {entry.getPattern()};
+                    return pr;
+                }
+            }
+            return null;
+        }
         final List<PathResolver> resolvers = this.activeResolvers;
         for(final PathResolver entry : resolvers)
         {
@@ -87,6 +105,12 @@ public final class ServletRegistry
         return null;
     }
 
+    private void setActiveResolvers(final List<PathResolver> resolvers)
+    {
+        this.resolverIndex = PathResolverIndex.create(resolvers);
+        this.activeResolvers = resolvers;
+    }
+
     private PathResolver findResolver(final List<PathResolver> resolvers, final String pattern)
     {
         for(final PathResolver pr : resolvers)
@@ -173,7 +197,7 @@ public final class ServletRegistry
                 addToNameMapping(handler);
             }
             Collections.sort(resolvers);
-            this.activeResolvers = resolvers;
+            this.setActiveResolvers(resolvers);
             this.mapping = newMap;
         }
         else if ( !handler.getServletInfo().isResource() && handler.getServletInfo().getName() != null )
@@ -339,7 +363,7 @@ public final class ServletRegistry
             }
 
             Collections.sort(resolvers);
-            this.activeResolvers = resolvers;
+            this.setActiveResolvers(resolvers);
             this.mapping = newMap;
 
             if ( cleanupHandler != null )
@@ -366,7 +390,7 @@ public final class ServletRegistry
 
     public synchronized void cleanup()
     {
-        this.activeResolvers = Collections.emptyList();
+        this.setActiveResolvers(Collections.<PathResolver>emptyList());
         this.inactiveServletMappings.clear();
         this.servletsByName.clear();
         this.mapping = Collections.emptyMap();
@@ -0,0 +1,398 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The resource cache keeps the metadata and small bodies of resources
+ * served by the {@link ResourceServlet}. Only resources which are either
+ * immutable (bundle entries with a url encoding the bundle revision) or
+ * can be validated cheaply (files) are cached. The cache is bounded by the
+ * number of entries and the number of cached body bytes; if a bound is
+ * exceeded arbitrary entries are evicted.
+ */
+final class ResourceCache
+{
+    /** Bodies up to this size are kept in memory. */
+    static final int MAX_BODY_SIZE = 64 * 1024;
+
+    /** The host of a bundle url encoding the revision: {@code <framework uuid>_<bundle id>.<revision>} */
+    private static final Pattern BUNDLE_REVISION_HOST = Pattern.compile(".*_\\d+\\.\\d+");
+
+    /** A resource with its metadata. */
+    static final class Resource
+    {
+        private final URL url;
+
+        private final File file;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final String etag;
+
+        private final byte[] body;
+
+        private volatile Resource gzip;
+
+        private volatile Resource brotli;
+
+        private volatile boolean variantsResolved;
+
+        private Resource(final URL url,
+                final File file,
+                final long lastModified,
+                final long length,
+                final String etag,
+                final byte[] body)
+        {
+            this.url = url;
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.etag = etag;
+            this.body = body;
+        }
+
+        public @NotNull URL getURL()
+        {
+            return this.url;
+        }
+
+        /**
+         * The last modification time or {@code 0} if unknown
+         */
+        public long getLastModified()
+        {
+            return this.lastModified;
+        }
+
+        /**
+         * The length or {@code -1} if unknown
+         */
+        public long getLength()
+        {
+            return this.length;
+        }
+
+        /**
+         * The strong entity tag or {@code null} if there is none
+         */
+        public @Nullable String getETag()
+        {
+            return this.etag;
+        }
+
+        /**
+         * The body if it is kept in memory, {@code null} otherwise
+         */
+        public @Nullable byte[] getBody()
+        {
+            return this.body;
+        }
+
+        public @Nullable Resource getGzip()
+        {
+            return this.gzip;
+        }
+
+        public @Nullable Resource getBrotli()
+        {
+            return this.brotli;
+        }
+
+        public boolean hasVariants()
+        {
+            return this.gzip != null || this.brotli != null;
+        }
+
+        boolean isVariantsResolved()
+        {
+            return this.variantsResolved;
+        }
+
+        void setVariants(final Resource gzip, final Resource brotli)
+        {
+            this.gzip = gzip;
+            this.brotli = brotli;
+            this.variantsResolved = true;
+        }
+
+        /**
+         * Check whether the resource is unchanged.
+         */
+        boolean isValid()
+        {
+            if ( this.file != null
+                 && (this.file.lastModified() != this.lastModified || this.file.length() != this.length) )
+            {
+                return false;
+            }
+            final Resource gz = this.gzip;
+            final Resource br = this.brotli;
+            return (gz == null || gz.isValid()) && (br == null || br.isValid());
+        }
+
+        private int getWeight()
+        {
+            int weight = this.body == null ? 0 : this.body.length;
+            final Resource gz = this.gzip;
+            if ( gz != null && gz.body != null )
+            {
+                weight += gz.body.length;
+            }
+            final Resource br = this.brotli;
+            if ( br != null && br.body != null )
+            {
+                weight += br.body.length;
+            }
+            return weight;
+        }
+    }
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private final ConcurrentMap<String, Resource> resources = new ConcurrentHashMap<String, Resource>();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    public ResourceCache(final int maxEntries, final long maxBytes)
+    {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Is a resource cacheable? Files are validated on each access; other
+     * file urls, like directories, cannot be validated and are not cached.
+     * Bundle entries are only cached if the url encodes the bundle revision,
+     * as the urls of the Apache Felix framework do; other bundle urls, like
+     * {@code bundleentry} and {@code bundleresource} urls, stay the same
+     * when the bundle is updated.
+     * @param url The url of the resource
+     * @return {@code true} if the resource can be cached
+     */
+    public static boolean isCacheable(@NotNull final URL url)
+    {
+        final String protocol = url.getProtocol();
+        if ( "file".equals(protocol) )
+        {
+            return toFile(url) != null;
+        }
+        return "bundle".equals(protocol)
+                && url.getHost() != null
+                && BUNDLE_REVISION_HOST.matcher(url.getHost()).matches();
+    }
+
+    /**
+     * Get a cached resource
+     * @param url The url
+     * @return The resource or {@code null} if it is not cached or has changed
+     */
+    public @Nullable Resource get(@NotNull final URL url)
+    {
+        final String key = url.toExternalForm();
+        final Resource resource = this.resources.get(key);
+        if ( resource != null && !resource.isValid() )
+        {
+            this.remove(key, resource);
+            return null;
+        }
+        return resource;
+    }
+
+    /**
+     * Add a resource to the cache. The precompressed variants of the
+     * resource must have been resolved.
+     * @param resource The resource
+     */
+    public void put(@NotNull final Resource resource)
+    {
+        final String key = resource.getURL().toExternalForm();
+        final Resource old = this.resources.put(key, resource);
+        if ( old != null )
+        {
+            this.bytes.addAndGet(-old.getWeight());
+        }
+        this.bytes.addAndGet(resource.getWeight());
+
+        if ( this.resources.size() > this.maxEntries || this.bytes.get() > this.maxBytes )
+        {
+            final Iterator<String> i = this.resources.keySet().iterator();
+            while ( i.hasNext() && (this.resources.size() > this.maxEntries || this.bytes.get() > this.maxBytes) )
+            {
+                final String k = i.next();
+                if ( !k.equals(key) )
+                {
+                    final Resource r = this.resources.get(k);
+                    if ( r != null )
+                    {
+                        this.remove(k, r);
+                    }
+                }
+            }
+        }
+    }
+
+    private void remove(final String key, final Resource resource)
+    {
+        if ( this.resources.remove(key, resource) )
+        {
+            this.bytes.addAndGet(-resource.getWeight());
+        }
+    }
+
+    /**
+     * Create a resource by reading its metadata.
+     * @param url The url of the resource
+     * @param readBody Whether small bodies should be kept in memory
+     * @return The resource
+     * @throws IOException If reading the resource fails
+     */
+    public static @NotNull Resource create(@NotNull final URL url, final boolean readBody) throws IOException
+    {
+        File file = null;
+        long lastModified = 0;
+        long length = -1;
+        byte[] body = null;
+
+        if ( "file".equals(url.getProtocol()) )
+        {
+            file = toFile(url);
+        }
+        if ( file != null )
+        {
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+        else
+        {
+            final URLConnection conn = url.openConnection();
+            try
+            {
+                lastModified = conn.getLastModified();
+            }
+            catch (final Exception e)
+            {
+                // Do nothing
+            }
+            length = conn.getContentLengthLong();
+            if ( readBody && length >= 0 && length <= MAX_BODY_SIZE )
+            {
+                body = read(conn.getInputStream(), (int) length);
+                length = body.length;
+            }
+        }
+        if ( file != null && readBody && length <= MAX_BODY_SIZE )
+        {
+            body = read(url.openStream(), (int) length);
+            if ( body.length != length )
+            {
+                // changed while reading
+                body = null;
+            }
+        }
+
+        String etag = null;
+        if ( lastModified != 0 && length >= 0 )
+        {
+            etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        }
+        else if ( body != null )
+        {
+            final CRC32 crc = new CRC32();
+            crc.update(body);
+            etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Long.toHexString(length) + "\"";
+        }
+        return new Resource(url, file, lastModified, length, etag, body);
+    }
+
+    /**
+     * Create a precompressed variant of a resource. The entity tag of the
+     * variant is derived from the tag of the original resource.
+     * @param url The url of the variant
+     * @param original The original resource
+     * @param encoding The content encoding of the variant
+     * @param readBody Whether small bodies should be kept in memory
+     * @return The variant
+     * @throws IOException If reading the variant fails
+     */
+    public static @NotNull Resource createVariant(@NotNull final URL url,
+            @NotNull final Resource original,
+            @NotNull final String encoding,
+            final boolean readBody) throws IOException
+    {
+        final Resource variant = create(url, readBody);
+        String etag = null;
+        if ( variant.etag != null && original.etag != null )
+        {
+            // a strong entity tag must be different for each representation
+            etag = variant.etag.substring(0, variant.etag.length() - 1) + "-" + encoding + "\"";
+        }
+        return new Resource(variant.url, variant.file, variant.lastModified, variant.length, etag, variant.body);
+    }
+
+    private static File toFile(final URL url)
+    {
+        try
+        {
+            final File file = new File(url.toURI());
+            return file.isFile() ? file : null;
+        }
+        catch (final Exception e)
+        {
+            return null;
+        }
+    }
+
+    private static byte[] read(final InputStream is, final int length) throws IOException
+    {
+        try
+        {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(length, 32));
+            final byte[] buf = new byte[8192];
+            int n;
+            while ( (n = is.read(buf, 0, buf.length)) >= 0 )
+            {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+}
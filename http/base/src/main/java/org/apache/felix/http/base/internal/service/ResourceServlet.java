@@ -16,25 +16,36 @@
  */
 package org.apache.felix.http.base.internal.service;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
-import java.net.URLConnection;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.felix.http.base.internal.service.ResourceCache.Resource;
+
 /**
- * The resource servlet
+ * The resource servlet.
+ *
+ * Resources are served with a strong entity tag, support for single byte
+ * ranges and, if the client accepts it, from a precompressed sibling with
+ * the extension {@code .br} or {@code .gz}. Metadata and small bodies of
+ * bundle entries and files are kept in a shared {@link ResourceCache}.
  */
 public final class ResourceServlet extends HttpServlet
 {
     private static final long serialVersionUID = 1L;
 
+    /** The cache shared by all resource servlets. */
+    private static final ResourceCache CACHE = new ResourceCache(4096, 16 * 1024 * 1024);
+
+    /** Marks an unsatisfiable range. */
+    private static final long[] UNSATISFIABLE_RANGE = new long[0];
+
     /** The path of the resource registration. */
     private final String prefix;
 
@@ -66,56 +77,269 @@ public final class ResourceServlet extends HttpServlet
             final HttpServletResponse res, final URL url, final String resName)
     throws IOException
     {
+        final Resource resource = getResource(url, resName);
+
         final String contentType = getServletContext().getMimeType(resName);
         if (contentType != null)
         {
             res.setContentType(contentType);
         }
 
-        final long lastModified = getLastModified(url);
+        // ranges are only served from the original resource
+        final String range = req.getHeader("Range");
+        Resource selected = resource;
+        if (resource.hasVariants())
+        {
+            res.addHeader("Vary", "Accept-Encoding");
+            final String accept = req.getHeader("Accept-Encoding");
+            if (range == null && accept != null)
+            {
+                if (resource.getBrotli() != null && acceptsEncoding(accept, "br"))
+                {
+                    selected = resource.getBrotli();
+                    res.setHeader("Content-Encoding", "br");
+                }
+                else if (resource.getGzip() != null && acceptsEncoding(accept, "gzip"))
+                {
+                    selected = resource.getGzip();
+                    res.setHeader("Content-Encoding", "gzip");
+                }
+            }
+        }
+
+        final long lastModified = resource.getLastModified();
         if (lastModified != 0)
         {
             res.setDateHeader("Last-Modified", lastModified);
         }
+        final String etag = selected.getETag();
+        if (etag != null)
+        {
+            res.setHeader("ETag", etag);
+        }
 
-        if (!resourceModified(lastModified, req.getDateHeader("If-Modified-Since")))
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null)
+        {
+            if (etag != null && matchesETag(ifNoneMatch, etag))
+            {
+                res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+        else if (!resourceModified(lastModified, req.getDateHeader("If-Modified-Since")))
         {
             res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
-        else
+
+        final long length = selected.getLength();
+        long start = 0;
+        long count = length;
+        if (length >= 0)
         {
-            copyResource(url, res);
+            res.setHeader("Accept-Ranges", "bytes");
+            if (range != null && isRangeApplicable(req, resource))
+            {
+                final long[] r = parseRange(range, length);
+                if (r == UNSATISFIABLE_RANGE)
+                {
+                    res.setHeader("Content-Range", "bytes */" + length);
+                    res.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                if (r != null)
+                {
+                    start = r[0];
+                    count = r[1] - r[0] + 1;
+                    res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    res.setHeader("Content-Range", "bytes " + r[0] + "-" + r[1] + "/" + length);
+                }
+            }
+        }
+
+        copyResource(selected, start, count, res);
+    }
+
+    /**
+     * Get the resource for a url, either from the cache or by reading its metadata.
+     */
+    private Resource getResource(final URL url, final String resName) throws IOException
+    {
+        if (!ResourceCache.isCacheable(url))
+        {
+            return ResourceCache.create(url, false);
+        }
+        Resource resource = CACHE.get(url);
+        if (resource == null)
+        {
+            resource = ResourceCache.create(url, true);
+            if (!resName.endsWith(".gz") && !resName.endsWith(".br"))
+            {
+                resource.setVariants(getVariant(resource, resName + ".gz", "gzip"),
+                        getVariant(resource, resName + ".br", "br"));
+            }
+            CACHE.put(resource);
+        }
+        return resource;
+    }
+
+    private Resource getVariant(final Resource resource, final String name, final String encoding) throws IOException
+    {
+        final URL url = getServletContext().getResource(name);
+        if (url != null && ResourceCache.isCacheable(url))
+        {
+            return ResourceCache.createVariant(url, resource, encoding, true);
+        }
+        return null;
+    }
+
+    /**
+     * Check whether a content coding is accepted according to an Accept-Encoding header.
+     */
+    static boolean acceptsEncoding(final String accept, final String encoding)
+    {
+        boolean wildcard = false;
+        for (final String element : accept.split(","))
+        {
+            final String[] parts = element.split(";");
+            final String coding = parts[0].trim();
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++)
+            {
+                final String param = parts[i].trim();
+                if (param.startsWith("q="))
+                {
+                    try
+                    {
+                        accepted = Float.parseFloat(param.substring(2)) > 0;
+                    }
+                    catch (final NumberFormatException nfe)
+                    {
+                        accepted = false;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase(encoding))
+            {
+                return accepted;
+            }
+            if (coding.equals("*"))
+            {
+                wildcard = accepted;
+            }
         }
+        return wildcard;
     }
 
-    private long getLastModified(final URL url)
+    /**
+     * Check whether an If-None-Match header matches an entity tag.
+     */
+    static boolean matchesETag(final String header, final String etag)
     {
-        long lastModified = 0;
+        for (final String element : header.split(","))
+        {
+            String tag = element.trim();
+            if (tag.equals("*"))
+            {
+                return true;
+            }
+            // weak comparison
+            if (tag.startsWith("W/"))
+            {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
 
+    /**
+     * Check the If-Range header of a request.
+     */
+    private boolean isRangeApplicable(final HttpServletRequest req, final Resource resource)
+    {
+        final String ifRange = req.getHeader("If-Range");
+        if (ifRange == null)
+        {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+        {
+            // strong comparison
+            return ifRange.equals(resource.getETag());
+        }
         try
         {
-            final URLConnection conn = url.openConnection();
-            lastModified = conn.getLastModified();
+            final long date = req.getDateHeader("If-Range");
+            return resource.getLastModified() != 0 && date / 1000 == resource.getLastModified() / 1000;
         }
-        catch (final Exception e)
+        catch (final IllegalArgumentException iae)
         {
-            // Do nothing
+            return false;
         }
+    }
 
-        if (lastModified == 0)
+    /**
+     * Parse a Range header. Only a single byte range is supported.
+     * @return The first and last byte position, {@code null} if the full
+     *         resource should be served or {@link #UNSATISFIABLE_RANGE}
+     */
+    static long[] parseRange(final String range, final long length)
+    {
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1)
+        {
+            return null;
+        }
+        final String spec = range.substring(6).trim();
+        final int dash = spec.indexOf('-');
+        if (dash == -1)
+        {
+            return null;
+        }
+        try
         {
-            final String filepath = url.getPath();
-            if (filepath != null)
+            final long first;
+            long last;
+            if (dash == 0)
             {
-                final File f = new File(filepath);
-                if (f.exists())
+                // suffix range
+                final long suffix = Long.parseLong(spec.substring(1).trim());
+                if (suffix == 0 || length == 0)
+                {
+                    return UNSATISFIABLE_RANGE;
+                }
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            }
+            else
+            {
+                first = Long.parseLong(spec.substring(0, dash).trim());
+                final String end = spec.substring(dash + 1).trim();
+                last = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong(end);
+                if (last < first)
+                {
+                    return null;
+                }
+                if (first >= length)
                 {
-                    lastModified = f.lastModified();
+                    return UNSATISFIABLE_RANGE;
                 }
+                last = Math.min(last, length - 1);
             }
+            if (first < 0)
+            {
+                return null;
+            }
+            return new long[] {first, last};
+        }
+        catch (final NumberFormatException nfe)
+        {
+            return null;
         }
-
-        return lastModified;
     }
 
     private boolean resourceModified(long resTimestamp, long modSince)
@@ -126,68 +350,64 @@ public final class ResourceServlet extends HttpServlet
         return resTimestamp == 0 || modSince == -1 || resTimestamp > modSince;
     }
 
-    private void copyResource(final URL url, final HttpServletResponse res) throws IOException
+    private void copyResource(final Resource resource, final long start, final long count, final HttpServletResponse res)
+    throws IOException
     {
-        URLConnection conn = null;
-        OutputStream os = null;
-        InputStream is = null;
+        // FELIX-3987 content length should be set *before* any streaming is done
+        // as headers should be written before the content is actually written...
+        if (count >= 0)
+        {
+            res.setContentLengthLong(count);
+        }
 
+        final OutputStream os = res.getOutputStream();
         try
         {
-            conn = url.openConnection();
-
-            is = conn.getInputStream();
-            os = res.getOutputStream();
-            // FELIX-3987 content length should be set *before* any streaming is done
-            // as headers should be written before the content is actually written...
-            int len = getContentLength(conn);
-            if (len >= 0)
+            final byte[] body = resource.getBody();
+            if (body != null)
             {
-                res.setContentLength(len);
+                os.write(body, (int) start, (int) count);
             }
-
-            byte[] buf = new byte[1024];
-            int n;
-
-            while ((n = is.read(buf, 0, buf.length)) >= 0)
+            else
             {
-                os.write(buf, 0, n);
+                final InputStream is = resource.getURL().openStream();
+                try
+                {
+                    copy(is, os, start, count);
+                }
+                finally
+                {
+                    is.close();
+                }
             }
         }
         finally
         {
-            if (is != null)
-            {
-                is.close();
-            }
-
-            if (os != null)
-            {
-                os.close();
-            }
+            os.close();
         }
     }
 
-    private int getContentLength(final URLConnection conn)
+    private void copy(final InputStream is, final OutputStream os, final long start, final long count)
+    throws IOException
     {
-        int length = -1;
-
-        length = conn.getContentLength();
-        if (length < 0)
+        long skip = start;
+        while (skip > 0)
         {
-            // Unknown, try whether it is a file, and if so, use the file
-            // API to get the length of the content...
-            String path = conn.getURL().getPath();
-            if (path != null)
+            final long n = is.skip(skip);
+            if (n <= 0)
             {
-                File f = new File(path);
-                // In case more than 2GB is streamed
-                if (f.length() < Integer.MAX_VALUE)
-                {
-                    length = (int) f.length();
-                }
+                throw new IOException("Unable to skip to position " + start);
             }
+            skip -= n;
+        }
+
+        final byte[] buf = new byte[8192];
+        long remaining = count < 0 ? Long.MAX_VALUE : count;
+        int n;
+        while (remaining > 0 && (n = is.read(buf, 0, (int) Math.min(buf.length, remaining))) >= 0)
+        {
+            os.write(buf, 0, n);
+            remaining -= n;
         }
-        return length;
     }
 }
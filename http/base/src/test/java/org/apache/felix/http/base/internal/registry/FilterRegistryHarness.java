@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.Servlet;
+
+import org.apache.felix.http.base.internal.handler.HttpServiceFilterHandler;
+import org.apache.felix.http.base.internal.handler.HttpServiceServletHandler;
+import org.apache.felix.http.base.internal.handler.ServletHandler;
+import org.apache.felix.http.base.internal.runtime.FilterInfo;
+import org.apache.felix.http.base.internal.runtime.ServletInfo;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
+
+/**
+ * Local benchmark of the filter lookup for a request. It is not run as part
+ * of the build; run it from the test classpath:
+ *
+ * <pre>
+ * java org.apache.felix.http.base.internal.registry.FilterRegistryHarness [filters] [servlets]
+ * </pre>
+ *
+ * Registers <tt>servlets</tt> servlets and <tt>filters</tt> filters in two
+ * mixes: in the first a tenth of the filters is registered for servlet
+ * names, a tenth for an extension, a tenth for a regex and the rest for
+ * path prefixes the servlets are spread over; in the second all filters
+ * are registered for servlet names. The requests cycle through all
+ * servlets. Reports the best time per lookup over several rounds after a
+ * warm up, and the average number of filters returned.
+ */
+public class FilterRegistryHarness
+{
+    private static final int ROUNDS = 12;
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static final int LOOKUPS = 2000000;
+
+    public static void main(final String[] args) throws Exception
+    {
+        final int filterCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        final int servletCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        run("mixed", filterCount, servletCount, false);
+        run("servlet names", filterCount, servletCount, true);
+    }
+
+    private static void run(final String label, final int filterCount, final int servletCount, final boolean namesOnly)
+    {
+        final int prefixes = Math.max(1, filterCount / 2);
+
+        final FilterRegistry registry = new FilterRegistry();
+        for (int i = 0; i < filterCount; i++)
+        {
+            final Map<String, Object> props = new HashMap<String, Object>();
+            switch (namesOnly ? 0 : i % 10)
+            {
+                case 0:
+                    props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_SERVLET,
+                        new String[] {"servlet" + (namesOnly ? i * servletCount / filterCount : i)});
+                    break;
+                case 1:
+                    props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN, new String[] {"*.html"});
+                    break;
+                case 2:
+                    props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_REGEX, new String[] {"/app" + i + "/.*\\.json"});
+                    break;
+                default:
+                    props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN, new String[] {"/app" + (i % prefixes) + "/*"});
+            }
+            props.put(Constants.SERVICE_ID, (long) i);
+            props.put(Constants.SERVICE_RANKING, i);
+            registry.addFilter(new HttpServiceFilterHandler(null, new FilterInfo(reference(props)), proxy(Filter.class)));
+        }
+
+        final ServletHandler[] servlets = new ServletHandler[servletCount];
+        final String[] uris = new String[servletCount];
+        for (int i = 0; i < servletCount; i++)
+        {
+            final String prefix = "/app" + (i % prefixes) + "/s" + i;
+            servlets[i] = new HttpServiceServletHandler(null,
+                new ServletInfo("servlet" + i, prefix + "/*", Collections.<String, String>emptyMap()),
+                proxy(Servlet.class));
+            uris[i] = prefix + (i % 2 == 0 ? "/page.html" : "/data.json");
+        }
+
+        double best = Double.MAX_VALUE;
+        long matched = 0;
+        for (int r = 0; r < ROUNDS; r++)
+        {
+            matched = 0;
+            final long start = System.nanoTime();
+            for (int n = 0; n < LOOKUPS; n++)
+            {
+                final int i = n % servletCount;
+                matched += registry.getFilterHandlers(servlets[i], DispatcherType.REQUEST, uris[i]).length;
+            }
+            if (r >= WARMUP_ROUNDS)
+            {
+                best = Math.min(best, (System.nanoTime() - start) / (double) LOOKUPS);
+            }
+        }
+        System.out.println(String.format("%s, %d filters, %d servlets: %.1f ns per lookup, %.2f filters per request",
+            label, filterCount, servletCount, best, matched / (double) LOOKUPS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceReference<Filter> reference(final Map<String, Object> props)
+    {
+        return (ServiceReference<Filter>) Proxy.newProxyInstance(FilterRegistryHarness.class.getClassLoader(),
+            new Class[] {ServiceReference.class}, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args)
+                {
+                    if (method.getName().equals("getProperty"))
+                    {
+                        return props.get(args[0]);
+                    }
+                    if (method.getName().equals("getPropertyKeys"))
+                    {
+                        return props.keySet().toArray(new String[props.size()]);
+                    }
+                    if (method.getName().equals("compareTo"))
+                    {
+                        return 0;
+                    }
+                    return null;
+                }
+            });
+    }
+
+    private static <T> T proxy(final Class<T> type)
+    {
+        return type.cast(Proxy.newProxyInstance(FilterRegistryHarness.class.getClassLoader(),
+            new Class[] {type}, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args)
+                {
+                    return null;
+                }
+            }));
+    }
+}
@@ -16,22 +16,34 @@
  */
 package org.apache.felix.http.base.internal.registry;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
 import java.util.EventListener;
 
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.Servlet;
 import javax.servlet.ServletContextListener;
 import javax.servlet.ServletException;
 
 import org.apache.felix.http.base.internal.context.ExtServletContext;
+import org.apache.felix.http.base.internal.handler.FilterHandler;
+import org.apache.felix.http.base.internal.handler.HttpServiceFilterHandler;
+import org.apache.felix.http.base.internal.handler.HttpServiceServletHandler;
 import org.apache.felix.http.base.internal.handler.ListenerHandler;
+import org.apache.felix.http.base.internal.handler.ServletHandler;
 import org.apache.felix.http.base.internal.handler.WhiteboardListenerHandler;
+import org.apache.felix.http.base.internal.runtime.FilterInfo;
 import org.apache.felix.http.base.internal.runtime.ListenerInfo;
+import org.apache.felix.http.base.internal.runtime.ServletInfo;
 import org.apache.felix.http.base.internal.runtime.dto.FailedDTOHolder;
 import org.junit.Test;
 import org.mockito.Matchers;
@@ -42,6 +54,7 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceObjects;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.http.runtime.dto.ServletContextDTO;
+import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
 
 public class FilterRegistryTest {
 
@@ -89,6 +102,63 @@ public class FilterRegistryTest {
         assertEmpty(dto, holder);
     }
 
+    @Test public void testFilterHandlers() throws ServletException
+    {
+        final FilterRegistry reg = new FilterRegistry();
+
+        final FilterHandler all = createFilterHandler(1L, 40, null, new String[] {"/*"}, null);
+        final FilterHandler named = createFilterHandler(2L, 30, null, null, new String[] {"foo"});
+        final FilterHandler html = createFilterHandler(3L, 20, new String[] {"REQUEST", "FORWARD"}, new String[] {"*.html"}, null);
+        final FilterHandler dflt = createFilterHandler(4L, 10, null, new String[] {"/"}, null);
+        reg.addFilter(html);
+        reg.addFilter(dflt);
+        reg.addFilter(all);
+        reg.addFilter(named);
+
+        final ServletHandler foo = createServletHandler("foo", "/foo/*");
+        final ServletHandler bar = createServletHandler("bar", "/bar/*");
+
+        assertArrayEquals(new FilterHandler[] {all, named, html, dflt}, reg.getFilterHandlers(foo, DispatcherType.REQUEST, "/foo/x.html"));
+        assertArrayEquals(new FilterHandler[] {all, named, dflt}, reg.getFilterHandlers(foo, DispatcherType.REQUEST, "/foo/x"));
+        assertArrayEquals(new FilterHandler[] {all, dflt}, reg.getFilterHandlers(bar, DispatcherType.REQUEST, "/bar/x"));
+        assertArrayEquals(new FilterHandler[] {all, html, dflt}, reg.getFilterHandlers(null, DispatcherType.REQUEST, "/x.html"));
+        assertArrayEquals(new FilterHandler[] {html}, reg.getFilterHandlers(foo, DispatcherType.FORWARD, "/foo/x.html"));
+        assertEquals(0, reg.getFilterHandlers(foo, DispatcherType.FORWARD, "/foo/x").length);
+        assertEquals(0, reg.getFilterHandlers(foo, DispatcherType.ERROR, "/foo/x.html").length);
+
+        // the chain is invalidated when filters are removed
+        reg.removeFilter(all.getFilterInfo(), false);
+        reg.removeFilter(html.getFilterInfo(), false);
+        final FilterHandler[] handlers = reg.getFilterHandlers(foo, DispatcherType.REQUEST, "/foo/x.html");
+        assertArrayEquals(new FilterHandler[] {named, dflt}, handlers);
+        // filters which don't depend on the uri are not evaluated per request
+        assertSame(handlers, reg.getFilterHandlers(foo, DispatcherType.REQUEST, "/foo/y"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FilterHandler createFilterHandler(final long id,
+            final int ranking,
+            final String[] dispatcher,
+            final String[] patterns,
+            final String[] servletNames)
+    {
+        final ServiceReference<Filter> ref = mock(ServiceReference.class);
+        when(ref.getProperty(Constants.SERVICE_ID)).thenReturn(id);
+        when(ref.getProperty(Constants.SERVICE_RANKING)).thenReturn(ranking);
+        when(ref.getProperty(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_DISPATCHER)).thenReturn(dispatcher);
+        when(ref.getProperty(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN)).thenReturn(patterns);
+        when(ref.getProperty(HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_SERVLET)).thenReturn(servletNames);
+        when(ref.getPropertyKeys()).thenReturn(new String[0]);
+
+        return new HttpServiceFilterHandler(mock(ExtServletContext.class), new FilterInfo(ref), mock(Filter.class));
+    }
+
+    private static ServletHandler createServletHandler(final String name, final String pattern)
+    {
+        final ServletInfo info = new ServletInfo(name, pattern, Collections.<String, String>emptyMap());
+        return new HttpServiceServletHandler(null, info, mock(Servlet.class));
+    }
+
     private static ListenerInfo createListenerInfo(final long id, final int ranking, final Class<? extends EventListener> type) throws InvalidSyntaxException
     {
         final String[] typeNames = new String[1];
@@ -18,6 +18,7 @@ package org.apache.felix.http.base.internal.registry;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collections;
@@ -28,6 +29,7 @@ import javax.servlet.ServletConfig;
 import org.apache.felix.http.base.internal.HttpConfig;
 import org.apache.felix.http.base.internal.handler.HttpServiceServletHandler;
 import org.apache.felix.http.base.internal.handler.ServletHandler;
+import org.apache.felix.http.base.internal.runtime.ServletContextHelperInfo;
 import org.apache.felix.http.base.internal.runtime.ServletInfo;
 import org.apache.felix.http.base.internal.runtime.dto.FailedDTOHolder;
 import org.apache.felix.http.base.internal.service.HttpServiceFactory;
@@ -95,6 +97,29 @@ public class HandlerRegistryTest
 
         registry.shutdown();
     }
+
+    @Test
+    public void testBestMatchingRegistry()
+    {
+        registry.add(new PerContextHandlerRegistry(new ServletContextHelperInfo(0, 1L, "root", "/", null), new HttpConfig()));
+        registry.add(new PerContextHandlerRegistry(new ServletContextHelperInfo(0, 2L, "foo", "/foo", null), new HttpConfig()));
+        registry.add(new PerContextHandlerRegistry(new ServletContextHelperInfo(0, 3L, "foobar", "/foo/bar", null), new HttpConfig()));
+        registry.add(new PerContextHandlerRegistry(new ServletContextHelperInfo(10, 4L, "foo2", "/foo", null), new HttpConfig()));
+
+        assertEquals(1L, registry.getBestMatchingRegistry("/").getContextServiceId());
+        assertEquals(1L, registry.getBestMatchingRegistry("/foobar").getContextServiceId());
+        assertEquals(4L, registry.getBestMatchingRegistry("/foo").getContextServiceId());
+        assertEquals(4L, registry.getBestMatchingRegistry("/foo/").getContextServiceId());
+        assertEquals(4L, registry.getBestMatchingRegistry("/foo/barx").getContextServiceId());
+        assertEquals(3L, registry.getBestMatchingRegistry("/foo/bar").getContextServiceId());
+        assertEquals(3L, registry.getBestMatchingRegistry("/foo/bar/x").getContextServiceId());
+
+        registry.remove(new ServletContextHelperInfo(0, 1L, "root", "/", null));
+        assertNull(registry.getBestMatchingRegistry("/foobar"));
+        assertNull(registry.resolveServlet("/foo/bar"));
+
+        registry.shutdown();
+    }
 /*
     @Test
     public void testAddServletWhileSameServletAddedDuringInit() throws Exception
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.registry;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.felix.http.base.internal.handler.ServletHandler;
+import org.apache.felix.http.base.internal.service.HttpServiceFactory;
+import org.junit.Test;
+
+public class PathResolverIndexTest
+{
+    private static final String[] PATTERNS = new String[] {
+        "", "/", "/*", "/foo", "/foo/*", "/foo/bar", "/foo/bar/*", "/foo/bar.html",
+        "/foobar", "/foo/", "/foo//*", "//*", "*.html", "*.bar.html", "*.", "/a/b/c", "/a/*", "/a/b/*"
+    };
+
+    private static final String[] URIS = new String[] {
+        "", "/", "//", "/foo", "/foo/", "/foo//", "/foo/bar", "/foo/bar/", "/foo/bar.html", "/foo/x.bar.html",
+        "/foobar", "/foobar/x", "/foo/bar/baz", "/a", "/a/b", "/a/b/c", "/a/b/c/d", "/x.", "/x.html/y",
+        "foo", "foo/bar", "/a//b", "/.html"
+    };
+
+    private static PathResolver find(final List<PathResolver> resolvers, final String uri)
+    {
+        for(final PathResolver resolver : resolvers)
+        {
+            if ( resolver.resolve(uri) != null )
+            {
+                return resolver;
+            }
+        }
+        return null;
+    }
+
+    private static void assertSameResolution(final List<PathResolver> resolvers)
+    {
+        Collections.sort(resolvers);
+        final PathResolverIndex index = PathResolverIndex.create(resolvers);
+        assertNotNull(index);
+        for(final String uri : URIS)
+        {
+            assertSame(resolvers + " : " + uri, find(resolvers, uri), index.find(uri));
+        }
+    }
+
+    @Test public void testEmpty()
+    {
+        final PathResolverIndex index = PathResolverIndex.create(Collections.<PathResolver>emptyList());
+        assertNotNull(index);
+        assertNull(index.find("/foo"));
+    }
+
+    @Test public void testAllPatterns()
+    {
+        final List<PathResolver> resolvers = new ArrayList<PathResolver>();
+        for(final String pattern : PATTERNS)
+        {
+            resolvers.add(PathResolverFactory.createPatternMatcher(null, pattern));
+        }
+        resolvers.add(PathResolverFactory.createRegexMatcher("/regex/.*"));
+        assertSameResolution(resolvers);
+    }
+
+    @Test public void testRandomPatterns()
+    {
+        final ServletHandler httpServiceHandler = mock(ServletHandler.class);
+        when(httpServiceHandler.getContextServiceId()).thenReturn(HttpServiceFactory.HTTP_SERVICE_CONTEXT_SERVICE_ID);
+
+        final Random random = new Random(42);
+        for(int i = 0; i < 500; i++)
+        {
+            final List<PathResolver> resolvers = new ArrayList<PathResolver>();
+            final Set<String> patterns = new HashSet<String>();
+            for(final String pattern : PATTERNS)
+            {
+                if ( random.nextBoolean() && patterns.add(pattern) )
+                {
+                    resolvers.add(PathResolverFactory.createPatternMatcher(random.nextBoolean() ? httpServiceHandler : null, pattern));
+                }
+            }
+            if ( random.nextBoolean() )
+            {
+                resolvers.add(PathResolverFactory.createRegexMatcher("/fo.*"));
+            }
+            assertSameResolution(resolvers);
+        }
+    }
+
+    @Test public void testUnindexablePattern()
+    {
+        final ServletHandler httpServiceHandler = mock(ServletHandler.class);
+        when(httpServiceHandler.getContextServiceId()).thenReturn(HttpServiceFactory.HTTP_SERVICE_CONTEXT_SERVICE_ID);
+
+        final List<PathResolver> resolvers = new ArrayList<PathResolver>();
+        resolvers.add(PathResolverFactory.createPatternMatcher(httpServiceHandler, "foo"));
+        assertNull(PathResolverIndex.create(resolvers));
+    }
+}
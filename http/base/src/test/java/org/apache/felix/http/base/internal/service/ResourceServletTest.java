@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.felix.http.base.internal.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.Arrays;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourceServletTest
+{
+    private static final byte[] CONTENT = "0123456789abcdef".getBytes();
+
+    private static final byte[] GZIP_CONTENT = "gzipped".getBytes();
+
+    private File dir;
+
+    private ResourceServlet servlet;
+
+    @Before public void setup() throws Exception
+    {
+        this.dir = File.createTempFile("resources", "");
+        this.dir.delete();
+        this.dir.mkdirs();
+        write(new File(this.dir, "test.js"), CONTENT);
+        write(new File(this.dir, "test.js.gz"), GZIP_CONTENT);
+        write(new File(this.dir, "plain.txt"), CONTENT);
+
+        final ServletContext context = mock(ServletContext.class);
+        for(final String name : new String[] {"test.js", "test.js.gz", "plain.txt"})
+        {
+            when(context.getResource("/res/" + name)).thenReturn(new File(this.dir, name).toURI().toURL());
+        }
+        final ServletConfig config = mock(ServletConfig.class);
+        when(config.getServletContext()).thenReturn(context);
+
+        this.servlet = new ResourceServlet("/res");
+        this.servlet.init(config);
+    }
+
+    @After public void cleanup()
+    {
+        for(final File f : this.dir.listFiles())
+        {
+            f.delete();
+        }
+        this.dir.delete();
+    }
+
+    private static void write(final File file, final byte[] content) throws IOException
+    {
+        final FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static HttpServletRequest createRequest(final String path, final String... headers)
+    {
+        final HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getMethod()).thenReturn("GET");
+        when(req.getPathInfo()).thenReturn(path);
+        when(req.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+        for(int i = 0; i < headers.length; i += 2)
+        {
+            when(req.getHeader(headers[i])).thenReturn(headers[i + 1]);
+        }
+        return req;
+    }
+
+    private static HttpServletResponse createResponse(final ByteArrayOutputStream out) throws IOException
+    {
+        final HttpServletResponse res = mock(HttpServletResponse.class);
+        when(res.getOutputStream()).thenReturn(new ServletOutputStream()
+        {
+            @Override
+            public void write(final int b)
+            {
+                out.write(b);
+            }
+
+            @Override
+            public boolean isReady()
+            {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener)
+            {
+                // nothing to do
+            }
+        });
+        return res;
+    }
+
+    @Test public void testFullResource() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpServletResponse res = createResponse(out);
+        this.servlet.doGet(createRequest("/plain.txt"), res);
+
+        assertArrayEquals(CONTENT, out.toByteArray());
+        verify(res).setContentLengthLong(CONTENT.length);
+        verify(res).setHeader("Accept-Ranges", "bytes");
+        verify(res, never()).addHeader("Vary", "Accept-Encoding");
+    }
+
+    @Test public void testETag() throws Exception
+    {
+        final File file = new File(this.dir, "plain.txt");
+        final String etag = ResourceCache.create(file.toURI().toURL(), false).getETag();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpServletResponse res = createResponse(out);
+        this.servlet.doGet(createRequest("/plain.txt", "If-None-Match", "\"other\", " + etag), res);
+
+        verify(res).setHeader("ETag", etag);
+        verify(res).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(0, out.size());
+    }
+
+    @Test public void testRange() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpServletResponse res = createResponse(out);
+        this.servlet.doGet(createRequest("/plain.txt", "Range", "bytes=2-5"), res);
+
+        assertArrayEquals(Arrays.copyOfRange(CONTENT, 2, 6), out.toByteArray());
+        verify(res).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(res).setHeader("Content-Range", "bytes 2-5/16");
+        verify(res).setContentLengthLong(4);
+    }
+
+    @Test public void testUnsatisfiableRange() throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpServletResponse res = createResponse(out);
+        this.servlet.doGet(createRequest("/plain.txt", "Range", "bytes=16-"), res);
+
+        verify(res).setHeader("Content-Range", "bytes */16");
+        verify(res).sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    @Test public void testPrecompressedVariant() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletResponse res = createResponse(out);
+        this.servlet.doGet(createRequest("/test.js", "Accept-Encoding", "br;q=0, gzip, deflate"), res);
+
+        assertArrayEquals(GZIP_CONTENT, out.toByteArray());
+        verify(res).addHeader("Vary", "Accept-Encoding");
+        verify(res).setHeader("Content-Encoding", "gzip");
+
+        out = new ByteArrayOutputStream();
+        res = createResponse(out);
+        this.servlet.doGet(createRequest("/test.js", "Accept-Encoding", "identity"), res);
+
+        assertArrayEquals(CONTENT, out.toByteArray());
+        verify(res).addHeader("Vary", "Accept-Encoding");
+        verify(res, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    @Test public void testChangedFile() throws Exception
+    {
+        this.servlet.doGet(createRequest("/plain.txt"), createResponse(new ByteArrayOutputStream()));
+
+        final byte[] changed = "changed".getBytes();
+        final File file = new File(this.dir, "plain.txt");
+        write(file, changed);
+        file.setLastModified(file.lastModified() + 2000);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.servlet.doGet(createRequest("/plain.txt"), createResponse(out));
+        assertArrayEquals(changed, out.toByteArray());
+    }
+
+    @Test public void testIsCacheable() throws Exception
+    {
+        assertTrue(ResourceCache.isCacheable(new File(this.dir, "test.js").toURI().toURL()));
+        assertFalse(ResourceCache.isCacheable(this.dir.toURI().toURL()));
+        assertFalse(ResourceCache.isCacheable(new File(this.dir, "missing.js").toURI().toURL()));
+        assertTrue(ResourceCache.isCacheable(bundleURL("bundle", "7b3c5a2e-1f04-4a8b-9f3e-2d1c0b9a8f7e_5.2")));
+        assertFalse(ResourceCache.isCacheable(bundleURL("bundle", "5")));
+        assertFalse(ResourceCache.isCacheable(bundleURL("bundleentry", "5.fwk1234")));
+        assertFalse(ResourceCache.isCacheable(bundleURL("bundleresource", "5.fwk1234")));
+        assertFalse(ResourceCache.isCacheable(new URL("http://localhost/test.js")));
+    }
+
+    private static URL bundleURL(final String protocol, final String host) throws Exception
+    {
+        return new URL(protocol, host, 0, "/res/test.js", new URLStreamHandler()
+        {
+            @Override
+            protected URLConnection openConnection(final URL u)
+            {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    @Test public void testParseRange()
+    {
+        assertArrayEquals(new long[] {0, 9}, ResourceServlet.parseRange("bytes=0-", 10));
+        assertArrayEquals(new long[] {5, 9}, ResourceServlet.parseRange("bytes=5-100", 10));
+        assertArrayEquals(new long[] {7, 9}, ResourceServlet.parseRange("bytes=-3", 10));
+        assertArrayEquals(new long[] {0, 9}, ResourceServlet.parseRange("bytes=-30", 10));
+        assertNull(ResourceServlet.parseRange("bytes=0-1,3-4", 10));
+        assertNull(ResourceServlet.parseRange("bytes=5-1", 10));
+        assertNull(ResourceServlet.parseRange("items=0-1", 10));
+        assertNull(ResourceServlet.parseRange("bytes=a-b", 10));
+        assertSame(ResourceServlet.parseRange("bytes=10-", 10), ResourceServlet.parseRange("bytes=-0", 10));
+        assertEquals(0, ResourceServlet.parseRange("bytes=10-", 10).length);
+    }
+
+    @Test public void testAcceptsEncoding()
+    {
+        assertTrue(ResourceServlet.acceptsEncoding("gzip, deflate, br", "br"));
+        assertTrue(ResourceServlet.acceptsEncoding("GZIP", "gzip"));
+        assertFalse(ResourceServlet.acceptsEncoding("gzip;q=0", "gzip"));
+        assertTrue(ResourceServlet.acceptsEncoding("*", "br"));
+        assertFalse(ResourceServlet.acceptsEncoding("*, br;q=0", "br"));
+        assertFalse(ResourceServlet.acceptsEncoding("deflate", "gzip"));
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.felix.httplite.server;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 
@@ -100,42 +101,32 @@ public class Connection
         catch (IOException ex)
         {
             // Make sure we close any opened socket/streams.
-            try
-            {
-                m_socket.close();
-            }
-            catch (IOException ex2)
-            {
-                m_logger.log(Logger.LOG_ERROR, "Error closing socket.", ex);
-            }
-            if (m_is != null)
-            {
-                try
-                {
-                    m_is.close();
-                }
-                catch (IOException ex2)
-                {
-                    m_logger.log(Logger.LOG_ERROR, "Error closing socket input stream.",
-                        ex2);
-                }
-            }
-            if (m_os != null)
-            {
-                try
-                {
-                    m_os.close();
-                }
-                catch (IOException ex2)
-                {
-                    m_logger.log(Logger.LOG_ERROR, "Error closing socket output stream.",
-                        ex2);
-                }
-            }
+            close();
             throw ex;
         }
     }
 
+    /**
+     * Constructs a connection reading from and writing to the specified
+     * streams instead of the streams of the socket. The socket is only
+     * used to get the addresses of the connection.
+     * @param socket The client socket.
+     * @param is The input stream of the connection.
+     * @param os The output stream of the connection.
+     * @param requestLimit The maximum number of consecutive requests.
+     * @param resolver resolves a request URI to a client or servlet registration via the HTTP Service.
+     * @param logger logger instance.
+     */
+    protected Connection(final Socket socket, final InputStream is, final OutputStream os, final int requestLimit, final ServiceRegistrationResolver resolver, final Logger logger)
+    {
+        m_socket = socket;
+        m_resolver = resolver;
+        m_logger = logger;
+        m_requestLimit = requestLimit;
+        m_is = new ConcreteServletInputStream(new BufferedInputStream(is));
+        m_os = new BufferedOutputStream(os);
+    }
+
     /**
      * Performs the actual servicing of the connection and its subsequent requests.
      * This method will be called by threads in the thread pool. This method
@@ -151,115 +142,164 @@ public class Connection
     **/
     public void process() throws IOException, ServletException
     {
-        HttpServletRequestImpl request = m_resolver.getServletRequest(m_socket);
-        HttpServletResponseImpl response = m_resolver.getServletResponse(m_os);
-
         try
         {
             // Loop until we close the connection.
             boolean close = false;
             while (!close)
             {
-                // Read the next request.
-                try
-                {
-                    request.parseRequestLine(m_is);
-                }
-                catch (IOException e)
-                {
-                    m_logger.log(
-                        Logger.LOG_ERROR,
-                        "Error with request: " + request.toString() + ": "
-                            + e.getMessage());
-                    throw e;
-                }
-                m_requestCount++;
+                close = processRequest(false);
+            }
+        }
+        finally
+        {
+            close();
+        }
+    }
 
-                // Keep track of whether we have failed or not,
-                // because we still want to read the bytes to clear
-                // the input stream so we can service more requests.
-                boolean error = false;
+    /**
+     * Reads the next request from the connection and services it.
+     * @param keepAlive Whether the connection may be used for further requests
+     *        after a request has been handled by a servlet or resource. This is
+     *        only possible if the response is delimited by its content length.
+     * @return <tt>true</tt> if the connection has to be closed.
+     * @throws java.io.IOException If any I/O error occurs.
+     * @throws ServletException on servlet errors
+     */
+    protected boolean processRequest(final boolean keepAlive) throws IOException, ServletException
+    {
+        HttpServletRequestImpl request = m_resolver.getServletRequest(m_socket);
+        HttpServletResponseImpl response = m_resolver.getServletResponse(m_os);
+        boolean close = false;
 
-                m_logger.log(Logger.LOG_DEBUG,
-                    "Processing " + request.getRequestURI() + " (" + (m_requestLimit - m_requestCount)
-                        + " remaining)");
+        // Read the next request.
+        try
+        {
+            request.parseRequestLine(m_is);
+        }
+        catch (IOException e)
+        {
+            m_logger.log(
+                Logger.LOG_ERROR,
+                "Error with request: " + request.toString() + ": "
+                    + e.getMessage());
+            throw e;
+        }
+        m_requestCount++;
 
-                // If client is HTTP/1.1, then send continue message.
-                if (request.getProtocol().equals(HttpConstants.HTTP11_VERSION))
-                {
-                    response.sendContinueResponse();
-                }
+        // Keep track of whether we have failed or not,
+        // because we still want to read the bytes to clear
+        // the input stream so we can service more requests.
+        boolean error = false;
 
-                // Read the header lines of the request.
-                request.parseHeader(m_is);
+        m_logger.log(Logger.LOG_DEBUG,
+            "Processing " + request.getRequestURI() + " (" + (m_requestLimit - m_requestCount)
+                + " remaining)");
 
-                // If we have an HTTP/1.0 request without the connection set to
-                // keep-alive or we explicitly have a request to close the connection,
-                // then set close flag to exit the loop rather than trying to read
-                // more requests.
-                String v = request.getHeader(HttpConstants.HEADER_CONNECTION);
-                if ((request.getProtocol().equals(HttpConstants.HTTP10_VERSION) && ((v == null) || (!v.equalsIgnoreCase(HttpConstants.KEEPALIVE_CONNECTION))))
-                    || ((v != null) && v.equalsIgnoreCase(HttpConstants.CLOSE_CONNECTION)))
-                {
-                    close = true;
-                    response.setConnectionType("close");
-                }
-                // If we have serviced the maximum number of requests for
-                // this connection, then set close flag so we exit the loop
-                // and close the connection.
-                else if (m_requestCount >= m_requestLimit)
-                {
-                    close = true;
-                    response.setConnectionType("close");
-                }
+        // If client is HTTP/1.1, then send continue message.
+        if (request.getProtocol().equals(HttpConstants.HTTP11_VERSION))
+        {
+            response.sendContinueResponse();
+        }
 
-                // We do not support OPTIONS method so send
-                // a "not implemented" error in that case.
-                if (!HttpServletRequestImpl.isSupportedMethod(request.getMethod()))
-                {
-                    error = true;
-                    response.setConnectionType(HttpConstants.CLOSE_CONNECTION);
-                    response.sendNotImplementedResponse();
-                }
+        // Read the header lines of the request.
+        request.parseHeader(m_is);
 
-                // Ignore if we have already failed, otherwise send error message
-                // if an HTTP/1.1 client did not include HOST header.
-                if (!error && request.getProtocol().equals(HttpConstants.HTTP11_VERSION)
-                    && (request.getHeader(HttpConstants.HOST_HEADER) == null))
-                {
-                    error = true;
-                    response.setConnectionType(HttpConstants.CLOSE_CONNECTION);
-                    response.sendMissingHostResponse();
-                }
+        // If we have an HTTP/1.0 request without the connection set to
+        // keep-alive or we explicitly have a request to close the connection,
+        // then set close flag to exit the loop rather than trying to read
+        // more requests.
+        String v = request.getHeader(HttpConstants.HEADER_CONNECTION);
+        if ((request.getProtocol().equals(HttpConstants.HTTP10_VERSION) && ((v == null) || (!v.equalsIgnoreCase(HttpConstants.KEEPALIVE_CONNECTION))))
+            || ((v != null) && v.equalsIgnoreCase(HttpConstants.CLOSE_CONNECTION)))
+        {
+            close = true;
+            response.setConnectionType("close");
+        }
+        // If we have serviced the maximum number of requests for
+        // this connection, then set close flag so we exit the loop
+        // and close the connection.
+        else if (m_requestCount >= m_requestLimit)
+        {
+            close = true;
+            response.setConnectionType("close");
+        }
+        // An HTTP/1.0 client only keeps the connection if told so.
+        else if (keepAlive && request.getProtocol().equals(HttpConstants.HTTP10_VERSION))
+        {
+            response.setConnectionType(HttpConstants.KEEPALIVE_CONNECTION);
+        }
+
+        // We do not support OPTIONS method so send
+        // a "not implemented" error in that case.
+        if (!HttpServletRequestImpl.isSupportedMethod(request.getMethod()))
+        {
+            error = true;
+            response.setConnectionType(HttpConstants.CLOSE_CONNECTION);
+            response.sendNotImplementedResponse();
+        }
 
-                // Read in the request body.
-                request.parseBody(m_is);
+        // Ignore if we have already failed, otherwise send error message
+        // if an HTTP/1.1 client did not include HOST header.
+        if (!error && request.getProtocol().equals(HttpConstants.HTTP11_VERSION)
+            && (request.getHeader(HttpConstants.HOST_HEADER) == null))
+        {
+            error = true;
+            response.setConnectionType(HttpConstants.CLOSE_CONNECTION);
+            response.sendMissingHostResponse();
+        }
 
-                // Only process the request if there was no error.
-                if (!error)
-                {
-                    ServiceRegistrationHandler processor = m_resolver.getProcessor(
-                        request, response, request.getRequestURI());
+        // Read in the request body.
+        request.parseBody(m_is);
 
-                    if (processor != null)
-                    {
-                        processor.handle(close);
+        // Only process the request if there was no error.
+        if (!error)
+        {
+            ServiceRegistrationHandler processor = m_resolver.getProcessor(
+                request, response, request.getRequestURI());
 
-                        m_logger.log(Logger.LOG_DEBUG, "Processed " + request.toString());
+            if (processor != null)
+            {
+                processor.handle(close);
 
-                        // TODO: Adding next line to make test cases pass, but not sure if it is correct
-                        // and needs further investigation.
-                        close = true;
-                        continue;
-                    }
+                m_logger.log(Logger.LOG_DEBUG, "Processed " + request.toString());
 
+                // The connection can only be kept if the client can tell where the
+                // response ends; resources answer HEAD requests with a body.
+                // TODO: Closing blocking connections was added to make test cases pass,
+                // but not sure if it is correct and needs further investigation.
+                if (!keepAlive || !response.isDelimited()
+                    || request.getMethod().equals(HttpConstants.HEAD_REQUEST))
+                {
                     close = true;
-                    response.setConnectionType(HttpConstants.CLOSE_CONNECTION);
-                    response.sendNotFoundResponse();
                 }
+                return close;
             }
+
+            close = true;
+            response.setConnectionType(HttpConstants.CLOSE_CONNECTION);
+            response.sendNotFoundResponse();
         }
-        finally
+        return close;
+    }
+
+    /**
+     * Returns whether data of a further request has already been read
+     * from the connection and is waiting to be processed.
+     * @return <tt>true</tt> if buffered input is available.
+     * @throws java.io.IOException If any I/O error occurs.
+     */
+    protected boolean hasBufferedInput() throws IOException
+    {
+        return m_is.available() > 0;
+    }
+
+    /**
+     * Closes the streams and the socket of the connection.
+     */
+    protected void close()
+    {
+        if (m_is != null)
         {
             try
             {
@@ -269,6 +309,9 @@ public class Connection
             {
                 m_logger.log(Logger.LOG_ERROR, "Error closing socket input stream.", ex);
             }
+        }
+        if (m_os != null)
+        {
             try
             {
                 m_os.close();
@@ -277,14 +320,14 @@ public class Connection
             {
                 m_logger.log(Logger.LOG_ERROR, "Error closing socket output stream.", ex);
             }
-            try
-            {
-                m_socket.close();
-            }
-            catch (IOException ex)
-            {
-                m_logger.log(Logger.LOG_ERROR, "Error closing socket.", ex);
-            }
+        }
+        try
+        {
+            m_socket.close();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "Error closing socket.", ex);
         }
     }
 }
\ No newline at end of file
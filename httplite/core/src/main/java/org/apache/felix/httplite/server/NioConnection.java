@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.httplite.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import javax.servlet.ServletException;
+
+import org.apache.felix.httplite.osgi.Logger;
+import org.apache.felix.httplite.osgi.ServiceRegistrationResolver;
+
+/**
+ * This class represents a connection accepted by the {@link NioServer}. The
+ * connection is only serviced by a thread of the thread pool while a request
+ * is read and processed. Once the response has been written and no further
+ * request is pending, the connection is handed back to the server, which
+ * keeps it without a thread until the client sends the next request or the
+ * inactivity timeout expires.
+**/
+class NioConnection extends Connection
+{
+    private final NioServer m_server;
+    private final SocketChannel m_channel;
+    private final ChannelStreams m_streams;
+    private long m_lastActive;
+
+    /**
+     * Constructs a connection for a non-blocking channel.
+     * @param server The server to hand the connection back to.
+     * @param channel The client channel, in non-blocking mode.
+     * @param timeout The inactivity timeout of the connection in milliseconds.
+     * @param requestLimit The maximum number of consecutive requests.
+     * @param resolver resolves a request URI to a client or servlet registration via the HTTP Service.
+     * @param logger logger instance.
+     * @return The connection.
+     * @throws java.io.IOException If any I/O error occurs.
+     */
+    static NioConnection create(final NioServer server, final SocketChannel channel, final int timeout, final int requestLimit, final ServiceRegistrationResolver resolver, final Logger logger) throws IOException
+    {
+        channel.socket().setTcpNoDelay(true);
+        return new NioConnection(server, new ChannelStreams(channel, timeout), requestLimit, resolver, logger);
+    }
+
+    private NioConnection(final NioServer server, final ChannelStreams streams, final int requestLimit, final ServiceRegistrationResolver resolver, final Logger logger)
+    {
+        super(streams.getChannel().socket(), streams.getInputStream(), streams.getOutputStream(),
+            requestLimit, resolver, logger);
+        m_server = server;
+        m_channel = streams.getChannel();
+        m_streams = streams;
+    }
+
+    /**
+     * Returns the channel of the connection.
+     * @return The channel.
+     */
+    SocketChannel getChannel()
+    {
+        return m_channel;
+    }
+
+    /**
+     * Returns when the connection was last handed to the server.
+     * @return The time in milliseconds.
+     */
+    long getLastActive()
+    {
+        return m_lastActive;
+    }
+
+    /**
+     * Sets when the connection was last handed to the server; this is
+     * only called by the server thread.
+     * @param time The time in milliseconds.
+     */
+    void setLastActive(final long time)
+    {
+        m_lastActive = time;
+    }
+
+    /**
+     * Services the requests available on the connection. This method is
+     * called by threads in the thread pool whenever the server detects
+     * a new request. It returns once the available requests have been
+     * processed, handing the connection back to the server, or when the
+     * connection has been closed.
+     * @throws java.net.SocketTimeoutException If the inactivity timeout expired
+     *         while trying to read a request.
+     * @throws java.io.IOException If any I/O error occurs.
+     * @throws ServletException on servlet errors
+    **/
+    public void process() throws IOException, ServletException
+    {
+        boolean park = false;
+        try
+        {
+            do
+            {
+                // The client closed an idle connection.
+                if (!hasBufferedInput() && m_streams.isEndOfStream())
+                {
+                    return;
+                }
+                if (processRequest(true))
+                {
+                    return;
+                }
+            }
+            // Requests sent ahead by the client are processed right away,
+            // as the server would not be notified about them.
+            while (hasBufferedInput());
+            park = true;
+        }
+        finally
+        {
+            m_streams.release();
+            if (park)
+            {
+                m_server.park(this);
+            }
+            else
+            {
+                close();
+            }
+        }
+    }
+
+    /**
+     * The streams of a non-blocking channel. Reading and writing block the
+     * calling thread using a selector of its own until the channel is ready,
+     * or until the inactivity timeout expires.
+     */
+    private static final class ChannelStreams
+    {
+        private static final int BUFFER_SIZE = 4096;
+
+        private final SocketChannel m_channel;
+        private final int m_timeout;
+        private final ByteBuffer m_input = ByteBuffer.allocate(BUFFER_SIZE);
+        private final InputStream m_is = new Input();
+        private final OutputStream m_os = new Output();
+        private Selector m_selector;
+        private SelectionKey m_key;
+        private boolean m_interrupted;
+
+        ChannelStreams(final SocketChannel channel, final int timeout)
+        {
+            m_channel = channel;
+            m_timeout = timeout;
+            m_input.flip();
+        }
+
+        SocketChannel getChannel()
+        {
+            return m_channel;
+        }
+
+        InputStream getInputStream()
+        {
+            return m_is;
+        }
+
+        OutputStream getOutputStream()
+        {
+            return m_os;
+        }
+
+        /**
+         * Checks, without blocking, whether the client has closed the channel.
+         * Any data read is kept for the input stream.
+         * @return <tt>true</tt> if the end of the stream has been reached.
+         * @throws IOException If any I/O error occurs.
+         */
+        boolean isEndOfStream() throws IOException
+        {
+            if (m_input.hasRemaining())
+            {
+                return false;
+            }
+            clearInterrupt();
+            m_input.clear();
+            int count = m_channel.read(m_input);
+            m_input.flip();
+            return count < 0;
+        }
+
+        /**
+         * Releases the selector used for blocking, as the connection is
+         * not serviced by the current thread anymore.
+         */
+        void release()
+        {
+            if (m_selector != null)
+            {
+                try
+                {
+                    m_selector.close();
+                }
+                catch (IOException ex)
+                {
+                    // Ignore, the selector is not used anymore.
+                }
+                m_selector = null;
+                m_key = null;
+            }
+            if (m_interrupted)
+            {
+                m_interrupted = false;
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private int fill() throws IOException
+        {
+            clearInterrupt();
+            m_input.clear();
+            int count;
+            try
+            {
+                while ((count = m_channel.read(m_input)) == 0)
+                {
+                    await(SelectionKey.OP_READ);
+                }
+            }
+            finally
+            {
+                m_input.flip();
+            }
+            return count;
+        }
+
+        private void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            clearInterrupt();
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining())
+            {
+                if (m_channel.write(buffer) == 0)
+                {
+                    await(SelectionKey.OP_WRITE);
+                }
+            }
+        }
+
+        private void await(final int ops) throws IOException
+        {
+            if (m_selector == null)
+            {
+                m_selector = Selector.open();
+            }
+            if (m_key == null)
+            {
+                m_key = m_channel.register(m_selector, ops);
+            }
+            else
+            {
+                m_key.interestOps(ops);
+            }
+
+            long start = System.currentTimeMillis();
+            while (m_selector.select(m_timeout) == 0)
+            {
+                clearInterrupt();
+                if ((m_timeout > 0) && (System.currentTimeMillis() - start >= m_timeout))
+                {
+                    throw new SocketTimeoutException("Connection timed out.");
+                }
+            }
+            m_selector.selectedKeys().clear();
+        }
+
+        /**
+         * The thread pool interrupts its threads when it is stopped, which
+         * would close the channel. Like for a blocking socket the request is
+         * finished first; the interrupt is restored on release.
+         */
+        private void clearInterrupt()
+        {
+            if (Thread.interrupted())
+            {
+                m_interrupted = true;
+            }
+        }
+
+        private final class Input extends InputStream
+        {
+            public int available()
+            {
+                return m_input.remaining();
+            }
+
+            public int read() throws IOException
+            {
+                if (!m_input.hasRemaining() && (fill() < 0))
+                {
+                    return -1;
+                }
+                return m_input.get() & 0xff;
+            }
+
+            public int read(final byte[] b, final int off, final int len) throws IOException
+            {
+                if (len == 0)
+                {
+                    return 0;
+                }
+                if (!m_input.hasRemaining() && (fill() < 0))
+                {
+                    return -1;
+                }
+                int count = Math.min(len, m_input.remaining());
+                m_input.get(b, off, count);
+                return count;
+            }
+
+            public void close()
+            {
+                // The channel is closed with the socket.
+            }
+        }
+
+        private final class Output extends OutputStream
+        {
+            public void write(final int b) throws IOException
+            {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(final byte[] b, final int off, final int len) throws IOException
+            {
+                ChannelStreams.this.write(b, off, len);
+            }
+
+            public void close()
+            {
+                // The channel is closed with the socket.
+            }
+        }
+    }
+}
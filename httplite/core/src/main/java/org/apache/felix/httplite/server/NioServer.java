@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.httplite.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.felix.httplite.osgi.Logger;
+import org.apache.felix.httplite.osgi.ServiceRegistrationResolver;
+
+/**
+ * This class implements the non-blocking server loop. A single thread accepts
+ * connections and waits for requests on all idle connections using a selector.
+ * When a request arrives, the connection is removed from the selection and
+ * added to the thread pool; once serviced, the connection is handed back with
+ * {@link #park(NioConnection)}. Idle connections are closed by the server
+ * thread after the inactivity timeout.
+ *
+ * This class requires Java 1.4 and is only loaded if the non-blocking
+ * mode is enabled.
+**/
+class NioServer
+{
+    /**
+     * Interval for checking the inactivity timeout of idle connections.
+     */
+    private static final int IDLE_CHECK_INTERVAL = 1000;
+
+    private final ServerSocketChannel m_serverChannel;
+    private final Selector m_selector;
+    private final ThreadPool m_threadPool;
+    private final int m_connectionTimeout;
+    private final int m_connectionRequestLimit;
+    private final ServiceRegistrationResolver m_resolver;
+    private final Logger m_logger;
+
+    private final List m_parked = new ArrayList();
+    private boolean m_closed = false;
+    private long m_lastIdleCheck;
+
+    /**
+     * Opens the server channel.
+     * @param bindAddr The address to bind to or <tt>null</tt> for all interfaces.
+     * @param port The port to listen on.
+     * @param threadPool The thread pool servicing the connections.
+     * @param connectionTimeout The inactivity timeout of connections in milliseconds.
+     * @param connectionRequestLimit The maximum number of consecutive requests.
+     * @param resolver resolves a request URI to a client or servlet registration via the HTTP Service.
+     * @param logger logger instance.
+     * @throws java.io.IOException If the channel can't be opened.
+     */
+    NioServer(final InetAddress bindAddr, final int port, final ThreadPool threadPool,
+        final int connectionTimeout, final int connectionRequestLimit,
+        final ServiceRegistrationResolver resolver, final Logger logger) throws IOException
+    {
+        m_threadPool = threadPool;
+        m_connectionTimeout = connectionTimeout;
+        m_connectionRequestLimit = connectionRequestLimit;
+        m_resolver = resolver;
+        m_logger = logger;
+
+        m_selector = Selector.open();
+        m_serverChannel = ServerSocketChannel.open();
+        try
+        {
+            m_serverChannel.socket().bind(new InetSocketAddress(bindAddr, port));
+            m_serverChannel.configureBlocking(false);
+            m_serverChannel.register(m_selector, SelectionKey.OP_ACCEPT);
+        }
+        catch (IOException ex)
+        {
+            closeServer();
+            throw ex;
+        }
+    }
+
+    /**
+     * This method is the main loop of the server thread; it returns after
+     * the server has been closed.
+    **/
+    void run()
+    {
+        m_logger.log(Logger.LOG_DEBUG, "Waiting for connections.");
+        m_lastIdleCheck = System.currentTimeMillis();
+
+        try
+        {
+            while (true)
+            {
+                m_selector.select(m_connectionTimeout > 0 ? IDLE_CHECK_INTERVAL : 0);
+
+                synchronized (this)
+                {
+                    if (m_closed)
+                    {
+                        break;
+                    }
+                }
+
+                resumeParked();
+
+                for (Iterator i = m_selector.selectedKeys().iterator(); i.hasNext();)
+                {
+                    SelectionKey key = (SelectionKey) i.next();
+                    i.remove();
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable())
+                    {
+                        acceptConnections();
+                    }
+                    else if (key.isReadable())
+                    {
+                        dispatch(key);
+                    }
+                }
+
+                closeIdleConnections();
+            }
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "The call to select() terminated with an exception.", ex);
+        }
+        finally
+        {
+            closeAll();
+        }
+    }
+
+    /**
+     * Closes the server. The server thread closes all idle connections,
+     * connections being serviced are closed when handed back.
+     */
+    void close()
+    {
+        synchronized (this)
+        {
+            m_closed = true;
+        }
+        m_selector.wakeup();
+    }
+
+    /**
+     * Hands a connection back after servicing it; the server waits for
+     * the next request on the connection.
+     * @param connection The connection.
+     */
+    void park(final NioConnection connection)
+    {
+        synchronized (this)
+        {
+            if (!m_closed)
+            {
+                m_parked.add(connection);
+                m_selector.wakeup();
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    private void acceptConnections()
+    {
+        for (SocketChannel channel = accept(); channel != null; channel = accept())
+        {
+            try
+            {
+                channel.configureBlocking(false);
+                NioConnection connection = NioConnection.create(this, channel,
+                    m_connectionTimeout, m_connectionRequestLimit, m_resolver, m_logger);
+                connection.setLastActive(System.currentTimeMillis());
+                channel.register(m_selector, SelectionKey.OP_READ, connection);
+                m_logger.log(Logger.LOG_DEBUG, "Accepted a new connection.");
+            }
+            catch (IOException ex)
+            {
+                m_logger.log(Logger.LOG_ERROR, "Error creating connection.", ex);
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException ex2)
+                {
+                    m_logger.log(Logger.LOG_ERROR, "Error closing socket.", ex2);
+                }
+            }
+        }
+    }
+
+    private SocketChannel accept()
+    {
+        try
+        {
+            return m_serverChannel.accept();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "The call to accept() terminated with an exception.", ex);
+            return null;
+        }
+    }
+
+    private void dispatch(final SelectionKey key)
+    {
+        // The connection is not selected again until it is handed back.
+        key.interestOps(0);
+        NioConnection connection = (NioConnection) key.attachment();
+        try
+        {
+            m_threadPool.addConnection(connection);
+        }
+        catch (IllegalStateException ex)
+        {
+            key.cancel();
+            connection.close();
+        }
+    }
+
+    private void resumeParked()
+    {
+        Object[] parked;
+        synchronized (this)
+        {
+            if (m_parked.isEmpty())
+            {
+                return;
+            }
+            parked = m_parked.toArray();
+            m_parked.clear();
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < parked.length; i++)
+        {
+            NioConnection connection = (NioConnection) parked[i];
+            SelectionKey key = connection.getChannel().keyFor(m_selector);
+            if ((key != null) && key.isValid())
+            {
+                connection.setLastActive(now);
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            else
+            {
+                connection.close();
+            }
+        }
+    }
+
+    private void closeIdleConnections()
+    {
+        long now = System.currentTimeMillis();
+        if ((m_connectionTimeout <= 0) || (now - m_lastIdleCheck < IDLE_CHECK_INTERVAL))
+        {
+            return;
+        }
+        m_lastIdleCheck = now;
+
+        for (Iterator i = m_selector.keys().iterator(); i.hasNext();)
+        {
+            SelectionKey key = (SelectionKey) i.next();
+            if (key.isValid() && (key.interestOps() == SelectionKey.OP_READ))
+            {
+                NioConnection connection = (NioConnection) key.attachment();
+                if (now - connection.getLastActive() >= m_connectionTimeout)
+                {
+                    key.cancel();
+                    connection.close();
+                    m_logger.log(Logger.LOG_DEBUG, "Connection closed due to inactivity.");
+                }
+            }
+        }
+    }
+
+    private void closeAll()
+    {
+        for (Iterator i = m_selector.keys().iterator(); i.hasNext();)
+        {
+            SelectionKey key = (SelectionKey) i.next();
+            if (key.isValid() && (key.interestOps() == SelectionKey.OP_READ))
+            {
+                key.cancel();
+                ((NioConnection) key.attachment()).close();
+            }
+        }
+        synchronized (this)
+        {
+            m_closed = true;
+            for (Iterator i = m_parked.iterator(); i.hasNext();)
+            {
+                ((NioConnection) i.next()).close();
+            }
+            m_parked.clear();
+        }
+        closeServer();
+    }
+
+    private void closeServer()
+    {
+        try
+        {
+            m_serverChannel.close();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "Error closing server socket.", ex);
+        }
+        try
+        {
+            m_selector.close();
+        }
+        catch (IOException ex)
+        {
+            m_logger.log(Logger.LOG_ERROR, "Error closing selector.", ex);
+        }
+    }
+}
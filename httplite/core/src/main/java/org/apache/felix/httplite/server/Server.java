@@ -69,6 +69,10 @@ public class Server
      * The address of the host interface to bind http to. The default is to bind to all interfaces.
      */
     public static final String CONFIG_PROPERTY_HTTP_HOST = "org.apache.felix.http.host"; 
+    /**
+     * Flag to enable the non-blocking mode, which requires Java 1.4. The default is false.
+     */
+    public static final String CONFIG_PROPERTY_NIO_ENABLE = "org.apache.felix.http.nio.enable";
 
     /**
      * Default HTTP port to listen on.
@@ -101,10 +105,12 @@ public class Server
 
     private Thread m_serverThread;
     private ServerSocket m_serverSocket;
+    private NioServer m_nioServer;
     private final ThreadPool m_threadPool;
 
     private final int m_connectionTimeout;
     private final int m_connectionRequestLimit;
+    private final boolean m_nio;
     private ServiceRegistrationResolver m_resolver;
     private final Logger m_logger;
     
@@ -138,6 +144,10 @@ public class Server
      *       connections after which the connection is closed; the default value
      *       is 10000 milliseconds.
      *   </li>
+     *   <li><tt>org.apache.felix.http.nio.enable</tt> - if <tt>true</tt>, connections are served
+     *       in non-blocking mode, where idle persistent connections do not occupy a thread of
+     *       the thread pool; the default value is false. This mode requires Java 1.4.
+     *   </li>
      * </ul>
      * The configuration properties cannot be changed after construction. The
      * web server is not active until it is started.
@@ -163,6 +173,7 @@ public class Server
             : Integer.parseInt((String) configMap.get(Server.CONFIG_PROPERTY_CONNECTION_TIMEOUT_PROP));
         m_connectionRequestLimit = (configMap.get(Server.CONFIG_PROPERTY_CONNECTION_REQUESTLIMIT_PROP) == null) ? Connection.DEFAULT_CONNECTION_REQUESTLIMIT
             : Integer.parseInt((String) configMap.get(Server.CONFIG_PROPERTY_CONNECTION_REQUESTLIMIT_PROP));
+        m_nio = "true".equalsIgnoreCase((String) configMap.get(Server.CONFIG_PROPERTY_NIO_ENABLE));
     }
 
     /**
@@ -266,22 +277,38 @@ public class Server
         {
             // If inactive, then create server socket, server thread, and
             // set state to active.
-            if (m_bindAddr == null)
+            if (m_nio)
             {
-                m_serverSocket = new ServerSocket(m_port);
+                m_nioServer = new NioServer(m_bindAddr, m_port, m_threadPool,
+                    m_connectionTimeout, m_connectionRequestLimit, m_resolver, m_logger);
+
+                m_serverThread = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        selectConnections();
+                    }
+                }, "HttpServer");
             }
             else
             {
-                m_serverSocket = new ServerSocket(m_port, 0, m_bindAddr);
-            }
-
-            m_serverThread = new Thread(new Runnable()
-            {
-				public void run()
+                if (m_bindAddr == null)
+                {
+                    m_serverSocket = new ServerSocket(m_port);
+                }
+                else
                 {
-                    acceptConnections();
+                    m_serverSocket = new ServerSocket(m_port, 0, m_bindAddr);
                 }
-            }, "HttpServer");
+
+                m_serverThread = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        acceptConnections();
+                    }
+                }, "HttpServer");
+            }
             m_state = ACTIVE_STATE;
             m_serverThread.start();
         }
@@ -328,12 +355,19 @@ public class Server
 
                 // Close the server socket, which will cause the server thread
                 // to exit its accept() loop.
-                try
+                if (m_nioServer != null)
                 {
-                    m_serverSocket.close();
+                    m_nioServer.close();
                 }
-                catch (IOException ex)
+                else
                 {
+                    try
+                    {
+                        m_serverSocket.close();
+                    }
+                    catch (IOException ex)
+                    {
+                    }
                 }
             }
         }
@@ -397,6 +431,22 @@ public class Server
         shutdown();
     }
 
+    /**
+     * This method is the main server loop in non-blocking mode. This is
+     * only ever called by the server thread.
+    **/
+    private void selectConnections()
+    {
+        // Start the thread pool.
+        m_threadPool.start();
+
+        // Serve connections until the server is closed.
+        m_nioServer.run();
+
+        // Shutdown the server.
+        shutdown();
+    }
+
     /**
      * This method shuts down the server; it is only ever called by the
      * server thread.
@@ -427,6 +477,7 @@ public class Server
             // gate and set the state to inactive.
             m_shutdownGate.open();
             m_shutdownGate = null;
+            m_nioServer = null;
             m_state = INACTIVE_STATE;
         }
         m_logger.log(Logger.LOG_DEBUG, "Shutdown complete.");
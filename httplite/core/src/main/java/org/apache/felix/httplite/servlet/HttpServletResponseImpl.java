@@ -66,6 +66,8 @@ public class HttpServletResponseImpl implements HttpServletResponse
     private int m_statusCode = HttpURLConnection.HTTP_OK;
     private String m_customStatusMessage = null;
     private boolean m_headersWritten = false;
+    private boolean m_lengthWritten = false;
+    private boolean m_rawResponseWritten = false;
 
     /**
      * Constructs an HTTP response for the specified server and request.
@@ -96,6 +98,7 @@ public class HttpServletResponseImpl implements HttpServletResponse
         {
             setContentLength(m_buffer.size());
         }
+        m_lengthWritten = m_headers.containsKey(HttpConstants.HEADER_CONTENT_LENGTH);
 
         m_out.write(buildResponse(m_statusCode, m_headers, m_customStatusMessage, null));
         
@@ -370,6 +373,18 @@ public class HttpServletResponseImpl implements HttpServletResponse
         return m_headersWritten;
     }
 
+    /**
+     * Returns whether the response has been written with a content length,
+     * so the client can tell where it ends and the connection can be used
+     * for further requests. Error responses and redirects are written
+     * without a content length.
+     * @return <tt>true</tt> if the response is delimited by its content length.
+     */
+    public boolean isDelimited()
+    {
+        return m_lengthWritten && !m_rawResponseWritten;
+    }
+
     /* (non-Javadoc)
      * @see javax.servlet.ServletResponse#reset()
      */
@@ -528,6 +543,7 @@ public class HttpServletResponseImpl implements HttpServletResponse
             throw new IllegalStateException(
                 "Response has already been committed, unable to send error.");
 
+        m_rawResponseWritten = true;
         m_out.write(buildResponse(sc, msg));
         m_out.flush();
     }
@@ -552,6 +568,7 @@ public class HttpServletResponseImpl implements HttpServletResponse
 
         Map map = new HashMap();
         map.put("Location", location);
+        m_rawResponseWritten = true;
         m_out.write(buildResponse(307, map, null, null));
         m_out.flush();
     }
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.httplite.osgi.test;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.ServiceLoader;
+
+import org.apache.felix.httplite.osgi.Activator;
+import org.apache.felix.httplite.server.Server;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.http.HttpService;
+
+import de.kalpatec.pojosr.framework.launch.PojoServiceRegistry;
+import de.kalpatec.pojosr.framework.launch.PojoServiceRegistryFactory;
+
+
+/**
+ * Local load test comparing the blocking and the non-blocking mode of the
+ * server. It is not run as part of the build; run it from the test classpath:
+ *
+ * <pre>
+ * java org.apache.felix.httplite.osgi.test.LoadHarness [clients] [requests] [idle]
+ * </pre>
+ *
+ * Each of the <tt>clients</tt> threads sends <tt>requests</tt> requests,
+ * reusing its connection where the server allows it, while <tt>idle</tt>
+ * connections are held open without sending anything, like browsers keeping
+ * persistent connections. The throughput and the average latency of each
+ * mode are printed.
+ *
+ */
+public class LoadHarness
+{
+
+    private static final String CONTENT = "Hello from the load harness.";
+
+
+    public static void main( String[] args ) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt( args[0] ) : 8;
+        int requests = args.length > 1 ? Integer.parseInt( args[1] ) : 2000;
+        int idle = args.length > 2 ? Integer.parseInt( args[2] ) : 0;
+
+        // warm up both modes first
+        run( false, clients, requests / 10, 0 );
+        run( true, clients, requests / 10, 0 );
+
+        report( "blocking", run( false, clients, requests, idle ), clients * requests );
+        report( "non-blocking", run( true, clients, requests, idle ), clients * requests );
+    }
+
+
+    private static void report( String mode, long[] result, int total )
+    {
+        long elapsed = result[0];
+        long latency = result[1];
+        long failures = result[2];
+        System.out.println( mode + ": " + total + " requests in " + elapsed + " ms, "
+            + ( total * 1000L / Math.max( elapsed, 1 ) ) + " requests/s, "
+            + ( latency / Math.max( total - failures, 1 ) ) + " us average latency, "
+            + failures + " failures" );
+    }
+
+
+    /**
+     * Run the load against a server in the given mode.
+     *
+     * @return elapsed milliseconds, summed latency in microseconds and failures
+     */
+    private static long[] run( boolean nio, int clients, final int requests, int idle ) throws Exception
+    {
+        System.setProperty( Server.CONFIG_PROPERTY_NIO_ENABLE, String.valueOf( nio ) );
+        System.setProperty( Server.CONFIG_PROPERTY_THREADPOOL_LIMIT_PROP, String.valueOf( clients + 2 ) );
+
+        ServiceLoader loader = ServiceLoader.load( PojoServiceRegistryFactory.class );
+        PojoServiceRegistry registry = ( ( PojoServiceRegistryFactory ) loader.iterator().next() )
+            .newPojoServiceRegistry( new HashMap() );
+        Activator activator = new Activator();
+        activator.start( registry.getBundleContext() );
+
+        Socket[] idleSockets = new Socket[idle];
+        try
+        {
+            ServiceReference sr = registry.getServiceReference( HttpService.class.getName() );
+            HttpService httpService = ( HttpService ) registry.getService( sr );
+            httpService.registerServlet( "/load", new BasicTestingServlet( CONTENT, false ), null, null );
+
+            for ( int i = 0; i < idle; ++i )
+            {
+                idleSockets[i] = new Socket( "localhost", AbstractHttpliteTestCase.DEFAULT_PORT );
+            }
+
+            final long[][] results = new long[clients][2];
+            Thread[] threads = new Thread[clients];
+            for ( int i = 0; i < clients; ++i )
+            {
+                final long[] result = results[i];
+                threads[i] = new Thread( new Runnable()
+                {
+                    public void run()
+                    {
+                        for ( int j = 0; j < requests; ++j )
+                        {
+                            long start = System.nanoTime();
+                            if ( request() )
+                            {
+                                result[0] += ( System.nanoTime() - start ) / 1000;
+                            }
+                            else
+                            {
+                                result[1]++;
+                            }
+                        }
+                    }
+                } );
+            }
+
+            long start = System.currentTimeMillis();
+            for ( int i = 0; i < clients; ++i )
+            {
+                threads[i].start();
+            }
+            for ( int i = 0; i < clients; ++i )
+            {
+                threads[i].join();
+            }
+            long elapsed = System.currentTimeMillis() - start;
+
+            long latency = 0;
+            long failures = 0;
+            for ( int i = 0; i < clients; ++i )
+            {
+                latency += results[i][0];
+                failures += results[i][1];
+            }
+            return new long[] { elapsed, latency, failures };
+        }
+        finally
+        {
+            for ( int i = 0; i < idle; ++i )
+            {
+                if ( idleSockets[i] != null )
+                {
+                    idleSockets[i].close();
+                }
+            }
+            activator.stop( registry.getBundleContext() );
+            System.getProperties().remove( Server.CONFIG_PROPERTY_NIO_ENABLE );
+            System.getProperties().remove( Server.CONFIG_PROPERTY_THREADPOOL_LIMIT_PROP );
+        }
+    }
+
+
+    private static boolean request()
+    {
+        try
+        {
+            HttpURLConnection connection = ( HttpURLConnection ) new URL( AbstractHttpliteTestCase.DEFAULT_BASE_URL
+                + "/load" ).openConnection();
+            connection.setConnectTimeout( 5000 );
+            connection.setReadTimeout( 5000 );
+            if ( connection.getResponseCode() != 200 )
+            {
+                return false;
+            }
+            // read the body completely so the connection can be reused
+            InputStream in = connection.getInputStream();
+            byte[] buf = new byte[1024];
+            while ( in.read( buf ) != -1 )
+            {
+            }
+            in.close();
+            return true;
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.httplite.osgi.test.cases;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+
+import javax.servlet.ServletException;
+
+import org.apache.felix.httplite.osgi.test.AbstractHttpliteTestCase;
+import org.apache.felix.httplite.osgi.test.BasicTestingServlet;
+import org.apache.felix.httplite.server.Server;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.http.NamespaceException;
+
+
+/**
+ * Tests for the non-blocking mode of the server.
+ *
+ */
+public class TestNonBlockingServer extends AbstractHttpliteTestCase
+{
+
+    protected void setUp() throws Exception
+    {
+        System.setProperty( Server.CONFIG_PROPERTY_NIO_ENABLE, "true" );
+        super.setUp();
+    }
+
+
+    protected void tearDown() throws Exception
+    {
+        super.tearDown();
+        System.getProperties().remove( Server.CONFIG_PROPERTY_NIO_ENABLE );
+    }
+
+
+    /**
+     * Several requests can be sent over one connection.
+     *
+     * @throws ServletException
+     * @throws NamespaceException
+     * @throws IOException
+     */
+    public void testKeepAlive() throws ServletException, NamespaceException, IOException
+    {
+        HttpService httpService = getHTTPService( registry.getBundleContext() );
+        httpService.registerServlet( "/test", new BasicTestingServlet( "hello", false ), null, null );
+
+        Socket socket = new Socket( "localhost", DEFAULT_PORT );
+        try
+        {
+            socket.setSoTimeout( 5000 );
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            for ( int i = 0; i < 3; ++i )
+            {
+                out.write( "GET /test HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes() );
+                out.flush();
+
+                assertEquals( "hello", readResponseBody( in ) );
+            }
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+
+    /**
+     * Idle connections do not occupy the threads of the thread pool.
+     *
+     * @throws ServletException
+     * @throws NamespaceException
+     * @throws IOException
+     */
+    public void testIdleConnections() throws ServletException, NamespaceException, IOException
+    {
+        HttpService httpService = getHTTPService( registry.getBundleContext() );
+        httpService.registerServlet( "/test", new BasicTestingServlet( "hello", false ), null, null );
+
+        // more idle connections than threads in the pool
+        Socket[] idle = new Socket[20];
+        try
+        {
+            for ( int i = 0; i < idle.length; ++i )
+            {
+                idle[i] = new Socket( "localhost", DEFAULT_PORT );
+            }
+
+            HttpURLConnection client = getConnection( DEFAULT_BASE_URL + "/test", "GET" );
+            client.setReadTimeout( 2000 );
+            client.connect();
+
+            assertEquals( 200, client.getResponseCode() );
+            assertEquals( "hello", readInputAsString( client.getInputStream() ) );
+        }
+        finally
+        {
+            for ( int i = 0; i < idle.length; ++i )
+            {
+                if ( idle[i] != null )
+                {
+                    idle[i].close();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Read a response with a content length, skipping interim responses.
+     */
+    private static String readResponseBody( InputStream in ) throws IOException
+    {
+        int length = -1;
+        String status;
+        do
+        {
+            status = readLine( in );
+            for ( String line = readLine( in ); line.length() > 0; line = readLine( in ) )
+            {
+                if ( line.toLowerCase().startsWith( "content-length:" ) )
+                {
+                    length = Integer.parseInt( line.substring( line.indexOf( ':' ) + 1 ).trim() );
+                }
+            }
+        }
+        while ( status.indexOf( " 100 " ) > 0 );
+
+        assertTrue( status, status.indexOf( " 200 " ) > 0 );
+        assertTrue( length >= 0 );
+
+        byte[] body = new byte[length];
+        for ( int pos = 0; pos < length; )
+        {
+            int count = in.read( body, pos, length - pos );
+            assertTrue( count > 0 );
+            pos += count;
+        }
+        return new String( body );
+    }
+
+
+    private static String readLine( InputStream in ) throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for ( int c = in.read(); c != '\n'; c = in.read() )
+        {
+            assertTrue( c != -1 );
+            if ( c != '\r' )
+            {
+                line.write( c );
+            }
+        }
+        return line.toString();
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.felix.log;
 
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.Locale;
 
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -52,7 +53,27 @@ import org.osgi.service.log.admin.LoggerContext;
  *   <dt>org.apache.felix.log.storeDebug</dt>
  *   <dd>Determines whether or not debug messages will be stored as part of
  *       the historic log information. The default value is false.</dd>
+ *
+ *   <dt>org.apache.felix.log.listenerQueueSize</dt>
+ *   <dd>Determines the maximum number of log entries waiting to be delivered
+ *       to log listeners, rounded up to a power of two. The default value
+ *       is 8192.</dd>
+ *
+ *   <dt>org.apache.felix.log.overflowPolicy</dt>
+ *   <dd>Determines what happens to log entries that are logged while the
+ *       listener queue is full: <code>block</code> makes the logging thread
+ *       wait until the entry can be queued, <code>drop</code> drops the entry
+ *       and <code>sample</code> queues only one in ten entries once the queue
+ *       is half full and drops the others. Blocking makes logging threads
+ *       wait for slow listeners and deadlocks if a listener waits for a
+ *       logging thread; dropping never waits but loses entries. The number
+ *       of dropped entries is reported to the listeners with a warning. The
+ *       default value is block, so that no entry is lost.</dd>
  * </dl>
+ * <p>
+ * The number of entries delivered to and dropped for the listeners is
+ * available from the <code>org.apache.felix.log:type=LogStatistics</code>
+ * MBean, if JMX is available.
  */
 public final class Activator implements BundleActivator
 {
@@ -64,12 +85,28 @@ public final class Activator implements BundleActivator
     private static final String STORE_DEBUG_PROPERTY = "org.apache.felix.log.storeDebug";
     /** The default value for the store debug property. */
     private static final boolean DEFAULT_STORE_DEBUG = false;
+    /** The name of the property that defines the size of the listener queue. */
+    private static final String LISTENER_QUEUE_SIZE_PROPERTY = "org.apache.felix.log.listenerQueueSize";
+    /** The default value for the listener queue size property. */
+    private static final int DEFAULT_LISTENER_QUEUE_SIZE = 8192;
+    /** The name of the property that defines the overflow policy of the listener queue. */
+    private static final String OVERFLOW_POLICY_PROPERTY = "org.apache.felix.log.overflowPolicy";
+    /** The default value for the overflow policy property. */
+    private static final LogListenerThread.OverflowPolicy DEFAULT_OVERFLOW_POLICY =
+        LogListenerThread.OverflowPolicy.BLOCK;
+    /** The object name prefix of the MBean with the statistics of the log. */
+    private static final String LOG_STATISTICS_NAME = "org.apache.felix.log:type=LogStatistics";
     /** The log. */
     private Log m_log;
     /** The LoggerAdmin. */
     private LoggerAdminImpl m_loggerAdmin;
     /** The Configuration listener. */
     private ConfigurationListenerImpl m_configurationListener;
+    /**
+     * The name of the registered log statistics MBean; typed as Object so
+     * that this class does not require JMX.
+     */
+    private Object m_logStatisticsName;
 
     /**
      * Returns the maximum size for the log.
@@ -114,6 +151,57 @@ public final class Activator implements BundleActivator
         return storeDebug;
     }
 
+    /**
+     * Returns the maximum number of entries waiting to be delivered to listeners.
+     * @param context the bundle context (used to look up a property)
+     * @return the size of the listener queue
+     */
+    private static int getListenerQueueSize(final BundleContext context)
+    {
+        int queueSize = DEFAULT_LISTENER_QUEUE_SIZE;
+
+        String queueSizePropValue = context.getProperty(LISTENER_QUEUE_SIZE_PROPERTY);
+        if (queueSizePropValue != null)
+        {
+            try
+            {
+                queueSize = Integer.parseInt(queueSizePropValue);
+            }
+            catch (NumberFormatException e)
+            {
+                // the property value is invalid - ignore
+            }
+        }
+
+        return (queueSize > 0) ? queueSize : DEFAULT_LISTENER_QUEUE_SIZE;
+    }
+
+    /**
+     * Returns the policy for entries which do not fit into the listener queue.
+     * @param context the bundle context (used to look up a property)
+     * @return the overflow policy
+     */
+    private static LogListenerThread.OverflowPolicy getOverflowPolicy(final BundleContext context)
+    {
+        LogListenerThread.OverflowPolicy overflowPolicy = DEFAULT_OVERFLOW_POLICY;
+
+        String overflowPolicyPropValue = context.getProperty(OVERFLOW_POLICY_PROPERTY);
+        if (overflowPolicyPropValue != null)
+        {
+            try
+            {
+                overflowPolicy = LogListenerThread.OverflowPolicy.valueOf(
+                    overflowPolicyPropValue.trim().toUpperCase(Locale.ENGLISH));
+            }
+            catch (IllegalArgumentException e)
+            {
+                // the property value is invalid - ignore
+            }
+        }
+
+        return overflowPolicy;
+    }
+
     /**
      * Return the default log level.
      * @param context
@@ -132,12 +220,14 @@ public final class Activator implements BundleActivator
     public void start(final BundleContext context) throws Exception
     {
         // create the log instance
-        m_log = new Log(getMaxSize(context), getStoreDebug(context));
+        m_log = new Log(getMaxSize(context), getStoreDebug(context),
+            getListenerQueueSize(context), getOverflowPolicy(context));
         // create the LoggerAdmin instance
         m_loggerAdmin = new LoggerAdminImpl(getDefaultLogLevel(context), m_log);
 
         // register the listeners
         context.addBundleListener(m_log);
+        context.addBundleListener(m_loggerAdmin);
         context.addFrameworkListener(m_log);
         context.addServiceListener(m_log);
 
@@ -155,6 +245,8 @@ public final class Activator implements BundleActivator
             serviceRegistration.getReference().getProperty(Constants.SERVICE_ID));
         context.registerService(LoggerAdmin.class.getName(), m_loggerAdmin, properties);
 
+        registerLogStatistics(context);
+
         try {
             m_configurationListener = new ConfigurationListenerImpl(context, m_log, m_loggerAdmin);
         } catch (Exception e) {
@@ -173,8 +265,57 @@ public final class Activator implements BundleActivator
         if (m_configurationListener != null) {
             m_configurationListener.close();
         }
+        unregisterLogStatistics();
         // close the log
         m_log.close();
     }
 
+    /**
+     * Registers the statistics of the log with the platform MBean server,
+     * if JMX is available.
+     * @param context the bundle context
+     */
+    private void registerLogStatistics(final BundleContext context)
+    {
+        StringBuilder sb = new StringBuilder(LOG_STATISTICS_NAME);
+        String uuid = context.getProperty(Constants.FRAMEWORK_UUID);
+        try
+        {
+            if (uuid != null)
+            {
+                sb.append(",framework=").append(javax.management.ObjectName.quote(uuid));
+            }
+            sb.append(",bundle=").append(context.getBundle().getBundleId());
+            javax.management.ObjectName name = new javax.management.ObjectName(sb.toString());
+            java.lang.management.ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new javax.management.StandardMBean(m_log, LogStatisticsMXBean.class, true), name);
+            m_logStatisticsName = name;
+        }
+        catch (Throwable t)
+        {
+            // JMX is not available or the name is taken - the statistics
+            // are not essential to the log
+        }
+    }
+
+    /**
+     * Unregisters the statistics of the log from the platform MBean server.
+     */
+    private void unregisterLogStatistics()
+    {
+        if (m_logStatisticsName != null)
+        {
+            try
+            {
+                java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    (javax.management.ObjectName) m_logStatisticsName);
+            }
+            catch (Throwable t)
+            {
+                // don't care
+            }
+            m_logStatisticsName = null;
+        }
+    }
+
 }
\ No newline at end of file
@@ -18,7 +18,14 @@
  */
 package org.apache.felix.log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleEvent;
@@ -39,36 +46,57 @@ import org.osgi.service.log.LogListener;
  * @see org.osgi.service.log.LogService
  * @see org.osgi.service.log.LogReaderService
  */
-final class Log implements BundleListener, FrameworkListener, ServiceListener
+final class Log implements BundleListener, FrameworkListener, ServiceListener, LogStatisticsMXBean
 {
-    /** The first log entry. */
-    private LogNode m_head;
-    /** The last log entry. */
-    private LogNode m_tail;
-    /** The log size. */
-    private int m_size;
+    /**
+     * The historic log if it has a maximum size, used as a ring buffer in
+     * which the entry with sequence number <code>n</code> is stored at index
+     * <code>n % maxSize</code>.
+     */
+    private final AtomicReferenceArray<HistoryEntry> m_history;
+    /** The sequence number of the next entry of the historic log. */
+    private final AtomicLong m_historySequence = new AtomicLong();
+    /** The historic log if it has no maximum size, most recent entry first. */
+    private final Deque<LogEntry> m_unboundedHistory;
     /** The log listener thread. */
-    private LogListenerThread listenerThread;
+    private volatile LogListenerThread listenerThread;
     /** The maximum size for the log. */
     private final int m_maxSize;
     /** Whether or not to store debug messages. */
     private final boolean m_storeDebug;
+    /** The maximum number of entries waiting to be delivered to listeners. */
+    private final int m_listenerQueueSize;
+    /** The policy for entries which do not fit into the listener queue. */
+    private final LogListenerThread.OverflowPolicy m_overflowPolicy;
+    /** The number of entries delivered to listeners. */
+    private final AtomicLong m_delivered = new AtomicLong();
+    /** The number of entries dropped instead of being delivered to listeners. */
+    private final AtomicLong m_dropped = new AtomicLong();
 
     /**
      * Create a new instance.
      * @param maxSize the maximum size for the log
      * @param storeDebug whether or not to store debug messages
+     * @param listenerQueueSize the maximum number of entries waiting to be
+     *        delivered to listeners
+     * @param overflowPolicy the policy for entries which do not fit into the
+     *        listener queue
      */
-    Log(final int maxSize, final boolean storeDebug)
+    Log(final int maxSize, final boolean storeDebug, final int listenerQueueSize,
+        final LogListenerThread.OverflowPolicy overflowPolicy)
     {
         this.m_maxSize = maxSize;
         this.m_storeDebug = storeDebug;
+        this.m_listenerQueueSize = listenerQueueSize;
+        this.m_overflowPolicy = overflowPolicy;
+        this.m_history = (maxSize > 0) ? new AtomicReferenceArray<HistoryEntry>(maxSize) : null;
+        this.m_unboundedHistory = (maxSize < 0) ? new ConcurrentLinkedDeque<LogEntry>() : null;
     }
 
     /**
      * Close the log.
      */
-    void close()
+    synchronized void close()
     {
         if (listenerThread != null)
         {
@@ -76,9 +104,17 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
             listenerThread = null;
         }
 
-        m_head = null;
-        m_tail = null;
-        m_size = 0;
+        if (m_history != null)
+        {
+            for (int i = 0; i < m_history.length(); i++)
+            {
+                m_history.set(i, null);
+            }
+        }
+        if (m_unboundedHistory != null)
+        {
+            m_unboundedHistory.clear();
+        }
     }
 
     void log(
@@ -93,56 +129,44 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
     }
 
     /**
-     * Adds the entry to the log.
+     * Adds the entry to the log.  This may be called concurrently by any
+     * number of threads.
      * @param entry the entry to add to the log
      */
-    synchronized void addEntry(final LogEntry entry)
+    void addEntry(final LogEntry entry)
     {
-        if (m_maxSize != 0)
+        // add the entry to the historic log
+        if (m_maxSize != 0 && (m_storeDebug || entry.getLogLevel() != LogLevel.DEBUG))
         {
-            // add the entry to the historic log
-            if (m_storeDebug || entry.getLogLevel() != LogLevel.DEBUG)
+            if (m_history != null)
             {
-                // create a new node for the entry
-                LogNode node = new LogNode(entry);
-
-                // add to the front of the linked list
-                node.setNextNode(m_head);
-                if (m_head != null)
-                {
-                    m_head.setPreviousNode(node);
-                }
-
-                // and store the node
-                m_head = node;
-
-                // bump the size of the list
-                ++m_size;
-
-                // if no tail node - add the node to the tail
-                if (m_tail == null)
+                // claim a sequence number; the entry it replaces is the oldest
+                long sequence = m_historySequence.getAndIncrement();
+                int index = (int) (sequence % m_maxSize);
+                HistoryEntry historyEntry = new HistoryEntry(sequence, entry);
+                HistoryEntry current;
+                do
                 {
-                    m_tail = node;
+                    // do not replace a newer entry stored by a faster thread
+                    current = m_history.get(index);
+                    if (current != null && current.m_sequence > sequence)
+                    {
+                        break;
+                    }
                 }
+                while (!m_history.compareAndSet(index, current, historyEntry));
             }
-
-            // ensure the historic log doesn't grow beyond a certain size
-            if (m_maxSize != -1)
+            else
             {
-                if (m_size > m_maxSize)
-                {
-                    LogNode last = m_tail.getPreviousNode();
-                    last.setNextNode(null);
-                    m_tail = last;
-                    --m_size;
-                }
+                m_unboundedHistory.addFirst(entry);
             }
         }
 
         // notify any listeners
-        if (listenerThread != null)
+        LogListenerThread thread = listenerThread;
+        if (thread != null)
         {
-            listenerThread.addEntry(entry);
+            thread.addEntry(entry);
         }
     }
 
@@ -156,7 +180,8 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
         {
             // create a new listener thread if necessary:
             // the listener thread only runs if there are any registered listeners
-            listenerThread = new LogListenerThread();
+            listenerThread = new LogListenerThread(
+                m_listenerQueueSize, m_overflowPolicy, m_delivered, m_dropped);
             listenerThread.start();
         }
         listenerThread.addListener(listener);
@@ -185,9 +210,78 @@ final class Log implements BundleListener, FrameworkListener, ServiceListener
      * Returns an enumeration of all the entries in the log most recent first.
      * @return an enumeration of all the entries in the log most recent first
      */
-    synchronized Enumeration<LogEntry> getEntries()
+    Enumeration<LogEntry> getEntries()
+    {
+        List<LogEntry> entries = new ArrayList<>();
+        if (m_history != null)
+        {
+            long end = m_historySequence.get();
+            for (long sequence = end - 1; sequence >= Math.max(0, end - m_maxSize); sequence--)
+            {
+                // skip entries which are not yet stored or already replaced
+                HistoryEntry historyEntry = m_history.get((int) (sequence % m_maxSize));
+                if (historyEntry != null && historyEntry.m_sequence == sequence)
+                {
+                    entries.add(historyEntry.m_entry);
+                }
+            }
+        }
+        else if (m_unboundedHistory != null)
+        {
+            entries.addAll(m_unboundedHistory);
+        }
+        return Collections.enumeration(entries);
+    }
+
+    /**
+     * Returns the number of entries which have been delivered to listeners.
+     * @return the number of entries delivered to listeners
+     */
+    public long getDeliveredEntries()
+    {
+        return m_delivered.get();
+    }
+
+    /**
+     * Returns the number of entries which have been dropped instead of being
+     * delivered to listeners according to the overflow policy.
+     * @return the number of entries dropped
+     */
+    public long getDroppedEntries()
+    {
+        return m_dropped.get();
+    }
+
+    /**
+     * Returns the number of entries waiting to be delivered to listeners.
+     * @return the number of entries waiting to be delivered
+     */
+    public int getQueuedEntries()
+    {
+        LogListenerThread thread = listenerThread;
+        return (thread != null) ? thread.getQueuedEntries() : 0;
+    }
+
+    /**
+     * Returns the policy for entries which do not fit into the listener queue.
+     * @return the name of the overflow policy
+     */
+    public String getOverflowPolicy()
     {
-        return new LogNodeEnumeration(m_head, m_tail);
+        return m_overflowPolicy.name();
+    }
+
+    /** An entry of the historic log with its sequence number. */
+    private static final class HistoryEntry
+    {
+        final long m_sequence;
+        final LogEntry m_entry;
+
+        HistoryEntry(final long sequence, final LogEntry entry)
+        {
+            m_sequence = sequence;
+            m_entry = entry;
+        }
     }
 
     /** The messages returned for the framework events. */
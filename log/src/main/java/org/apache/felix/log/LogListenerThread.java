@@ -19,10 +19,15 @@
 package org.apache.felix.log;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogLevel;
 import org.osgi.service.log.LogListener;
 
 /**
@@ -30,16 +35,69 @@ import org.osgi.service.log.LogListener;
  * any {@link LogListener} subscribers.  A subscriber can be added using the
  * {@link org.osgi.service.log.LogReaderService#addLogListener(LogListener)}
  * method.
+ * <p>
+ * Entries are queued in a bounded {@link RingBuffer} without locking and
+ * delivered in batches.  The {@link OverflowPolicy} determines what happens
+ * to entries that are logged while the queue is full.  The number of entries
+ * dropped is reported to the listeners with a warning after the next batch.
  */
 final class LogListenerThread extends Thread
 {
-    // The list of entries waiting to be delivered to the log listeners.
-    private final List<LogEntry> m_entriesToDeliver = new ArrayList<>();
+    /**
+     * The policies for entries which are logged while the queue of entries
+     * waiting to be delivered is full.
+     */
+    enum OverflowPolicy
+    {
+        /** The entry is dropped. */
+        DROP,
+        /**
+         * The logging thread waits until the entry can be queued.  This
+         * deadlocks if a listener waits for a thread that is logging.
+         */
+        BLOCK,
+        /**
+         * Once the queue is half full only one in {@link #SAMPLE_RATE} entries
+         * is queued; entries are dropped if the queue is full.
+         */
+        SAMPLE
+    }
+
+    /** The number of entries sampled while the queue is half full. */
+    static final int SAMPLE_RATE = 10;
+    /** The maximum number of entries delivered in a single batch. */
+    private static final int BATCH_SIZE = 256;
+    /** The time to wait before retrying to queue an entry when blocking. */
+    private static final long BLOCK_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // The queue of entries waiting to be delivered to the log listeners.
+    private final RingBuffer<LogEntry> m_entriesToDeliver;
     // The list of listeners.
-    private final List<LogListener> m_listeners = new ArrayList<>();
+    private final List<LogListener> m_listeners = new CopyOnWriteArrayList<>();
+    // The policy for entries which do not fit into the queue.
+    private final OverflowPolicy m_overflowPolicy;
+    // The counters of the log.
+    private final AtomicLong m_delivered;
+    private final AtomicLong m_dropped;
+    // The number of entries offered while sampling.
+    private final AtomicLong m_sampled = new AtomicLong();
+    // The number of dropped entries already reported to the listeners.
+    private long m_reportedDropped;
+    // Whether the thread is waiting for entries; cleared by the logging
+    // thread which wakes it up, so that only one thread unparks it.
+    private final AtomicBoolean m_waiting = new AtomicBoolean();
+    // Whether the thread has been asked to stop.
+    private volatile boolean m_stopped;
 
-    LogListenerThread() {
+    LogListenerThread(final int queueSize, final OverflowPolicy overflowPolicy,
+        final AtomicLong delivered, final AtomicLong dropped)
+    {
         super("FelixLogListener");
+        m_entriesToDeliver = new RingBuffer<>(queueSize);
+        m_overflowPolicy = overflowPolicy;
+        m_delivered = delivered;
+        m_dropped = dropped;
+        m_reportedDropped = dropped.get();
     }
 
     /**
@@ -48,10 +106,30 @@ final class LogListenerThread extends Thread
      */
     void addEntry(final LogEntry entry)
     {
-        synchronized (m_entriesToDeliver)
+        if (m_overflowPolicy == OverflowPolicy.SAMPLE
+            && m_entriesToDeliver.size() >= m_entriesToDeliver.capacity() / 2
+            && (m_sampled.getAndIncrement() % SAMPLE_RATE) != 0)
+        {
+            m_dropped.incrementAndGet();
+            return;
+        }
+
+        while (!m_entriesToDeliver.offer(entry))
         {
-            m_entriesToDeliver.add(entry);
-            m_entriesToDeliver.notifyAll();
+            // a listener logging from this thread would wait for itself
+            if (m_overflowPolicy != OverflowPolicy.BLOCK || m_stopped
+                || Thread.currentThread() == this)
+            {
+                m_dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(this);
+            LockSupport.parkNanos(BLOCK_WAIT_NANOS);
+        }
+
+        if (m_waiting.get() && m_waiting.compareAndSet(true, false))
+        {
+            LockSupport.unpark(this);
         }
     }
 
@@ -61,10 +139,7 @@ final class LogListenerThread extends Thread
      */
     void addListener(final LogListener listener)
     {
-        synchronized (m_listeners)
-        {
-            m_listeners.add(listener);
-        }
+        m_listeners.add(listener);
     }
 
     /**
@@ -73,10 +148,7 @@ final class LogListenerThread extends Thread
      */
     void removeListener(final LogListener listener)
     {
-        synchronized (m_listeners)
-        {
-            m_listeners.remove(listener);
-        }
+        m_listeners.remove(listener);
     }
 
     /**
@@ -85,10 +157,16 @@ final class LogListenerThread extends Thread
      */
     int getListenerCount()
     {
-        synchronized (m_listeners)
-        {
-            return m_listeners.size();
-        }
+        return m_listeners.size();
+    }
+
+    /**
+     * Returns the number of entries waiting to be delivered.
+     * @return the number of entries in the queue
+     */
+    int getQueuedEntries()
+    {
+        return m_entriesToDeliver.size();
     }
 
     /**
@@ -96,10 +174,8 @@ final class LogListenerThread extends Thread
      */
     void shutdown()
     {
-        synchronized (m_entriesToDeliver)
-        {
-            interrupt();
-        }
+        m_stopped = true;
+        interrupt();
     }
 
     /**
@@ -108,64 +184,60 @@ final class LogListenerThread extends Thread
      */
     public void run()
     {
-        while (!isInterrupted())
+        List<LogEntry> entriesToDeliver = new ArrayList<>(BATCH_SIZE);
+        while (!m_stopped && !isInterrupted())
         {
-            List<LogEntry> entriesToDeliver = new ArrayList<>();
-            synchronized (m_entriesToDeliver)
+            if (m_entriesToDeliver.drainTo(entriesToDeliver, BATCH_SIZE) == 0)
             {
+                m_waiting.set(true);
+                // check again after announcing the wait, so that an entry
+                // added in the meantime either is seen here or unparks us
                 if (m_entriesToDeliver.isEmpty())
                 {
-                    try
-                    {
-                        m_entriesToDeliver.wait();
-                    }
-                    catch (InterruptedException e)
-                    {
-                        // the interrupt-flag is cleared; so, let's play nice and
-                        // interrupt this thread again to stop it...
-                        interrupt();
-                    }
-                }
-                else
-                {
-                    // Copy all current entries and deliver them in a single go...
-                    entriesToDeliver.addAll(m_entriesToDeliver);
-                    m_entriesToDeliver.clear();
+                    LockSupport.park(this);
                 }
+                m_waiting.set(false);
+                continue;
             }
 
-            if (!entriesToDeliver.isEmpty())
+            // Take a snapshot of all current listeners and deliver all
+            // pending messages to them...
+            Object[] listeners = m_listeners.toArray();
+
+            for (LogEntry entry : entriesToDeliver)
             {
-                // Take a snapshot of all current listeners and deliver all
-                // pending messages to them...
-                List<LogListener> listeners = new ArrayList<>();
-                synchronized (m_listeners)
-                {
-                    listeners.addAll(m_listeners);
-                }
+                deliver(listeners, entry);
+            }
+            long delivered = m_delivered.addAndGet(entriesToDeliver.size());
+            entriesToDeliver.clear();
 
-                Iterator<LogEntry> entriesIt = entriesToDeliver.iterator();
-                while (entriesIt.hasNext())
-                {
-                    LogEntry entry = entriesIt.next();
-
-                    Iterator<LogListener> listenerIt = listeners.iterator();
-                    while (listenerIt.hasNext())
-                    {
-                        LogListener listener = listenerIt.next();
-
-                        try
-                        {
-                            listener.logged(entry);
-                        }
-                        catch (Throwable t)
-                        {
-                            System.err.println("Logger failed to log with " + t.getMessage());
-                            t.printStackTrace(System.err);
-                        }
-                    }
-                }
+            // Report entries dropped since the last batch to the listeners,
+            // without queueing the report, since the queue may be full again.
+            long dropped = m_dropped.get();
+            if (dropped != m_reportedDropped)
+            {
+                deliver(listeners, new LogEntryImpl(getClass().getName(), null, null, LogLevel.WARN,
+                    (dropped - m_reportedDropped) + " log entries were dropped because the listener queue was full ("
+                        + delivered + " entries delivered, " + dropped + " dropped in total)",
+                    null, null));
+                m_reportedDropped = dropped;
+            }
+        }
+    }
+
+    private static void deliver(final Object[] listeners, final LogEntry entry)
+    {
+        for (Object listener : listeners)
+        {
+            try
+            {
+                ((LogListener) listener).logged(entry);
+            }
+            catch (Throwable t)
+            {
+                System.err.println("Logger failed to log with " + t.getMessage());
+                t.printStackTrace(System.err);
             }
         }
     }
-}
\ No newline at end of file
+}
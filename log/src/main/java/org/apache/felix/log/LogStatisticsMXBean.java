@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+/**
+ * The statistics of the delivery of log entries to log listeners, which are
+ * registered with the platform MBean server while the log is started.
+ */
+public interface LogStatisticsMXBean
+{
+    /**
+     * Returns the number of entries which have been delivered to listeners.
+     * @return the number of entries delivered to listeners
+     */
+    long getDeliveredEntries();
+
+    /**
+     * Returns the number of entries which have been dropped instead of being
+     * delivered to listeners according to the overflow policy.
+     * @return the number of entries dropped
+     */
+    long getDroppedEntries();
+
+    /**
+     * Returns the number of entries waiting to be delivered to listeners.
+     * @return the number of entries waiting to be delivered
+     */
+    int getQueuedEntries();
+
+    /**
+     * Returns the policy for entries which do not fit into the listener queue.
+     * @return the name of the overflow policy
+     */
+    String getOverflowPolicy();
+}
@@ -23,19 +23,25 @@ import java.util.Dictionary;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.service.log.FormatterLogger;
 import org.osgi.service.log.Logger;
 import org.osgi.service.log.admin.LoggerAdmin;
 import org.osgi.service.log.admin.LoggerContext;
 
-public class LoggerAdminImpl implements LoggerAdmin {
+public class LoggerAdminImpl implements LoggerAdmin, SynchronousBundleListener {
 
     private final Log m_log;
     private final LoggerContext m_rootContext;
     private final ConcurrentMap<String, LoggerContext> m_contexts = new ConcurrentHashMap<>();
     private final ConcurrentMap<LoggerKey, Logger> _loggers = new ConcurrentHashMap<>();
+    // Incremented whenever effective log levels may have changed, so that
+    // loggers know when to discard their cached level.
+    private final AtomicInteger m_generation = new AtomicInteger();
 
     public LoggerAdminImpl(final String defaultLogLevelString, final Log log) {
         m_rootContext = new RootLoggerContextImpl(defaultLogLevelString, this);
@@ -47,6 +53,23 @@ public class LoggerAdminImpl implements LoggerAdmin {
         return getOrCreateLoggerContext(name);
     }
 
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        // An update may change the version of the bundle and therefore
+        // the logger contexts that apply to it.
+        if (event.getType() == BundleEvent.UPDATED) {
+            levelsChanged();
+        }
+    }
+
+    int getGeneration() {
+        return m_generation.get();
+    }
+
+    void levelsChanged() {
+        m_generation.incrementAndGet();
+    }
+
     public Set<String> getLoggerContextNames() {
         return m_contexts.keySet();
     }
@@ -38,6 +38,7 @@ public class LoggerImpl implements Logger {
     protected final Bundle m_bundle;
     protected final Log m_log;
     protected final LoggerAdminImpl m_loggerAdmin;
+    private volatile EffectiveLogLevel m_effectiveLogLevel;
 
     public LoggerImpl(final String name, final Bundle bundle, final Log log, final LoggerAdminImpl loggerAdmin) {
         m_name = name;
@@ -46,6 +47,25 @@ public class LoggerImpl implements Logger {
         m_loggerAdmin = loggerAdmin;
     }
 
+    /**
+     * Returns the effective log level of this logger. The level is resolved
+     * from the logger contexts once and then cached until the logger admin
+     * reports a change of any context.
+     */
+    LogLevel getEffectiveLogLevel() {
+        int generation = m_loggerAdmin.getGeneration();
+        EffectiveLogLevel level = m_effectiveLogLevel;
+        if ((level == null) || (level.generation != generation)) {
+            // The generation is read first, so if a context changes while
+            // the level is resolved, it is resolved again on the next call.
+            level = new EffectiveLogLevel(
+                m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name),
+                generation);
+            m_effectiveLogLevel = level;
+        }
+        return level.level;
+    }
+
     @Override
     public String getName() {
         return m_name;
@@ -53,7 +73,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isTraceEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.TRACE);
+        return getEffectiveLogLevel().implies(LogLevel.TRACE);
     }
 
     void trace(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -68,18 +88,21 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void trace(String format, Object arg) {
+        if (!isTraceEnabled()) return;
         LogParameters logParameters = getLogParameters(arg);
         trace(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void trace(String format, Object arg1, Object arg2) {
+        if (!isTraceEnabled()) return;
         LogParameters logParameters = getLogParameters(arg1, arg2);
         trace(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void trace(String format, Object... arguments) {
+        if (!isTraceEnabled()) return;
         LogParameters logParameters = getLogParameters(arguments);
         trace(format(format, logParameters), logParameters.sr, logParameters.t);
     }
@@ -93,7 +116,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isDebugEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.DEBUG);
+        return getEffectiveLogLevel().implies(LogLevel.DEBUG);
     }
 
     void debug(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -108,18 +131,21 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void debug(String format, Object arg) {
+        if (!isDebugEnabled()) return;
         LogParameters logParameters = getLogParameters(arg);
         debug(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void debug(String format, Object arg1, Object arg2) {
+        if (!isDebugEnabled()) return;
         LogParameters logParameters = getLogParameters(arg1, arg2);
         debug(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void debug(String format, Object... arguments) {
+        if (!isDebugEnabled()) return;
         LogParameters logParameters = getLogParameters(arguments);
         debug(format(format, logParameters), logParameters.sr, logParameters.t);
     }
@@ -133,7 +159,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isInfoEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.INFO);
+        return getEffectiveLogLevel().implies(LogLevel.INFO);
     }
 
     void info(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -148,18 +174,21 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void info(String format, Object arg) {
+        if (!isInfoEnabled()) return;
         LogParameters logParameters = getLogParameters(arg);
         info(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void info(String format, Object arg1, Object arg2) {
+        if (!isInfoEnabled()) return;
         LogParameters logParameters = getLogParameters(arg1, arg2);
         info(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void info(String format, Object... arguments) {
+        if (!isInfoEnabled()) return;
         LogParameters logParameters = getLogParameters(arguments);
         info(format(format, logParameters), logParameters.sr, logParameters.t);
     }
@@ -173,7 +202,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isWarnEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.WARN);
+        return getEffectiveLogLevel().implies(LogLevel.WARN);
     }
 
     void warn(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -188,18 +217,21 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void warn(String format, Object arg) {
+        if (!isWarnEnabled()) return;
         LogParameters logParameters = getLogParameters(arg);
         warn(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void warn(String format, Object arg1, Object arg2) {
+        if (!isWarnEnabled()) return;
         LogParameters logParameters = getLogParameters(arg1, arg2);
         warn(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void warn(String format, Object... arguments) {
+        if (!isWarnEnabled()) return;
         LogParameters logParameters = getLogParameters(arguments);
         warn(format(format, logParameters), logParameters.sr, logParameters.t);
     }
@@ -213,7 +245,7 @@ public class LoggerImpl implements Logger {
 
     @Override
     public boolean isErrorEnabled() {
-        return m_loggerAdmin.getLoggerContext(m_bundle, m_name).getEffectiveLogLevel(m_name).implies(LogLevel.ERROR);
+        return getEffectiveLogLevel().implies(LogLevel.ERROR);
     }
 
     void error(String message, ServiceReference<?> serviceReference, Throwable t) {
@@ -228,18 +260,21 @@ public class LoggerImpl implements Logger {
 
     @Override
     public void error(String format, Object arg) {
+        if (!isErrorEnabled()) return;
         LogParameters logParameters = getLogParameters(arg);
         error(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void error(String format, Object arg1, Object arg2) {
+        if (!isErrorEnabled()) return;
         LogParameters logParameters = getLogParameters(arg1, arg2);
         error(format(format, logParameters), logParameters.sr, logParameters.t);
     }
 
     @Override
     public void error(String format, Object... arguments) {
+        if (!isErrorEnabled()) return;
         LogParameters logParameters = getLogParameters(arguments);
         error(format(format, logParameters), logParameters.sr, logParameters.t);
     }
@@ -363,6 +398,15 @@ public class LoggerImpl implements Logger {
         return sb.toString();
     }
 
+    static class EffectiveLogLevel {
+        public EffectiveLogLevel(LogLevel level, int generation) {
+            this.level = level;
+            this.generation = generation;
+        }
+        final LogLevel level;
+        final int generation;
+    }
+
     static class LogParameters {
         public LogParameters(Object[] args, ServiceReference<?> sr, Throwable t) {
             this.args = args;
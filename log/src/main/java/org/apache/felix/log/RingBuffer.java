@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue which may be written by many threads and read by a
+ * single thread without locking.  Every slot carries a sequence number which
+ * tells writers whether the slot is free and the reader whether the slot has
+ * been published, so writers only contend on claiming the next position.
+ * Elements are read in the order their positions were claimed.
+ */
+final class RingBuffer<E>
+{
+    /** The mask to compute the slot of a position. */
+    private final int m_mask;
+    /** The elements of the slots. */
+    private final AtomicReferenceArray<E> m_elements;
+    /** The sequence numbers of the slots. */
+    private final AtomicLongArray m_sequences;
+    /** The next position to write. */
+    private final AtomicLong m_tail = new AtomicLong();
+    /** The next position to read. */
+    private final AtomicLong m_head = new AtomicLong();
+
+    /**
+     * Create a new instance.
+     * @param capacity the minimum capacity, rounded up to a power of two of
+     *        at least two, as a single slot could not tell a published
+     *        element from a free slot
+     */
+    RingBuffer(final int capacity)
+    {
+        int size = 2;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+        m_mask = size - 1;
+        m_elements = new AtomicReferenceArray<>(size);
+        m_sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            m_sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the capacity of the buffer.
+     * @return the capacity of the buffer
+     */
+    int capacity()
+    {
+        return m_mask + 1;
+    }
+
+    /**
+     * Returns the number of elements which have been added and not yet read.
+     * @return the number of elements in the buffer
+     */
+    int size()
+    {
+        long size = m_tail.get() - m_head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Returns whether no element has been added that was not yet read.
+     * @return whether the buffer is empty
+     */
+    boolean isEmpty()
+    {
+        return m_tail.get() == m_head.get();
+    }
+
+    /**
+     * Adds an element to the buffer.  May be called by any thread.
+     * @param element the element to add
+     * @return <code>true</code> if the element was added, <code>false</code>
+     *         if the buffer is full
+     */
+    boolean offer(final E element)
+    {
+        long position = m_tail.get();
+        while (true)
+        {
+            int slot = (int) (position & m_mask);
+            long difference = m_sequences.get(slot) - position;
+            if (difference == 0)
+            {
+                if (m_tail.compareAndSet(position, position + 1))
+                {
+                    m_elements.set(slot, element);
+                    // publish the element to the reader
+                    m_sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = m_tail.get();
+            }
+            else if (difference < 0)
+            {
+                // the slot has not been read since the last round
+                return false;
+            }
+            else
+            {
+                // another writer claimed the position
+                position = m_tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves the published elements to the given list.  Must only be called
+     * by a single reader thread.
+     * @param target the list to add the elements to
+     * @param max the maximum number of elements to move
+     * @return the number of elements moved
+     */
+    int drainTo(final List<E> target, final int max)
+    {
+        long position = m_head.get();
+        int count = 0;
+        while (count < max)
+        {
+            int slot = (int) (position & m_mask);
+            if (m_sequences.get(slot) != position + 1)
+            {
+                // the buffer is empty or the next element is not yet published
+                break;
+            }
+            target.add(m_elements.get(slot));
+            m_elements.set(slot, null);
+            // release the slot for the next round of writers
+            m_sequences.set(slot, position + m_mask + 1);
+            position++;
+            count++;
+        }
+        m_head.set(position);
+        return count;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.LogListener;
+
+/**
+ * Local benchmark of logging from many threads. It is not run as part of
+ * the build; run it from the test classpath:
+ *
+ * <pre>
+ * java org.apache.felix.log.LogHarness [threads...]
+ * </pre>
+ *
+ * For each thread count, the threads add entries to a log with the default
+ * history size and one listener. Reports the best time per entry over
+ * several rounds after a warm up, both until all threads have logged their
+ * entries and until the listener has received all of them.
+ * <p>
+ * The log is created with the default queue size and overflow policy of
+ * the activator. The constructor is looked up by reflection, so the same
+ * harness also runs against the synchronized store that only takes the
+ * history size and the debug flag.
+ */
+public class LogHarness
+{
+    private static final int ROUNDS = 12;
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static final int ENTRIES = 800000;
+
+    private static final int HISTORY_SIZE = 100;
+
+    public static void main(String[] args) throws Exception
+    {
+        int[] threadCounts = { 1, 2, 4, 8, 16 };
+        if (args.length > 0)
+        {
+            threadCounts = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+            {
+                threadCounts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int threads : threadCounts)
+        {
+            double bestLogged = Double.MAX_VALUE;
+            double bestDelivered = Double.MAX_VALUE;
+            for (int r = 0; r < ROUNDS; r++)
+            {
+                long[] times = run(threads);
+                if (r >= WARMUP_ROUNDS)
+                {
+                    bestLogged = Math.min(bestLogged, times[0] / (double) ENTRIES);
+                    bestDelivered = Math.min(bestDelivered, times[1] / (double) ENTRIES);
+                }
+            }
+            System.out.println(String.format("%d threads: %.1f ns per entry logged, %.1f ns per entry delivered",
+                threads, bestLogged, bestDelivered));
+        }
+    }
+
+    /**
+     * Logs {@link #ENTRIES} entries spread over the given number of threads
+     * and returns the time until they are logged and until they are
+     * delivered.
+     */
+    private static long[] run(int threads) throws Exception
+    {
+        final Log log = createLog();
+        final AtomicLong received = new AtomicLong();
+        log.addListener(new LogListener()
+        {
+            public void logged(LogEntry entry)
+            {
+                received.incrementAndGet();
+            }
+        });
+        try
+        {
+            final LogEntry entry = new LogEntryImpl("harness", null, null, LogLevel.INFO, "entry", null, null);
+            final int perThread = ENTRIES / threads;
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread[] loggers = new Thread[threads];
+            for (int t = 0; t < threads; t++)
+            {
+                loggers[t] = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            start.await();
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                        for (int i = 0; i < perThread; i++)
+                        {
+                            log.addEntry(entry);
+                        }
+                    }
+                };
+                loggers[t].start();
+            }
+
+            long t0 = System.nanoTime();
+            start.countDown();
+            for (Thread logger : loggers)
+            {
+                logger.join();
+            }
+            long logged = System.nanoTime() - t0;
+            while (received.get() < (long) perThread * threads)
+            {
+                Thread.yield();
+            }
+            long delivered = System.nanoTime() - t0;
+            return new long[] { logged, delivered };
+        }
+        finally
+        {
+            log.close();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Log createLog() throws Exception
+    {
+        for (Constructor<?> c : Log.class.getDeclaredConstructors())
+        {
+            Class<?>[] types = c.getParameterTypes();
+            c.setAccessible(true);
+            if (types.length == 4)
+            {
+                return (Log) c.newInstance(HISTORY_SIZE, false, 8192, Enum.valueOf((Class) types[3], "BLOCK"));
+            }
+            if (types.length == 2)
+            {
+                return (Log) c.newInstance(HISTORY_SIZE, false);
+            }
+        }
+        throw new IllegalStateException("No known Log constructor");
+    }
+}
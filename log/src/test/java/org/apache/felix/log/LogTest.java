@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import org.osgi.service.log.LogEntry;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.LogListener;
+
+public class LogTest
+{
+    private static final int THREADS = 8;
+
+    private static final int ENTRIES = 10000;
+
+    private Log log;
+
+    @After
+    public void tearDown()
+    {
+        if (log != null)
+        {
+            log.close();
+        }
+    }
+
+    @Test
+    public void testBlockDeliversAllEntries() throws Exception
+    {
+        log = new Log(100, false, 16, LogListenerThread.OverflowPolicy.BLOCK);
+        CountingListener listener = new CountingListener();
+        log.addListener(listener);
+
+        logConcurrently();
+        awaitDelivered(THREADS * ENTRIES);
+
+        assertEquals(THREADS * ENTRIES, log.getDeliveredEntries());
+        assertEquals(0, log.getDroppedEntries());
+        assertEquals(THREADS * ENTRIES, listener.entries.get());
+        assertEquals(0, listener.warnings.get());
+        assertEquals(0, listener.reordered.get());
+        // the entries of each thread are delivered in the order they were logged
+        for (int t = 0; t < THREADS; t++)
+        {
+            assertEquals(ENTRIES, listener.next("thread-" + t));
+        }
+    }
+
+    @Test
+    public void testDropCountsEveryEntry() throws Exception
+    {
+        log = new Log(100, false, 16, LogListenerThread.OverflowPolicy.DROP);
+        CountingListener listener = new CountingListener();
+        log.addListener(listener);
+
+        logConcurrently();
+        long dropped = log.getDroppedEntries();
+        awaitDelivered(THREADS * ENTRIES - dropped);
+
+        assertEquals(THREADS * ENTRIES, log.getDeliveredEntries() + log.getDroppedEntries());
+        assertEquals(log.getDeliveredEntries(), listener.entries.get());
+        assertEquals(0, listener.reordered.get());
+        assertTrue("dropped entries are reported", dropped == 0 || listener.warnings.get() > 0);
+    }
+
+    @Test
+    public void testSampleCountsEveryEntry() throws Exception
+    {
+        log = new Log(100, false, 16, LogListenerThread.OverflowPolicy.SAMPLE);
+        CountingListener listener = new CountingListener();
+        log.addListener(listener);
+
+        logConcurrently();
+        awaitDelivered(THREADS * ENTRIES - log.getDroppedEntries());
+
+        assertEquals(THREADS * ENTRIES, log.getDeliveredEntries() + log.getDroppedEntries());
+        assertEquals(log.getDeliveredEntries(), listener.entries.get());
+    }
+
+    @Test
+    public void testListenerLoggingDoesNotBlock() throws Exception
+    {
+        log = new Log(100, false, 1, LogListenerThread.OverflowPolicy.BLOCK);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        log.addListener(new LogListener()
+        {
+            public void logged(LogEntry entry)
+            {
+                if (!"test".equals(entry.getLoggerName()))
+                {
+                    return;
+                }
+                // overfill the queue from the delivery thread
+                for (int i = 0; i < 10; i++)
+                {
+                    log.addEntry(entry("listener", i));
+                }
+                delivered.countDown();
+            }
+        });
+
+        log.addEntry(entry("test", 0));
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        assertTrue(log.getDroppedEntries() > 0);
+    }
+
+    @Test
+    public void testConcurrentHistory() throws Exception
+    {
+        log = new Log(50, false, 16, LogListenerThread.OverflowPolicy.BLOCK);
+
+        logConcurrently();
+
+        List<LogEntry> entries = Collections.list(log.getEntries());
+        assertEquals(50, entries.size());
+        // no entry is returned twice
+        assertEquals(50, new HashSet<>(entries).size());
+    }
+
+    private void logConcurrently() throws InterruptedException
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            final String name = "thread-" + t;
+            Thread thread = new Thread(name)
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    for (int i = 0; i < ENTRIES; i++)
+                    {
+                        log.addEntry(entry(name, i));
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    private void awaitDelivered(final long expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (log.getDeliveredEntries() < expected && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        // let the listener thread report dropped entries of the last batch
+        Thread.sleep(50);
+    }
+
+    private static LogEntry entry(final String name, final int index)
+    {
+        return new LogEntryImpl(name, null, null, LogLevel.INFO, String.valueOf(index), null, null);
+    }
+
+    private static final class CountingListener implements LogListener
+    {
+        final AtomicLong entries = new AtomicLong();
+
+        final AtomicLong warnings = new AtomicLong();
+
+        final AtomicLong reordered = new AtomicLong();
+
+        private final ConcurrentMap<String, Integer> m_next = new ConcurrentHashMap<>();
+
+        public void logged(final LogEntry entry)
+        {
+            if (entry.getLogLevel() == LogLevel.WARN)
+            {
+                warnings.incrementAndGet();
+                return;
+            }
+            entries.incrementAndGet();
+            // entries of a thread may be dropped but never reordered
+            int index = Integer.parseInt(entry.getMessage());
+            Integer next = m_next.get(entry.getLoggerName());
+            if (next != null && index < next.intValue())
+            {
+                reordered.incrementAndGet();
+            }
+            m_next.put(entry.getLoggerName(), Integer.valueOf(index + 1));
+        }
+
+        int next(final String name)
+        {
+            Integer next = m_next.get(name);
+            return (next != null) ? next.intValue() : 0;
+        }
+    }
+}
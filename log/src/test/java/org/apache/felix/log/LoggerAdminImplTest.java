@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Version;
+import org.osgi.service.log.LogLevel;
+import org.osgi.service.log.Logger;
+import org.osgi.service.log.admin.LoggerContext;
+
+/**
+ * Loggers cache their effective log level, so these tests check that a
+ * logger which was already used sees every change of the logger contexts.
+ */
+public class LoggerAdminImplTest
+{
+    private static final String LOGGER_NAME = "org.example.Foo";
+
+    private final LoggerAdminImpl loggerAdmin = new LoggerAdminImpl("WARN", null);
+
+    private Version version = new Version("1.0.0");
+
+    private final Bundle bundle = (Bundle) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] { Bundle.class }, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("getSymbolicName"))
+                {
+                    return "test.bundle";
+                }
+                if (method.getName().equals("getVersion"))
+                {
+                    return version;
+                }
+                if (method.getName().equals("getLocation"))
+                {
+                    return "test:bundle";
+                }
+                if (method.getName().equals("hashCode"))
+                {
+                    return System.identityHashCode(proxy);
+                }
+                if (method.getName().equals("equals"))
+                {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+
+    @Test
+    public void testSetLogLevels()
+    {
+        Logger logger = loggerAdmin.getLogger(bundle, LOGGER_NAME, Logger.class);
+        assertFalse(logger.isDebugEnabled());
+
+        LoggerContext context = loggerAdmin.getLoggerContext("test.bundle");
+        context.setLogLevels(Collections.singletonMap("org.example", LogLevel.DEBUG));
+        assertTrue(logger.isDebugEnabled());
+        assertFalse(logger.isTraceEnabled());
+
+        context.clear();
+        assertFalse(logger.isDebugEnabled());
+        assertTrue(logger.isWarnEnabled());
+    }
+
+    @Test
+    public void testSetRootLogLevels()
+    {
+        Logger logger = loggerAdmin.getLogger(bundle, LOGGER_NAME, Logger.class);
+        assertTrue(logger.isWarnEnabled());
+
+        loggerAdmin.getLoggerContext(null).setLogLevels(
+            Collections.singletonMap(Logger.ROOT_LOGGER_NAME, LogLevel.ERROR));
+        assertFalse(logger.isWarnEnabled());
+        assertTrue(logger.isErrorEnabled());
+    }
+
+    @Test
+    public void testUpdateConfiguration()
+    {
+        Logger logger = loggerAdmin.getLogger(bundle, LOGGER_NAME, Logger.class);
+        assertFalse(logger.isInfoEnabled());
+
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(LOGGER_NAME, "info");
+        loggerAdmin.updateConfiguration("test.bundle|1.0.0", properties);
+        assertTrue(logger.isInfoEnabled());
+        assertFalse(logger.isDebugEnabled());
+    }
+
+    @Test
+    public void testBundleUpdated()
+    {
+        loggerAdmin.getLoggerContext("test.bundle|1.0.0").setLogLevels(
+            Collections.singletonMap(LOGGER_NAME, LogLevel.DEBUG));
+        Logger logger = loggerAdmin.getLogger(bundle, LOGGER_NAME, Logger.class);
+        assertTrue(logger.isDebugEnabled());
+
+        // the contexts which apply depend on the version of the bundle
+        version = new Version("2.0.0");
+        loggerAdmin.bundleChanged(new BundleEvent(BundleEvent.UPDATED, bundle));
+        assertFalse(logger.isDebugEnabled());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class RingBufferTest
+{
+    private static final int PRODUCERS = 8;
+
+    private static final int ELEMENTS = 10000;
+
+    @Test
+    public void testCapacity()
+    {
+        assertEquals(2, new RingBuffer<Object>(1).capacity());
+        assertEquals(16, new RingBuffer<Object>(10).capacity());
+        assertEquals(16, new RingBuffer<Object>(16).capacity());
+    }
+
+    @Test
+    public void testFull()
+    {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(drained, 2));
+        assertTrue(buffer.offer(4));
+        assertTrue(buffer.offer(5));
+        assertFalse(buffer.offer(6));
+
+        assertEquals(4, buffer.drainTo(drained, 10));
+        assertTrue(buffer.isEmpty());
+        for (int i = 0; i < 6; i++)
+        {
+            assertEquals(Integer.valueOf(i), drained.get(i));
+        }
+    }
+
+    /**
+     * Many producers offer into a small buffer while a single consumer
+     * drains it: no element may be lost or duplicated and the elements of
+     * each producer must be read in the order they were offered.
+     */
+    @Test
+    public void testConcurrentProducers() throws Exception
+    {
+        final RingBuffer<long[]> buffer = new RingBuffer<>(256);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++)
+        {
+            final int producer = p;
+            Thread thread = new Thread("producer-" + p)
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    for (long i = 0; i < ELEMENTS; i++)
+                    {
+                        long[] element = new long[] { producer, i };
+                        while (!buffer.offer(element))
+                        {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            thread.start();
+            producers.add(thread);
+        }
+
+        start.countDown();
+        long[] next = new long[PRODUCERS];
+        List<long[]> drained = new ArrayList<>();
+        int total = 0;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (total < PRODUCERS * ELEMENTS && System.currentTimeMillis() < deadline)
+        {
+            drained.clear();
+            total += buffer.drainTo(drained, 32);
+            for (long[] element : drained)
+            {
+                assertEquals("element of producer " + element[0], next[(int) element[0]], element[1]);
+                next[(int) element[0]]++;
+            }
+        }
+        for (Thread thread : producers)
+        {
+            thread.join();
+        }
+
+        assertEquals(PRODUCERS * ELEMENTS, total);
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.size());
+        for (int p = 0; p < PRODUCERS; p++)
+        {
+            assertEquals(ELEMENTS, next[p]);
+        }
+    }
+}
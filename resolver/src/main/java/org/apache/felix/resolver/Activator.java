@@ -25,6 +25,10 @@ import org.osgi.service.resolver.Resolver;
 public class Activator implements BundleActivator
 {
     public static final String LOG_LEVEL = "felix.resolver.log.level";
+    public static final String PERMUTATION_BEST_FIRST = "felix.resolver.permutation.bestfirst";
+    public static final String PERMUTATION_LIMIT = "felix.resolver.permutation.limit";
+    public static final String PERMUTATION_TIMEOUT = "felix.resolver.permutation.timeout";
+    public static final String PERMUTATION_SPECULATION = "felix.resolver.permutation.speculation";
 
     public void start(BundleContext bc) throws Exception
     {
@@ -40,12 +44,33 @@ public class Activator implements BundleActivator
                 // Use default log level.
             }
         }
+        PermutationOptions options = new PermutationOptions()
+            .setBestFirst(Boolean.parseBoolean(bc.getProperty(PERMUTATION_BEST_FIRST)))
+            .setPermutationLimit(getLong(bc, PERMUTATION_LIMIT, -1))
+            .setTimeLimit(getLong(bc, PERMUTATION_TIMEOUT, -1))
+            .setSpeculation((int) getLong(bc, PERMUTATION_SPECULATION, 1));
         bc.registerService(
             Resolver.class,
-            new ResolverImpl(new Logger(logLevel)),
+            new ResolverImpl(new Logger(logLevel), Runtime.getRuntime().availableProcessors(), options),
             null);
     }
 
+    private static long getLong(BundleContext bc, String name, long defaultValue)
+    {
+        if (bc.getProperty(name) != null)
+        {
+            try
+            {
+                return Long.parseLong(bc.getProperty(name));
+            }
+            catch (NumberFormatException ex)
+            {
+                // Use the default.
+            }
+        }
+        return defaultValue;
+    }
+
     public void stop(BundleContext bc) throws Exception
     {
     }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver;
+
+/**
+ * The options of the search for a candidate permutation without uses
+ * constraint violations. The defaults check every permutation, one at a
+ * time, in the order they are created. A resolver copies the options when
+ * it is created, later changes do not affect it.
+ */
+public class PermutationOptions
+{
+    private boolean m_bestFirst = false;
+    private long m_permutationLimit = -1;
+    private long m_timeLimit = -1;
+    private int m_speculation = 1;
+
+    /**
+     * Sets whether to order the candidate permutations by the number of
+     * faulty resources found in the permutation they were created from,
+     * fewest first, instead of checking the most recently created ones
+     * first. This is experimental: on the repositories of
+     * PermutationSearchHarness neither order is measurably faster.
+     * @param bestFirst whether to search best-first
+     * @return these options
+     */
+    public PermutationOptions setBestFirst(boolean bestFirst)
+    {
+        m_bestFirst = bestFirst;
+        return this;
+    }
+
+    public boolean isBestFirst()
+    {
+        return m_bestFirst;
+    }
+
+    /**
+     * Sets the maximum number of permutations to check. The initial
+     * candidates are always checked; once the limit is reached, the last
+     * uses constraint violation is reported.
+     * @param permutationLimit the limit, or a negative value for no limit
+     * @return these options
+     */
+    public PermutationOptions setPermutationLimit(long permutationLimit)
+    {
+        m_permutationLimit = permutationLimit;
+        return this;
+    }
+
+    public long getPermutationLimit()
+    {
+        return m_permutationLimit;
+    }
+
+    /**
+     * Sets the maximum time to spend checking permutations. The initial
+     * candidates are always checked; once the time is up, the last uses
+     * constraint violation is reported.
+     * @param timeLimit the limit in milliseconds, or a negative value for
+     *        no limit
+     * @return these options
+     */
+    public PermutationOptions setTimeLimit(long timeLimit)
+    {
+        m_timeLimit = timeLimit;
+        return this;
+    }
+
+    public long getTimeLimit()
+    {
+        return m_timeLimit;
+    }
+
+    /**
+     * Sets the number of permutations to check concurrently. The pending
+     * permutations are checked speculatively on the executor of the
+     * resolver, but the results are applied in the order of the sequential
+     * search, so the resolution is the same as without speculation.
+     * @param speculation the number of permutations, a value of one or less
+     *        disables speculation
+     * @return these options
+     */
+    public PermutationOptions setSpeculation(int speculation)
+    {
+        m_speculation = speculation;
+        return this;
+    }
+
+    public int getSpeculation()
+    {
+        return m_speculation;
+    }
+}
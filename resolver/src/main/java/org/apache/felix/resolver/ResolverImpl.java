@@ -46,6 +46,14 @@ public class ResolverImpl implements Resolver
 
     private final Executor m_executor;
 
+    private final boolean m_bestFirst;
+
+    private final long m_permutationLimit;
+
+    private final long m_timeLimit;
+
+    private final int m_speculation;
+
     enum PermutationType {
         USES,
         IMPORT,
@@ -86,16 +94,43 @@ public class ResolverImpl implements Resolver
         private Candidates m_multipleCardCandidates = null;
         // The delta is used to detect that we have already processed this particular permutation
         private final Set<Object> m_processedDeltas = new HashSet<Object>();
+        // Holds all candidate permutations ordered by type and by the number
+        // of faulty resources of the permutation they were created from, if
+        // permutations are searched best-first instead of in the order above.
+        private final PriorityQueue<ScoredPermutation> m_scoredPermutations;
+        // Holds the permutations created while checking the current
+        // permutation, until they are scored when the check is complete.
+        private final List<ScoredPermutation> m_unscoredPermutations = new ArrayList<ScoredPermutation>();
+        private long m_permutationSequence = 0;
+        private long m_checkedPermutations = 0;
+        // The wire candidates and package spaces of the last checked
+        // permutation, reused for resources not affected by the next one.
+        private Map<Resource, List<WireCandidate>> m_lastWireCandidates;
+        private Map<Resource, Packages> m_lastPackages;
+        // The session a permutation is checked for, if this session only
+        // checks a single permutation. Such a session records the permutations
+        // it creates, so that they can be added to the parent session later.
+        private final ResolveSession m_parent;
+        private final List<RecordedPermutation> m_recordedPermutations;
+        private final Map<Resource, ResolutionError> m_faultyResources;
+        // Holds the speculative checks of pending permutations.
+        private final Map<Candidates, FutureTask<ResolveSession>> m_permutationChecks =
+            new IdentityHashMap<Candidates, FutureTask<ResolveSession>>();
         private final Executor m_executor;
         private final Set<Requirement> m_mutated = new HashSet<Requirement>();
         private final Set<Requirement> m_sub_mutated = new HashSet<Requirement>();
-        private final ConcurrentMap<String, List<String>> m_usesCache = new ConcurrentHashMap<String, List<String>>();
+        private final ConcurrentMap<String, List<String>> m_usesCache;
         private ResolutionError m_currentError;
         volatile private CancellationException m_isCancelled = null;
 
         static ResolveSession createSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
         {
-            ResolveSession session = new ResolveSession(resolveContext, executor, dynamicHost, dynamicReq, dynamicCandidates);
+            return createSession(resolveContext, executor, dynamicHost, dynamicReq, dynamicCandidates, false);
+        }
+
+        static ResolveSession createSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates, boolean bestFirst)
+        {
+            ResolveSession session = new ResolveSession(resolveContext, executor, dynamicHost, dynamicReq, dynamicCandidates, bestFirst);
             // call onCancel first
             session.getContext().onCancel(session);
             // now gather the mandatory and optional resources
@@ -103,9 +138,14 @@ public class ResolverImpl implements Resolver
             return session;
         }
 
-        private ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates)
+        private ResolveSession(ResolveContext resolveContext, Executor executor, Resource dynamicHost, Requirement dynamicReq, List<Capability> dynamicCandidates, boolean bestFirst)
         {
             m_resolveContext = resolveContext;
+            m_scoredPermutations = bestFirst ? new PriorityQueue<ScoredPermutation>() : null;
+            m_parent = null;
+            m_recordedPermutations = null;
+            m_faultyResources = null;
+            m_usesCache = new ConcurrentHashMap<String, List<String>>();
             m_executor = executor;
             m_dynamicHost = dynamicHost;
             m_dynamicReq = dynamicReq;
@@ -120,6 +160,31 @@ public class ResolverImpl implements Resolver
             }
         }
 
+        private ResolveSession(ResolveSession parent, Executor executor)
+        {
+            m_resolveContext = parent.m_resolveContext;
+            m_scoredPermutations = null;
+            m_parent = parent;
+            m_recordedPermutations = new ArrayList<RecordedPermutation>();
+            m_faultyResources = new HashMap<Resource, ResolutionError>();
+            m_usesCache = parent.m_usesCache;
+            m_executor = executor;
+            m_dynamicHost = parent.m_dynamicHost;
+            m_dynamicReq = parent.m_dynamicReq;
+            m_dynamicCandidates = parent.m_dynamicCandidates;
+            m_mandatoryResources = parent.m_mandatoryResources;
+            m_optionalResources = parent.m_optionalResources;
+        }
+
+        /**
+         * Creates a session for checking a single permutation, which can be
+         * used concurrently with this session and other check sessions.
+         */
+        ResolveSession createCheckSession(Executor executor)
+        {
+            return new ResolveSession(this, executor);
+        }
+
         private void initMandatoryAndOptionalResources() {
             if (!isDynamic()) {
                 m_mandatoryResources.addAll(getContext().getMandatoryResources());
@@ -153,7 +218,16 @@ public class ResolverImpl implements Resolver
                 }
                 // If we haven't already permutated the existing
                 // import, do so now.
-                addPermutation(type, permutation.permutate(req));
+                Candidates perm = permutation.permutate(req);
+                if (m_recordedPermutations != null)
+                {
+                    if (perm != null)
+                    {
+                        m_recordedPermutations.add(new RecordedPermutation(type, req, perm));
+                    }
+                    return;
+                }
+                addPermutation(type, perm);
             }
         }
 
@@ -169,7 +243,19 @@ public class ResolverImpl implements Resolver
         }
 
         void addPermutation(PermutationType type, Candidates permutation) {
-            if (permutation != null)
+            if (m_recordedPermutations != null)
+            {
+                if (permutation != null)
+                {
+                    m_recordedPermutations.add(new RecordedPermutation(type, null, permutation));
+                }
+            }
+            else if (permutation != null && m_scoredPermutations != null)
+            {
+                m_unscoredPermutations.add(new ScoredPermutation(
+                    type, permutation, m_checkedPermutations, m_permutationSequence++));
+            }
+            else if (permutation != null)
             {
                 List<Candidates> typeToAddTo = null;
                 try {
@@ -199,7 +285,19 @@ public class ResolverImpl implements Resolver
         Candidates getNextPermutation() {
             Candidates next = null;
             do {
-                if (!m_usesPermutations.isEmpty())
+                if (m_scoredPermutations != null)
+                {
+                    // Permutations not created by a check, i.e. the initial
+                    // candidates, come first.
+                    scorePermutations(0);
+                    ScoredPermutation scored = m_scoredPermutations.poll();
+                    if (scored == null)
+                    {
+                        return null;
+                    }
+                    next = scored.m_candidates;
+                }
+                else if (!m_usesPermutations.isEmpty())
                 {
                     next = m_usesPermutations.remove(0);
                 }
@@ -216,6 +314,7 @@ public class ResolverImpl implements Resolver
                 }
             }
             while(!m_processedDeltas.add(next.getDelta()));
+            m_checkedPermutations++;
             // Null out each time a new permutation is attempted.
             // We only use this to store a valid permutation which is a
             // delta of the current permutation.
@@ -226,10 +325,109 @@ public class ResolverImpl implements Resolver
             return next;
         }
 
+        /**
+         * Adds the permutations recorded by a check session to this session,
+         * just like they would have been added by checking the permutation
+         * with this session.
+         */
+        void addRecordedPermutations(ResolveSession check) {
+            for (RecordedPermutation recorded : check.m_recordedPermutations)
+            {
+                if (recorded.m_type == PermutationType.SUBSTITUTE
+                    && !m_sub_mutated.add(recorded.m_requirement))
+                {
+                    continue;
+                }
+                if (recorded.m_requirement != null && recorded.m_type != PermutationType.SUBSTITUTE)
+                {
+                    m_mutated.add(recorded.m_requirement);
+                }
+                addPermutation(recorded.m_type, recorded.m_permutation);
+            }
+            m_multipleCardCandidates = check.m_multipleCardCandidates;
+            m_lastWireCandidates = check.m_lastWireCandidates;
+            m_lastPackages = check.m_lastPackages;
+        }
+
+        Map<Resource, ResolutionError> getFaultyResources() {
+            return m_faultyResources;
+        }
+
+        /**
+         * Returns up to the given number of pending permutations, in the
+         * order they are checked if no new permutations are added.
+         */
+        List<Candidates> peekPermutations(int max) {
+            List<Candidates> next = new ArrayList<Candidates>(max);
+            if (m_scoredPermutations != null)
+            {
+                PriorityQueue<ScoredPermutation> copy = new PriorityQueue<ScoredPermutation>(m_scoredPermutations);
+                while ((next.size() < max) && !copy.isEmpty())
+                {
+                    peekPermutation(copy.poll().m_candidates, next);
+                }
+            }
+            else
+            {
+                peekPermutations(m_usesPermutations, next, max);
+                peekPermutations(m_importPermutations, next, max);
+                peekPermutations(m_substPermutations, next, max);
+            }
+            return next;
+        }
+
+        private void peekPermutations(List<Candidates> permutations, List<Candidates> next, int max) {
+            for (Iterator<Candidates> it = permutations.iterator(); (next.size() < max) && it.hasNext();)
+            {
+                peekPermutation(it.next(), next);
+            }
+        }
+
+        private void peekPermutation(Candidates permutation, List<Candidates> next) {
+            if (!m_processedDeltas.contains(permutation.getDelta()))
+            {
+                next.add(permutation);
+            }
+        }
+
+        Map<Candidates, FutureTask<ResolveSession>> getPermutationChecks() {
+            return m_permutationChecks;
+        }
+
+        /**
+         * Scores the permutations created while checking the current
+         * permutation with the number of resources that were found to be
+         * inconsistent in it. The permutations of the least inconsistent
+         * permutations are checked first.
+         */
+        void scorePermutations(int faultyResources) {
+            if (m_scoredPermutations != null)
+            {
+                for (ScoredPermutation permutation : m_unscoredPermutations)
+                {
+                    permutation.m_faultyResources = faultyResources;
+                    m_scoredPermutations.add(permutation);
+                }
+                m_unscoredPermutations.clear();
+            }
+        }
+
         void clearPermutations() {
             m_usesPermutations.clear();
             m_importPermutations.clear();
             m_substPermutations.clear();
+            if (m_scoredPermutations != null)
+            {
+                m_scoredPermutations.clear();
+                m_unscoredPermutations.clear();
+            }
+            m_lastWireCandidates = null;
+            m_lastPackages = null;
+            for (FutureTask<ResolveSession> check : m_permutationChecks.values())
+            {
+                check.cancel(false);
+            }
+            m_permutationChecks.clear();
             m_multipleCardCandidates = null;
             m_processedDeltas.clear();
             m_currentError = null;
@@ -262,7 +460,27 @@ public class ResolverImpl implements Resolver
         }
 
         long getPermutationCount() {
-            return m_usesPermutations.size() + m_importPermutations.size() + m_substPermutations.size(); 
+            if (m_recordedPermutations != null)
+            {
+                return m_recordedPermutations.size();
+            }
+            long count = m_usesPermutations.size() + m_importPermutations.size() + m_substPermutations.size();
+            return (m_scoredPermutations != null)
+                ? count + m_scoredPermutations.size() + m_unscoredPermutations.size()
+                : count;
+        }
+
+        Map<Resource, List<WireCandidate>> getLastWireCandidates() {
+            return m_lastWireCandidates;
+        }
+
+        Map<Resource, Packages> getLastPackages() {
+            return m_lastPackages;
+        }
+
+        void setLastPackageSpaces(Map<Resource, List<WireCandidate>> wireCandidates, Map<Resource, Packages> packages) {
+            m_lastWireCandidates = wireCandidates;
+            m_lastPackages = packages;
         }
 
         Executor getExecutor() {
@@ -339,12 +557,19 @@ public class ResolverImpl implements Resolver
         }
 
         boolean isCancelled() {
-            return m_isCancelled != null;
+            return getCancellation() != null;
+        }
+
+        // Only the session passed to ResolveContext.onCancel is cancelled,
+        // check sessions are cancelled with the session they check for.
+        private CancellationException getCancellation() {
+            return (m_parent != null) ? m_parent.getCancellation() : m_isCancelled;
         }
 
         void checkForCancel() throws ResolutionException {
-            if (isCancelled()) {
-                throw new ResolutionException("Resolver operation has been cancelled.", m_isCancelled, null);
+            CancellationException cancellation = getCancellation();
+            if (cancellation != null) {
+                throw new ResolutionException("Resolver operation has been cancelled.", cancellation, null);
             }
         }
     }
@@ -355,17 +580,52 @@ public class ResolverImpl implements Resolver
     }
 
     public ResolverImpl(Logger logger, int parallelism)
+    {
+        this(logger, parallelism, new PermutationOptions());
+    }
+
+    public ResolverImpl(Logger logger, Executor executor)
+    {
+        this(logger, executor, new PermutationOptions());
+    }
+
+    /**
+     * Creates a resolver using the given options to resolve uses constraint
+     * violations.
+     * @param logger the logger
+     * @param parallelism the number of threads computing package spaces and
+     *        checking permutations speculatively
+     * @param options the options of the permutation search
+     */
+    public ResolverImpl(Logger logger, int parallelism, PermutationOptions options)
     {
         this.m_logger = logger;
         this.m_parallelism = parallelism;
         this.m_executor = null;
+        this.m_bestFirst = options.isBestFirst();
+        this.m_permutationLimit = options.getPermutationLimit();
+        this.m_timeLimit = options.getTimeLimit();
+        // without threads, speculative checks would only be done in advance
+        this.m_speculation = parallelism > 1 ? options.getSpeculation() : 1;
     }
 
-    public ResolverImpl(Logger logger, Executor executor)
+    /**
+     * Creates a resolver using the given options to resolve uses constraint
+     * violations.
+     * @param logger the logger
+     * @param executor the executor computing package spaces and checking
+     *        permutations speculatively
+     * @param options the options of the permutation search
+     */
+    public ResolverImpl(Logger logger, Executor executor, PermutationOptions options)
     {
         this.m_logger = logger;
         this.m_parallelism = -1;
         this.m_executor = executor;
+        this.m_bestFirst = options.isBestFirst();
+        this.m_permutationLimit = options.getPermutationLimit();
+        this.m_timeLimit = options.getTimeLimit();
+        this.m_speculation = options.getSpeculation();
     }
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc) throws ResolutionException
@@ -417,7 +677,7 @@ public class ResolverImpl implements Resolver
 
     public Map<Resource, List<Wire>> resolve(ResolveContext rc, Executor executor) throws ResolutionException
     {
-        ResolveSession session = ResolveSession.createSession(rc, executor, null, null, null);
+        ResolveSession session = ResolveSession.createSession(rc, executor, null, null, null, m_bestFirst);
         return doResolve(session);
     }
 
@@ -559,25 +819,43 @@ public class ResolverImpl implements Resolver
     private Candidates findValidCandidates(ResolveSession session, Map<Resource, ResolutionError> faultyResources) {
         Candidates allCandidates = null;
         boolean foundFaultyResources = false;
+        long permutations = 0;
+        long deadline = (m_timeLimit >= 0) ? System.currentTimeMillis() + m_timeLimit : -1;
         do
         {
+            if (permutations > 0 && isBudgetExhausted(permutations, deadline))
+            {
+                m_logger.log(Logger.LOG_WARNING,
+                    "Stopped resolving uses constraint violations after checking "
+                    + permutations + " permutations.");
+                break;
+            }
             allCandidates = session.getNextPermutation();
             if (allCandidates == null)
             {
                 break;
             }
+            permutations++;
 
 //allCandidates.dump();
 
             Map<Resource, ResolutionError> currentFaultyResources = new HashMap<Resource, ResolutionError>();
 
-            session.setCurrentError(
-                    checkConsistency(
-                            session,
-                            allCandidates,
-                            currentFaultyResources
-                    )
-            );
+            if (m_speculation > 1)
+            {
+                checkPermutation(session, allCandidates, currentFaultyResources);
+            }
+            else
+            {
+                session.setCurrentError(
+                        checkConsistency(
+                                session,
+                                allCandidates,
+                                currentFaultyResources
+                        )
+                );
+            }
+            session.scorePermutations(Math.max(1, currentFaultyResources.size()));
 
             if (!currentFaultyResources.isEmpty())
             {
@@ -599,12 +877,98 @@ public class ResolverImpl implements Resolver
         return allCandidates;
     }
 
+    /**
+     * Checks the given permutation with a check session and applies the
+     * result to the session as if the permutation was checked with it.
+     * The pending permutations are checked speculatively on the executor
+     * of the session, so their results are available when they are next.
+     */
+    private void checkPermutation(
+        final ResolveSession session,
+        Candidates allCandidates,
+        Map<Resource, ResolutionError> currentFaultyResources)
+    {
+        Map<Candidates, FutureTask<ResolveSession>> checks = session.getPermutationChecks();
+        FutureTask<ResolveSession> current = checks.remove(allCandidates);
+        for (final Candidates pending : session.peekPermutations(m_speculation - 1))
+        {
+            if ((checks.size() >= 2 * m_speculation) || session.isCancelled())
+            {
+                break;
+            }
+            if (!checks.containsKey(pending))
+            {
+                // Speculative checks compute the package spaces from scratch
+                // and sequentially, since they are run on the executor.
+                FutureTask<ResolveSession> check = new FutureTask<ResolveSession>(
+                    new Callable<ResolveSession>()
+                    {
+                        public ResolveSession call()
+                        {
+                            ResolveSession check = session.createCheckSession(new DumbExecutor());
+                            // a check queued before the resolve operation was
+                            // cancelled is not needed anymore
+                            if (!check.isCancelled())
+                            {
+                                check.setCurrentError(checkConsistency(check, pending, check.getFaultyResources()));
+                            }
+                            return check;
+                        }
+                    });
+                checks.put(pending, check);
+                session.getExecutor().execute(check);
+            }
+        }
+
+        ResolveSession check;
+        if (current != null)
+        {
+            try
+            {
+                check = current.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error)
+                {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+        else
+        {
+            check = session.createCheckSession(session.getExecutor());
+            check.setLastPackageSpaces(session.getLastWireCandidates(), session.getLastPackages());
+            check.setCurrentError(checkConsistency(check, allCandidates, check.getFaultyResources()));
+        }
+        session.setCurrentError(check.getCurrentError());
+        currentFaultyResources.putAll(check.getFaultyResources());
+        session.addRecordedPermutations(check);
+    }
+
+    private boolean isBudgetExhausted(long permutations, long deadline)
+    {
+        return ((m_permutationLimit >= 0) && (permutations >= m_permutationLimit))
+            || ((deadline >= 0) && (System.currentTimeMillis() >= deadline));
+    }
+
     private ResolutionError checkConsistency(
         ResolveSession session,
         Candidates allCandidates,
         Map<Resource, ResolutionError> currentFaultyResources)
     {
-        ResolutionError rethrow = allCandidates.checkSubstitutes();
+        ResolutionError rethrow = allCandidates.checkSubstitutes(session);
         if (rethrow != null)
         {
             return rethrow;
@@ -668,7 +1032,7 @@ public class ResolverImpl implements Resolver
                         "Matching candidate does not provide a package name.");
                 }
             }
-            ResolveSession session = ResolveSession.createSession(context,  new DumbExecutor(), host, dynamicRequirement, matches);
+            ResolveSession session = ResolveSession.createSession(context,  new DumbExecutor(), host, dynamicRequirement, matches, m_bestFirst);
             return doResolve(session);
         }
 
@@ -1162,10 +1526,21 @@ public class ResolverImpl implements Resolver
             executor.await();
         }
 
+        // Reuse the package spaces of the last checked permutation for
+        // resources that depend on the same wire candidates
+        final Map<Resource, Packages> lastPackages = session.getLastPackages();
+        final Set<Resource> affected = getAffectedResources(
+            session.getLastWireCandidates(), allWireCandidates);
+
         // Parallel get all exported packages
         final OpenHashMap<Resource, Packages> allPackages = new OpenHashMap<Resource, Packages>(allCandidates.getNbResources());
         for (final Resource resource : allWireCandidates.keySet())
         {
+            if (!affected.contains(resource))
+            {
+                allPackages.put(resource, lastPackages.get(resource));
+                continue;
+            }
             final Packages packages = new Packages(resource);
             allPackages.put(resource, packages);
             executor.execute(new Runnable()
@@ -1180,7 +1555,7 @@ public class ResolverImpl implements Resolver
         executor.await();
 
         // Parallel compute package lists
-        for (final Resource resource : allWireCandidates.keySet())
+        for (final Resource resource : affected)
         {
             executor.execute(new Runnable()
             {
@@ -1196,10 +1571,9 @@ public class ResolverImpl implements Resolver
         // First, sequentially compute packages for resources
         // that have required packages, so that all recursive
         // calls can be done without threading problems
-        for (Map.Entry<Resource, Packages> entry : allPackages.fast())
+        for (final Resource resource : affected)
         {
-            final Resource resource = entry.getKey();
-            final Packages packages = entry.getValue();
+            final Packages packages = allPackages.get(resource);
             if (!packages.m_requiredPkgs.isEmpty())
             {
                 getPackageSourcesInternal(session, allPackages, resource, packages);
@@ -1207,10 +1581,9 @@ public class ResolverImpl implements Resolver
         }
         // Next, for all remaining resources, we can compute them
         // in parallel, as they won't refer to other resource packages
-        for (Map.Entry<Resource, Packages> entry : allPackages.fast())
+        for (final Resource resource : affected)
         {
-            final Resource resource = entry.getKey();
-            final Packages packages = entry.getValue();
+            final Packages packages = allPackages.get(resource);
             if (packages.m_sources.isEmpty())
             {
                 executor.execute(new Runnable()
@@ -1225,7 +1598,7 @@ public class ResolverImpl implements Resolver
         executor.await();
 
         // Parallel compute uses
-        for (final Resource resource : allWireCandidates.keySet())
+        for (final Resource resource : affected)
         {
             executor.execute(new Runnable()
             {
@@ -1237,9 +1610,84 @@ public class ResolverImpl implements Resolver
         }
         executor.await();
 
+        session.setLastPackageSpaces(allWireCandidates, allPackages);
         return allPackages;
     }
 
+    /**
+     * Returns the resources whose package space has to be calculated. The
+     * package space of a resource only depends on its wire candidates and
+     * those of the resources providing its candidates, recursively. So it
+     * can be reused if none of them changed since the last calculation.
+     */
+    private static Set<Resource> getAffectedResources(
+        Map<Resource, List<WireCandidate>> lastWireCandidates,
+        Map<Resource, List<WireCandidate>> allWireCandidates)
+    {
+        if (lastWireCandidates == null)
+        {
+            return allWireCandidates.keySet();
+        }
+
+        Map<Resource, List<Resource>> dependents = new HashMap<Resource, List<Resource>>();
+        LinkedList<Resource> changed = new LinkedList<Resource>();
+        for (Entry<Resource, List<WireCandidate>> entry : allWireCandidates.entrySet())
+        {
+            Resource resource = entry.getKey();
+            List<WireCandidate> wireCandidates = entry.getValue();
+            if (!equalWireCandidates(wireCandidates, lastWireCandidates.get(resource)))
+            {
+                changed.add(resource);
+            }
+            for (WireCandidate w : wireCandidates)
+            {
+                Resource provider = w.capability.getResource();
+                List<Resource> list = dependents.get(provider);
+                if (list == null)
+                {
+                    list = new ArrayList<Resource>();
+                    dependents.put(provider, list);
+                }
+                list.add(resource);
+            }
+        }
+
+        Set<Resource> affected = new HashSet<Resource>(changed);
+        while (!changed.isEmpty())
+        {
+            List<Resource> list = dependents.get(changed.removeFirst());
+            if (list != null)
+            {
+                for (Resource dependent : list)
+                {
+                    if (affected.add(dependent))
+                    {
+                        changed.add(dependent);
+                    }
+                }
+            }
+        }
+        return affected;
+    }
+
+    private static boolean equalWireCandidates(List<WireCandidate> l1, List<WireCandidate> l2)
+    {
+        if ((l2 == null) || (l1.size() != l2.size()))
+        {
+            return false;
+        }
+        for (int i = 0; i < l1.size(); i++)
+        {
+            WireCandidate w1 = l1.get(i);
+            WireCandidate w2 = l2.get(i);
+            if (!w1.requirement.equals(w2.requirement) || !w1.capability.equals(w2.capability))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static List<String> parseUses(String s) {
         int nb = 1;
         int l = s.length();
@@ -2079,6 +2527,64 @@ public class ResolverImpl implements Resolver
         }
     }
 
+    private static final class ScoredPermutation implements Comparable<ScoredPermutation>
+    {
+        public final PermutationType m_type;
+        public final Candidates m_candidates;
+        public final long m_generation;
+        public final long m_sequence;
+        public int m_faultyResources;
+
+        public ScoredPermutation(PermutationType type, Candidates candidates, long generation, long sequence)
+        {
+            m_type = type;
+            m_candidates = candidates;
+            m_generation = generation;
+            m_sequence = sequence;
+        }
+
+        // Orders by permutation type first, so uses permutations are still
+        // preferred, then by the number of faulty resources. For the same
+        // score the permutations of the most recently checked permutation
+        // come first, in the order they were created, like the default search.
+        public int compareTo(ScoredPermutation other)
+        {
+            int c = m_type.compareTo(other.m_type);
+            if (c == 0)
+            {
+                c = compare(m_faultyResources, other.m_faultyResources);
+            }
+            if (c == 0)
+            {
+                c = compare(other.m_generation, m_generation);
+            }
+            if (c == 0)
+            {
+                c = compare(m_sequence, other.m_sequence);
+            }
+            return c;
+        }
+
+        private static int compare(long l1, long l2)
+        {
+            return (l1 < l2) ? -1 : ((l1 == l2) ? 0 : 1);
+        }
+    }
+
+    private static final class RecordedPermutation
+    {
+        public final PermutationType m_type;
+        public final Requirement m_requirement;
+        public final Candidates m_permutation;
+
+        public RecordedPermutation(PermutationType type, Requirement requirement, Candidates permutation)
+        {
+            m_type = type;
+            m_requirement = requirement;
+            m_permutation = permutation;
+        }
+    }
+
     private static final class WireCandidate
     {
         public final Requirement requirement;
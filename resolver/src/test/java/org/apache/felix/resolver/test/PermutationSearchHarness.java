@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.test;
+
+import java.util.Arrays;
+
+import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.PermutationOptions;
+import org.apache.felix.resolver.ResolverImpl;
+
+/**
+ * Local benchmark of the order in which candidate permutations are
+ * checked. It is not run as part of the build; run it from the test
+ * classpath:
+ *
+ * <pre>
+ * java org.apache.felix.resolver.test.PermutationSearchHarness [libraries:providers...]
+ * </pre>
+ *
+ * Resolves the repositories of {@link PermutationSearchTest}, where only
+ * the permutation moving every library to the last api provider is
+ * consistent, alternately with the default search and with the best-first
+ * search. The permutations a search checks depend on the iteration order
+ * of hashed collections, so the time of a single resolution varies a lot
+ * between rounds; the median over many rounds after a warm up is reported.
+ */
+public class PermutationSearchHarness
+{
+    private static final int ROUNDS = 41;
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            args = new String[] { "10:3", "20:4", "40:5", "80:6" };
+        }
+        for (String arg : args)
+        {
+            int libraries = Integer.parseInt(arg.substring(0, arg.indexOf(':')));
+            int providers = Integer.parseInt(arg.substring(arg.indexOf(':') + 1));
+            ResolverImpl[] resolvers = {
+                new ResolverImpl(new Logger(Logger.LOG_ERROR), 1, new PermutationOptions()),
+                new ResolverImpl(new Logger(Logger.LOG_ERROR), 1, new PermutationOptions().setBestFirst(true)) };
+            long[][] times = new long[resolvers.length][ROUNDS];
+            for (int r = -WARMUP_ROUNDS; r < ROUNDS; r++)
+            {
+                for (int i = 0; i < resolvers.length; i++)
+                {
+                    long t0 = System.nanoTime();
+                    PermutationSearchTest.assertResolvedToFirstProvider(resolvers[i], libraries, providers);
+                    long elapsed = System.nanoTime() - t0;
+                    if (r >= 0)
+                    {
+                        times[i][r] = elapsed;
+                    }
+                }
+            }
+            for (long[] t : times)
+            {
+                Arrays.sort(t);
+            }
+            System.out.println(String.format("%d libraries, %d providers: default %.2f ms, best-first %.2f ms",
+                libraries, providers, times[0][ROUNDS / 2] / 1E6, times[1][ROUNDS / 2] / 1E6));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.resolver.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.PermutationOptions;
+import org.apache.felix.resolver.ResolverImpl;
+import org.apache.felix.resolver.test.util.GenericCapability;
+import org.apache.felix.resolver.test.util.GenericRequirement;
+import org.apache.felix.resolver.test.util.ResolveContextImpl;
+import org.apache.felix.resolver.test.util.ResourceImpl;
+import org.junit.Test;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.resource.Wiring;
+import org.osgi.service.resolver.ResolutionException;
+import org.osgi.service.resolver.ResolveContext;
+
+/**
+ * Resolves repositories where every library prefers an api provider that
+ * conflicts with the single provider the consumer accepts, so only the
+ * permutation moving all libraries to the last candidate is consistent.
+ */
+public class PermutationSearchTest
+{
+    @Test
+    public void testDefaultSearch() throws Exception
+    {
+        assertResolvedToFirstProvider(new ResolverImpl(new Logger(Logger.LOG_ERROR), 1), 4, 3);
+    }
+
+    @Test
+    public void testBestFirstSearch() throws Exception
+    {
+        assertResolvedToFirstProvider(new ResolverImpl(new Logger(Logger.LOG_ERROR), 1,
+            new PermutationOptions().setBestFirst(true)), 4, 3);
+    }
+
+    @Test
+    public void testSpeculativeSearch() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            assertResolvedToFirstProvider(new ResolverImpl(new Logger(Logger.LOG_ERROR), executor,
+                new PermutationOptions().setSpeculation(4)), 4, 3);
+            assertResolvedToFirstProvider(new ResolverImpl(new Logger(Logger.LOG_ERROR), executor,
+                new PermutationOptions().setBestFirst(true).setSpeculation(4)), 4, 3);
+            assertUnresolved(new ResolverImpl(new Logger(Logger.LOG_ERROR), executor,
+                new PermutationOptions().setPermutationLimit(1).setSpeculation(4)));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        // as configured by the resolver bundle
+        assertResolvedToFirstProvider(new ResolverImpl(new Logger(Logger.LOG_ERROR), 4,
+            new PermutationOptions().setSpeculation(4)), 4, 3);
+        assertResolvedToFirstProvider(new ResolverImpl(new Logger(Logger.LOG_ERROR), 1,
+            new PermutationOptions().setSpeculation(4)), 4, 3);
+    }
+
+    @Test
+    public void testPermutationLimit() throws Exception
+    {
+        // the initial candidates are inconsistent
+        assertUnresolved(new ResolverImpl(new Logger(Logger.LOG_ERROR), 1,
+            new PermutationOptions().setPermutationLimit(1)));
+        assertUnresolved(new ResolverImpl(new Logger(Logger.LOG_ERROR), 1,
+            new PermutationOptions().setBestFirst(true).setPermutationLimit(1)));
+    }
+
+    @Test
+    public void testTimeLimit() throws Exception
+    {
+        assertUnresolved(new ResolverImpl(new Logger(Logger.LOG_ERROR), 1,
+            new PermutationOptions().setBestFirst(true).setTimeLimit(0)));
+    }
+
+    static void assertResolvedToFirstProvider(ResolverImpl resolver, int libraries, int providers)
+        throws ResolutionException
+    {
+        List<Resource> providerResources = new ArrayList<Resource>();
+        ResolveContext rc = populate(libraries, providers, providerResources);
+        Map<Resource, List<Wire>> wireMap = resolver.resolve(rc);
+
+        Resource first = providerResources.get(0);
+        int count = 0;
+        for (Map.Entry<Resource, List<Wire>> entry : wireMap.entrySet())
+        {
+            for (Wire wire : entry.getValue())
+            {
+                if ("api".equals(wire.getCapability().getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE)))
+                {
+                    assertEquals(entry.getKey().toString(), first, wire.getProvider());
+                    count++;
+                }
+            }
+        }
+        // the consumer and all libraries import the api
+        assertEquals(libraries + 1, count);
+    }
+
+    private static void assertUnresolved(ResolverImpl resolver)
+    {
+        try
+        {
+            resolver.resolve(populate(4, 3, new ArrayList<Resource>()));
+            fail("Expected the permutation budget to be exhausted");
+        }
+        catch (ResolutionException ex)
+        {
+            // expected
+        }
+    }
+
+    private static ResolveContext populate(int libraries, int providers, List<Resource> providerResources)
+    {
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+
+        List<Capability> apiCaps = new ArrayList<Capability>();
+        for (int i = 0; i < providers; i++)
+        {
+            ResourceImpl provider = new ResourceImpl("provider" + i);
+            apiCaps.add(addCap(provider, "api", null));
+            providerResources.add(provider);
+        }
+        // prefer the last provider
+        List<Capability> preferred = new ArrayList<Capability>(apiCaps);
+        Collections.reverse(preferred);
+
+        ResourceImpl consumer = new ResourceImpl("consumer");
+        candMap.put(addReq(consumer, "api"), Collections.singletonList(apiCaps.get(0)));
+        for (int i = 0; i < libraries; i++)
+        {
+            ResourceImpl library = new ResourceImpl("library" + i);
+            Capability libCap = addCap(library, "lib" + i, "api");
+            candMap.put(addReq(library, "api"), preferred);
+            candMap.put(addReq(consumer, "lib" + i), Collections.singletonList(libCap));
+        }
+
+        return new ResolveContextImpl(new HashMap<Resource, Wiring>(), candMap,
+            Collections.<Resource>singletonList(consumer), Collections.<Resource>emptyList());
+    }
+
+    private static Capability addCap(ResourceImpl res, String pkg, String uses)
+    {
+        GenericCapability cap = new GenericCapability(res, PackageNamespace.PACKAGE_NAMESPACE);
+        cap.addAttribute(PackageNamespace.PACKAGE_NAMESPACE, pkg);
+        if (uses != null)
+        {
+            cap.addDirective(Namespace.CAPABILITY_USES_DIRECTIVE, uses);
+        }
+        res.addCapability(cap);
+        return cap;
+    }
+
+    private static Requirement addReq(ResourceImpl res, String pkg)
+    {
+        GenericRequirement req = new GenericRequirement(res, PackageNamespace.PACKAGE_NAMESPACE);
+        req.addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE,
+            "(" + PackageNamespace.PACKAGE_NAMESPACE + "=" + pkg + ")");
+        res.addRequirement(req);
+        return req;
+    }
+}
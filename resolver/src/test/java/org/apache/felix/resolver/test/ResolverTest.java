@@ -32,8 +32,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import org.apache.felix.resolver.Logger;
+import org.apache.felix.resolver.PermutationOptions;
 import org.apache.felix.resolver.ResolverImpl;
 import org.apache.felix.resolver.test.util.BundleCapability;
 import org.apache.felix.resolver.test.util.BundleRequirement;
@@ -301,6 +305,68 @@ public class ResolverTest
         assertEquals("Should have found two resolved resources named 'A'", 2, aResources);
     }
 
+    @Test
+    public void testScenario6SpeculativeChecksCancelled() throws Exception
+    {
+        Map<Resource, Wiring> wirings = new HashMap<Resource, Wiring>();
+        Map<Requirement, List<Capability>> candMap = new HashMap<Requirement, List<Capability>>();
+        List<Resource> mandatory = populateScenario6(wirings, candMap);
+        final Runnable[] onCancel = new Runnable[1];
+        final int[] wiringLookups = new int[1];
+        ResolveContextImpl rci = new ResolveContextImpl(wirings, candMap, mandatory, Collections.<Resource> emptyList())
+        {
+            @Override
+            public void onCancel(Runnable callback)
+            {
+                onCancel[0] = callback;
+            }
+
+            @Override
+            public Map<Resource, Wiring> getWirings()
+            {
+                wiringLookups[0]++;
+                return super.getWirings();
+            }
+        };
+        // cancels the resolve operation when the first speculative check is
+        // queued, and runs the queued checks right away
+        final int[] checks = new int[1];
+        final int[] checkLookups = new int[1];
+        Executor executor = new Executor()
+        {
+            public void execute(Runnable command)
+            {
+                if (command instanceof FutureTask)
+                {
+                    onCancel[0].run();
+                    checks[0]++;
+                    int lookups = wiringLookups[0];
+                    command.run();
+                    checkLookups[0] += wiringLookups[0] - lookups;
+                }
+                else
+                {
+                    command.run();
+                }
+            }
+        };
+        Resolver resolver = new ResolverImpl(new Logger(Logger.LOG_ERROR), executor,
+            new PermutationOptions().setSpeculation(4));
+
+        try
+        {
+            resolver.resolve(rci);
+            fail("Expected the resolve operation to be cancelled");
+        }
+        catch (ResolutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof CancellationException);
+        }
+        assertTrue("Expected speculative checks", checks[0] > 0);
+        // the checks queued after the cancellation did not calculate package spaces
+        assertEquals(0, checkLookups[0]);
+    }
+
     @Test
     public void testScenario7() throws Exception
     {
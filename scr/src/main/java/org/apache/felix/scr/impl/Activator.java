@@ -18,6 +18,7 @@
  */
 package org.apache.felix.scr.impl;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +29,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.apache.felix.scr.impl.config.ScrConfigurationImpl;
 import org.apache.felix.scr.impl.inject.ClassUtils;
 import org.apache.felix.scr.impl.logger.ScrLogger;
+import org.apache.felix.scr.impl.manager.ScrConfiguration;
 import org.apache.felix.scr.impl.runtime.ServiceComponentRuntimeImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -75,6 +77,9 @@ public class Activator extends AbstractExtender
 
     private ComponentCommands m_componentCommands;
 
+    // cache of parsed component descriptors, null if disabled
+    private DescriptorCache m_descriptorCache;
+
     public Activator()
     {
         m_configuration = new ScrConfigurationImpl( this );
@@ -163,6 +168,18 @@ public class Activator extends AbstractExtender
         logger.log( LogService.LOG_INFO, " Version = {0}",
             null, m_bundle.getVersion().toString() );
 
+        // cache parsed descriptors unless disabled or there is no data area
+        m_descriptorCache = null;
+        if ( !"false".equalsIgnoreCase( m_context.getProperty( ScrConfiguration.PROP_DESCRIPTOR_CACHE ) ) )
+        {
+            final File cacheDir = m_context.getDataFile( "descriptors" );
+            if ( cacheDir != null )
+            {
+                m_descriptorCache = new DescriptorCache( cacheDir, m_bundle );
+                m_descriptorCache.retain( m_globalContext.getBundles() );
+            }
+        }
+
         // create and start the component actor
         m_componentActor = new ComponentActorThread( this.logger );
         Thread t = new Thread( m_componentActor, "SCR Component Actor" );
@@ -378,7 +395,7 @@ public class Activator extends AbstractExtender
         try
         {
             BundleComponentActivator ga = new BundleComponentActivator( this.logger, m_componentRegistry, m_componentActor,
-                context, m_configuration );
+                context, m_configuration, m_descriptorCache );
             ga.initialEnable();
 
             // replace bundle activator in the map
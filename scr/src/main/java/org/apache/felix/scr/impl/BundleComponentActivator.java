@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -96,6 +97,9 @@ public class BundleComponentActivator implements ComponentActivator
 
     private final BundleLogger logger;
 
+    // cache of the parsed component descriptors, may be null
+    private final DescriptorCache m_descriptorCache;
+
     private static class ListenerInfo implements ServiceListener
     {
         private Map<Filter, List<ExtendedServiceListener<ExtendedServiceEvent>>> filterMap = new HashMap<>();
@@ -237,6 +241,8 @@ public class BundleComponentActivator implements ComponentActivator
      *      register components with to ensure uniqueness of component names
      *      and to ensure configuration updates.
      * @param   context  The bundle context owning the components
+     * @param descriptorCache The cache of parsed component descriptors or
+     *      <code>null</code> to always parse the descriptors
      *
      * @throws ComponentException if any error occurrs initializing this class
      */
@@ -244,7 +250,8 @@ public class BundleComponentActivator implements ComponentActivator
             final ComponentRegistry componentRegistry,
             final ComponentActorThread componentActor,
             final BundleContext context,
-            final ScrConfiguration configuration)
+            final ScrConfiguration configuration,
+            final DescriptorCache descriptorCache)
     throws ComponentException
     {
         // create a logger on behalf of the bundle
@@ -256,6 +263,7 @@ public class BundleComponentActivator implements ComponentActivator
         m_bundle = context.getBundle();
 
         m_configuration = configuration;
+        m_descriptorCache = descriptorCache;
 
         logger.log( LogService.LOG_DEBUG, "BundleComponentActivator : Bundle active", null);
 
@@ -295,6 +303,7 @@ public class BundleComponentActivator implements ComponentActivator
         // 112.4.1: The value of the the header is a comma separated list of XML entries within the Bundle
         StringTokenizer st = new StringTokenizer( descriptorLocations, ", " );
 
+        final List<URL> descriptors = new ArrayList<>();
         while ( st.hasMoreTokens() )
         {
             String descriptorLocation = st.nextToken();
@@ -307,12 +316,99 @@ public class BundleComponentActivator implements ComponentActivator
                 logger.log( LogService.LOG_ERROR, "Component descriptor entry ''{0}'' not found", null, descriptorLocation);
                 continue;
             }
+            descriptors.addAll( Arrays.asList( descriptorURLs ) );
+        }
+
+        // load from the cache if the descriptors have been parsed before
+        final List<List<ComponentMetadata>> cached = loadCachedDescriptors( descriptors );
+        if ( cached != null )
+        {
+            for ( List<ComponentMetadata> metadata : cached )
+            {
+                registerComponents( metadata );
+            }
+            return;
+        }
+
+        // load from the descriptors
+        DescriptorCache.Writer cacheWriter = createCacheWriter( descriptors );
+        for ( URL descriptorURL : descriptors )
+        {
+            final List<ComponentMetadata> metadata = parseDescriptor( descriptorURL );
+            if ( metadata == null )
+            {
+                // do not cache the components of a broken descriptor
+                cacheWriter = null;
+                continue;
+            }
+            if ( cacheWriter != null )
+            {
+                try
+                {
+                    cacheWriter.add( metadata );
+                }
+                catch ( IOException ex )
+                {
+                    logger.log( LogService.LOG_DEBUG, "Components of descriptor entry ''{0}'' cannot be cached", ex,
+                        descriptorURL.getPath() );
+                    cacheWriter = null;
+                }
+            }
+            registerComponents( metadata );
+        }
+
+        if ( cacheWriter != null )
+        {
+            try
+            {
+                cacheWriter.commit();
+            }
+            catch ( IOException ex )
+            {
+                logger.log( LogService.LOG_WARNING, "Cannot write component descriptor cache", ex );
+            }
+        }
+    }
 
-            // load from the descriptors
-            for ( URL descriptorURL : descriptorURLs )
+    private List<List<ComponentMetadata>> loadCachedDescriptors(final List<URL> descriptors)
+    {
+        if ( m_descriptorCache == null || descriptors.isEmpty() )
+        {
+            return null;
+        }
+        try
+        {
+            final List<List<ComponentMetadata>> cached = m_descriptorCache.load( m_bundle, descriptors,
+                getConfiguration().isFactoryEnabled(), getConfiguration().keepInstances() );
+            if ( cached != null )
             {
-                loadDescriptor( descriptorURL );
+                logger.log( LogService.LOG_DEBUG, "BundleComponentActivator : Using cached component descriptors", null );
             }
+            return cached;
+        }
+        catch ( IOException ex )
+        {
+            logger.log( LogService.LOG_DEBUG, "Cannot read component descriptor cache, parsing descriptors", ex );
+            m_descriptorCache.remove( m_bundle );
+            return null;
+        }
+    }
+
+    private DescriptorCache.Writer createCacheWriter(final List<URL> descriptors)
+    {
+        if ( m_descriptorCache == null || descriptors.isEmpty() )
+        {
+            return null;
+        }
+        try
+        {
+            return m_descriptorCache.createWriter( m_bundle, descriptors, getConfiguration().isFactoryEnabled(),
+                getConfiguration().keepInstances() );
+        }
+        catch ( IOException ex )
+        {
+            logger.log( LogService.LOG_DEBUG, "Cannot cache component descriptors", ex );
+            return null;
         }
     }
 
@@ -410,7 +506,13 @@ public class BundleComponentActivator implements ComponentActivator
         return urls.toArray( new URL[urls.size()] );
     }
 
-    private void loadDescriptor(final URL descriptorURL)
+    /**
+     * Parses the given descriptor.
+     *
+     * @return the not yet validated component metadata or <code>null</code>
+     *      if the descriptor cannot be read
+     */
+    private List<ComponentMetadata> parseDescriptor(final URL descriptorURL)
     {
         // simple path for log messages
         final String descriptorLocation = descriptorURL.getPath();
@@ -427,44 +529,7 @@ public class BundleComponentActivator implements ComponentActivator
 
             parser.parseXML( handler );
 
-            // 112.4.2 Component descriptors may contain a single, root component element
-            // or one or more component elements embedded in a larger document
-            for ( ComponentMetadata metadata : handler.getComponentMetadataList() )
-            {
-                final ComponentLogger componentLogger = new ComponentLogger(metadata, logger);
-                ComponentRegistryKey key = null;
-                try
-                {
-                    // validate the component metadata
-                    metadata.validate( );
-
-                    // check and reserve the component name (validate ensures it's never null)
-                    key = m_componentRegistry.checkComponentName( m_bundle, metadata.getName() );
-
-                    // Request creation of the component manager
-                    ComponentHolder<?> holder = m_componentRegistry.createComponentHolder( this, metadata, componentLogger );
-
-                    // register the component after validation
-                    m_componentRegistry.registerComponentHolder( key, holder );
-                    m_holders.add( holder );
-
-                    componentLogger.log( LogService.LOG_DEBUG,
-                        "BundleComponentActivator : ComponentHolder created.", null );
-
-                }
-                catch ( Throwable t )
-                {
-                    // There is a problem with this particular component, we'll log the error
-                    // and proceed to the next one
-                    componentLogger.log( LogService.LOG_ERROR, "Cannot register component", t );
-
-                    // make sure the name is not reserved any more
-                    if ( key != null )
-                    {
-                        m_componentRegistry.unregisterComponentHolder( key );
-                    }
-                }
-            }
+            return handler.getComponentMetadataList();
         }
         catch ( IOException ex )
         {
@@ -490,6 +555,49 @@ public class BundleComponentActivator implements ComponentActivator
                 }
             }
         }
+        return null;
+    }
+
+    private void registerComponents(final List<ComponentMetadata> metadataList)
+    {
+        // 112.4.2 Component descriptors may contain a single, root component element
+        // or one or more component elements embedded in a larger document
+        for ( ComponentMetadata metadata : metadataList )
+        {
+            final ComponentLogger componentLogger = new ComponentLogger(metadata, logger);
+            ComponentRegistryKey key = null;
+            try
+            {
+                // validate the component metadata
+                metadata.validate( );
+
+                // check and reserve the component name (validate ensures it's never null)
+                key = m_componentRegistry.checkComponentName( m_bundle, metadata.getName() );
+
+                // Request creation of the component manager
+                ComponentHolder<?> holder = m_componentRegistry.createComponentHolder( this, metadata, componentLogger );
+
+                // register the component after validation
+                m_componentRegistry.registerComponentHolder( key, holder );
+                m_holders.add( holder );
+
+                componentLogger.log( LogService.LOG_DEBUG,
+                    "BundleComponentActivator : ComponentHolder created.", null );
+
+            }
+            catch ( Throwable t )
+            {
+                // There is a problem with this particular component, we'll log the error
+                // and proceed to the next one
+                componentLogger.log( LogService.LOG_ERROR, "Cannot register component", t );
+
+                // make sure the name is not reserved any more
+                if ( key != null )
+                {
+                    m_componentRegistry.unregisterComponentHolder( key );
+                }
+            }
+        }
     }
 
     /**
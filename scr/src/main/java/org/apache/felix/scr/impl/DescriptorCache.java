@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+/**
+ * The <code>DescriptorCache</code> keeps the component metadata parsed from
+ * the descriptors of a bundle in the data area of the SCR bundle, such that
+ * the descriptors need not be parsed again when the bundle is started the
+ * next time.
+ * <p>
+ * There is one file per bundle. It is only used if the version and last
+ * modification time of the SCR bundle, the bundle id, the last modification
+ * time of the bundle and of its attached fragments, the descriptor entries and
+ * the configuration affecting the parser are the same as when it was written.
+ * The fragments are part of the key because descriptors may be found in
+ * them, and a refreshed host does not change when a fragment is updated.
+ * Descriptor entries are compared by path only, because the host of bundle
+ * entry URLs changes each time the framework is launched. Files of bundles
+ * which are no longer installed are removed by {@link #retain(Bundle[])}.
+ * The metadata is stored as parsed, before validation, so it is validated
+ * again when loaded and errors are reported just like for parsed descriptors.
+ */
+class DescriptorCache
+{
+    private static final int MAGIC = 0x53435244;
+
+    private static final int VERSION = 4;
+
+    private static final String FILE_PREFIX = "bundle";
+
+    private static final String FILE_SUFFIX = ".descriptors";
+
+    private final File m_directory;
+
+    private final String m_scrVersion;
+
+    private final long m_scrLastModified;
+
+    /**
+     * Creates a cache in the given directory for the metadata parsed by the
+     * given SCR bundle. Files written by another version or revision of the
+     * SCR bundle are not used.
+     */
+    DescriptorCache( final File directory, final Bundle scrBundle )
+    {
+        m_directory = directory;
+        m_scrVersion = scrBundle.getVersion().toString();
+        m_scrLastModified = scrBundle.getLastModified();
+    }
+
+    /**
+     * Returns the cached component metadata of the given bundle, one list
+     * per descriptor, or <code>null</code> if there is no up to date cache.
+     *
+     * @throws IOException if the cache cannot be read
+     */
+    List<List<ComponentMetadata>> load( final Bundle bundle, final List<URL> descriptors,
+        final boolean factoryEnabled, final boolean keepInstances ) throws IOException
+    {
+        final File file = getFile( bundle );
+        final DataInputStream in;
+        try
+        {
+            in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        }
+        catch ( final FileNotFoundException fnfe )
+        {
+            return null;
+        }
+        try
+        {
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION || !m_scrVersion.equals( in.readUTF() )
+                || in.readLong() != m_scrLastModified || in.readLong() != bundle.getBundleId()
+                || in.readLong() != bundle.getLastModified() || in.readBoolean() != factoryEnabled
+                || in.readBoolean() != keepInstances )
+            {
+                return null;
+            }
+            final long[] fragments = getFragments( bundle );
+            if ( in.readInt() != fragments.length )
+            {
+                return null;
+            }
+            for ( long fragment : fragments )
+            {
+                if ( in.readLong() != fragment )
+                {
+                    return null;
+                }
+            }
+            if ( in.readInt() != descriptors.size() )
+            {
+                return null;
+            }
+            for ( URL descriptor : descriptors )
+            {
+                if ( !descriptor.getPath().equals( in.readUTF() ) )
+                {
+                    return null;
+                }
+            }
+
+            final MetaDataReader reader = new MetaDataReader( in );
+            final List<List<ComponentMetadata>> metadata = new ArrayList<>( descriptors.size() );
+            for ( int i = 0; i < descriptors.size(); i++ )
+            {
+                metadata.add( MetadataStoreHelper.load( reader ) );
+            }
+            return metadata;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates a writer for the component metadata of the given bundle. The
+     * metadata of the descriptors has to be added in the order of the
+     * descriptors, before it is validated.
+     */
+    Writer createWriter( final Bundle bundle, final List<URL> descriptors,
+        final boolean factoryEnabled, final boolean keepInstances ) throws IOException
+    {
+        return new Writer( bundle, descriptors, factoryEnabled, keepInstances );
+    }
+
+    /**
+     * Removes the cached component metadata of the given bundle.
+     */
+    void remove( final Bundle bundle )
+    {
+        getFile( bundle ).delete();
+    }
+
+    /**
+     * Removes the cached component metadata of all bundles except the given
+     * ones, such as the metadata of bundles uninstalled while SCR was not
+     * running.
+     */
+    void retain( final Bundle[] bundles )
+    {
+        final Set<String> names = new HashSet<>();
+        for ( Bundle bundle : bundles )
+        {
+            names.add( getFile( bundle ).getName() );
+        }
+        final File[] files = m_directory.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                if ( file.getName().startsWith( FILE_PREFIX ) && !names.contains( file.getName() ) )
+                {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bundle id and last modification time of each fragment
+     * attached to the current wiring of the given bundle.
+     */
+    private static long[] getFragments( final Bundle bundle )
+    {
+        final BundleWiring wiring = bundle.adapt( BundleWiring.class );
+        final List<BundleWire> wires = wiring == null ? null : wiring.getProvidedWires( HostNamespace.HOST_NAMESPACE );
+        if ( wires == null )
+        {
+            return new long[0];
+        }
+        final long[] fragments = new long[wires.size() * 2];
+        for ( int i = 0; i < wires.size(); i++ )
+        {
+            final Bundle fragment = wires.get( i ).getRequirer().getBundle();
+            fragments[i * 2] = fragment.getBundleId();
+            fragments[i * 2 + 1] = fragment.getLastModified();
+        }
+        return fragments;
+    }
+
+    private File getFile( final Bundle bundle )
+    {
+        return new File( m_directory, FILE_PREFIX + bundle.getBundleId() + FILE_SUFFIX );
+    }
+
+    class Writer
+    {
+        private final Bundle m_bundle;
+
+        private final ByteArrayOutputStream m_buffer = new ByteArrayOutputStream();
+
+        private final MetaDataWriter m_writer;
+
+        private Writer( final Bundle bundle, final List<URL> descriptors,
+            final boolean factoryEnabled, final boolean keepInstances ) throws IOException
+        {
+            m_bundle = bundle;
+
+            final DataOutputStream out = new DataOutputStream( m_buffer );
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeUTF( m_scrVersion );
+            out.writeLong( m_scrLastModified );
+            out.writeLong( bundle.getBundleId() );
+            out.writeLong( bundle.getLastModified() );
+            out.writeBoolean( factoryEnabled );
+            out.writeBoolean( keepInstances );
+            final long[] fragments = getFragments( bundle );
+            out.writeInt( fragments.length );
+            for ( long fragment : fragments )
+            {
+                out.writeLong( fragment );
+            }
+            out.writeInt( descriptors.size() );
+            for ( URL descriptor : descriptors )
+            {
+                out.writeUTF( descriptor.getPath() );
+            }
+            m_writer = new MetaDataWriter( out );
+        }
+
+        /**
+         * Adds the not yet validated metadata of the next descriptor.
+         */
+        void add( final List<ComponentMetadata> metadata ) throws IOException
+        {
+            MetadataStoreHelper.store( metadata, m_writer );
+        }
+
+        /**
+         * Writes the cache file, replacing the previous one.
+         */
+        void commit() throws IOException
+        {
+            m_writer.getOutputStream().flush();
+
+            if ( !m_directory.isDirectory() && !m_directory.mkdirs() )
+            {
+                throw new IOException( "Cannot create directory " + m_directory );
+            }
+            final File file = getFile( m_bundle );
+            final File tmp = new File( m_directory, file.getName() + ".tmp" );
+            final OutputStream out = new FileOutputStream( tmp );
+            try
+            {
+                m_buffer.writeTo( out );
+            }
+            finally
+            {
+                out.close();
+            }
+            if ( !tmp.renameTo( file ) )
+            {
+                // some platforms cannot rename onto an existing file
+                file.delete();
+                if ( !tmp.renameTo( file ) )
+                {
+                    tmp.delete();
+                    throw new IOException( "Cannot replace " + file );
+                }
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.felix.scr.impl.inject;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
@@ -31,6 +32,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -135,121 +137,81 @@ public class Annotations
         return null;
     }
 
-    @SuppressWarnings("unchecked")
-	static public <T> T toObject(Class<T> clazz, Map<String, Object> props, Bundle b, boolean supportsInterfaces )
+    static public <T> T toObject(Class<T> clazz, Map<String, Object> props, Bundle b, boolean supportsInterfaces )
     {
-        final boolean isSingleElementAnn = isSingleElementAnnotation(clazz);
-        final String prefix = getPrefix(clazz);
-        final Map<String, Object> m = new HashMap<>();
+        final TypeInfo info = TYPE_INFO.get(clazz);
+        final Object[] values = new Object[info.names.length];
+        Arrays.fill(values, NOT_SET);
 
-        final Map<String, Method> complexFields = new HashMap<>();
-        for ( final Method method: clazz.getMethods() )
+        for ( final Member member : info.simpleMembers )
         {
-            final String name = method.getName();
-            final String mapped;
-            if ( isSingleElementAnn && name.equals(VALUE_METHOD) )
-            {
-                mapped = mapTypeNameToKey(clazz.getSimpleName());
-            }
-            else
-            {
-                mapped = mapIdentifierToKey(name);
-            }
-            final String key = (prefix == null ? mapped : prefix.concat(mapped));
-
-            Object raw = props.get(key);
-            Class<?> returnType = method.getReturnType();
+            final Object raw = props.get(member.key);
             Object cooked;
-            if ( returnType.isInterface() || returnType.isAnnotation())
-            {
-                complexFields.put(key, method);
-                continue;
-            }
-
             try
             {
-                if (returnType.isArray())
+                if (member.componentType != null)
                 {
-                    Class<?> componentType = returnType.getComponentType();
-                    if (componentType.isInterface() || componentType.isAnnotation())
-                    {
-                        complexFields.put(key, method);
-                        continue;
-                    }
-                    cooked = coerceToArray(componentType, raw, b);
+                    cooked = coerceToArray(member.componentType, raw, b);
                 }
                 else
                 {
-                    cooked = Coercions.coerce(returnType, raw, b);
+                    cooked = Coercions.coerce(member.returnType, raw, b);
                 }
             }
             catch (ComponentException e)
             {
                 cooked = new Invalid(e);
             }
-            m.put( name, cooked );
+            values[member.slot] = cooked;
         }
-        if (!complexFields.isEmpty())
+        if (!info.complexMembers.isEmpty())
         {
             if (supportsInterfaces )
             {
-                Map<String, List<Map<String, Object>>> nested = extractSubMaps(complexFields.keySet(), props);
-                for (Map.Entry<String, Method> entry: complexFields.entrySet())
+                Map<String, List<Map<String, Object>>> nested = extractSubMaps(info.complexPattern, props);
+                for (final Member member: info.complexMembers)
                 {
-                    List<Map<String, Object>> proplist = nested.get(entry.getKey());
+                    List<Map<String, Object>> proplist = nested.get(member.key);
                     if (proplist == null)
                     {
                     	proplist = Collections.emptyList();
                     }
-                    Method method = entry.getValue();
-                    Class<?> returnType  = method.getReturnType();
-                    if (returnType.isArray())
+                    if (member.componentType != null)
                     {
-                        Class<?> componentType = returnType.getComponentType();
-                        Object result = Array.newInstance(componentType, proplist.size());
+                        Object result = Array.newInstance(member.componentType, proplist.size());
                         for (int i = 0; i < proplist.size(); i++)
                         {
                             Map<String, Object> rawElement = proplist.get(i);
-                            Object cooked = toObject(componentType, rawElement, b, supportsInterfaces);
+                            Object cooked = toObject(member.componentType, rawElement, b, supportsInterfaces);
                             Array.set(result, i, cooked);
                         }
-                        m.put(method.getName(), result);
+                        values[member.slot] = result;
                     }
                     else
                     {
                         if (!proplist.isEmpty())
                         {
-                            Object cooked = toObject(returnType, proplist.get(0), b, supportsInterfaces);
-                            m.put(method.getName(), cooked);
+                            Object cooked = toObject(member.returnType, proplist.get(0), b, supportsInterfaces);
+                            values[member.slot] = cooked;
                         }
                     }
                 }
             }
             else
             {
-                for (Method method: complexFields.values())
+                for (final Member member: info.complexMembers)
                 {
-                    m.put(method.getName(), new Invalid("Invalid annotation member type" + method.getReturnType().getName() + " for member: " + method.getName()));
+                    values[member.slot] = new Invalid("Invalid annotation member type" + member.returnType.getName() + " for member: " + info.names[member.slot]);
                 }
             }
         }
 
-        final InvocationHandler h = new Handler(m, clazz);
-        return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[] { clazz }, h);
+        return clazz.cast(info.newInstance(new Handler(info, values)));
     }
 
-    private static Map<String, List<Map<String, Object>>> extractSubMaps(Collection<String> keys, Map<String, Object> map)
+    private static Map<String, List<Map<String, Object>>> extractSubMaps(Pattern p, Map<String, Object> map)
     {
         Map<String, List<Map<String, Object>>> result = new HashMap<>();
-        //Form a regexp to recognize all the keys as prefixes in the map keys.
-        StringBuilder b = new StringBuilder("(");
-        for (String key: keys)
-        {
-            b.append(key).append("|");
-        }
-        b.deleteCharAt(b.length() -1);
-        b.append(")\\.([0-9]*)\\.(.*)");
-        Pattern p = Pattern.compile(b.toString());
         for (Map.Entry<String, Object> entry: map.entrySet())
         {
             String longKey = entry.getKey();
@@ -358,71 +320,290 @@ public class Annotations
         return sb.toString();
     }
 
-    private final static class Handler implements InvocationHandler
+    /**
+     * The members of a component property type, computed once per type: the
+     * property key of each member, how its value is converted and the slot
+     * of its value in the value array of the instances.
+     */
+    private static final ClassValue<TypeInfo> TYPE_INFO = new ClassValue<TypeInfo>()
     {
-        private final Map<String, Object> values;
+        @Override
+        protected TypeInfo computeValue(final Class<?> type)
+        {
+            return new TypeInfo(type);
+        }
+    };
+
+    /** Marker for members without a value, like nested types without properties. */
+    private static final Object NOT_SET = new Object();
+
+    private final static class Member
+    {
+        final String key;
+
+        final int slot;
+
+        final Class<?> returnType;
 
+        /** The component type for array members, <code>null</code> otherwise. */
+        final Class<?> componentType;
+
+        Member(final String key, final int slot, final Class<?> returnType)
+        {
+            this.key = key;
+            this.slot = slot;
+            this.returnType = returnType;
+            this.componentType = returnType.getComponentType();
+        }
+    }
+
+    private final static class TypeInfo
+    {
         private final Class<?> type;
 
-        public Handler(final Map<String, Object> values, final Class<?> type)
+        /** The member names, indexed by slot. */
+        final String[] names;
+
+        /** The slots, indexed by member name. */
+        final Map<String, Integer> slots = new HashMap<>();
+
+        final List<Member> simpleMembers = new ArrayList<>();
+
+        final List<Member> complexMembers = new ArrayList<>();
+
+        /**
+         * The slots by the methods passed to the invocation handler, or -1
+         * for methods which are not members. The proxy passes the same
+         * method objects on every call, so this identity map is filled on
+         * the first call of each method and only read afterwards.
+         */
+        private volatile Map<Method, Integer> slotsByMethod = new IdentityHashMap<>();
+
+        /** Recognizes the keys of the complex members as prefixes of nested properties. */
+        final Pattern complexPattern;
+
+        private final Constructor<?> proxyConstructor;
+
+        TypeInfo(final Class<?> clazz)
+        {
+            this.type = clazz;
+            final boolean isSingleElementAnn = isSingleElementAnnotation(clazz);
+            final String prefix = getPrefix(clazz);
+
+            final List<String> names = new ArrayList<>();
+            final Map<String, Member> complexFields = new HashMap<>();
+            for ( final Method method: clazz.getMethods() )
+            {
+                final String name = method.getName();
+                final String mapped;
+                if ( isSingleElementAnn && name.equals(VALUE_METHOD) )
+                {
+                    mapped = mapTypeNameToKey(clazz.getSimpleName());
+                }
+                else
+                {
+                    mapped = mapIdentifierToKey(name);
+                }
+                final String key = (prefix == null ? mapped : prefix.concat(mapped));
+
+                Integer slot = slots.get(name);
+                if ( slot == null )
+                {
+                    slot = names.size();
+                    names.add(name);
+                    slots.put(name, slot);
+                }
+
+                final Member member = new Member(key, slot, method.getReturnType());
+                final Class<?> valueType = member.componentType != null ? member.componentType : member.returnType;
+                if ( valueType.isInterface() || valueType.isAnnotation() )
+                {
+                    complexFields.put(key, member);
+                }
+                else
+                {
+                    simpleMembers.add(member);
+                }
+            }
+            this.names = names.toArray(new String[names.size()]);
+            this.complexMembers.addAll(complexFields.values());
+
+            if ( complexFields.isEmpty() )
+            {
+                this.complexPattern = null;
+            }
+            else
+            {
+                //Form a regexp to recognize all the keys as prefixes in the map keys.
+                StringBuilder b = new StringBuilder("(");
+                for (String key: complexFields.keySet())
+                {
+                    b.append(key).append("|");
+                }
+                b.deleteCharAt(b.length() -1);
+                b.append(")\\.([0-9]*)\\.(.*)");
+                this.complexPattern = Pattern.compile(b.toString());
+            }
+
+            Constructor<?> constructor;
+            try
+            {
+                constructor = Proxy.getProxyClass(clazz.getClassLoader(), clazz).getConstructor(InvocationHandler.class);
+            }
+            catch ( final Exception e )
+            {
+                // fall back to creating each proxy through the Proxy class
+                constructor = null;
+            }
+            this.proxyConstructor = constructor;
+        }
+
+        Object newInstance(final InvocationHandler h)
+        {
+            if ( proxyConstructor != null )
+            {
+                try
+                {
+                    return proxyConstructor.newInstance(h);
+                }
+                catch ( final Exception e )
+                {
+                    // fall back to the Proxy class below
+                }
+            }
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, h);
+        }
+
+        /**
+         * Returns the slot of the member called through the given method or
+         * -1 if the method is not a member.
+         */
+        int getSlot(final Method method)
+        {
+            final Integer slot = slotsByMethod.get(method);
+            if ( slot != null )
+            {
+                return slot;
+            }
+            return addSlot(method);
+        }
+
+        private synchronized int addSlot(final Method method)
+        {
+            Integer slot = slotsByMethod.get(method);
+            if ( slot == null )
+            {
+                slot = slots.get(method.getName());
+                if ( slot == null )
+                {
+                    slot = -1;
+                }
+                final Map<Method, Integer> copy = new IdentityHashMap<>(slotsByMethod);
+                copy.put(method, slot);
+                slotsByMethod = copy;
+            }
+            return slot;
+        }
+    }
+
+    private final static class Handler implements InvocationHandler
+    {
+        private final TypeInfo info;
+
+        private final Object[] values;
+
+        public Handler(final TypeInfo info, final Object[] values)
         {
+            this.info = info;
             this.values = values;
-            this.type = type;
+        }
+
+        /**
+         * Returns the values by member name, leaving out members without a value.
+         */
+        private Map<String, Object> toMap()
+        {
+            final Map<String, Object> map = new HashMap<>();
+            for ( int i = 0; i < values.length; i++ )
+            {
+                if ( values[i] != NOT_SET )
+                {
+                    map.put(info.names[i], values[i]);
+                }
+            }
+            return map;
         }
 
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
         {
-            Object value = values.get(method.getName());
+            final int slot = info.getSlot(method);
+            final Object value = slot == -1 ? null : values[slot];
+            if ( value == null || value == NOT_SET )
+            {
+                return invokeObjectMethod(proxy, method, args);
+            }
             if (value instanceof Invalid)
             {
                 throw new ComponentException(((Invalid)value).getMessage());
             }
-            if ( value == null )
+            return value;
+        }
+
+        /**
+         * Implements the methods of the Annotation interface like hashCode,
+         * toString, equals etc. Kept apart from {@link #invoke(Object, Method, Object[])}
+         * so that member calls stay small enough to be inlined.
+         */
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args)
+        {
+            Object value = null;
+            if (method.getName().equals("hashCode") &&
+                method.getParameterTypes().length == 0 )
             {
-                // check for methods of the Annotations class like hashCode, toString, equals etc.
-                if (method.getName().equals("hashCode") &&
-                    method.getParameterTypes().length == 0 )
-                {
-                    int hashCode = 0;
-                    for (final Map.Entry<String, Object> entry : values.entrySet()) {
-                        if (value instanceof Invalid) {
-                            continue;
-                        }
-                        hashCode += (127 * entry.getKey().hashCode()) ^ entry.getValue().hashCode();
+                int hashCode = 0;
+                for (final Map.Entry<String, Object> entry : toMap().entrySet()) {
+                    if (value instanceof Invalid) {
+                        continue;
                     }
-                    value = hashCode;
+                    hashCode += (127 * entry.getKey().hashCode()) ^ entry.getValue().hashCode();
                 }
-                else if (method.getName().equals("equals")
-                         && method.getParameterTypes().length == 1)
+                value = hashCode;
+            }
+            else if (method.getName().equals("equals")
+                     && method.getParameterTypes().length == 1)
+            {
+                final Object other = args[0];
+                if (proxy == other)
                 {
-                    final Object other = args[0];
-                    if (proxy == other)
-                    {
-                        value = true;
-                    }
-                    else
+                    value = true;
+                }
+                else
+                {
+                    value = false;
+                    if (info.type.isInstance(other) && Proxy.isProxyClass(other.getClass()))
                     {
-                        value = false;
-                        if (type.isInstance(other) && Proxy.isProxyClass(other.getClass()))
-                        {
-                            final InvocationHandler ih = Proxy.getInvocationHandler(other);
-                            if (ih instanceof Handler) {
-                                value = ((Handler)ih).values.equals(values);
+                        final InvocationHandler ih = Proxy.getInvocationHandler(other);
+                        if (ih instanceof Handler) {
+                            final Handler otherHandler = (Handler) ih;
+                            if (otherHandler.info == info) {
+                                value = Arrays.equals(otherHandler.values, values);
+                            } else {
+                                value = otherHandler.toMap().equals(toMap());
                             }
                         }
                     }
                 }
-                else if (method.getName().equals("toString")
-                        && method.getParameterTypes().length == 0 )
-                {
-                    value = type.getName() + " : " + values;
-                }
-                else if (method.getName().equals("annotationType")
-                         && method.getParameterTypes().length == 0 )
-                {
-                    value = type;
-                }
+            }
+            else if (method.getName().equals("toString")
+                    && method.getParameterTypes().length == 0 )
+            {
+                value = info.type.getName() + " : " + toMap();
+            }
+            else if (method.getName().equals("annotationType")
+                     && method.getParameterTypes().length == 0 )
+            {
+                value = info.type;
             }
             return value;
         }
@@ -68,6 +68,13 @@ public interface ScrConfiguration
 
     String PROP_SERVICE_CHANGECOUNT_TIMEOUT = "ds.service.changecount.timeout";
 
+    /**
+     * Framework property to disable caching the parsed component descriptors
+     * of bundles in the data area of the SCR bundle. The cache is enabled
+     * unless this is set to <code>false</code>.
+     */
+    String PROP_DESCRIPTOR_CACHE = "ds.descriptor.cache";
+
     /**
      * Returns the current log level.
      * @return
@@ -18,6 +18,9 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -28,6 +31,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
 import org.apache.felix.scr.impl.metadata.ServiceMetadata.Scope;
 import org.osgi.service.component.ComponentException;
 
@@ -1074,6 +1079,136 @@ public class ComponentMetadata
     }
 
 
+    /**
+     * Writes the raw state of this metadata as set while parsing the
+     * component descriptor.
+     *
+     * @throws IOException if this metadata has already been validated or
+     *      is known to be invalid
+     */
+    void store( final MetaDataWriter out ) throws IOException
+    {
+        if ( m_validated )
+        {
+            throw new IOException( "Validated component metadata cannot be stored" );
+        }
+        if ( m_implementationClassName == IMPLEMENTATION_CLASS_DUPLICATE || m_service == SERVICE_DUPLICATE )
+        {
+            throw new IOException( "Invalid component metadata cannot be stored" );
+        }
+
+        final DataOutputStream dos = out.getOutputStream();
+        out.writeString( m_dsVersion.name() );
+        out.writeString( m_name );
+        dos.writeBoolean( m_enabled );
+        out.writeString( m_factory );
+        out.writeBoolean( m_immediate );
+        out.writeString( m_implementationClassName );
+        out.writeString( m_activate );
+        dos.writeBoolean( m_activateDeclared );
+        out.writeString( m_deactivate );
+        dos.writeBoolean( m_deactivateDeclared );
+        out.writeString( m_modified );
+        out.writeString( m_configurationPolicy );
+        out.writeStrings( m_configurationPid );
+        out.writeStrings( m_activationFields );
+        out.writeString( m_init );
+        dos.writeBoolean( m_configurableServiceProperties );
+        dos.writeBoolean( m_persistentFactoryComponent );
+        dos.writeBoolean( m_deleteCallsModify );
+        out.writeBoolean( m_obsoleteFactoryComponentFactory );
+        dos.writeBoolean( m_configureWithInterfaces );
+        dos.writeBoolean( m_delayedKeepInstances );
+
+        dos.writeInt( m_propertyMetaData.size() );
+        for ( PropertyMetadata property : m_propertyMetaData )
+        {
+            property.store( out );
+        }
+        dos.writeInt( m_factoryPropertyMetaData.size() );
+        for ( PropertyMetadata property : m_factoryPropertyMetaData )
+        {
+            property.store( out );
+        }
+
+        dos.writeBoolean( m_service != null );
+        if ( m_service != null )
+        {
+            m_service.store( out );
+        }
+
+        dos.writeInt( m_references.size() );
+        for ( ReferenceMetadata reference : m_references )
+        {
+            reference.store( out );
+        }
+    }
+
+
+    /**
+     * Reads metadata written by {@link #store(MetaDataWriter)}. The
+     * metadata still has to be validated.
+     */
+    static ComponentMetadata load( final MetaDataReader in ) throws IOException
+    {
+        final DataInputStream dis = in.getInputStream();
+        final DSVersion dsVersion;
+        try
+        {
+            dsVersion = DSVersion.valueOf( in.readString() );
+        }
+        catch ( final RuntimeException re )
+        {
+            throw new IOException( "Invalid component metadata version", re );
+        }
+
+        final ComponentMetadata metadata = new ComponentMetadata( dsVersion );
+        metadata.m_name = in.readString();
+        metadata.m_enabled = dis.readBoolean();
+        metadata.m_factory = in.readString();
+        metadata.m_immediate = in.readBoolean();
+        metadata.m_implementationClassName = in.readString();
+        metadata.m_activate = in.readString();
+        metadata.m_activateDeclared = dis.readBoolean();
+        metadata.m_deactivate = in.readString();
+        metadata.m_deactivateDeclared = dis.readBoolean();
+        metadata.m_modified = in.readString();
+        metadata.m_configurationPolicy = in.readString();
+        metadata.m_configurationPid = in.readStrings();
+        metadata.m_activationFields = in.readStrings();
+        metadata.m_init = in.readString();
+        metadata.m_configurableServiceProperties = dis.readBoolean();
+        metadata.m_persistentFactoryComponent = dis.readBoolean();
+        metadata.m_deleteCallsModify = dis.readBoolean();
+        metadata.m_obsoleteFactoryComponentFactory = in.readBoolean();
+        metadata.m_configureWithInterfaces = dis.readBoolean();
+        metadata.m_delayedKeepInstances = dis.readBoolean();
+
+        int size = dis.readInt();
+        for ( int i = 0; i < size; i++ )
+        {
+            metadata.m_propertyMetaData.add( PropertyMetadata.load( in ) );
+        }
+        size = dis.readInt();
+        for ( int i = 0; i < size; i++ )
+        {
+            metadata.m_factoryPropertyMetaData.add( PropertyMetadata.load( in ) );
+        }
+
+        if ( dis.readBoolean() )
+        {
+            metadata.m_service = ServiceMetadata.load( in );
+        }
+
+        size = dis.readInt();
+        for ( int i = 0; i < size; i++ )
+        {
+            metadata.m_references.add( ReferenceMetadata.load( in ) );
+        }
+        return metadata;
+    }
+
+
     /**
      * Returns a <code>ComponentException</code> for this component with the
      * given explanation for failure.
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.metadata;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the compact binary form of parsed component metadata.
+ * Strings are written once and referred to by their index afterwards, as
+ * interface, class and property names repeat a lot within a bundle.
+ */
+public class MetadataStoreHelper
+{
+    private static final int NULL_STRING = -1;
+
+    private static final int NEW_STRING = -2;
+
+    private MetadataStoreHelper()
+    {
+    }
+
+    /**
+     * Writes the raw, not yet validated state of the given metadata.
+     */
+    public static void store( final List<ComponentMetadata> metadata, final MetaDataWriter out ) throws IOException
+    {
+        out.getOutputStream().writeInt( metadata.size() );
+        for ( ComponentMetadata component : metadata )
+        {
+            component.store( out );
+        }
+    }
+
+    /**
+     * Reads metadata written by {@link #store(List, MetaDataWriter)}. The
+     * returned metadata has to be validated before use, just like metadata
+     * freshly parsed from a descriptor.
+     */
+    public static List<ComponentMetadata> load( final MetaDataReader in ) throws IOException
+    {
+        final int size = in.getInputStream().readInt();
+        final List<ComponentMetadata> metadata = new ArrayList<>( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            metadata.add( ComponentMetadata.load( in ) );
+        }
+        return metadata;
+    }
+
+    public static class MetaDataWriter
+    {
+        private final Map<String, Integer> m_strings = new HashMap<>();
+
+        private final DataOutputStream m_out;
+
+        public MetaDataWriter( final DataOutputStream out )
+        {
+            m_out = out;
+        }
+
+        public DataOutputStream getOutputStream()
+        {
+            return m_out;
+        }
+
+        public void writeString( final String value ) throws IOException
+        {
+            if ( value == null )
+            {
+                m_out.writeInt( NULL_STRING );
+                return;
+            }
+            final Integer index = m_strings.get( value );
+            if ( index != null )
+            {
+                m_out.writeInt( index );
+                return;
+            }
+            m_strings.put( value, m_strings.size() );
+            m_out.writeInt( NEW_STRING );
+            m_out.writeUTF( value );
+        }
+
+        public void writeStrings( final List<String> values ) throws IOException
+        {
+            if ( values == null )
+            {
+                m_out.writeInt( -1 );
+                return;
+            }
+            m_out.writeInt( values.size() );
+            for ( String value : values )
+            {
+                writeString( value );
+            }
+        }
+
+        void writeBoolean( final Boolean value ) throws IOException
+        {
+            m_out.writeByte( value == null ? -1 : ( value ? 1 : 0 ) );
+        }
+    }
+
+    public static class MetaDataReader
+    {
+        private final List<String> m_strings = new ArrayList<>();
+
+        private final DataInputStream m_in;
+
+        public MetaDataReader( final DataInputStream in )
+        {
+            m_in = in;
+        }
+
+        public DataInputStream getInputStream()
+        {
+            return m_in;
+        }
+
+        public String readString() throws IOException
+        {
+            final int index = m_in.readInt();
+            if ( index == NULL_STRING )
+            {
+                return null;
+            }
+            if ( index == NEW_STRING )
+            {
+                final String value = m_in.readUTF();
+                m_strings.add( value );
+                return value;
+            }
+            if ( index < 0 || index >= m_strings.size() )
+            {
+                throw new IOException( "Invalid string reference " + index );
+            }
+            return m_strings.get( index );
+        }
+
+        public List<String> readStrings() throws IOException
+        {
+            final int size = m_in.readInt();
+            if ( size < 0 )
+            {
+                return null;
+            }
+            final List<String> values = new ArrayList<>( size );
+            for ( int i = 0; i < size; i++ )
+            {
+                values.add( readString() );
+            }
+            return values;
+        }
+
+        Boolean readBoolean() throws IOException
+        {
+            final byte value = m_in.readByte();
+            return value < 0 ? null : Boolean.valueOf( value != 0 );
+        }
+    }
+}
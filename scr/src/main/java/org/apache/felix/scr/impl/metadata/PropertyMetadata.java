@@ -18,10 +18,16 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+
 /**
  * A property descriptor that contains the information for properties
  * defined in the descriptor
@@ -130,6 +136,56 @@ public class PropertyMetadata {
         return m_value;
     }
 
+    /**
+     * Writes the raw state of this property as set while parsing.
+     */
+    void store( final MetaDataWriter out ) throws IOException
+    {
+        final DataOutputStream dos = out.getOutputStream();
+        out.writeString( m_name );
+        out.writeString( m_type );
+        if ( m_value instanceof String[] )
+        {
+            final String[] values = ( String[] ) m_value;
+            dos.writeInt( values.length );
+            for ( String value : values )
+            {
+                out.writeString( value );
+            }
+        }
+        else
+        {
+            dos.writeInt( -1 );
+            out.writeString( ( String ) m_value );
+        }
+    }
+
+    /**
+     * Reads a property written by {@link #store(MetaDataWriter)}.
+     */
+    static PropertyMetadata load( final MetaDataReader in ) throws IOException
+    {
+        final DataInputStream dis = in.getInputStream();
+        final PropertyMetadata property = new PropertyMetadata();
+        property.m_name = in.readString();
+        property.m_type = in.readString();
+        final int size = dis.readInt();
+        if ( size < 0 )
+        {
+            property.m_value = in.readString();
+        }
+        else
+        {
+            final String[] values = new String[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                values[i] = in.readString();
+            }
+            property.m_value = values;
+        }
+        return property;
+    }
+
     /**
      * Method used to verify if the semantics of this metadata are correct
      */
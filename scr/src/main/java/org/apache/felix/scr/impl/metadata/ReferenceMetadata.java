@@ -18,9 +18,13 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.IOException;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+
 /**
  * Information associated to a dependency
  *
@@ -809,6 +813,67 @@ public class ReferenceMetadata
         m_validated = true;
     }
 
+    /**
+     * Writes the raw state of this metadata as set while parsing.
+     */
+    void store( final MetaDataWriter out ) throws IOException
+    {
+        out.writeString( m_name );
+        out.writeString( m_interface );
+        out.writeString( m_cardinality );
+        out.writeString( m_policy );
+        out.writeString( m_policy_option );
+        out.writeString( m_scopeName );
+        out.writeString( m_target );
+        out.writeString( m_bind );
+        out.writeString( m_updated );
+        out.writeString( m_unbind );
+        out.writeString( m_field );
+        out.writeString( m_field_option );
+        out.writeString( m_collection_type );
+        out.writeString( m_parameter );
+    }
+
+    /**
+     * Reads metadata written by {@link #store(MetaDataWriter)}. The setters
+     * are used, so the secondary properties are derived like while parsing.
+     */
+    static ReferenceMetadata load( final MetaDataReader in ) throws IOException
+    {
+        final ReferenceMetadata reference = new ReferenceMetadata();
+        reference.m_name = in.readString();
+        reference.m_interface = in.readString();
+        final String cardinality = in.readString();
+        if ( cardinality != null )
+        {
+            reference.setCardinality( cardinality );
+        }
+        final String policy = in.readString();
+        if ( policy != null )
+        {
+            reference.setPolicy( policy );
+        }
+        final String policyOption = in.readString();
+        if ( policyOption != null )
+        {
+            reference.setPolicyOption( policyOption );
+        }
+        reference.m_scopeName = in.readString();
+        reference.m_target = in.readString();
+        reference.m_bind = in.readString();
+        reference.m_updated = in.readString();
+        reference.m_unbind = in.readString();
+        reference.m_field = in.readString();
+        final String fieldOption = in.readString();
+        if ( fieldOption != null )
+        {
+            reference.setFieldOption( fieldOption );
+        }
+        reference.m_collection_type = in.readString();
+        reference.m_parameter = in.readString();
+        return reference;
+    }
+
     public String getDebugInfo()
     {
         return getName() +
@@ -18,9 +18,13 @@
  */
 package org.apache.felix.scr.impl.metadata;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataReader;
+import org.apache.felix.scr.impl.metadata.MetadataStoreHelper.MetaDataWriter;
+
 /**
  * This class contains the metadata associated to a service that is provided
  * by a component
@@ -90,6 +94,28 @@ public class ServiceMetadata {
         return m_provides.toArray( new String[m_provides.size()] );
     }
 
+    /**
+     * Writes the raw state of this metadata as set while parsing.
+     */
+    void store( final MetaDataWriter out ) throws IOException
+    {
+        out.writeBoolean( m_serviceFactory );
+        out.writeString( m_scopeName );
+        out.writeStrings( m_provides );
+    }
+
+    /**
+     * Reads metadata written by {@link #store(MetaDataWriter)}.
+     */
+    static ServiceMetadata load( final MetaDataReader in ) throws IOException
+    {
+        final ServiceMetadata service = new ServiceMetadata();
+        service.m_serviceFactory = in.readBoolean();
+        service.m_scopeName = in.readString();
+        service.m_provides = in.readStrings();
+        return service;
+    }
+
     /**
      * Verify if the semantics of this metadata are correct
      *
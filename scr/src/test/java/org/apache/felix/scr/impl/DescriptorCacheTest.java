@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.felix.scr.impl.logger.MockBundleLogger;
+import org.apache.felix.scr.impl.metadata.ComponentMetadata;
+import org.apache.felix.scr.impl.metadata.ReferenceMetadata;
+import org.apache.felix.scr.impl.parser.KXml2SAXParser;
+import org.apache.felix.scr.impl.xml.XmlHandler;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.wiring.BundleRevision;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+import org.mockito.Mockito;
+
+import junit.framework.TestCase;
+
+
+public class DescriptorCacheTest extends TestCase
+{
+    private static final String[] DESCRIPTORS =
+        { "/components_all_elements_10.xml", "/integration_test_simple_components.xml",
+            "/integration_test_constructor.xml", "/components_properties_11.xml" };
+
+    private File directory;
+
+    private DescriptorCache cache;
+
+    private List<URL> urls;
+
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        directory = File.createTempFile( "descriptors", "" );
+        directory.delete();
+        cache = new DescriptorCache( directory, new ScrBundle( "2.1.0", 0 ) );
+
+        urls = new ArrayList<>();
+        for ( String descriptor : DESCRIPTORS )
+        {
+            urls.add( getClass().getResource( descriptor ) );
+        }
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        File[] files = directory.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                file.delete();
+            }
+        }
+        directory.delete();
+
+        super.tearDown();
+    }
+
+
+    public void test_round_trip() throws Exception
+    {
+        final MockBundle bundle = new MockBundle();
+        writeCache( bundle );
+
+        final List<List<ComponentMetadata>> cached = cache.load( bundle, urls, false, false );
+        assertNotNull( cached );
+        assertEquals( urls.size(), cached.size() );
+
+        for ( int i = 0; i < urls.size(); i++ )
+        {
+            final List<ComponentMetadata> parsed = parse( urls.get( i ) );
+            assertEquals( parsed.size(), cached.get( i ).size() );
+            for ( int j = 0; j < parsed.size(); j++ )
+            {
+                assertEquals( describe( parsed.get( j ) ), describe( cached.get( i ).get( j ) ) );
+            }
+        }
+    }
+
+
+    public void test_changed_key() throws Exception
+    {
+        final MockBundle bundle = new MockBundle();
+        writeCache( bundle );
+
+        // configuration affecting the parser
+        assertNull( cache.load( bundle, urls, true, false ) );
+        assertNull( cache.load( bundle, urls, false, true ) );
+
+        // descriptor entries
+        assertNull( cache.load( bundle, urls.subList( 1, urls.size() ), false, false ) );
+
+        // updated bundle
+        final MockBundle updated = new MockBundle()
+        {
+            @Override
+            public long getLastModified()
+            {
+                return 1;
+            }
+        };
+        assertNull( cache.load( updated, urls, false, false ) );
+
+        // updated SCR bundle
+        assertNull( new DescriptorCache( directory, new ScrBundle( "2.1.2", 0 ) ).load( bundle, urls, false, false ) );
+        assertNull( new DescriptorCache( directory, new ScrBundle( "2.1.0", 1 ) ).load( bundle, urls, false, false ) );
+
+        assertNotNull( cache.load( bundle, urls, false, false ) );
+    }
+
+
+    public void test_updated_fragment() throws Exception
+    {
+        // the host is refreshed, not updated, when a fragment is updated
+        final MockBundle host = new FragmentHost( 7, 100 );
+        writeCache( host );
+        assertNotNull( cache.load( new FragmentHost( 7, 100 ), urls, false, false ) );
+
+        assertNull( cache.load( new FragmentHost( 7, 200 ), urls, false, false ) );
+        assertNull( cache.load( new FragmentHost( 8, 100 ), urls, false, false ) );
+        assertNull( cache.load( new MockBundle(), urls, false, false ) );
+    }
+
+
+    public void test_relaunched_framework() throws Exception
+    {
+        // bundle entry URLs have a different host after each launch
+        final MockBundle bundle = new MockBundle();
+        writeCache( bundle, entryUrls( "0c2a4e5e-7e1b-4f44-9b5d-1c0a6f0e2b11_1.0", "" ) );
+
+        final List<URL> relaunched = entryUrls( "5f7d9a03-2c4e-4b8a-a1d6-93e0b7c4f822_1.0", "" );
+        final List<List<ComponentMetadata>> cached = cache.load( bundle, relaunched, false, false );
+        assertNotNull( cached );
+        assertEquals( urls.size(), cached.size() );
+
+        // other entries still do not match
+        assertNull( cache.load( bundle, entryUrls( "5f7d9a03-2c4e-4b8a-a1d6-93e0b7c4f822_1.0", "/OSGI-INF" ),
+            false, false ) );
+    }
+
+
+    public void test_retain() throws Exception
+    {
+        final MockBundle bundle = new MockBundle();
+        final MockBundle other = new MockBundle()
+        {
+            @Override
+            public long getBundleId()
+            {
+                return 5;
+            }
+        };
+        writeCache( bundle );
+        writeCache( other );
+
+        cache.retain( new Bundle[] { other } );
+        assertNull( cache.load( bundle, urls, false, false ) );
+        assertNotNull( cache.load( other, urls, false, false ) );
+    }
+
+
+    public void test_truncated_cache() throws Exception
+    {
+        final MockBundle bundle = new MockBundle();
+        writeCache( bundle );
+
+        final File file = directory.listFiles()[0];
+        final RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try
+        {
+            raf.setLength( raf.length() - 5 );
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        try
+        {
+            cache.load( bundle, urls, false, false );
+            fail( "Expected IOException for truncated cache" );
+        }
+        catch ( IOException ioe )
+        {
+            // expected
+        }
+
+        cache.remove( bundle );
+        assertNull( cache.load( bundle, urls, false, false ) );
+    }
+
+
+    private static class ScrBundle extends MockBundle
+    {
+        private final Version version;
+
+        private final long lastModified;
+
+        ScrBundle( final String version, final long lastModified )
+        {
+            this.version = new Version( version );
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public Version getVersion()
+        {
+            return version;
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            return lastModified;
+        }
+    }
+
+
+    /**
+     * A bundle with one attached fragment.
+     */
+    private static class FragmentHost extends MockBundle
+    {
+        private final BundleWiring wiring;
+
+        FragmentHost( final long fragmentId, final long fragmentLastModified )
+        {
+            final MockBundle fragment = new MockBundle()
+            {
+                @Override
+                public long getBundleId()
+                {
+                    return fragmentId;
+                }
+
+                @Override
+                public long getLastModified()
+                {
+                    return fragmentLastModified;
+                }
+            };
+            final BundleRevision revision = Mockito.mock( BundleRevision.class );
+            Mockito.when( revision.getBundle() ).thenReturn( fragment );
+            final BundleWire wire = Mockito.mock( BundleWire.class );
+            Mockito.when( wire.getRequirer() ).thenReturn( revision );
+            wiring = Mockito.mock( BundleWiring.class );
+            Mockito.when( wiring.getProvidedWires( HostNamespace.HOST_NAMESPACE ) )
+                .thenReturn( Collections.singletonList( wire ) );
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A> A adapt( final Class<A> type )
+        {
+            return type == BundleWiring.class ? ( A ) wiring : null;
+        }
+    }
+
+
+    private void writeCache( final MockBundle bundle ) throws Exception
+    {
+        writeCache( bundle, urls );
+    }
+
+
+    private void writeCache( final MockBundle bundle, final List<URL> descriptors ) throws Exception
+    {
+        final DescriptorCache.Writer writer = cache.createWriter( bundle, descriptors, false, false );
+        for ( URL url : urls )
+        {
+            writer.add( parse( url ) );
+        }
+        writer.commit();
+    }
+
+
+    /**
+     * Returns URLs for the test descriptors like the framework creates them
+     * for bundle entries, with the given host and path prefix.
+     */
+    private List<URL> entryUrls( final String host, final String prefix ) throws Exception
+    {
+        final URLStreamHandler handler = new URLStreamHandler()
+        {
+            @Override
+            protected URLConnection openConnection( final URL u )
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        final List<URL> entries = new ArrayList<>();
+        for ( String descriptor : DESCRIPTORS )
+        {
+            entries.add( new URL( "bundle", host, 1, prefix + descriptor, handler ) );
+        }
+        return entries;
+    }
+
+
+    private List<ComponentMetadata> parse( final URL url ) throws Exception
+    {
+        final BufferedReader in = new BufferedReader( new InputStreamReader( url.openStream(), "UTF-8" ) );
+        try
+        {
+            final XmlHandler handler = new XmlHandler( new MockBundle(), new MockBundleLogger(), false, false );
+            new KXml2SAXParser( in ).parseXML( handler );
+            return handler.getComponentMetadataList();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Validates the metadata and returns a description covering all of it.
+     */
+    private String describe( final ComponentMetadata metadata )
+    {
+        try
+        {
+            metadata.validate();
+        }
+        catch ( RuntimeException re )
+        {
+            return "invalid: " + re.getMessage();
+        }
+
+        final StringBuilder buf = new StringBuilder();
+        buf.append( metadata.getDSVersion() ).append( ',' );
+        buf.append( metadata.getName() ).append( ',' );
+        buf.append( metadata.getImplementationClassName() ).append( ',' );
+        buf.append( metadata.isEnabled() ).append( ',' );
+        buf.append( metadata.isImmediate() ).append( ',' );
+        buf.append( metadata.getFactoryIdentifier() ).append( ',' );
+        buf.append( metadata.getConfigurationPolicy() ).append( ',' );
+        buf.append( metadata.getConfigurationPid() ).append( ',' );
+        buf.append( metadata.getActivate() ).append( metadata.isActivateDeclared() ).append( ',' );
+        buf.append( metadata.getDeactivate() ).append( metadata.isDeactivateDeclared() ).append( ',' );
+        buf.append( metadata.getModified() ).append( ',' );
+        buf.append( metadata.getActivationFields() ).append( ',' );
+        buf.append( metadata.getNumberOfConstructorParameters() ).append( ',' );
+        buf.append( metadata.isConfigurableServiceProperties() ).append( ',' );
+        buf.append( metadata.isPersistentFactoryComponent() ).append( ',' );
+        buf.append( metadata.isDeleteCallsModify() ).append( ',' );
+        buf.append( metadata.isObsoleteFactoryComponentFactory() ).append( ',' );
+        buf.append( metadata.isConfigureWithInterfaces() ).append( ',' );
+        buf.append( metadata.isDelayedKeepInstances() ).append( ',' );
+        buf.append( describe( metadata.getProperties() ) ).append( ',' );
+        buf.append( describe( metadata.getFactoryProperties() ) ).append( ',' );
+        if ( metadata.getServiceMetadata() != null )
+        {
+            buf.append( Arrays.asList( metadata.getServiceMetadata().getProvides() ) );
+            buf.append( metadata.getServiceScope() ).append( ',' );
+        }
+        for ( ReferenceMetadata reference : metadata.getDependencies() )
+        {
+            buf.append( reference.getDebugInfo() );
+            buf.append( reference.getScope() ).append( reference.getPolicyOption() ).append( ',' );
+        }
+        return buf.toString();
+    }
+
+
+    private String describe( final Map<String, Object> properties )
+    {
+        final Map<String, String> sorted = new TreeMap<>();
+        for ( Map.Entry<String, Object> entry : properties.entrySet() )
+        {
+            final Object value = entry.getValue();
+            sorted.put( entry.getKey(), Arrays.deepToString( new Object[] { value } )
+                + ( value == null ? "" : value.getClass().getName() ) );
+        }
+        return sorted.toString();
+    }
+}
@@ -111,6 +111,24 @@ public class AnnotationTest extends TestCase
         assertEquals("3", a.string());
     }
 
+    public void testA1Repeated() throws Exception
+    {
+        Map<String, Object> values = allValues();
+
+        A1 a = Annotations.toObject( A1.class, values, mockBundle(), false);
+        values.put("integer", 4);
+        A1 b = Annotations.toObject( A1.class, values, mockBundle(), false);
+
+        // the values are converted per configuration
+        checkA1(a);
+        assertEquals(4, b.integer());
+        assertFalse(a.toString().equals(b.toString()));
+
+        values.put("integer", 3);
+        A1 c = Annotations.toObject( A1.class, values, mockBundle(), false);
+        assertEquals(a.toString(), c.toString());
+    }
+
     public void testA1FromArray() throws Exception
     {
         Map<String, Object> values = arrayValues();
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.felix.scr.impl.inject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local benchmark of component property types. It is not run as part of
+ * the build; run it from the test classpath:
+ *
+ * <pre>
+ * java org.apache.felix.scr.impl.inject.AnnotationsHarness [calls]
+ * </pre>
+ *
+ * Reports the best time per member call, like <tt>config.timeout()</tt>
+ * in a component method, and per conversion of a configuration into an
+ * instance of the type, over several rounds after a warm up.
+ */
+public class AnnotationsHarness
+{
+    private static final int ROUNDS = 12;
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    public @interface Config
+    {
+        int timeout() default 5;
+
+        String name() default "name";
+
+        long size() default 1;
+
+        boolean enabled() default true;
+
+        String[] tags() default {};
+
+        double ratio() default 0.5;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("timeout", 30);
+        props.put("name", "harness");
+        props.put("tags", new String[] { "a", "b" });
+
+        Config config = Annotations.toObject(Config.class, props, null, false);
+        long sink = 0;
+        double bestCall = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++)
+            {
+                sink += config.timeout();
+            }
+            if (r >= WARMUP_ROUNDS)
+            {
+                bestCall = Math.min(bestCall, (System.nanoTime() - start) / (double) calls);
+            }
+        }
+
+        int conversions = calls / 100;
+        double bestConversion = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++)
+        {
+            long start = System.nanoTime();
+            for (int i = 0; i < conversions; i++)
+            {
+                sink += Annotations.toObject(Config.class, props, null, false).timeout();
+            }
+            if (r >= WARMUP_ROUNDS)
+            {
+                bestConversion = Math.min(bestConversion, (System.nanoTime() - start) / (double) conversions);
+            }
+        }
+
+        System.out.println(String.format("member call: %.2f ns, conversion: %.1f ns (%d)",
+            bestCall, bestConversion, sink));
+    }
+}